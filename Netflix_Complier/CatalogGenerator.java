@@ -0,0 +1,319 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Gerador determinístico de ficheiros CSV com o formato de netflix_titles.csv
+ * (Main --generate), para testar o programa com 10 mil a 10 milhões de linhas.
+ * * A mesma semente gera sempre o mesmo ficheiro. Realizadores, atores, países
+ * e categorias seguem distribuições de Zipf (poucos valores muito frequentes
+ * e uma cauda longa), como no ficheiro real; os restantes campos seguem as
+ * proporções aproximadas do ficheiro real (70% filmes, datas concentradas nos
+ * últimos anos, campos vazios, títulos repetidos, textos com vírgulas e aspas).
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class CatalogGenerator {
+
+    private static final String HEADER =
+        "show_id,type,title,director,cast,country,date_added,release_year,rating,duration,listed_in,description";
+
+    private static final String[] FIRST_NAMES = {
+        "James", "Maria", "Wei", "Aarav", "Sofia", "Kenji", "Fatima", "Lucas", "Priya", "Olivia",
+        "Mateo", "Yuki", "Ahmed", "Emma", "Raj", "Chloe", "Diego", "Hana", "Omar", "Isabella",
+        "Ivan", "Amara", "Liam", "Mei", "Carlos", "Nadia", "Hiroshi", "Zara", "Tomás", "Anya",
+        "Kwame", "Lea", "Arjun", "Camila", "Jin", "Sara", "Pedro", "Ines", "Noah", "Leila"
+    };
+
+    private static final String[] LAST_NAMES = {
+        "Smith", "Kumar", "Wang", "García", "Kim", "Silva", "Müller", "Tanaka", "Khan", "Rossi",
+        "Johnson", "Sharma", "Chen", "López", "Park", "Santos", "Dubois", "Sato", "Ali", "Novak",
+        "Brown", "Patel", "Li", "Martínez", "Choi", "Costa", "Moreau", "Suzuki", "Hassan", "Ivanova",
+        "O'Brien", "Mensah", "Nakamura", "Fernández", "Kapoor", "Okafor", "Jensen", "Yilmaz", "Ortiz", "Lee"
+    };
+
+    /** Países por ordem de frequência (posição no Zipf). */
+    private static final String[] COUNTRIES = {
+        "United States", "India", "United Kingdom", "Canada", "France", "Japan", "Spain", "South Korea",
+        "Germany", "Mexico", "China", "Australia", "Egypt", "Turkey", "Hong Kong", "Nigeria", "Italy",
+        "Brazil", "Argentina", "Belgium", "Indonesia", "Taiwan", "Philippines", "Thailand", "South Africa",
+        "Colombia", "Netherlands", "Denmark", "Sweden", "Poland", "Portugal", "Ireland", "Israel", "Norway"
+    };
+
+    private static final String[] MOVIE_CATEGORIES = {
+        "International Movies", "Dramas", "Comedies", "Documentaries", "Action & Adventure",
+        "Independent Movies", "Children & Family Movies", "Romantic Movies", "Thrillers", "Music & Musicals",
+        "Horror Movies", "Stand-Up Comedy", "Sci-Fi & Fantasy", "Sports Movies", "Classic Movies",
+        "LGBTQ Movies", "Cult Movies", "Anime Features", "Faith & Spirituality", "Movies"
+    };
+
+    private static final String[] TV_CATEGORIES = {
+        "International TV Shows", "TV Dramas", "TV Comedies", "Crime TV Shows", "Kids' TV", "Docuseries",
+        "Romantic TV Shows", "Reality TV", "British TV Shows", "Anime Series", "Spanish-Language TV Shows",
+        "TV Action & Adventure", "Korean TV Shows", "TV Mysteries", "Science & Nature TV", "TV Sci-Fi & Fantasy",
+        "TV Horror", "Teen TV Shows", "TV Thrillers", "Stand-Up Comedy & Talk Shows", "Classic & Cult TV", "TV Shows"
+    };
+
+    private static final String[] MOVIE_RATINGS = { "TV-MA", "TV-14", "R", "PG-13", "TV-PG", "PG", "TV-Y7", "TV-G", "TV-Y", "NR", "G" };
+    private static final String[] TV_RATINGS = { "TV-MA", "TV-14", "TV-PG", "TV-Y7", "TV-Y", "TV-G", "NR", "R" };
+
+    private static final String[] MONTHS = {
+        "January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December"
+    };
+
+    private static final String[] TITLE_WORDS = {
+        "Love", "Night", "Last", "City", "Secret", "Dark", "Lost", "Home", "Little", "Blood", "King", "Girl",
+        "World", "Life", "Dead", "Wild", "Summer", "Story", "Man", "House", "Heart", "Game", "Road", "Star",
+        "Shadow", "Dream", "Fire", "Ghost", "Queen", "River", "Family", "Moon", "Black", "Golden", "Broken",
+        "Hidden", "Silent", "Red", "Winter", "Island", "Legend", "Kingdom", "War", "Time", "Edge", "Truth"
+    };
+
+    private static final String[] SUBJECTS = {
+        "a young detective", "two estranged sisters", "a retired boxer", "a small-town teacher",
+        "an ambitious chef", "a group of friends", "a grieving father", "a rookie cop", "a teenage hacker",
+        "a struggling musician", "an eccentric inventor", "a royal heir"
+    };
+
+    private static final String[] PLOTS = {
+        "uncovers a conspiracy that reaches the highest levels of power",
+        "must confront the past to save the people they love",
+        "sets out on a journey that changes everything",
+        "gets tangled in a deadly game of cat and mouse",
+        "tries to keep a family business afloat",
+        "discovers a secret hidden for generations"
+    };
+
+    private static final String[] PLACES = {
+        "in Mumbai", "in a quiet coastal village", "in 1980s Seoul", "in the heart of Lagos",
+        "across Europe", "in a near-future Tokyo", "in rural Texas", "behind the walls of an elite school"
+    };
+
+    private final SplittableRandom random;
+    private final int rows;
+    private final Zipf directors;
+    private final Zipf actors;
+    private final Zipf countries = new Zipf(COUNTRIES.length, 1.1);
+    private final Zipf movieCategories = new Zipf(MOVIE_CATEGORIES.length, 1.0);
+    private final Zipf tvCategories = new Zipf(TV_CATEGORIES.length, 1.0);
+    private final Zipf movieRatings = new Zipf(MOVIE_RATINGS.length, 1.2);
+    private final Zipf tvRatings = new Zipf(TV_RATINGS.length, 1.2);
+    private final Zipf titleWords = new Zipf(TITLE_WORDS.length, 0.8);
+
+    /**
+     * Amostragem de uma distribuição de Zipf sobre 0..n-1 (0 é o mais frequente),
+     * por pesquisa binária na função de distribuição acumulada.
+     */
+    private static class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, s);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < n; k++) cdf[k] /= sum;
+        }
+
+        int next(SplittableRandom random) {
+            double u = random.nextDouble();
+            int lo = 0, hi = cdf.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Cria um gerador.
+     * @param rows O número de linhas a gerar.
+     * @param seed A semente (a mesma semente gera o mesmo ficheiro).
+     */
+    public CatalogGenerator(int rows, long seed) {
+        this.rows = rows;
+        this.random = new SplittableRandom(seed);
+        // Um realizador por cada ~2 títulos e um ator por cada ~1,5 títulos, no máximo 2 milhões de nomes.
+        this.directors = new Zipf(Math.max(100, Math.min(rows / 2, 2_000_000)), 1.05);
+        this.actors = new Zipf(Math.max(500, Math.min(rows * 2 / 3, 2_000_000)), 0.9);
+    }
+
+    /**
+     * Escreve o ficheiro CSV.
+     * @param file O caminho do ficheiro.
+     * @throws IOException Em caso de erro de escrita.
+     */
+    public void write(Path file) throws IOException {
+        try (Writer w = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 20)) {
+            w.write(HEADER);
+            w.write('\n');
+            StringBuilder line = new StringBuilder(512);
+            for (int i = 1; i <= rows; i++) {
+                line.setLength(0);
+                appendRow(line, i);
+                line.append('\n');
+                w.append(line);
+            }
+        }
+    }
+
+    /**
+     * Ponto de entrada: CatalogGenerator &lt;linhas&gt; &lt;ficheiro&gt; [semente].
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Erro: <rows> <file> [seed]");
+            return;
+        }
+        int rows = Integer.parseInt(args[0]);
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 42;
+        long start = System.nanoTime();
+        new CatalogGenerator(rows, seed).write(Path.of(args[1]));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(rows + " rows generated (" + millis + " ms, " + Files.size(Path.of(args[1])) + " bytes)");
+    }
+
+    // GERAÇÃO.
+
+    private void appendRow(StringBuilder sb, int id) {
+        boolean movie = random.nextInt(100) < 70;
+
+        sb.append('s').append(id).append(',');
+        sb.append(movie ? "Movie" : "TV Show").append(',');
+        field(sb, title());
+        sb.append(',');
+        field(sb, (random.nextInt(100) < (movie ? 5 : 70)) ? "" : names(directors, movie ? 1 + (random.nextInt(10) == 0 ? 1 : 0) : 1));
+        sb.append(',');
+        field(sb, (random.nextInt(100) < 9) ? "" : names(actors, 1 + random.nextInt(movie ? 10 : 15)));
+        sb.append(',');
+        field(sb, (random.nextInt(100) < 9) ? "" : countries(1 + (random.nextInt(5) == 0 ? 1 + random.nextInt(3) : 0)));
+        sb.append(',');
+
+        // Datas de adição concentradas nos últimos anos (2008-2021); algumas em falta.
+        LocalDate added = LocalDate.of(2021, 9, 25).minusDays((long) (Math.pow(random.nextDouble(), 2.5) * 4900));
+        if (random.nextInt(1000) < 2) sb.append(',');
+        else field(sb, MONTHS[added.getMonthValue() - 1] + " " + added.getDayOfMonth() + ", " + added.getYear()).append(',');
+        int age = (int) (Math.pow(random.nextDouble(), 4) * 70);
+        sb.append(Math.max(1925, added.getYear() - age)).append(',');
+
+        sb.append(movie ? MOVIE_RATINGS[movieRatings.next(random)] : TV_RATINGS[tvRatings.next(random)]).append(',');
+        if (movie) {
+            sb.append(Math.max(3, (int) Math.round(100 + random.nextDouble() * 30 - random.nextDouble() * 30
+                + (random.nextInt(20) == 0 ? random.nextInt(120) - 60 : 0)))).append(" min,");
+        } else {
+            int seasons = 1 + (int) (Math.pow(random.nextDouble(), 4) * 16);
+            sb.append(seasons).append(seasons == 1 ? " Season," : " Seasons,");
+        }
+        field(sb, categories(movie ? movieCategories : tvCategories, movie ? MOVIE_CATEGORIES : TV_CATEGORIES));
+        sb.append(',');
+        field(sb, description());
+    }
+
+    private String title() {
+        int words = 1 + Math.min(4, (int) (Math.pow(random.nextDouble(), 2) * 5));
+        StringBuilder t = new StringBuilder();
+        if (random.nextInt(4) == 0) t.append("The ");
+        for (int k = 0; k < words; k++) {
+            if (k > 0) t.append(' ');
+            t.append(TITLE_WORDS[titleWords.next(random)]);
+        }
+        switch (random.nextInt(20)) {
+            case 0: t.append(' ').append(2 + random.nextInt(3)); break;
+            case 1: t.append(": ").append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]); break;
+            case 2: t.append(" \"").append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]).append('"'); break;
+            default: break;
+        }
+        return t.toString();
+    }
+
+    /** Nomes distintos sorteados pelo Zipf, separados por vírgulas. */
+    private String names(Zipf pool, int count) {
+        StringBuilder sb = new StringBuilder();
+        int[] chosen = new int[count];
+        int n = 0;
+        next:
+        while (n < count) {
+            int k = pool.next(random);
+            for (int j = 0; j < n; j++) {
+                if (chosen[j] == k) continue next;
+            }
+            chosen[n++] = k;
+            if (sb.length() > 0) sb.append(", ");
+            appendName(sb, k);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Nome da posição k: combinações de nome e apelido (baralhadas, para que os
+     * nomes mais frequentes não partilhem o apelido) e, depois de esgotadas, iniciais.
+     */
+    private static void appendName(StringBuilder sb, int k) {
+        int f = FIRST_NAMES.length, l = LAST_NAMES.length;
+        sb.append(FIRST_NAMES[k % f]).append(' ');
+        int rest = k / f / l;
+        if (rest > 0) {
+            sb.append((char) ('A' + rest % 26)).append(". ");
+            if (rest >= 26) sb.append((char) ('A' + (rest / 26) % 26)).append(". ");
+            if (rest >= 26 * 26) sb.append(rest / (26 * 26)).append(' ');
+        }
+        sb.append(LAST_NAMES[(k / f + 17 * k) % l]);
+    }
+
+    private String countries(int count) {
+        StringBuilder sb = new StringBuilder();
+        boolean[] used = new boolean[COUNTRIES.length];
+        for (int n = 0; n < count; ) {
+            int k = countries.next(random);
+            if (used[k]) continue;
+            used[k] = true;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(COUNTRIES[k]);
+            n++;
+        }
+        return sb.toString();
+    }
+
+    private String categories(Zipf zipf, String[] values) {
+        int count = 1 + random.nextInt(3);
+        StringBuilder sb = new StringBuilder();
+        boolean[] used = new boolean[values.length];
+        for (int n = 0; n < count; ) {
+            int k = zipf.next(random);
+            if (used[k]) continue;
+            used[k] = true;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(values[k]);
+            n++;
+        }
+        return sb.toString();
+    }
+
+    private String description() {
+        String subject = SUBJECTS[random.nextInt(SUBJECTS.length)];
+        return Character.toUpperCase(subject.charAt(0)) + subject.substring(1)
+            + " " + PLOTS[random.nextInt(PLOTS.length)] + " " + PLACES[random.nextInt(PLACES.length)]
+            + (random.nextInt(3) == 0 ? ", with help from an unlikely ally." : ".");
+    }
+
+    /** Escreve um campo CSV, entre aspas (com as aspas duplicadas) se tiver vírgulas ou aspas. */
+    private static StringBuilder field(StringBuilder sb, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return sb.append(value);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+}
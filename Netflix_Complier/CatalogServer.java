@@ -0,0 +1,265 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servidor HTTP que responde em JSON às consultas sobre os títulos carregados
+ * (usado com Main --serve &lt;port&gt;).
+ * * Pedidos suportados (apenas GET):
+ * /shows?offset=&amp;limit= (por ordem de título), /shows/{id},
+ * /search/title?q=, /search/cast?q=, /mtime?min=&amp;max=,
+ * /suggest?q=&amp;k= (títulos e nomes começados por q, os mais recentes primeiro),
+ * /related/{id}?k= (os k títulos mais semelhantes, por ordem de semelhança),
+ * /stats[?by=rating|country|year], /ratings e /categories.
+ * As listas aceitam offset e limit (por omissão 0 e 50, no máximo 1000).
+ * * As respostas são escritas à medida que são geradas (chunked) com
+ * ShowJson. Cada pedido corre na sua thread: virtual, se a JVM as suportar,
+ * ou de um conjunto de threads caso contrário. As leituras usam as operações
+ * do NetflixManager que podem ser chamadas por várias threads.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class CatalogServer {
+
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+
+    static {
+        // Sem TCP_NODELAY, a última parte de cada resposta espera pelo ACK atrasado
+        // do cliente (cerca de 40 ms por pedido numa ligação mantida). O HttpServer
+        // do JDK só lê esta propriedade uma vez, ao criar o primeiro servidor.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final NetflixManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Cria o servidor (ainda parado) na porta indicada.
+     * @param manager O gestor com os títulos.
+     * @param port A porta TCP.
+     * @throws IOException Se a porta não puder ser usada.
+     */
+    public CatalogServer(NetflixManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = createExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // PEDIDOS.
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            if (!ex.getRequestMethod().equals("GET")) {
+                error(ex, 405, "Method not allowed");
+                return;
+            }
+            String path = ex.getRequestURI().getPath();
+            Map<String, String> q = parseQuery(ex.getRequestURI().getRawQuery());
+
+            if (path.equals("/shows")) {
+                CatalogSnapshot snap = manager.snapshot();
+                int offset = intParam(q, "offset", 0);
+                respondPage(ex, snap.size(), offset, snap.page(offset, limit(q)));
+            } else if (path.startsWith("/shows/")) {
+                NetflixShow s = manager.findById(path.substring("/shows/".length()));
+                if (s == null) {
+                    error(ex, 404, "Title not found");
+                    return;
+                }
+                Writer w = begin(ex, 200);
+                ShowJson.writeShow(w, s);
+                w.close();
+            } else if (path.equals("/search/title") || path.equals("/search/cast")) {
+                String query = q.get("q");
+                if (query == null || query.isEmpty()) {
+                    error(ex, 400, "Missing parameter q");
+                    return;
+                }
+                NetflixShow[] found = path.endsWith("title") ? manager.findByTitle(query) : manager.findByCast(query);
+                int offset = Math.min(Math.max(intParam(q, "offset", 0), 0), found.length);
+                int to = (int) Math.min(found.length, (long) offset + limit(q));
+                respondPage(ex, found.length, offset, Arrays.copyOfRange(found, offset, to));
+            } else if (path.equals("/mtime")) {
+                int min = intParam(q, "min", 0);
+                int max = intParam(q, "max", Integer.MAX_VALUE);
+                int offset = intParam(q, "offset", 0);
+                // O total e a página vêm da mesma fotografia, mesmo que haja escritas entretanto.
+                CatalogSnapshot snap = manager.snapshot();
+                respondPage(ex, snap.countMovies(min, max), offset, snap.moviesByDuration(min, max, offset, limit(q)));
+            } else if (path.equals("/suggest")) {
+                ArrayList<String> texts = new ArrayList<>();
+                for (SuggestIndex.Suggestion sg : manager.suggest(q.getOrDefault("q", ""), intParam(q, "k", 10))) {
+                    texts.add(sg.text);
+                }
+                respondList(ex, texts);
+            } else if (path.startsWith("/related/")) {
+                SimilarityIndex.Match[] found = manager.findRelated(path.substring("/related/".length()), intParam(q, "k", 10));
+                if (found == null) {
+                    error(ex, 404, "Title not found");
+                    return;
+                }
+                NetflixShow[] related = new NetflixShow[found.length];
+                for (int i = 0; i < found.length; i++) related[i] = found[i].show;
+                respondPage(ex, related.length, 0, related);
+            } else if (path.equals("/stats")) {
+                respondStats(ex, manager.snapshot().getStats(), q.get("by"));
+            } else if (path.equals("/ratings")) {
+                respondList(ex, manager.snapshot().getStats().getRatings());
+            } else if (path.equals("/categories")) {
+                respondList(ex, manager.snapshot().getStats().getCategories());
+            } else {
+                error(ex, 404, "Not found");
+            }
+        } catch (NumberFormatException e) {
+            if (ex.getResponseCode() < 0) error(ex, 400, "Invalid number: " + e.getMessage());
+        } catch (RuntimeException e) {
+            if (ex.getResponseCode() < 0) error(ex, 500, "Internal error");
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void respondPage(HttpExchange ex, int total, int offset, NetflixShow[] page) throws IOException {
+        Writer w = begin(ex, 200);
+        ShowJson.writePage(w, total, Math.max(offset, 0), page);
+        w.close();
+    }
+
+    private void respondList(HttpExchange ex, Iterable<String> values) throws IOException {
+        Writer w = begin(ex, 200);
+        w.write('[');
+        boolean first = true;
+        for (String v : values) {
+            if (!first) w.write(',');
+            ShowJson.writeString(w, v);
+            first = false;
+        }
+        w.write(']');
+        w.close();
+    }
+
+    private void respondStats(HttpExchange ex, CatalogStats stats, String by) throws IOException {
+        Map<?, CatalogStats.Bucket> groups = null;
+        if (by != null) {
+            switch (by.toLowerCase()) {
+                case "rating": groups = stats.getByRating(); break;
+                case "country": groups = stats.getByCountry(); break;
+                case "year": groups = stats.getByYear(); break;
+                default:
+                    error(ex, 400, "by must be rating, country or year");
+                    return;
+            }
+        }
+
+        Writer w = begin(ex, 200);
+        if (groups == null) {
+            w.write("{\"movies\":");
+            writeDurationStats(w, stats.getMovies());
+            w.write(",\"tvShows\":");
+            writeDurationStats(w, stats.getTvShows());
+            w.write('}');
+        } else {
+            w.write('{');
+            boolean first = true;
+            for (Map.Entry<?, CatalogStats.Bucket> e : groups.entrySet()) {
+                if (!first) w.write(',');
+                first = false;
+                CatalogStats.Bucket b = e.getValue();
+                ShowJson.writeString(w, String.valueOf(e.getKey()));
+                w.write(":{\"movies\":" + b.movies + ",\"minutes\":" + b.minutes
+                    + ",\"tvShows\":" + b.tvShows + ",\"seasons\":" + b.seasons + '}');
+            }
+            w.write('}');
+        }
+        w.close();
+    }
+
+    private static void writeDurationStats(Writer w, CatalogStats.DurationStats d) throws IOException {
+        w.write("{\"count\":" + d.getCount() + ",\"min\":" + d.getMin() + ",\"max\":" + d.getMax()
+            + ",\"sum\":" + d.getSum() + ",\"avg\":" + d.getAverage() + '}');
+    }
+
+    // UTILITÁRIOS.
+
+    /**
+     * Envia os cabeçalhos (resposta sem tamanho conhecido, enviada por partes)
+     * e devolve um Writer com buffer sobre o corpo.
+     */
+    private static Writer begin(HttpExchange ex, int status) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, 0);
+        return new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static void error(HttpExchange ex, int status, String message) throws IOException {
+        Writer w = begin(ex, status);
+        w.write("{\"error\":");
+        ShowJson.writeString(w, message);
+        w.write('}');
+        w.close();
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = (eq < 0) ? pair : pair.substring(0, eq);
+            String value = (eq < 0) ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> q, String name, int def) {
+        String v = q.get(name);
+        return (v == null || v.isEmpty()) ? def : Integer.parseInt(v);
+    }
+
+    private static int limit(Map<String, String> q) {
+        return Math.min(Math.max(intParam(q, "limit", DEFAULT_LIMIT), 0), MAX_LIMIT);
+    }
+
+    /**
+     * Uma thread virtual por pedido quando a JVM o permite (Java 21 ou
+     * posterior); caso contrário, um conjunto de threads de tamanho fixo.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 4));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.Iterator;
+
+/**
+ * Fotografia imutável da coleção, publicada pelo NetflixManager depois de
+ * cada lote de alterações (carregamento, remoção, limpeza).
+ * * As threads leitoras obtêm a fotografia atual com uma única leitura volátil
+ * e trabalham sobre ela sem qualquer bloqueio: nunca veem um nó da lista a
+ * meio de ser ligado nem uma alteração feita a meio. Contém a lista por ordem
+ * de título, a tabela de linhas, os índices (show_id, trigramas, durações,
+ * semelhança, bitmaps do FILTER e termos do SUGGEST) e uma cópia dos
+ * agregados, todos só de leitura.
+ * * Publicar uma fotografia não copia a coleção: a lista e os índices
+ * partilham a sua estrutura com os do gestor, que copia apenas as partes
+ * que altera depois (ver SortedList.snapshot e RowTable).
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public final class CatalogSnapshot implements Iterable<NetflixShow> {
+
+    /** Número de lotes de alterações publicados até esta fotografia. */
+    private final long version;
+
+    /** Títulos por ordem de título. */
+    private final SortedList<NetflixShow> shows;
+
+    /** Tabela rowId -> título. */
+    private final RowTable rows;
+
+    /** Índice show_id -> rowId. */
+    private final IdIndex ids;
+
+    /** Índices de trigramas dos títulos (SEARCHT) e do elenco (SEARCHC). */
+    private final TrigramIndex titles;
+    private final TrigramIndex casts;
+
+    /** Índice das durações dos filmes (MTIME). */
+    private final DurationIndex durations;
+
+    /** Índice de semelhança (RELATED). */
+    private final SimilarityIndex similarity;
+
+    /** Bitmaps do FILTER, por rowId. */
+    private final FilterIndex filters;
+
+    /** Termos do SUGGEST (null se o índice ainda não tinha sido construído). */
+    private final SuggestIndex suggestions;
+
+    /** Agregados no momento da fotografia (cópia que nunca é alterada). */
+    private final CatalogStats stats;
+
+    /** rowIds pela ordem da lista, construídos no primeiro FILTER com muitos resultados. */
+    private volatile int[] order;
+
+    /**
+     * Cria uma fotografia a partir das fotografias (só de leitura) da lista e
+     * dos índices, todas tiradas no mesmo momento.
+     */
+    CatalogSnapshot(long version, SortedList<NetflixShow> shows, RowTable rows, IdIndex ids,
+                    TrigramIndex titles, TrigramIndex casts, DurationIndex durations,
+                    SimilarityIndex similarity, FilterIndex filters, SuggestIndex suggestions,
+                    CatalogStats stats) {
+        this.version = version;
+        this.shows = shows;
+        this.rows = rows;
+        this.ids = ids;
+        this.titles = titles;
+        this.casts = casts;
+        this.durations = durations;
+        this.similarity = similarity;
+        this.filters = filters;
+        this.suggestions = suggestions;
+        this.stats = stats;
+    }
+
+    public long getVersion() { return version; }
+    public int size() { return shows.size(); }
+    public boolean isEmpty() { return shows.isEmpty(); }
+    public CatalogStats getStats() { return stats; }
+
+    /**
+     * Devolve o título na posição indicada (por ordem de título), em O(log n).
+     * @param index A posição.
+     * @return O título.
+     */
+    public NetflixShow get(int index) {
+        NetflixShow show = shows.get(index);
+        if (show == null) throw new IndexOutOfBoundsException(index);
+        return show;
+    }
+
+    /**
+     * Devolve uma página dos títulos, por ordem de título.
+     * @param offset Número de títulos a saltar.
+     * @param limit Número máximo de títulos a devolver.
+     * @return Os títulos da página.
+     */
+    public NetflixShow[] page(int offset, int limit) {
+        int from = Math.min(Math.max(offset, 0), shows.size());
+        int to = (int) Math.min(shows.size(), (long) from + Math.max(limit, 0));
+        NetflixShow[] page = new NetflixShow[to - from];
+        Iterator<NetflixShow> it = shows.iterator(from);
+        for (int i = 0; i < page.length; i++) page[i] = it.next();
+        return page;
+    }
+
+    /**
+     * Procura um título pelo id.
+     * @param id O show_id (sem distinção de maiúsculas).
+     * @return O título ou null se não existir.
+     */
+    public NetflixShow findById(String id) {
+        int rowId = ids.get(id);
+        return (rowId < 0) ? null : rows.get(rowId);
+    }
+
+    /**
+     * Procura os títulos cujo título contém o texto (sem distinção de maiúsculas).
+     * @param query O texto a procurar.
+     * @return Os títulos, por data de adição (sem data primeiro) e, na mesma data, por título e show_id.
+     */
+    public NetflixShow[] searchTitle(String query) {
+        return sortByDate(titles.search(query));
+    }
+
+    /**
+     * Procura os títulos cujo elenco contém o texto (sem distinção de maiúsculas).
+     * @param query O texto a procurar.
+     * @return Os títulos, pela mesma ordem de searchTitle.
+     */
+    public NetflixShow[] searchCast(String query) {
+        return sortByDate(casts.search(query));
+    }
+
+    /**
+     * Devolve uma página dos filmes com duração entre min e max, por ordem
+     * decrescente de duração (ver DurationIndex).
+     * @param offset Número de filmes a saltar.
+     * @param limit Número máximo de filmes a devolver.
+     * @return Os filmes da página.
+     */
+    public NetflixShow[] moviesByDuration(int min, int max, int offset, int limit) {
+        return durations.range(min, max, offset, limit);
+    }
+
+    /**
+     * Conta os filmes com duração entre min e max.
+     * @return O número de filmes.
+     */
+    public int countMovies(int min, int max) {
+        return durations.count(min, max);
+    }
+
+    /**
+     * Procura os títulos mais semelhantes ao indicado (ver SimilarityIndex).
+     * @param id O show_id do título de referência.
+     * @param k O número máximo de títulos.
+     * @return Os títulos, do mais para o menos semelhante, ou null se o título não existir.
+     */
+    public SimilarityIndex.Match[] related(String id, int k) {
+        NetflixShow show = findById(id);
+        return (show == null) ? null : similarity.related(show, k);
+    }
+
+    /**
+     * Calcula os k títulos mais semelhantes de todos os títulos, com várias threads.
+     * @return Os vizinhos de cada rowId (null nas posições livres).
+     * @throws Exception Se alguma thread falhar.
+     */
+    public SimilarityIndex.Match[][] relatedAll(int k, int threads) throws Exception {
+        return similarity.relatedAll(k, threads);
+    }
+
+    /**
+     * Converte rowIds desta fotografia (por exemplo, de um resultado guardado
+     * na cache com esta versão) nos títulos.
+     * @param rowIds Os rowIds.
+     * @return Os títulos, pela mesma ordem.
+     */
+    public NetflixShow[] resolve(int[] rowIds) {
+        NetflixShow[] found = new NetflixShow[rowIds.length];
+        for (int i = 0; i < rowIds.length; i++) found[i] = rows.get(rowIds[i]);
+        return found;
+    }
+
+    /**
+     * Devolve os títulos que cumprem todos os critérios do filtro, usando os
+     * bitmaps desta fotografia (ver FilterIndex). Os bitmaps estão por rowId:
+     * se forem poucos, os títulos encontrados são ordenados; senão, percorrem-se
+     * os rowIds pela ordem da lista (guardados na fotografia no primeiro pedido).
+     * @param filter O filtro.
+     * @return Os títulos encontrados, pela ordem da lista (título e, nos
+     *         títulos iguais, o mais recente primeiro).
+     */
+    public NetflixShow[] filter(ShowFilter filter) {
+        Metrics.filterQuery();
+        CompressedBitmap rowIds = filters.evaluate(filter);
+        int count = rowIds.cardinality();
+        NetflixShow[] found = new NetflixShow[count];
+        if ((long) count * (32 - Integer.numberOfLeadingZeros(count)) < shows.size()) {
+            int[] n = new int[1];
+            rowIds.forEach(id -> found[n[0]++] = rows.get(id));
+            Sorter.sort(found, NetflixShow.LIST_ORDER);
+        } else {
+            // Muitos: marcar os rowIds num array de bits e percorrê-los pela ordem da lista.
+            long[] marks = new long[(rows.capacity() + 63) >>> 6];
+            rowIds.forEach(id -> marks[id >>> 6] |= 1L << id);
+            int[] ids = order();
+            for (int i = 0, n = 0; n < count; i++) {
+                int id = ids[i];
+                if ((marks[id >>> 6] & (1L << id)) != 0) found[n++] = rows.get(id);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Devolve os títulos e nomes (elenco e realizadores) que começam pelo
+     * prefixo, do mais recente para o mais antigo (ver SuggestIndex).
+     * @param prefix O prefixo (sem distinção de maiúsculas).
+     * @param k O número máximo de sugestões.
+     * @return As sugestões.
+     * @throws IllegalStateException Se a fotografia foi publicada antes do
+     *         primeiro SUGGEST (ver hasSuggestions).
+     */
+    public SuggestIndex.Suggestion[] suggest(String prefix, int k) {
+        if (suggestions == null) throw new IllegalStateException("suggestions not built");
+        return suggestions.suggest(prefix, k);
+    }
+
+    /**
+     * Indica se a fotografia tem os termos do SUGGEST (ver NetflixManager.suggest).
+     */
+    boolean hasSuggestions() {
+        return suggestions != null;
+    }
+
+    @Override
+    public Iterator<NetflixShow> iterator() {
+        return shows.iterator();
+    }
+
+    // ÍNDICES (lidos pelo SnapshotFile ao gravar a fotografia).
+
+    RowTable rows() { return rows; }
+    IdIndex ids() { return ids; }
+    TrigramIndex titles() { return titles; }
+    TrigramIndex casts() { return casts; }
+    SimilarityIndex similarity() { return similarity; }
+
+    // UTILITÁRIOS.
+
+    private int[] order() {
+        int[] ids = order;
+        if (ids == null) {
+            ids = new int[shows.size()];
+            int n = 0;
+            for (NetflixShow s : shows) ids[n++] = s.getRowId();
+            order = ids;
+        }
+        return ids;
+    }
+
+    private static NetflixShow[] sortByDate(NetflixShow[] arr) {
+        Sorter.sort(arr, NetflixShow.TITLE_ORDER); // Título e show_id antes da ordenação (estável) por data.
+        // Ordenação estável crescente pela data de adição (títulos sem data ficam primeiro).
+        Sorter.sortByKey(arr, NetflixShow::getDateKey);
+        return arr;
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Agregados da coleção mantidos de forma incremental, usados pelos comandos
+ * STATS, RATINGS e CATEGORIES.
+ * * Cada carregamento ou remoção atualiza apenas os contadores do título em
+ * causa: contagem, soma e multiconjunto das durações por tipo (para que o
+ * mínimo e o máximo continuem corretos depois de apagar), conjuntos com
+ * contagem de referências dos ratings e das categorias, e as divisões por
+ * rating, país e ano de lançamento. As consultas custam O(1) ou O(k), em que
+ * k é o número de valores distintos, independentemente do tamanho da coleção.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class CatalogStats implements ShowIndex {
+
+    /** Estatísticas das durações dos filmes (minutos) e das séries (temporadas). */
+    private DurationStats movies;
+    private DurationStats tvShows;
+
+    /** Ratings e categorias distintos, com o número de títulos que os usam. */
+    private TreeMap<String, Integer> ratings;
+    private TreeMap<String, Integer> categories;
+
+    /** Divisões da coleção por rating, país e ano de lançamento. */
+    private TreeMap<String, Bucket> byRating;
+    private TreeMap<String, Bucket> byCountry;
+    private TreeMap<Integer, Bucket> byYear;
+
+    /**
+     * Construtor padrão que inicializa agregados vazios.
+     */
+    public CatalogStats() {
+        clear();
+    }
+
+    @Override
+    public void add(NetflixShow show) {
+        update(show, 1);
+    }
+
+    @Override
+    public void remove(NetflixShow show) {
+        update(show, -1);
+    }
+
+    @Override
+    public void clear() {
+        movies = new DurationStats();
+        tvShows = new DurationStats();
+        ratings = new TreeMap<>();
+        categories = new TreeMap<>();
+        byRating = new TreeMap<>();
+        byCountry = new TreeMap<>();
+        byYear = new TreeMap<>();
+    }
+
+    // CONSULTAS.
+
+    public DurationStats getMovies() { return movies; }
+    public DurationStats getTvShows() { return tvShows; }
+
+    /**
+     * Devolve os ratings distintos (não vazios), por ordem alfabética.
+     */
+    public Iterable<String> getRatings() { return Collections.unmodifiableSet(ratings.keySet()); }
+
+    /**
+     * Devolve as categorias distintas, por ordem alfabética.
+     */
+    public Iterable<String> getCategories() { return Collections.unmodifiableSet(categories.keySet()); }
+
+    public Map<String, Bucket> getByRating() { return Collections.unmodifiableMap(byRating); }
+    public Map<String, Bucket> getByCountry() { return Collections.unmodifiableMap(byCountry); }
+    public Map<Integer, Bucket> getByYear() { return Collections.unmodifiableMap(byYear); }
+
+    /**
+     * Cria uma cópia independente dos agregados, em O(k) no número de valores
+     * distintos, para ser lida por outras threads enquanto este objeto muda.
+     * @return A cópia.
+     */
+    public CatalogStats copy() {
+        CatalogStats c = new CatalogStats();
+        c.movies = movies.copy();
+        c.tvShows = tvShows.copy();
+        c.ratings.putAll(ratings);
+        c.categories.putAll(categories);
+        copyBuckets(byRating, c.byRating);
+        copyBuckets(byCountry, c.byCountry);
+        copyBuckets(byYear, c.byYear);
+        return c;
+    }
+
+    // ATUALIZAÇÃO.
+
+    /**
+     * Soma (delta = 1) ou subtrai (delta = -1) o título a todos os agregados.
+     */
+    private void update(NetflixShow show, int delta) {
+        boolean movie = "Movie".equalsIgnoreCase(show.getType());
+        int d = show.getDuration();
+        (movie ? movies : tvShows).update(d, delta);
+
+        String rating = show.getRating();
+        if (rating != null && !rating.isBlank()) {
+            count(ratings, rating, delta);
+            bucket(byRating, rating, movie, d, delta);
+        }
+
+        String listedIn = show.getListedIn();
+        if (listedIn != null) {
+            for (String p : listedIn.split(",")) {
+                String cat = p.trim();
+                if (!cat.isEmpty()) count(categories, cat, delta);
+            }
+        }
+
+        String country = show.getCountry();
+        if (country != null) {
+            for (String p : country.split(",")) {
+                String c = p.trim();
+                if (!c.isEmpty()) bucket(byCountry, c, movie, d, delta);
+            }
+        }
+
+        bucket(byYear, show.getReleaseYear(), movie, d, delta);
+    }
+
+    private static <K> void count(TreeMap<K, Integer> set, K key, int delta) {
+        int n = set.getOrDefault(key, 0) + delta;
+        if (n > 0) set.put(key, n);
+        else set.remove(key);
+    }
+
+    private static <K> void copyBuckets(TreeMap<K, Bucket> from, TreeMap<K, Bucket> to) {
+        for (Map.Entry<K, Bucket> e : from.entrySet()) to.put(e.getKey(), e.getValue().copy());
+    }
+
+    private static <K> void bucket(TreeMap<K, Bucket> groups, K key, boolean movie, int duration, int delta) {
+        Bucket b = groups.computeIfAbsent(key, k -> new Bucket());
+        if (movie) {
+            b.movies += delta;
+            b.minutes += (long) delta * duration;
+        } else {
+            b.tvShows += delta;
+            b.seasons += (long) delta * duration;
+        }
+        if (b.movies == 0 && b.tvShows == 0) groups.remove(key);
+    }
+
+    /**
+     * Contagem, soma, mínimo e máximo das durações de um tipo de título.
+     * O mínimo e o máximo vêm de um multiconjunto (duração -> ocorrências).
+     */
+    public static class DurationStats {
+        private int count;
+        private long sum;
+        private final TreeMap<Integer, Integer> durations = new TreeMap<>();
+
+        private void update(int duration, int delta) {
+            count += delta;
+            sum += (long) delta * duration;
+            count(durations, duration, delta);
+        }
+
+        private DurationStats copy() {
+            DurationStats c = new DurationStats();
+            c.count = count;
+            c.sum = sum;
+            c.durations.putAll(durations);
+            return c;
+        }
+
+        public int getCount() { return count; }
+        public long getSum() { return sum; }
+        public int getMin() { return durations.isEmpty() ? 0 : durations.firstKey(); }
+        public int getMax() { return durations.isEmpty() ? 0 : durations.lastKey(); }
+        public double getAverage() { return (count == 0) ? 0 : (double) sum / count; }
+    }
+
+    /**
+     * Contadores de um grupo das divisões (por rating, país ou ano).
+     */
+    public static class Bucket {
+        public int movies;
+        public int tvShows;
+        /** Total de minutos dos filmes e de temporadas das séries do grupo. */
+        public long minutes;
+        public long seasons;
+
+        private Bucket copy() {
+            Bucket c = new Bucket();
+            c.movies = movies;
+            c.tvShows = tvShows;
+            c.minutes = minutes;
+            c.seasons = seasons;
+            return c;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Conjunto de inteiros não negativos comprimido à maneira dos Roaring bitmaps.
+ * * Os valores são agrupados pelos 16 bits mais altos; cada grupo (contentor)
+ * guarda os 16 bits mais baixos num array ordenado de char, enquanto tiver até
+ * ARRAY_MAX valores, ou num bitmap de 65536 bits (1024 longs) quando é mais
+ * denso. As operações and, or e andNot trabalham contentor a contentor e
+ * escolhem a representação mais pequena para cada resultado.
+ * * Os valores são acrescentados com add por ordem crescente durante a
+ * construção; depois disso o conjunto não volta a ser alterado (and, or e
+ * andNot devolvem conjuntos novos, que podem partilhar contentores com os
+ * originais). Um índice mantém-se atualizado com b.andNot(retirados).or(novos),
+ * que só copia os contentores onde houve alterações.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public final class CompressedBitmap {
+
+    /** Número máximo de valores num contentor do tipo array. */
+    private static final int ARRAY_MAX = 4096;
+
+    /** Número de longs de um contentor do tipo bitmap (65536 bits). */
+    private static final int BITMAP_WORDS = 1024;
+
+    /** Conjunto vazio. */
+    public static final CompressedBitmap EMPTY = new CompressedBitmap(0);
+
+    /** 16 bits mais altos de cada contentor, por ordem crescente. */
+    private char[] keys;
+
+    /** Contentores: char[] (valores ordenados) ou long[] (bitmap). */
+    private Object[] containers;
+
+    /** Número de valores de cada contentor. */
+    private int[] cards;
+
+    /** Número de contentores. */
+    private int count;
+
+    /** Número total de valores. */
+    private int cardinality;
+
+    /**
+     * Cria um conjunto vazio, pronto a receber valores com add.
+     */
+    public CompressedBitmap() {
+        this(4);
+    }
+
+    private CompressedBitmap(int capacity) {
+        this.keys = new char[capacity];
+        this.containers = new Object[capacity];
+        this.cards = new int[capacity];
+    }
+
+    /**
+     * Acrescenta um valor maior do que todos os anteriores (só durante a construção).
+     * @param value O valor (não negativo).
+     */
+    public void add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        if (count == 0 || keys[count - 1] != key) {
+            append(key, new char[4], 0);
+        }
+        int c = count - 1;
+        Object container = containers[c];
+        if (container instanceof long[]) {
+            long[] bits = (long[]) container;
+            bits[low >>> 6] |= 1L << low;
+        } else {
+            char[] values = (char[]) container;
+            int card = cards[c];
+            if (card == ARRAY_MAX) {
+                containers[c] = toBitmap(values, card);
+                cards[c] = card;
+                add(value);
+                return;
+            }
+            if (card == values.length) containers[c] = values = Arrays.copyOf(values, Math.min(card * 2, ARRAY_MAX));
+            values[card] = low;
+        }
+        cards[c]++;
+        cardinality++;
+    }
+
+    /**
+     * Indica se o valor pertence ao conjunto.
+     * @param value O valor.
+     * @return true se pertencer.
+     */
+    public boolean contains(int value) {
+        int c = Arrays.binarySearch(keys, 0, count, (char) (value >>> 16));
+        if (c < 0) return false;
+        char low = (char) value;
+        Object container = containers[c];
+        if (container instanceof long[]) return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        return Arrays.binarySearch((char[]) container, 0, cards[c], low) >= 0;
+    }
+
+    /**
+     * Devolve o número de valores do conjunto.
+     * @return A cardinalidade.
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Devolve a interseção com outro conjunto.
+     * @param other O outro conjunto.
+     * @return Um novo conjunto com os valores comuns.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(Math.max(1, Math.min(count, other.count)));
+        int i = 0, j = 0;
+        while (i < count && j < other.count) {
+            if (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else {
+                result.andContainers(keys[i], containers[i], cards[i], other.containers[j], other.cards[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Devolve a união com outro conjunto.
+     * @param other O outro conjunto.
+     * @return Um novo conjunto com os valores de ambos.
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(Math.max(1, count + other.count));
+        int i = 0, j = 0;
+        while (i < count || j < other.count) {
+            if (j == other.count || (i < count && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i], cards[i]);
+                i++;
+            } else if (i == count || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j], other.cards[j]);
+                j++;
+            } else {
+                result.orContainers(keys[i], containers[i], cards[i], other.containers[j], other.cards[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Devolve a diferença com outro conjunto.
+     * @param other Os valores a retirar.
+     * @return Um novo conjunto com os valores deste que não estão no outro.
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        if (other.isEmpty()) return this;
+        CompressedBitmap result = new CompressedBitmap(Math.max(1, count));
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            while (j < other.count && other.keys[j] < keys[i]) j++;
+            if (j == other.count || other.keys[j] != keys[i]) result.append(keys[i], containers[i], cards[i]);
+            else result.andNotContainers(keys[i], containers[i], cards[i], other.containers[j], other.cards[j]);
+        }
+        return result;
+    }
+
+    /**
+     * Percorre os valores por ordem crescente.
+     * @param action A ação a executar para cada valor.
+     */
+    public void forEach(IntConsumer action) {
+        for (int c = 0; c < count; c++) {
+            int high = keys[c] << 16;
+            Object container = containers[c];
+            if (container instanceof long[]) {
+                long[] bits = (long[]) container;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) container;
+                for (int k = 0; k < cards[c]; k++) action.accept(high | values[k]);
+            }
+        }
+    }
+
+    /**
+     * Devolve os valores por ordem crescente.
+     * @return Os valores.
+     */
+    public int[] toArray() {
+        int[] out = new int[cardinality];
+        int[] n = new int[1];
+        forEach(v -> out[n[0]++] = v);
+        return out;
+    }
+
+    // CONTENTORES.
+
+    private void append(char key, Object container, int card) {
+        if (count == keys.length) {
+            int capacity = count * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cards = Arrays.copyOf(cards, capacity);
+        }
+        keys[count] = key;
+        containers[count] = container;
+        cards[count] = card;
+        count++;
+        cardinality += card;
+    }
+
+    private void andContainers(char key, Object a, int cardA, Object b, int cardB) {
+        if (a instanceof long[] && b instanceof long[]) {
+            long[] x = (long[]) a, y = (long[]) b;
+            long[] bits = new long[BITMAP_WORDS];
+            int card = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bits[w] = x[w] & y[w];
+                card += Long.bitCount(bits[w]);
+            }
+            if (card > ARRAY_MAX) append(key, bits, card);
+            else if (card > 0) append(key, toArray(bits, card), card);
+            return;
+        }
+        if (a instanceof long[]) {
+            // Array e bitmap: filtrar o array pelos bits do bitmap.
+            Object t = a; a = b; b = t;
+            int tc = cardA; cardA = cardB; cardB = tc;
+        }
+        char[] values = (char[]) a;
+        char[] out = new char[Math.min(cardA, (b instanceof long[]) ? cardA : cardB)];
+        int card = 0;
+        if (b instanceof long[]) {
+            long[] bits = (long[]) b;
+            for (int k = 0; k < cardA; k++) {
+                char v = values[k];
+                if ((bits[v >>> 6] & (1L << v)) != 0) out[card++] = v;
+            }
+        } else {
+            char[] other = (char[]) b;
+            int i = 0, j = 0;
+            while (i < cardA && j < cardB) {
+                if (values[i] < other[j]) i++;
+                else if (values[i] > other[j]) j++;
+                else { out[card++] = values[i]; i++; j++; }
+            }
+        }
+        if (card > 0) append(key, out, card);
+    }
+
+    private void andNotContainers(char key, Object a, int cardA, Object b, int cardB) {
+        if (a instanceof long[]) {
+            long[] bits = ((long[]) a).clone();
+            if (b instanceof long[]) {
+                long[] y = (long[]) b;
+                for (int w = 0; w < BITMAP_WORDS; w++) bits[w] &= ~y[w];
+            } else {
+                char[] y = (char[]) b;
+                for (int k = 0; k < cardB; k++) bits[y[k] >>> 6] &= ~(1L << y[k]);
+            }
+            int card = 0;
+            for (long word : bits) card += Long.bitCount(word);
+            if (card > ARRAY_MAX) append(key, bits, card);
+            else if (card > 0) append(key, toArray(bits, card), card);
+            return;
+        }
+        char[] values = (char[]) a;
+        char[] out = new char[cardA];
+        int card = 0;
+        if (b instanceof long[]) {
+            long[] bits = (long[]) b;
+            for (int k = 0; k < cardA; k++) {
+                char v = values[k];
+                if ((bits[v >>> 6] & (1L << v)) == 0) out[card++] = v;
+            }
+        } else {
+            char[] other = (char[]) b;
+            int j = 0;
+            for (int i = 0; i < cardA; i++) {
+                while (j < cardB && other[j] < values[i]) j++;
+                if (j == cardB || other[j] != values[i]) out[card++] = values[i];
+            }
+        }
+        if (card > 0) append(key, (card == cardA) ? values : Arrays.copyOf(out, card), card);
+    }
+
+    private void orContainers(char key, Object a, int cardA, Object b, int cardB) {
+        if (a instanceof char[] && b instanceof char[] && cardA + cardB <= ARRAY_MAX) {
+            char[] x = (char[]) a, y = (char[]) b;
+            char[] out = new char[cardA + cardB];
+            int i = 0, j = 0, card = 0;
+            while (i < cardA || j < cardB) {
+                if (j == cardB || (i < cardA && x[i] < y[j])) out[card++] = x[i++];
+                else if (i == cardA || x[i] > y[j]) out[card++] = y[j++];
+                else { out[card++] = x[i++]; j++; }
+            }
+            append(key, out, card);
+            return;
+        }
+        long[] bits = (a instanceof long[]) ? ((long[]) a).clone() : toBitmap((char[]) a, cardA);
+        if (b instanceof long[]) {
+            long[] y = (long[]) b;
+            for (int w = 0; w < BITMAP_WORDS; w++) bits[w] |= y[w];
+        } else {
+            char[] y = (char[]) b;
+            for (int k = 0; k < cardB; k++) bits[y[k] >>> 6] |= 1L << y[k];
+        }
+        int card = 0;
+        for (long word : bits) card += Long.bitCount(word);
+        if (card > ARRAY_MAX) append(key, bits, card);
+        else append(key, toArray(bits, card), card);
+    }
+
+    private static long[] toBitmap(char[] values, int card) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int k = 0; k < card; k++) bits[values[k] >>> 6] |= 1L << values[k];
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int card) {
+        char[] values = new char[card];
+        int n = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converte os registos de um ficheiro CSV de títulos em objetos NetflixShow.
+ * * O ficheiro pode ser lido de uma só vez ou dividido em intervalos que
+ * começam em inícios de registo, lidos em paralelo. Cada intervalo produz um
+ * bloco já ordenado (SortedList.sortRun) pronto a intercalar na lista
+ * principal com SortedList.addSortedRuns, e conta as linhas rejeitadas.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class CsvLoader {
+
+    /** Número de intervalos criados por thread, para equilibrar a carga. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Motivos de rejeição de uma linha do CSV.
+     */
+    public enum Reject {
+        MISSING_FIELDS("missing fields"),
+        INVALID_YEAR("invalid release year"),
+        TOO_LARGE("too large for a disk page"),
+        DUPLICATE_ID("duplicate show_id");
+
+        /** Descrição usada nas mensagens. */
+        public final String label;
+
+        Reject(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Resultado da leitura de um intervalo do ficheiro.
+     */
+    public static class Chunk {
+        /** Títulos lidos, ordenados com SortedList.sortRun. */
+        public NetflixShow[] shows;
+        /** Registos rejeitados (campos em falta ou valores inválidos). */
+        public int rejected;
+        /** Registos rejeitados por motivo (índice Reject.ordinal()). */
+        public int[] rejectedBy = new int[Reject.values().length];
+        /** Bytes lidos do ficheiro. */
+        public long bytes;
+        /** Comparações feitas a ordenar o bloco. */
+        public long comparisons;
+    }
+
+    /**
+     * Lê o ficheiro e devolve os blocos pela ordem em que aparecem no ficheiro.
+     * @param filename O caminho do ficheiro (com cabeçalho na primeira linha).
+     * @param threads Número de threads; 1 lê tudo sequencialmente num só bloco.
+     * @return Os blocos lidos.
+     * @throws Exception Se o ficheiro não puder ser lido.
+     */
+    public Chunk[] load(String filename, int threads) throws Exception {
+        if (threads <= 1) return new Chunk[] { readChunk(filename, 0, -1) };
+
+        long[] bounds = CsvReader.findRecordBoundaries(filename, threads * CHUNKS_PER_THREAD);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<Chunk>> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long from = bounds[i], to = bounds[i + 1];
+                futures.add(pool.submit(() -> readChunk(filename, from, to)));
+            }
+            Chunk[] chunks = new Chunk[futures.size()];
+            for (int i = 0; i < chunks.length; i++) chunks[i] = futures.get(i).get();
+            return chunks;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Lê os registos do intervalo [from, to); o intervalo que começa em 0 ignora o cabeçalho.
+     * Um show_id repetido no intervalo é rejeitado, ficando o primeiro registo.
+     */
+    private Chunk readChunk(String filename, long from, long to) throws IOException {
+        Chunk chunk = new Chunk();
+        ArrayList<NetflixShow> shows = new ArrayList<>();
+        HashSet<String> ids = new HashSet<>();
+        try (CsvReader csv = new CsvReader(filename, from, to)) {
+            if (from == 0) csv.next(); // Cabeçalho.
+            while (csv.next()) {
+                NetflixShow show = toShow(csv, chunk.rejectedBy);
+                if (show != null && !ids.add(IdIndex.key(show.getShowId()))) {
+                    chunk.rejectedBy[Reject.DUPLICATE_ID.ordinal()]++;
+                    show = null;
+                }
+                if (show != null) shows.add(show);
+                else chunk.rejected++;
+            }
+            chunk.bytes = csv.bytesRead();
+        }
+        Metrics.rows(shows.size(), chunk.rejectedBy, chunk.bytes);
+        chunk.shows = shows.toArray(new NetflixShow[0]);
+        chunk.comparisons = SortedList.sortRun(chunk.shows);
+        return chunk;
+    }
+
+    /**
+     * Converte o registo atual do leitor num título.
+     * @param csv O leitor, posicionado num registo.
+     * @param rejectedBy Contadores por motivo, incrementados se o registo for rejeitado.
+     * @return O título ou null se o registo tiver campos em falta ou valores inválidos.
+     */
+    static NetflixShow toShow(CsvReader csv, int[] rejectedBy) {
+        if (csv.fieldCount() < 12) {
+            rejectedBy[Reject.MISSING_FIELDS.ordinal()]++;
+            return null;
+        }
+        int year;
+        try {
+            year = csv.intField(7);
+        } catch (NumberFormatException e) {
+            rejectedBy[Reject.INVALID_YEAR.ordinal()]++;
+            return null;
+        }
+        return new NetflixShow(
+            csv.field(0), csv.field(1), csv.field(2), csv.field(3), csv.field(4), csv.field(5),
+            csv.field(6), year, csv.field(8), csv.field(9), csv.field(10), csv.field(11)
+        );
+    }
+}
@@ -0,0 +1,341 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Leitor de ficheiros CSV (RFC 4180) que percorre os bytes do ficheiro com uma
+ * máquina de estados, sem expressões regulares nem arrays de strings intermédios.
+ * * O ficheiro é lido por um FileChannel para um buffer grande. Para cada registo
+ * apenas são guardados os limites (offsets) de cada campo; as strings só são
+ * criadas quando o campo é pedido com field, e os inteiros são lidos
+ * diretamente dos bytes com intField.
+ * * Suporta campos entre aspas com vírgulas, mudanças de linha e aspas escapadas
+ * (""), bem como finais de linha \n ou \r\n.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class CsvReader implements AutoCloseable {
+
+    /** Tamanho inicial do buffer de leitura. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Número máximo de campos guardados por registo (os restantes são ignorados). */
+    private static final int MAX_FIELDS = 64;
+
+    private final FileChannel channel;
+
+    /** Bytes lidos do ficheiro; os válidos estão em [0, limit). */
+    private byte[] buf;
+    private int limit;
+
+    /** Posição de leitura dentro do buffer. */
+    private int pos;
+
+    /** Indica se o canal já chegou ao fim do ficheiro. */
+    private boolean eof;
+
+    /** Limites [start, end) de cada campo do registo atual. */
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+
+    /** Indica, para cada campo, se contém aspas escapadas a remover. */
+    private final boolean[] escaped = new boolean[MAX_FIELDS];
+
+    /** Número de campos do registo atual. */
+    private int fieldCount;
+
+    /** Bytes que ainda podem ser lidos do canal (para leituras de um intervalo). */
+    private long remaining;
+
+    /** Total de bytes lidos do ficheiro. */
+    private long bytesRead;
+
+    /**
+     * Abre o ficheiro para leitura.
+     * @param filename O caminho do ficheiro.
+     * @throws IOException Se o ficheiro não puder ser aberto.
+     */
+    public CsvReader(String filename) throws IOException {
+        this(filename, 0, -1);
+    }
+
+    /**
+     * Abre o ficheiro para ler apenas os bytes [from, to). Os limites devem
+     * coincidir com inícios de registo (ver findRecordBoundaries).
+     * @param filename O caminho do ficheiro.
+     * @param from O primeiro byte a ler.
+     * @param to O limite (exclusivo) ou -1 para ler até ao fim.
+     * @throws IOException Se o ficheiro não puder ser aberto.
+     */
+    public CsvReader(String filename, long from, long to) throws IOException {
+        this.channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        this.buf = new byte[BUFFER_SIZE];
+        this.remaining = (to < 0) ? Long.MAX_VALUE : to - from;
+        channel.position(from);
+        fill();
+        // Ignorar a marca BOM de UTF-8, se existir.
+        if (from == 0 && limit >= 3 && (buf[0] & 0xFF) == 0xEF && (buf[1] & 0xFF) == 0xBB && (buf[2] & 0xFF) == 0xBF) pos = 3;
+    }
+
+    /**
+     * Divide o ficheiro em cerca de parts intervalos que começam sempre no
+     * início de um registo. Faz uma única leitura sequencial que apenas segue
+     * a paridade das aspas, para não cortar campos com mudanças de linha.
+     * @param filename O caminho do ficheiro.
+     * @param parts O número de intervalos pretendido.
+     * @return Os limites: o intervalo i é [bounds[i], bounds[i + 1]).
+     * @throws IOException Em caso de erro de leitura.
+     */
+    public static long[] findRecordBoundaries(String filename, int parts) throws IOException {
+        try (FileChannel ch = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long size = ch.size();
+            long[] bounds = new long[parts + 1];
+            int count = 1;
+            long target = size / parts;
+            boolean inQuotes = false;
+
+            ByteBuffer bb = ByteBuffer.allocate(BUFFER_SIZE);
+            long offset = 0;
+            while (count < parts) {
+                bb.clear();
+                int n = ch.read(bb);
+                if (n < 0) break;
+                byte[] chunk = bb.array();
+                for (int i = 0; i < n; i++) {
+                    byte b = chunk[i];
+                    if (b == '"') inQuotes = !inQuotes;
+                    else if (b == '\n' && !inQuotes && offset + i + 1 >= target && count < parts) {
+                        bounds[count++] = offset + i + 1;
+                        target = offset + i + 1 + size / parts;
+                    }
+                }
+                offset += n;
+            }
+            bounds[count] = size;
+            return Arrays.copyOf(bounds, count + 1);
+        }
+    }
+
+    /**
+     * Procura o fim do último registo completo (terminado por uma mudança de
+     * linha fora de aspas) a partir de from. Usado para ler um ficheiro que
+     * ainda está a ser escrito sem apanhar um registo a meio.
+     * @param filename O caminho do ficheiro.
+     * @param from Um início de registo.
+     * @return A posição a seguir ao último registo completo, ou from se não houver nenhum.
+     * @throws IOException Em caso de erro de leitura.
+     */
+    public static long findLastRecordEnd(String filename, long from) throws IOException {
+        try (FileChannel ch = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long end = from;
+            long offset = from;
+            boolean inQuotes = false;
+            ch.position(from);
+
+            ByteBuffer bb = ByteBuffer.allocate(BUFFER_SIZE);
+            while (true) {
+                bb.clear();
+                int n = ch.read(bb);
+                if (n < 0) break;
+                byte[] chunk = bb.array();
+                for (int i = 0; i < n; i++) {
+                    byte b = chunk[i];
+                    if (b == '"') inQuotes = !inQuotes;
+                    else if (b == '\n' && !inQuotes) end = offset + i + 1;
+                }
+                offset += n;
+            }
+            return end;
+        }
+    }
+
+    /**
+     * Avança para o próximo registo não vazio.
+     * @return true se foi lido um registo, false no fim do ficheiro.
+     * @throws IOException Em caso de erro de leitura.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (pos >= limit) {
+                if (eof) return false;
+                compact(pos);
+                fill();
+                continue;
+            }
+            int recordStart = pos;
+            if (parseRecord() < 0) {
+                // Registo incompleto no buffer: compactar, ler mais e recomeçar.
+                compact(recordStart);
+                fill();
+                continue;
+            }
+            if (fieldCount == 1 && starts[0] == ends[0]) continue; // Linha vazia.
+            return true;
+        }
+    }
+
+    /**
+     * Devolve o número de campos do registo atual.
+     * @return O número de campos.
+     */
+    public int fieldCount() { return fieldCount; }
+
+    /**
+     * Cria a string do campo indicado, sem espaços nas extremidades.
+     * @param index O índice do campo (a partir de 0).
+     * @return O valor do campo ou "" se o índice não existir.
+     */
+    public String field(int index) {
+        if (index >= fieldCount) return "";
+        int s = starts[index], e = ends[index];
+        while (s < e && isSpace(buf[s])) s++;
+        while (e > s && isSpace(buf[e - 1])) e--;
+        if (!escaped[index]) return new String(buf, s, e - s, StandardCharsets.UTF_8);
+
+        // Remover as aspas duplicadas ("" -> ").
+        byte[] out = new byte[e - s];
+        int n = 0;
+        for (int i = s; i < e; i++) {
+            out[n++] = buf[i];
+            if (buf[i] == '"' && i + 1 < e && buf[i + 1] == '"') i++;
+        }
+        return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lê o campo indicado como inteiro diretamente dos bytes.
+     * @param index O índice do campo.
+     * @return O valor inteiro.
+     * @throws NumberFormatException Se o campo não for um inteiro válido.
+     */
+    public int intField(int index) {
+        if (index >= fieldCount) throw new NumberFormatException("missing field " + index);
+        int s = starts[index], e = ends[index];
+        while (s < e && isSpace(buf[s])) s++;
+        while (e > s && isSpace(buf[e - 1])) e--;
+        boolean negative = s < e && buf[s] == '-';
+        if (negative) s++;
+        if (s == e || e - s > 9) throw new NumberFormatException("bad int in field " + index);
+        int value = 0;
+        for (int i = s; i < e; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("bad int in field " + index);
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Devolve o total de bytes lidos do ficheiro até ao momento.
+     * @return O número de bytes.
+     */
+    public long bytesRead() { return bytesRead; }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // MÁQUINA DE ESTADOS.
+
+    /**
+     * Analisa um registo a partir de pos.
+     * @return 0 se o registo terminou (pos fica no início do seguinte),
+     *         -1 se o buffer acabou antes do fim do registo.
+     */
+    private int parseRecord() {
+        fieldCount = 0;
+        int p = pos;
+        while (true) {
+            int start = p;
+            int end;
+            boolean hasEscapes = false;
+
+            if (p < limit && buf[p] == '"') {
+                // Campo entre aspas: termina numa aspa não duplicada.
+                start = ++p;
+                while (true) {
+                    if (p >= limit) return eof ? closeAtEof(start, limit, hasEscapes) : -1;
+                    if (buf[p] == '"') {
+                        if (p + 1 >= limit && !eof) return -1;
+                        if (p + 1 < limit && buf[p + 1] == '"') { hasEscapes = true; p += 2; continue; }
+                        break;
+                    }
+                    p++;
+                }
+                end = p++;
+                // Ignorar eventuais caracteres entre a aspa final e o separador.
+                while (p < limit && buf[p] != ',' && buf[p] != '\n') p++;
+            } else {
+                while (p < limit && buf[p] != ',' && buf[p] != '\n') p++;
+                end = p;
+                if (end > start && buf[end - 1] == '\r') end--;
+            }
+
+            if (p >= limit && !eof) return -1;
+            addField(start, end, hasEscapes);
+
+            if (p >= limit) { pos = p; return 0; }
+            if (buf[p] == ',') { p++; continue; }
+            pos = p + 1; // buf[p] == '\n'
+            return 0;
+        }
+    }
+
+    /**
+     * Fecha um campo entre aspas que ficou aberto no fim do ficheiro.
+     */
+    private int closeAtEof(int start, int end, boolean hasEscapes) {
+        addField(start, end, hasEscapes);
+        pos = end;
+        return 0;
+    }
+
+    private void addField(int start, int end, boolean hasEscapes) {
+        if (fieldCount == MAX_FIELDS) return;
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = hasEscapes;
+        fieldCount++;
+    }
+
+    // GESTÃO DO BUFFER.
+
+    /**
+     * Move os bytes ainda não consumidos para o início do buffer, aumentando-o
+     * se um único registo ocupar o buffer inteiro.
+     */
+    private void compact(int from) {
+        int keep = limit - from;
+        if (from == 0 && keep == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, keep);
+            buf = bigger;
+        } else {
+            System.arraycopy(buf, from, buf, 0, keep);
+        }
+        limit = keep;
+        pos = 0;
+    }
+
+    private void fill() throws IOException {
+        while (limit < buf.length && !eof) {
+            int max = (int) Math.min(buf.length - limit, remaining);
+            if (max == 0) { eof = true; break; }
+            int n = channel.read(ByteBuffer.wrap(buf, limit, max));
+            if (n < 0) { eof = true; break; }
+            limit += n;
+            remaining -= n;
+            bytesRead += n;
+            if (n == 0) break;
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
@@ -0,0 +1,707 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Catálogo guardado em disco, para coleções maiores do que a memória (comando DISK).
+ * * O ficheiro é formado por páginas de PAGE_SIZE bytes. A página 0 tem o
+ * cabeçalho; seguem-se duas árvores B+ construídas de baixo para cima a partir
+ * dos títulos já ordenados (ExternalSorter): uma por título (as folhas guardam
+ * os títulos completos) e outra por show_id (as folhas guardam a página e a
+ * posição do título). As folhas de cada árvore ocupam páginas seguidas, pelo
+ * que uma listagem é uma leitura sequencial do ficheiro.
+ * * Cada página é "slotted": depois do tipo e do número de entradas vêm as
+ * posições das entradas, e as entradas são escritas a partir do fim da página.
+ * Uma entrada de folha tem um byte de estado, a chave e os dados; uma entrada
+ * interior tem a primeira chave do filho e o número da sua página.
+ * * A leitura mapeia o ficheiro em memória (em blocos de MAP_CHUNK bytes) e
+ * guarda as páginas descodificadas num buffer pool LRU com um número máximo de
+ * páginas, pelo que a memória ocupada não depende do tamanho do catálogo. Um
+ * DEL apenas marca o título como apagado na sua página.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class DiskCatalog implements Iterable<NetflixShow>, AutoCloseable {
+
+    /** Identifica o ficheiro ("NFXD"). */
+    private static final int MAGIC = 0x4E465844;
+
+    /** Versão do formato; ficheiros de outras versões são recusados. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Tamanho de cada página. */
+    public static final int PAGE_SIZE = 16384;
+
+    /** Tamanho de cada bloco mapeado (múltiplo de PAGE_SIZE). */
+    private static final long MAP_CHUNK = 1L << 30;
+
+    /** Páginas descodificadas guardadas em memória por omissão. */
+    public static final int DEFAULT_POOL_PAGES = 1024;
+
+    /** Chaves maiores do que isto são recusadas (as páginas interiores têm de levar várias). */
+    private static final int MAX_KEY_BYTES = 1024;
+
+    private static final byte LEAF = 1;
+    private static final byte INNER = 2;
+    private static final byte DELETED = 1;
+
+    /** Tipo (1 byte) e número de entradas (2 bytes) de cada página. */
+    private static final int PAGE_HEADER = 3;
+
+    // Posições dos campos do cabeçalho (página 0).
+    private static final int H_ROWS = 12, H_DELETED = 20, H_FIRST_LEAF = 28, H_LAST_LEAF = 32,
+        H_TITLE_ROOT = 36, H_TITLE_HEIGHT = 40, H_ID_ROOT = 44, H_ID_HEIGHT = 48, H_PAGES = 52;
+
+    /** Conversão dos títulos para as runs do ExternalSorter (mesmo formato das folhas). */
+    public static final ExternalSorter.Codec<NetflixShow> SHOW_CODEC = new ExternalSorter.Codec<NetflixShow>() {
+        public void write(DataOutput out, NetflixShow s) throws IOException { writeShow(out, s); }
+        public NetflixShow read(DataInput in) throws IOException { return readShow(in); }
+    };
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int maxPages;
+    private final LinkedHashMap<Integer, Page> pool;
+    private long hits, misses;
+
+    private final long rows;
+    private long deleted;
+    private final int firstLeaf, lastLeaf, titleRoot, titleHeight, idRoot, idHeight, pages;
+
+    /**
+     * Uma página descodificada.
+     */
+    private static final class Page {
+        byte type;
+        String[] keys;
+        int[] offsets;
+        /** Só nas folhas. */
+        byte[] flags;
+        byte[][] payloads;
+        /** Só nas páginas interiores. */
+        int[] children;
+    }
+
+    /**
+     * Uma entrada de folha a escrever: a chave e os dados já codificados.
+     */
+    private static final class Row {
+        final String key;
+        final byte[] payload;
+
+        Row(String key, byte[] payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+
+    private static final ExternalSorter.Codec<Row> ROW_CODEC = new ExternalSorter.Codec<Row>() {
+        public void write(DataOutput out, Row r) throws IOException {
+            out.writeUTF(r.key);
+            out.writeInt(r.payload.length);
+            out.write(r.payload);
+        }
+
+        public Row read(DataInput in) throws IOException {
+            String key = in.readUTF();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new Row(key, payload);
+        }
+    };
+
+    private DiskCatalog(Path path, int maxPages) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size < PAGE_SIZE || size % PAGE_SIZE != 0) throw new IOException("Invalid disk catalog: bad file size");
+            this.chunks = new MappedByteBuffer[(int) ((size + MAP_CHUNK - 1) / MAP_CHUNK)];
+            ByteBuffer h = chunk(0);
+            if (h.getInt(0) != MAGIC) throw new IOException("Invalid disk catalog: not a disk catalog file");
+            if (h.getInt(4) != FORMAT_VERSION) throw new IOException("Invalid disk catalog: unsupported version " + h.getInt(4));
+            if (h.getInt(8) != PAGE_SIZE) throw new IOException("Invalid disk catalog: page size " + h.getInt(8));
+            rows = h.getLong(H_ROWS);
+            deleted = h.getLong(H_DELETED);
+            firstLeaf = h.getInt(H_FIRST_LEAF);
+            lastLeaf = h.getInt(H_LAST_LEAF);
+            titleRoot = h.getInt(H_TITLE_ROOT);
+            titleHeight = h.getInt(H_TITLE_HEIGHT);
+            idRoot = h.getInt(H_ID_ROOT);
+            idHeight = h.getInt(H_ID_HEIGHT);
+            pages = h.getInt(H_PAGES);
+            if ((long) pages * PAGE_SIZE != size) throw new IOException("Invalid disk catalog: truncated file");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.maxPages = maxPages;
+        this.pool = new LinkedHashMap<Integer, Page>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > DiskCatalog.this.maxPages;
+            }
+        };
+    }
+
+    /**
+     * Abre um catálogo escrito com build.
+     * @param filename O caminho do ficheiro.
+     * @param maxPages Número máximo de páginas descodificadas em memória.
+     * @return O catálogo.
+     * @throws IOException Se o ficheiro não existir ou não for um catálogo válido.
+     */
+    public static DiskCatalog open(String filename, int maxPages) throws IOException {
+        return new DiskCatalog(Path.of(filename), Math.max(maxPages, 4));
+    }
+
+    /**
+     * Constrói um catálogo em disco a partir de um CSV, com memória limitada:
+     * os títulos são ordenados por título e por show_id com ExternalSorter e
+     * as árvores são escritas de baixo para cima, uma página de cada vez.
+     * Escreve primeiro para um ficheiro temporário e só no fim o move para o destino.
+     * Se houver show_id repetidos fica o primeiro por ordem de título.
+     * @param csvFile O CSV (com cabeçalho).
+     * @param filename O ficheiro a criar.
+     * @param sortBytes Memória máxima (estimada) de cada ordenação.
+     * @param rejectedBy Contadores das linhas rejeitadas, por motivo.
+     * @return O número de títulos escritos.
+     * @throws IOException Em caso de erro de leitura ou escrita.
+     */
+    public static long build(String csvFile, String filename, long sortBytes, int[] rejectedBy) throws IOException {
+        Path target = Path.of(filename);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (ExternalSorter<Row> byTitle = new ExternalSorter<>((a, b) -> a.key.compareTo(b.key), ROW_CODEC,
+                 DiskCatalog::weight, sortBytes);
+             ExternalSorter<Row> byId = new ExternalSorter<>((a, b) -> a.key.compareTo(b.key), ROW_CODEC,
+                 DiskCatalog::weight, sortBytes);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            long parsed = 0;
+            long bytes;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+            DataOutputStream data = new DataOutputStream(buffer);
+            try (CsvReader csv = new CsvReader(csvFile)) {
+                csv.next(); // Cabeçalho.
+                while (csv.next()) {
+                    NetflixShow s = CsvLoader.toShow(csv, rejectedBy);
+                    if (s == null) continue;
+                    buffer.reset();
+                    writeShow(data, s);
+                    // Chave: título sem distinção de maiúsculas (como NetflixShow.compareTo) e show_id.
+                    String key = SuggestIndex.fold(s.getTitle()) + '\0' + s.getShowId();
+                    int keyBytes = key.getBytes(StandardCharsets.UTF_8).length;
+                    if (keyBytes > MAX_KEY_BYTES || entryBytes(keyBytes, buffer.size()) > PAGE_SIZE - PAGE_HEADER - 2) {
+                        rejectedBy[CsvLoader.Reject.TOO_LARGE.ordinal()]++;
+                        continue;
+                    }
+                    byTitle.add(new Row(key, buffer.toByteArray()));
+                    parsed++;
+                }
+                bytes = csv.bytesRead();
+            }
+            Metrics.rows((int) Math.min(parsed, Integer.MAX_VALUE), rejectedBy, bytes);
+
+            PageWriter writer = new PageWriter(out);
+            // Folhas por título; cada título colocado entra na ordenação por show_id.
+            int[] title = writer.writeTree(byTitle.sorted(), (key, page, offset) -> {
+                byte[] location = ByteBuffer.allocate(6).putInt(page).putShort((short) offset).array();
+                byId.add(new Row(key.substring(key.lastIndexOf('\0') + 1), location));
+            });
+            long[] duplicates = new long[1];
+            String[] previous = new String[1];
+            int[] id = writer.writeTree(byId.sorted(), null, row -> {
+                // show_id repetido: o título fica marcado como apagado na sua folha.
+                if (row.key.equals(previous[0])) {
+                    ByteBuffer loc = ByteBuffer.wrap(row.payload);
+                    writer.put((long) loc.getInt() * PAGE_SIZE + (loc.getShort() & 0xFFFF), DELETED);
+                    duplicates[0]++;
+                    return false;
+                }
+                previous[0] = row.key;
+                return true;
+            });
+
+            ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+            header.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, PAGE_SIZE)
+                .putLong(H_ROWS, byTitle.size()).putLong(H_DELETED, duplicates[0])
+                .putInt(H_FIRST_LEAF, title[0]).putInt(H_LAST_LEAF, title[1])
+                .putInt(H_TITLE_ROOT, title[2]).putInt(H_TITLE_HEIGHT, title[3])
+                .putInt(H_ID_ROOT, id[2]).putInt(H_ID_HEIGHT, id[3]).putInt(H_PAGES, writer.pages);
+            out.write(header, 0);
+            out.force(true);
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        try (DiskCatalog c = open(filename, 4)) {
+            return c.size();
+        }
+    }
+
+    /** Número de títulos (sem os apagados). */
+    public synchronized long size() {
+        return rows - deleted;
+    }
+
+    /**
+     * Procura um título pelo show_id, pela árvore de show_id.
+     * @param id O identificador.
+     * @return O título ou null se não existir (ou estiver apagado).
+     */
+    public synchronized NetflixShow find(String id) {
+        int[] loc = locate(id);
+        if (loc == null) return null;
+        Page leaf = page(loc[0]);
+        return decodeShow(leaf.payloads[loc[1]]);
+    }
+
+    /**
+     * Apaga um título, marcando-o na sua folha (a página é escrita de imediato no ficheiro).
+     * @param id O identificador.
+     * @return true se o título existia.
+     */
+    public synchronized boolean delete(String id) {
+        int[] loc = locate(id);
+        if (loc == null) return false;
+        Page leaf = page(loc[0]);
+        leaf.flags[loc[1]] = DELETED;
+        long position = (long) loc[0] * PAGE_SIZE + leaf.offsets[loc[1]];
+        MappedByteBuffer data = chunk(position);
+        data.put((int) (position % MAP_CHUNK), DELETED);
+        data.force();
+        deleted++;
+        MappedByteBuffer header = chunk(0);
+        header.putLong(H_DELETED, deleted);
+        header.force();
+        return true;
+    }
+
+    /**
+     * Percorre os títulos por ordem de título, lendo as folhas por ordem.
+     */
+    @Override
+    public Iterator<NetflixShow> iterator() {
+        return new LeafIterator(firstLeaf, 0);
+    }
+
+    /**
+     * Percorre os títulos por ordem de título a partir do primeiro que não é
+     * menor do que o indicado, descendo pela árvore de títulos.
+     * @param title O título de partida (sem distinção de maiúsculas).
+     * @return Os títulos a partir desse.
+     */
+    public synchronized Iterable<NetflixShow> from(String title) {
+        if (titleRoot < 0) return this;
+        String key = SuggestIndex.fold(title);
+        int n = descend(titleRoot, key);
+        Page leaf = page(n);
+        int slot = lowerBound(leaf.keys, key);
+        return () -> new LeafIterator(n, slot);
+    }
+
+    /**
+     * Descreve o catálogo e o buffer pool numa linha.
+     */
+    public synchronized String summary() {
+        long lookups = hits + misses;
+        return String.format("%s: %d shows (%d deleted), %d pages of %d KB, tree height %d (title) / %d (show_id), "
+            + "pool %d of %d pages, %.1f%% hits", path, size(), deleted, pages, PAGE_SIZE / 1024,
+            titleHeight, idHeight, pool.size(), maxPages, (lookups == 0) ? 0.0 : 100.0 * hits / lookups);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        pool.clear();
+        channel.close();
+    }
+
+    /**
+     * Escreve um título (todos os campos, strings com o comprimento seguido
+     * dos bytes UTF-8, -1 se null).
+     */
+    static void writeShow(DataOutput out, NetflixShow s) throws IOException {
+        writeString(out, s.getShowId());
+        writeString(out, s.getType());
+        writeString(out, s.getTitle());
+        writeString(out, s.getDirector());
+        writeString(out, s.getCast());
+        writeString(out, s.getCountry());
+        writeString(out, s.getRating());
+        writeString(out, s.getListedIn());
+        writeString(out, s.getDescription());
+        out.writeInt(s.getDateKey());
+        out.writeInt(s.getReleaseYear());
+        out.writeInt(s.getDuration());
+    }
+
+    /**
+     * Lê um título escrito com writeShow.
+     */
+    static NetflixShow readShow(DataInput in) throws IOException {
+        String showId = readString(in);
+        String type = readString(in);
+        String title = readString(in);
+        String director = readString(in);
+        String cast = readString(in);
+        String country = readString(in);
+        String rating = readString(in);
+        String listedIn = readString(in);
+        String description = readString(in);
+        int dateKey = in.readInt();
+        int releaseYear = in.readInt();
+        int duration = in.readInt();
+        return new NetflixShow(showId, type, title, director, cast, country,
+            dateKey, releaseYear, rating, duration, listedIn, description);
+    }
+
+    /**
+     * Memória estimada de um título (objeto e strings compactas), para o ExternalSorter.
+     */
+    static long estimatedBytes(NetflixShow s) {
+        long bytes = 96;
+        for (String v : new String[] { s.getShowId(), s.getType(), s.getTitle(), s.getDirector(), s.getCast(),
+                s.getCountry(), s.getRating(), s.getListedIn(), s.getDescription() }) {
+            if (v != null) bytes += 48 + v.length();
+        }
+        return bytes;
+    }
+
+    // UTILITÁRIOS.
+
+    /** Página e posição do título com o show_id, ou null se não existir ou estiver apagado. */
+    private int[] locate(String id) {
+        if (idRoot < 0) return null;
+        Page leaf = page(descend(idRoot, id));
+        int slot = lowerBound(leaf.keys, id);
+        if (slot == leaf.keys.length || !leaf.keys[slot].equals(id)) return null;
+        ByteBuffer loc = ByteBuffer.wrap(leaf.payloads[slot]);
+        int n = loc.getInt();
+        int offset = loc.getShort() & 0xFFFF;
+        Page target = page(n);
+        for (int i = 0; i < target.offsets.length; i++) {
+            if (target.offsets[i] == offset) return (target.flags[i] == DELETED) ? null : new int[] { n, i };
+        }
+        return null;
+    }
+
+    /** Desce da raiz até à folha onde a chave está (ou estaria). */
+    private int descend(int root, String key) {
+        int n = root;
+        Page p = page(n);
+        while (p.type == INNER) {
+            // Último filho cuja primeira chave não é maior do que a procurada.
+            int i = lowerBound(p.keys, key);
+            if (i == p.keys.length || !p.keys[i].equals(key)) i = Math.max(i - 1, 0);
+            n = p.children[i];
+            p = page(n);
+        }
+        return n;
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Devolve uma página, do buffer pool ou descodificada do ficheiro mapeado. */
+    private Page page(int n) {
+        Page p = pool.get(n);
+        if (p != null) {
+            hits++;
+            return p;
+        }
+        misses++;
+        p = decode(n);
+        pool.put(n, p);
+        return p;
+    }
+
+    private Page decode(int n) {
+        long position = (long) n * PAGE_SIZE;
+        ByteBuffer b = chunk(position).slice((int) (position % MAP_CHUNK), PAGE_SIZE);
+        Page p = new Page();
+        p.type = b.get(0);
+        int count = b.getShort(1) & 0xFFFF;
+        p.keys = new String[count];
+        p.offsets = new int[count];
+        if (p.type == LEAF) {
+            p.flags = new byte[count];
+            p.payloads = new byte[count][];
+        } else {
+            p.children = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            int off = b.getShort(PAGE_HEADER + 2 * i) & 0xFFFF;
+            p.offsets[i] = off;
+            if (p.type == LEAF) p.flags[i] = b.get(off++);
+            byte[] key = new byte[b.getShort(off) & 0xFFFF];
+            b.get(off + 2, key);
+            p.keys[i] = new String(key, StandardCharsets.UTF_8);
+            off += 2 + key.length;
+            if (p.type == LEAF) {
+                p.payloads[i] = new byte[b.getInt(off)];
+                b.get(off + 4, p.payloads[i]);
+            } else {
+                p.children[i] = b.getInt(off);
+            }
+        }
+        return p;
+    }
+
+    /** Bloco mapeado que contém a posição (mapeado no primeiro acesso). */
+    private MappedByteBuffer chunk(long position) {
+        int i = (int) (position / MAP_CHUNK);
+        if (chunks[i] == null) {
+            try {
+                long start = i * MAP_CHUNK;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(MAP_CHUNK, channel.size() - start));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return chunks[i];
+    }
+
+    private static NetflixShow decodeShow(byte[] payload) {
+        try {
+            return readShow(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(new IOException("Invalid disk catalog: corrupted record"));
+        }
+    }
+
+    /** Percorre as folhas da árvore de títulos a partir de uma posição, saltando os apagados. */
+    private final class LeafIterator implements Iterator<NetflixShow> {
+        private int n;
+        private int slot;
+        private Page leaf;
+
+        LeafIterator(int n, int slot) {
+            this.n = n;
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (DiskCatalog.this) {
+                while (n <= lastLeaf) {
+                    if (leaf == null) leaf = page(n);
+                    while (slot < leaf.keys.length && leaf.flags[slot] == DELETED) slot++;
+                    if (slot < leaf.keys.length) return true;
+                    n++;
+                    slot = 0;
+                    leaf = null;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public NetflixShow next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return decodeShow(leaf.payloads[slot++]);
+        }
+    }
+
+    /** Chamado para cada entrada escrita numa folha. */
+    private interface Placed {
+        void accept(String key, int page, int offset) throws IOException;
+    }
+
+    /** Decide se uma entrada é escrita (false para a saltar). */
+    private interface Accept {
+        boolean test(Row row) throws IOException;
+    }
+
+    /**
+     * Escreve páginas no fim do ficheiro (a página 0 fica para o cabeçalho).
+     */
+    private static final class PageWriter {
+        private final FileChannel out;
+        private final ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+        private int count;
+        private int dataStart;
+        private String firstKey;
+        int pages = 1;
+
+        PageWriter(FileChannel out) {
+            this.out = out;
+            reset(LEAF);
+        }
+
+        int[] writeTree(Iterator<Row> rows, Placed placed) throws IOException {
+            return writeTree(rows, placed, null);
+        }
+
+        /**
+         * Escreve as folhas (páginas seguidas) e depois os níveis interiores, um
+         * de cada vez, a partir de um ficheiro temporário com a primeira chave
+         * de cada página do nível anterior.
+         * @return A primeira e a última folha, a raiz (-1 se vazia) e a altura.
+         */
+        int[] writeTree(Iterator<Row> rows, Placed placed, Accept accept) throws IOException {
+            int first = pages;
+            Path level = Files.createTempFile("netflix-tree-", ".level");
+            try {
+                int count;
+                try (DataOutputStream up = levelOut(level)) {
+                    count = 0;
+                    reset(LEAF);
+                    while (rows.hasNext()) {
+                        Row r = rows.next();
+                        if (accept != null && !accept.test(r)) continue;
+                        byte[] key = r.key.getBytes(StandardCharsets.UTF_8);
+                        int size = entryBytes(key.length, r.payload.length);
+                        if (!fits(size)) count += flush(up);
+                        int offset = addEntry(size);
+                        page.put(offset, (byte) 0);
+                        putKey(offset + 1, key);
+                        int at = offset + 3 + key.length;
+                        page.putInt(at, r.payload.length);
+                        page.put(at + 4, r.payload);
+                        if (firstKey == null) firstKey = r.key;
+                        if (placed != null) placed.accept(r.key, pages, offset);
+                    }
+                    if (this.count > 0) count += flush(up);
+                }
+                int last = pages - 1;
+                if (count == 0) return new int[] { first, last, -1, 0 };
+
+                int height = 1;
+                int root = last;
+                while (count > 1) {
+                    Path next = Files.createTempFile("netflix-tree-", ".level");
+                    int written = 0;
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(level), 1 << 15));
+                         DataOutputStream up = levelOut(next)) {
+                        reset(INNER);
+                        for (int i = 0; i < count; i++) {
+                            String key = in.readUTF();
+                            int child = in.readInt();
+                            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                            int size = 2 + bytes.length + 4;
+                            if (!fits(size)) written += flush(up);
+                            int offset = addEntry(size);
+                            putKey(offset, bytes);
+                            page.putInt(offset + 2 + bytes.length, child);
+                            if (firstKey == null) firstKey = key;
+                        }
+                        written += flush(up);
+                    }
+                    Files.delete(level);
+                    level = next;
+                    count = written;
+                    root = pages - 1;
+                    height++;
+                }
+                return new int[] { first, last, root, height };
+            } finally {
+                Files.deleteIfExists(level);
+            }
+        }
+
+        /** Escreve um byte numa página já escrita (usado para marcar duplicados). */
+        void put(long position, byte value) throws IOException {
+            out.write(ByteBuffer.wrap(new byte[] { value }), position);
+        }
+
+        private boolean fits(int size) {
+            return PAGE_HEADER + 2 * (count + 1) + size <= dataStart;
+        }
+
+        private int addEntry(int size) {
+            dataStart -= size;
+            page.putShort(PAGE_HEADER + 2 * count, (short) dataStart);
+            count++;
+            return dataStart;
+        }
+
+        private void putKey(int offset, byte[] bytes) {
+            page.putShort(offset, (short) bytes.length);
+            page.put(offset + 2, bytes);
+        }
+
+        /** Escreve a página atual, regista a sua primeira chave no nível acima e começa outra do mesmo tipo. */
+        private int flush(DataOutputStream up) throws IOException {
+            page.putShort(1, (short) count);
+            page.clear();
+            out.write(page, (long) pages * PAGE_SIZE);
+            up.writeUTF(firstKey);
+            up.writeInt(pages);
+            pages++;
+            reset(page.get(0));
+            return 1;
+        }
+
+        private void reset(byte type) {
+            Arrays.fill(page.array(), (byte) 0);
+            page.clear();
+            page.put(0, type);
+            count = 0;
+            dataStart = PAGE_SIZE;
+            firstKey = null;
+        }
+
+        private static DataOutputStream levelOut(Path p) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(p), 1 << 15));
+        }
+    }
+
+    private static int entryBytes(int keyBytes, int payloadBytes) {
+        return 1 + 2 + keyBytes + 4 + payloadBytes;
+    }
+
+    private static long weight(Row r) {
+        return 96 + r.key.length() + r.payload.length;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,315 @@
+import java.util.Arrays;
+
+/**
+ * Índice ordenado das durações dos filmes, usado pelo comando MTIME.
+ * * Há um grupo por duração distinta, por ordem decrescente de duração; cada
+ * grupo guarda os rowIds dos seus filmes num array primitivo, por título e
+ * show_id (NetflixShow.TITLE_ORDER, a mesma ordem do catálogo em disco e do
+ * particionado). Uma consulta
+ * [min, max] são duas pesquisas binárias nas durações que delimitam grupos
+ * contíguos já pela ordem de apresentação, dos quais se pode pedir apenas
+ * uma página; com as contagens acumuladas dos grupos, a página é encontrada
+ * sem percorrer os filmes que salta.
+ * * Os filmes carregados ficam pendentes e só são ordenados e intercalados
+ * na consulta ou fotografia seguinte, para que um carregamento custe
+ * O(n log n) no total.
+ * * snapshot devolve uma cópia só de leitura que partilha os grupos com o
+ * índice; um grupo que esteja numa fotografia é copiado antes de ser alterado,
+ * pelo que cada alteração copia apenas o grupo da sua duração.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class DurationIndex implements ShowIndex {
+
+    /** Capacidade inicial dos arrays. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Tabela de linhas usada para obter os títulos a partir dos rowIds. */
+    private final RowTable rows;
+
+    /** Durações dos grupos, por ordem decrescente. */
+    private int[] durations;
+
+    /** rowIds de cada grupo, por título e show_id, e o número usado de cada um. */
+    private int[][] groups;
+    private int[] lengths;
+
+    /** Época em que cada grupo foi criado ou copiado (só no índice principal). */
+    private int[] owners;
+
+    /** Número de grupos. */
+    private int size;
+
+    private int epoch;
+
+    /** Filmes antes de cada grupo (size + 1 posições); só nas fotografias. */
+    private final long[] before;
+
+    /** Filmes carregados que ainda não foram intercalados. */
+    private NetflixShow[] pending;
+    private int pendingSize;
+
+    /**
+     * Cria um índice vazio.
+     * @param rows A tabela de linhas partilhada.
+     */
+    public DurationIndex(RowTable rows) {
+        this.rows = rows;
+        this.before = null;
+        clear();
+    }
+
+    private DurationIndex(RowTable rows, int[] durations, int[][] groups, int[] lengths, int size) {
+        this.rows = rows;
+        this.durations = durations;
+        this.groups = groups;
+        this.lengths = lengths;
+        this.size = size;
+        this.before = new long[size + 1];
+        for (int g = 0; g < size; g++) before[g + 1] = before[g] + lengths[g];
+    }
+
+    @Override
+    public void add(NetflixShow show) {
+        checkWritable();
+        if (!isMovie(show)) return;
+        if (pendingSize == pending.length) pending = Arrays.copyOf(pending, pendingSize * 2);
+        pending[pendingSize++] = show;
+    }
+
+    @Override
+    public void remove(NetflixShow show) {
+        checkWritable();
+        if (!isMovie(show)) return;
+        flush();
+        int g = find(show.getDuration());
+        if (g < 0) return;
+        int[] ids = groups[g];
+        int len = lengths[g];
+        int lo = 0, hi = len;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(rows.get(ids[mid]), show) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        if (lo == len || ids[lo] != show.getRowId()) return;
+
+        if (len == 1) {
+            removeGroup(g);
+            return;
+        }
+        ids = own(g);
+        System.arraycopy(ids, lo + 1, ids, lo, len - lo - 1);
+        lengths[g] = len - 1;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        durations = new int[INITIAL_CAPACITY];
+        groups = new int[INITIAL_CAPACITY][];
+        lengths = new int[INITIAL_CAPACITY];
+        owners = new int[INITIAL_CAPACITY];
+        size = 0;
+        pending = new NetflixShow[INITIAL_CAPACITY];
+        pendingSize = 0;
+    }
+
+    /**
+     * Devolve uma fotografia do índice (só de leitura), com os filmes
+     * pendentes já intercalados. Custa O(durações distintas).
+     * @param rowsView A fotografia da RowTable tirada no mesmo momento.
+     * @return O índice só de leitura.
+     */
+    public DurationIndex snapshot(RowTable rowsView) {
+        checkWritable();
+        flush();
+        DurationIndex view = new DurationIndex(rowsView, Arrays.copyOf(durations, size),
+            Arrays.copyOf(groups, size), Arrays.copyOf(lengths, size), size);
+        epoch++;
+        return view;
+    }
+
+    /**
+     * Conta os filmes com duração entre min e max (inclusive).
+     * @param min A duração mínima.
+     * @param max A duração máxima.
+     * @return O número de filmes.
+     */
+    public int count(int min, int max) {
+        min = Math.max(min, 0); // As durações nunca são negativas.
+        if (min > max) return 0;
+        long[] acc = before();
+        return (int) (acc[longerThan(min - 1)] - acc[longerThan(max)]);
+    }
+
+    /**
+     * Devolve uma página dos filmes com duração entre min e max (inclusive),
+     * por ordem decrescente de duração.
+     * @param min A duração mínima.
+     * @param max A duração máxima.
+     * @param offset Número de filmes a saltar no início da fatia.
+     * @param limit Número máximo de filmes a devolver.
+     * @return Os filmes da página pedida.
+     */
+    public NetflixShow[] range(int min, int max, int offset, int limit) {
+        min = Math.max(min, 0);
+        if (min > max) return new NetflixShow[0];
+        long[] acc = before();
+        long to = acc[longerThan(min - 1)];
+        long from = Math.min(acc[longerThan(max)] + Math.max(offset, 0), to);
+        to = Math.min(to, from + Math.max(limit, 0));
+
+        NetflixShow[] page = new NetflixShow[(int) (to - from)];
+        // Grupo onde a página começa: o último com before <= from.
+        int g = Arrays.binarySearch(acc, 0, size + 1, from);
+        if (g < 0) g = -g - 2;
+        while (g < size && acc[g + 1] <= from) g++;
+        int n = 0;
+        for (long pos = from; pos < to; g++) {
+            int first = (int) (pos - acc[g]);
+            int last = (int) Math.min(lengths[g], to - acc[g]);
+            for (int i = first; i < last; i++) page[n++] = rows.get(groups[g][i]);
+            pos = acc[g] + last;
+        }
+        return page;
+    }
+
+    // UTILITÁRIOS.
+
+    /**
+     * Ordena os filmes pendentes e intercala cada duração com o seu grupo.
+     */
+    private void flush() {
+        if (pendingSize == 0) return;
+        NetflixShow[] batch = Arrays.copyOf(pending, pendingSize);
+        Sorter.sort(batch, (a, b) -> {
+            int c = Integer.compare(b.getDuration(), a.getDuration());
+            return (c != 0) ? c : compare(a, b);
+        });
+        pending = new NetflixShow[INITIAL_CAPACITY];
+        pendingSize = 0;
+
+        for (int start = 0, end; start < batch.length; start = end) {
+            int duration = batch[start].getDuration();
+            end = start + 1;
+            while (end < batch.length && batch[end].getDuration() == duration) end++;
+
+            int g = find(duration);
+            if (g < 0) g = addGroup(-g - 1, duration);
+            int len = lengths[g];
+            if ((long) (end - start) * (32 - Integer.numberOfLeadingZeros(len)) < len) {
+                // Poucos filmes num grupo grande: pesquisa binária de cada um, sem percorrer o grupo.
+                for (int j = start; j < end; j++) insert(g, batch[j]);
+                continue;
+            }
+            int[] ids = groups[g];
+            int[] merged = new int[Math.max(len + end - start, 4)];
+            int i = 0, j = start, k = 0;
+            while (i < len || j < end) {
+                if (j == end || (i < len && compare(rows.get(ids[i]), batch[j]) <= 0)) merged[k++] = ids[i++];
+                else merged[k++] = batch[j++].getRowId();
+            }
+            groups[g] = merged;
+            lengths[g] = k;
+            owners[g] = epoch;
+        }
+    }
+
+    /**
+     * Insere um filme no grupo g, na posição dada por pesquisa binária.
+     */
+    private void insert(int g, NetflixShow show) {
+        int[] ids = own(g);
+        int len = lengths[g];
+        int lo = 0, hi = len;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(rows.get(ids[mid]), show) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        if (len == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(len * 2, 4));
+            groups[g] = ids;
+        }
+        System.arraycopy(ids, lo, ids, lo + 1, len - lo);
+        ids[lo] = show.getRowId();
+        lengths[g] = len + 1;
+    }
+
+    /** Ordem dentro de um grupo: título e show_id (ver NetflixShow.TITLE_ORDER). */
+    private static int compare(NetflixShow a, NetflixShow b) {
+        return NetflixShow.TITLE_ORDER.compare(a, b);
+    }
+
+    /** Posição do grupo da duração, ou -(posição de inserção) - 1. */
+    private int find(int duration) {
+        int g = longerThan(duration);
+        return (g < size && durations[g] == duration) ? g : -g - 1;
+    }
+
+    /** Número de grupos com duração maior do que a indicada (os primeiros, pela ordem decrescente). */
+    private int longerThan(int duration) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (durations[mid] > duration) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Filmes antes de cada grupo, calculados na hora se o índice não for uma fotografia. */
+    private long[] before() {
+        if (before != null) return before;
+        flush();
+        long[] acc = new long[size + 1];
+        for (int g = 0; g < size; g++) acc[g + 1] = acc[g] + lengths[g];
+        return acc;
+    }
+
+    private int addGroup(int g, int duration) {
+        if (size == durations.length) {
+            durations = Arrays.copyOf(durations, size * 2);
+            groups = Arrays.copyOf(groups, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            owners = Arrays.copyOf(owners, size * 2);
+        }
+        System.arraycopy(durations, g, durations, g + 1, size - g);
+        System.arraycopy(groups, g, groups, g + 1, size - g);
+        System.arraycopy(lengths, g, lengths, g + 1, size - g);
+        System.arraycopy(owners, g, owners, g + 1, size - g);
+        durations[g] = duration;
+        groups[g] = new int[0];
+        lengths[g] = 0;
+        owners[g] = epoch;
+        size++;
+        return g;
+    }
+
+    private void removeGroup(int g) {
+        System.arraycopy(durations, g + 1, durations, g, size - g - 1);
+        System.arraycopy(groups, g + 1, groups, g, size - g - 1);
+        System.arraycopy(lengths, g + 1, lengths, g, size - g - 1);
+        System.arraycopy(owners, g + 1, owners, g, size - g - 1);
+        size--;
+        groups[size] = null;
+    }
+
+    /** Grupo g pronto a ser alterado, copiado se estiver numa fotografia. */
+    private int[] own(int g) {
+        if (owners[g] != epoch) {
+            groups[g] = Arrays.copyOf(groups[g], lengths[g]);
+            owners[g] = epoch;
+        }
+        return groups[g];
+    }
+
+    private void checkWritable() {
+        if (before != null) throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+    private static boolean isMovie(NetflixShow show) {
+        return "Movie".equalsIgnoreCase(show.getType());
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Ordenação externa (merge sort em disco) para conjuntos maiores do que a
+ * memória disponível, usada pelo SEGMENT e pelo catálogo em disco (DiskCatalog).
+ * * Os elementos são acumulados até ocuparem maxBytes (estimados); nessa altura
+ * são ordenados com Sorter.sort e escritos num ficheiro temporário (uma
+ * "run"). No fim, as runs são lidas em simultâneo e fundidas com uma fila de
+ * prioridade, com um buffer pequeno por run. Se tudo couber em memória não é
+ * escrito nenhum ficheiro.
+ * * A ordenação é estável: elementos iguais saem pela ordem em que foram
+ * acrescentados (em caso de empate ganha a run mais antiga).
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class ExternalSorter<T> implements AutoCloseable {
+
+    /** Buffer de leitura e escrita de cada run. */
+    private static final int RUN_BUFFER = 1 << 15;
+
+    /**
+     * Conversão dos elementos para os ficheiros temporários.
+     */
+    public interface Codec<T> {
+        void write(DataOutput out, T value) throws IOException;
+        T read(DataInput in) throws IOException;
+    }
+
+    private final Comparator<? super T> comparator;
+    private final Codec<T> codec;
+    private final ToLongFunction<? super T> weight;
+    private final long maxBytes;
+
+    private ArrayList<T> buffer = new ArrayList<>();
+    private long bufferBytes;
+    private final ArrayList<Path> runs = new ArrayList<>();
+    private long count;
+    private boolean sorted;
+
+    /** Fusão devolvida por sorted() (null se tudo coube em memória), fechada em close(). */
+    private Merge merge;
+
+    /**
+     * Cria um ordenador vazio.
+     * @param comparator A ordem pretendida.
+     * @param codec A forma de escrever e ler os elementos nas runs.
+     * @param weight Memória estimada de cada elemento, em bytes.
+     * @param maxBytes Memória máxima (estimada) dos elementos guardados antes de escrever uma run.
+     */
+    public ExternalSorter(Comparator<? super T> comparator, Codec<T> codec,
+                          ToLongFunction<? super T> weight, long maxBytes) {
+        this.comparator = comparator;
+        this.codec = codec;
+        this.weight = weight;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Acrescenta um elemento, escrevendo uma run se a memória for ultrapassada.
+     * @param value O elemento.
+     * @throws IOException Em caso de erro na escrita da run.
+     */
+    public void add(T value) throws IOException {
+        if (sorted) throw new IllegalStateException("sorted() already called");
+        buffer.add(value);
+        bufferBytes += weight.applyAsLong(value);
+        count++;
+        if (bufferBytes >= maxBytes) spill();
+    }
+
+    /** Número de elementos acrescentados. */
+    public long size() { return count; }
+
+    /** Número de runs escritas em disco até agora. */
+    public int runCount() { return runs.size(); }
+
+    /**
+     * Devolve os elementos por ordem. Só pode ser chamado uma vez, depois de
+     * acrescentados todos os elementos. Os erros de leitura das runs são
+     * lançados como UncheckedIOException. O iterador não precisa de ser
+     * percorrido até ao fim: close() fecha as runs que ainda estiverem abertas.
+     * @return Um iterador sobre os elementos ordenados.
+     */
+    @SuppressWarnings("unchecked")
+    public Iterator<T> sorted() throws IOException {
+        if (sorted) throw new IllegalStateException("sorted() already called");
+        sorted = true;
+        if (runs.isEmpty()) {
+            T[] arr = (T[]) buffer.toArray();
+            buffer = null;
+            Sorter.sort(arr, comparator);
+            return Arrays.asList(arr).iterator();
+        }
+        if (!buffer.isEmpty()) spill();
+        buffer = null;
+        merge = new Merge();
+        return merge;
+    }
+
+    /**
+     * Fecha as runs ainda abertas pela fusão e apaga os ficheiros temporários.
+     */
+    @Override
+    public void close() {
+        if (merge != null) {
+            merge.close();
+            merge = null;
+        }
+        for (Path p : runs) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                // Ficheiro temporário: se não puder ser apagado fica para o sistema.
+            }
+        }
+        runs.clear();
+    }
+
+    // UTILITÁRIOS.
+
+    @SuppressWarnings("unchecked")
+    private void spill() throws IOException {
+        T[] arr = (T[]) buffer.toArray();
+        Sorter.sort(arr, comparator);
+        Path run = Files.createTempFile("netflix-sort-", ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER))) {
+            out.writeInt(arr.length);
+            for (T v : arr) codec.write(out, v);
+        }
+        buffer.clear();
+        bufferBytes = 0;
+    }
+
+    /** Cabeça de uma run durante a fusão. */
+    private final class RunReader {
+        final int index;
+        final DataInputStream in;
+        int remaining;
+        T head;
+
+        RunReader(int index, Path path) throws IOException {
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), RUN_BUFFER));
+            try {
+                this.remaining = in.readInt();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                close();
+                return false;
+            }
+            remaining--;
+            head = codec.read(in);
+            return true;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Só lemos a run: não há dados a perder.
+            }
+        }
+    }
+
+    /**
+     * Fusão das runs. As runs esgotadas fecham-se sozinhas; close() fecha as
+     * restantes quando a iteração para antes do fim (ex.: MTIME com LIMIT).
+     */
+    private final class Merge implements Iterator<T>, Closeable {
+        private final PriorityQueue<RunReader> queue;
+
+        Merge() throws IOException {
+            queue = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+                int c = comparator.compare(a.head, b.head);
+                return (c != 0) ? c : Integer.compare(a.index, b.index);
+            });
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader r = new RunReader(i, runs.get(i));
+                    if (r.advance()) queue.add(r);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            for (RunReader r : queue) r.close();
+            queue.clear();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            RunReader r = queue.poll();
+            if (r == null) throw new NoSuchElementException();
+            T value = r.head;
+            try {
+                if (r.advance()) queue.add(r);
+            } catch (IOException e) {
+                r.close();
+                throw new UncheckedIOException(e);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Índice de bitmaps usado pelo FILTER, mantido pelo NetflixManager a cada
+ * carregamento e remoção.
+ * * Cada valor de tipo, rating, país, categoria, ano de lançamento e mês de
+ * adição tem um CompressedBitmap com os rowIds dos seus títulos (ver RowTable).
+ * As alterações ficam pendentes, por valor, e são aplicadas na fotografia
+ * seguinte com andNot (rowIds retirados) e or (rowIds novos), que só copiam
+ * os contentores alterados. Os mapas valor -> bitmap só são copiados se
+ * mudaram desde a fotografia anterior; os bitmaps nunca são alterados e ficam
+ * partilhados entre o índice e as fotografias.
+ * * Um critério é a união (OR) dos bitmaps dos seus valores; os critérios são
+ * intersetados (AND) do mais pequeno para o maior (pela soma das
+ * cardinalidades), parando logo que o resultado fique vazio. Nos intervalos
+ * de datas, os meses das pontas são filtrados dia a dia; e uma categoria
+ * cujos bitmaps sejam muito maiores do que o resultado já obtido é
+ * verificada título a título (NetflixShow.hasCategory), sem ler os bitmaps.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class FilterIndex implements ShowIndex {
+
+    /**
+     * Uma categoria é verificada título a título quando os seus bitmaps têm
+     * mais do que VERIFY_RATIO vezes as posições do resultado parcial.
+     */
+    private static final int VERIFY_RATIO = 32;
+
+    /** Chave do bitmap com todos os rowIds (filtro sem critérios). */
+    private static final String ALL = "";
+
+    /** Tabela de linhas usada para obter os títulos a partir dos rowIds. */
+    private final RowTable rows;
+
+    private final Column<String> byType;
+    private final Column<String> byRating;
+    private final Column<String> byCountry;
+    private final Column<String> byCategory;
+    private final Column<Integer> byYear;
+
+    /** Mês de adição (ano * 12 + mês - 1) -> rowIds. */
+    private final Column<Integer> byMonth;
+
+    /** Todos os rowIds, na chave ALL. */
+    private final Column<String> all;
+
+    /** Indica se o índice é uma fotografia (só de leitura). */
+    private final boolean frozen;
+
+    /**
+     * Cria um índice vazio.
+     * @param rows A tabela de linhas partilhada.
+     */
+    public FilterIndex(RowTable rows) {
+        this(rows, new Column<>(false), new Column<>(false), new Column<>(false), new Column<>(false),
+             new Column<>(true), new Column<>(true), new Column<>(false), false);
+    }
+
+    private FilterIndex(RowTable rows, Column<String> byType, Column<String> byRating, Column<String> byCountry,
+                        Column<String> byCategory, Column<Integer> byYear, Column<Integer> byMonth,
+                        Column<String> all, boolean frozen) {
+        this.rows = rows;
+        this.byType = byType;
+        this.byRating = byRating;
+        this.byCountry = byCountry;
+        this.byCategory = byCategory;
+        this.byYear = byYear;
+        this.byMonth = byMonth;
+        this.all = all;
+        this.frozen = frozen;
+    }
+
+    @Override
+    public void add(NetflixShow show) {
+        update(show, show.getRowId());
+    }
+
+    @Override
+    public void remove(NetflixShow show) {
+        update(show, ~show.getRowId());
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        for (Column<?> c : columns()) c.clear();
+    }
+
+    /**
+     * Devolve uma fotografia do índice (só de leitura), com as alterações
+     * pendentes já aplicadas. Custa O(valores alterados + rowIds alterados).
+     * @param rowsView A fotografia da RowTable tirada no mesmo momento.
+     * @return O índice só de leitura.
+     */
+    public FilterIndex snapshot(RowTable rowsView) {
+        checkWritable();
+        int rewritten = 0;
+        for (Column<?> c : columns()) rewritten += c.flush();
+        Metrics.filterSnapshot(rewritten);
+        return new FilterIndex(rowsView, byType.snapshot(), byRating.snapshot(), byCountry.snapshot(),
+            byCategory.snapshot(), byYear.snapshot(), byMonth.snapshot(), all.snapshot(), true);
+    }
+
+    /**
+     * Devolve os rowIds dos títulos que passam no filtro.
+     * @param filter O filtro (sem critérios, passam todos).
+     * @return Os rowIds, por ordem crescente.
+     */
+    public CompressedBitmap evaluate(ShowFilter filter) {
+        if (!frozen) for (Column<?> c : columns()) c.flush();
+        java.util.List<ShowFilter.Term> terms = filter.getTerms();
+        if (terms.isEmpty()) return all.get(ALL);
+
+        // Bitmaps de cada critério e estimativa do tamanho da sua união.
+        CompressedBitmap[][] parts = new CompressedBitmap[terms.size()][];
+        long[] estimate = new long[terms.size()];
+        Integer[] order = new Integer[terms.size()];
+        for (int t = 0; t < parts.length; t++) {
+            parts[t] = bitmaps(terms.get(t));
+            for (CompressedBitmap b : parts[t]) estimate[t] += b.cardinality();
+            if (estimate[t] == 0) return CompressedBitmap.EMPTY;
+            order[t] = t;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(estimate[a], estimate[b]));
+
+        // Primeiro critério: união dos seus bitmaps; seguintes: (r AND a) OR (r AND b) ...
+        CompressedBitmap result = union(parts[order[0]]);
+        for (int k = 1; k < order.length && !result.isEmpty(); k++) {
+            ShowFilter.Term t = terms.get(order[k]);
+            if (t.field == ShowFilter.Field.CATEGORY && (long) result.cardinality() * VERIFY_RATIO < estimate[order[k]]) {
+                result = filterCategories(result, t.values);
+                continue;
+            }
+            CompressedBitmap next = CompressedBitmap.EMPTY;
+            for (CompressedBitmap b : parts[order[k]]) next = next.or(result.and(b));
+            result = next;
+        }
+        return result;
+    }
+
+    // UTILITÁRIOS.
+
+    /**
+     * Regista o título em todos os bitmaps dos seus valores: rowId >= 0 para
+     * o acrescentar, ~rowId para o retirar.
+     */
+    private void update(NetflixShow s, int op) {
+        checkWritable();
+        all.put(ALL, op);
+        putValue(byType, s.getType(), op);
+        putValue(byRating, s.getRating(), op);
+        putListed(byCountry, s.getCountry(), op);
+        putListed(byCategory, s.getListedIn(), op);
+        byYear.put(s.getReleaseYear(), op);
+        int key = s.getDateKey();
+        if (key != Integer.MIN_VALUE) byMonth.put(month(LocalDate.ofEpochDay(key)), op);
+    }
+
+    /** Bitmaps cuja união dá os rowIds que cumprem o critério. */
+    private CompressedBitmap[] bitmaps(ShowFilter.Term t) {
+        ArrayList<CompressedBitmap> found = new ArrayList<>();
+        switch (t.field) {
+            case TYPE: lookup(byType, t.values, found); break;
+            case RATING: lookup(byRating, t.values, found); break;
+            case COUNTRY: lookup(byCountry, t.values, found); break;
+            case CATEGORY: lookup(byCategory, t.values, found); break;
+            case YEAR:
+                if (t.from <= t.to) found.addAll(byYear.range(t.from, t.to).values());
+                break;
+            case ADDED:
+                if (t.from > t.to) break;
+                int first = month(LocalDate.ofEpochDay(Math.max(t.from, -365_000_000)));
+                int last = month(LocalDate.ofEpochDay(Math.min(t.to, 365_000_000)));
+                for (Map.Entry<Integer, CompressedBitmap> e : byMonth.range(first, last).entrySet()) {
+                    // Meses das pontas: só os dias dentro do intervalo.
+                    boolean edge = e.getKey() == first || e.getKey() == last;
+                    found.add(edge ? filterDays(e.getValue(), t.from, t.to) : e.getValue());
+                }
+                break;
+        }
+        return found.toArray(new CompressedBitmap[0]);
+    }
+
+    private CompressedBitmap filterCategories(CompressedBitmap rowIds, String[] values) {
+        CompressedBitmap out = new CompressedBitmap();
+        rowIds.forEach(i -> {
+            NetflixShow show = rows.get(i);
+            for (String v : values) {
+                if (show.hasCategory(v)) {
+                    out.add(i);
+                    return;
+                }
+            }
+        });
+        return out;
+    }
+
+    private CompressedBitmap filterDays(CompressedBitmap rowIds, int from, int to) {
+        CompressedBitmap out = new CompressedBitmap();
+        rowIds.forEach(i -> {
+            int key = rows.get(i).getDateKey();
+            if (key >= from && key <= to) out.add(i);
+        });
+        return out;
+    }
+
+    private Column<?>[] columns() {
+        return new Column<?>[] { byType, byRating, byCountry, byCategory, byYear, byMonth, all };
+    }
+
+    private void checkWritable() {
+        if (frozen) throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+    private static CompressedBitmap union(CompressedBitmap[] bitmaps) {
+        CompressedBitmap result = CompressedBitmap.EMPTY;
+        for (CompressedBitmap b : bitmaps) result = result.or(b);
+        return result;
+    }
+
+    private static void lookup(Column<String> column, String[] values, ArrayList<CompressedBitmap> found) {
+        for (String v : values) {
+            CompressedBitmap b = column.get(v.toLowerCase());
+            if (!b.isEmpty() && !found.contains(b)) found.add(b);
+        }
+    }
+
+    private static void putValue(Column<String> column, String value, int op) {
+        if (value == null || value.isBlank()) return;
+        column.put(value.toLowerCase(), op);
+    }
+
+    private static void putListed(Column<String> column, String value, int op) {
+        if (value == null) return;
+        for (String p : value.split(",")) {
+            String v = p.trim().toLowerCase();
+            if (!v.isEmpty()) column.put(v, op);
+        }
+    }
+
+    private static int month(LocalDate d) {
+        return d.getYear() * 12 + d.getMonthValue() - 1;
+    }
+
+    /**
+     * Bitmaps de um campo (valor -> rowIds) e as alterações ainda por aplicar.
+     * * O mapa é partilhado com a última fotografia (shared) até ser alterado;
+     * nessa altura é copiado, mas os bitmaps continuam partilhados.
+     */
+    private static final class Column<K> {
+        private Map<K, CompressedBitmap> bitmaps;
+        private final boolean sorted;
+        private boolean shared;
+
+        /** Pedidos pendentes de cada valor (null nas fotografias). */
+        private final HashMap<K, Delta> pending;
+
+        Column(boolean sorted) {
+            this.sorted = sorted;
+            this.bitmaps = sorted ? new TreeMap<>() : new HashMap<>();
+            this.pending = new HashMap<>();
+        }
+
+        private Column(Map<K, CompressedBitmap> bitmaps, boolean sorted) {
+            this.bitmaps = bitmaps;
+            this.sorted = sorted;
+            this.pending = null;
+        }
+
+        void put(K key, int op) {
+            pending.computeIfAbsent(key, k -> new Delta()).add(op);
+        }
+
+        CompressedBitmap get(K key) {
+            CompressedBitmap b = bitmaps.get(key);
+            return (b == null) ? CompressedBitmap.EMPTY : b;
+        }
+
+        NavigableMap<K, CompressedBitmap> range(K from, K to) {
+            return ((NavigableMap<K, CompressedBitmap>) bitmaps).subMap(from, true, to, true);
+        }
+
+        /**
+         * Aplica os pedidos pendentes, copiando o mapa se estiver numa fotografia.
+         * @return O número de bitmaps reescritos.
+         */
+        int flush() {
+            int rewritten = pending.size();
+            if (rewritten == 0) return 0;
+            if (shared) {
+                bitmaps = sorted ? new TreeMap<>(bitmaps) : new HashMap<>(bitmaps);
+                shared = false;
+            }
+            for (Map.Entry<K, Delta> e : pending.entrySet()) {
+                CompressedBitmap b = e.getValue().applyTo(get(e.getKey()));
+                if (b.isEmpty()) bitmaps.remove(e.getKey());
+                else bitmaps.put(e.getKey(), b);
+            }
+            pending.clear();
+            return rewritten;
+        }
+
+        Column<K> snapshot() {
+            flush();
+            shared = true;
+            return new Column<>(bitmaps, sorted);
+        }
+
+        void clear() {
+            bitmaps = sorted ? new TreeMap<>() : new HashMap<>();
+            shared = false;
+            pending.clear();
+        }
+    }
+
+    /**
+     * Pedidos de um valor desde a última fotografia, pela ordem em que foram
+     * feitos: rowId (acrescentar) ou ~rowId (retirar).
+     */
+    private static final class Delta {
+        private int[] ops = new int[4];
+        private int size;
+
+        void add(int op) {
+            if (size == ops.length) ops = Arrays.copyOf(ops, size * 2);
+            ops[size++] = op;
+        }
+
+        /**
+         * Aplica os pedidos ao bitmap: o último pedido de cada rowId decide se
+         * ele fica (por exemplo, um rowId retirado e reutilizado no mesmo lote).
+         */
+        CompressedBitmap applyTo(CompressedBitmap bitmap) {
+            long[] keyed = new long[size];
+            for (int i = 0; i < size; i++) {
+                int rowId = (ops[i] >= 0) ? ops[i] : ~ops[i];
+                keyed[i] = ((long) rowId << 32) | i;
+            }
+            Arrays.sort(keyed);
+            CompressedBitmap added = new CompressedBitmap();
+            CompressedBitmap removed = new CompressedBitmap();
+            for (int i = 0; i < size; i++) {
+                if (i + 1 < size && (keyed[i + 1] >>> 32) == (keyed[i] >>> 32)) continue;
+                int op = ops[(int) keyed[i]];
+                if (op >= 0) added.add(op);
+                else removed.add(~op);
+            }
+            return bitmap.andNot(removed).or(added);
+        }
+    }
+}
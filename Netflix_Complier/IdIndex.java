@@ -0,0 +1,279 @@
+/**
+ * Índice secundário que associa identificadores (show_id) ao rowId do título.
+ * As chaves são comparadas sem distinção entre maiúsculas e minúsculas: dois
+ * ids são iguais se coincidirem com cada carácter em maiúscula e depois em
+ * minúscula.
+ * * A tabela está dividida em STRIPES partes, escolhidas pelos bits altos do
+ * hash; cada parte é uma tabela de endereçamento aberto (sondagem linear)
+ * num único int[] com pares (hash, rowId + 1). O id não é guardado: é lido
+ * do título na RowTable para confirmar a chave.
+ * * snapshot devolve uma cópia só de leitura, em O(STRIPES), que partilha as
+ * partes com o índice; o índice copia uma parte partilhada antes de a
+ * alterar pela primeira vez, pelo que cada escrita copia no máximo uma parte.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class IdIndex {
+
+    /** Número de partes (potência de 2). */
+    static final int STRIPES = 1024;
+    private static final int STRIPE_SHIFT = 32 - Integer.numberOfTrailingZeros(STRIPES);
+
+    /** Pares (hash, rowId + 1) de cada parte; rowId + 1 == 0 marca uma posição livre. */
+    private static final class Stripe {
+        int[] slots;
+        int size;
+        int epoch;
+
+        Stripe(int[] slots, int size, int epoch) {
+            this.slots = slots;
+            this.size = size;
+            this.epoch = epoch;
+        }
+    }
+
+    /** Tabela de linhas onde se leem os ids dos títulos indexados. */
+    private final RowTable rows;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /** Época atual: as partes de épocas anteriores podem estar numa fotografia. */
+    private int epoch;
+
+    private int size;
+
+    /** Indica se o índice é uma fotografia (só de leitura). */
+    private final boolean frozen;
+
+    /**
+     * Cria um índice vazio.
+     * @param rows A tabela de linhas onde os títulos indexados são registados.
+     */
+    public IdIndex(RowTable rows) {
+        this.rows = rows;
+        this.frozen = false;
+        clear();
+    }
+
+    private IdIndex(RowTable rows, Stripe[] stripes, int size) {
+        this.rows = rows;
+        System.arraycopy(stripes, 0, this.stripes, 0, STRIPES);
+        this.size = size;
+        this.frozen = true;
+    }
+
+    /**
+     * Associa o rowId ao identificador, substituindo um rowId anterior.
+     * O título já tem de estar na RowTable.
+     * @param id O identificador.
+     * @param rowId O rowId do título.
+     * @return O rowId anterior ou -1 se o identificador não existia.
+     */
+    public int put(String id, int rowId) {
+        checkWritable();
+        int h = hash(id);
+        Stripe s = own(h >>> STRIPE_SHIFT);
+        int slot = find(s, h, id);
+        if (slot >= 0) {
+            int previous = s.slots[slot + 1] - 1;
+            s.slots[slot + 1] = rowId + 1;
+            return previous;
+        }
+        if ((s.size + 1) * 4 > (s.slots.length >> 1) * 3) grow(s);
+        int mask = (s.slots.length >> 1) - 1;
+        int i = h & mask;
+        while (s.slots[2 * i + 1] != 0) i = (i + 1) & mask;
+        s.slots[2 * i] = h;
+        s.slots[2 * i + 1] = rowId + 1;
+        s.size++;
+        size++;
+        return -1;
+    }
+
+    /**
+     * Obtém o rowId associado ao identificador.
+     * @param id O identificador a procurar.
+     * @return O rowId ou -1 se não existir.
+     */
+    public int get(String id) {
+        int h = hash(id);
+        Stripe s = stripes[h >>> STRIPE_SHIFT];
+        int slot = find(s, h, id);
+        return (slot < 0) ? -1 : s.slots[slot + 1] - 1;
+    }
+
+    /**
+     * Remove o identificador do índice (o título ainda tem de estar na RowTable).
+     * As posições seguintes da mesma sequência recuam, sem marcas de apagado.
+     * @param id O identificador a remover.
+     * @return O rowId removido ou -1 se não existia.
+     */
+    public int remove(String id) {
+        checkWritable();
+        int h = hash(id);
+        Stripe s = stripes[h >>> STRIPE_SHIFT];
+        if (find(s, h, id) < 0) return -1;
+        s = own(h >>> STRIPE_SHIFT);
+        int[] slots = s.slots;
+        int slot = find(s, h, id);
+        int removed = slots[slot + 1] - 1;
+
+        int mask = (slots.length >> 1) - 1;
+        int hole = slot >> 1;
+        for (int i = (hole + 1) & mask; slots[2 * i + 1] != 0; i = (i + 1) & mask) {
+            int home = slots[2 * i] & mask;
+            // A entrada em i pode ocupar o buraco se a sua posição ideal não estiver entre eles.
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                slots[2 * hole] = slots[2 * i];
+                slots[2 * hole + 1] = slots[2 * i + 1];
+                hole = i;
+            }
+        }
+        slots[2 * hole] = 0;
+        slots[2 * hole + 1] = 0;
+        s.size--;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Remove todos os identificadores do índice (as fotografias mantêm-se).
+     */
+    public void clear() {
+        checkWritable();
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe(new int[8], 0, epoch);
+        size = 0;
+    }
+
+    public int size() { return size; }
+
+    /**
+     * Devolve uma fotografia do índice, que não muda com as alterações seguintes.
+     * @param rowsView A fotografia da RowTable tirada no mesmo momento.
+     * @return O índice só de leitura.
+     */
+    public IdIndex snapshot(RowTable rowsView) {
+        checkWritable();
+        IdIndex view = new IdIndex(rowsView, stripes, size);
+        epoch++;
+        return view;
+    }
+
+    /**
+     * Devolve uma cópia dos pares de uma parte com os rowIds trocados pelas
+     * posições indicadas (usado pelo SnapshotFile, que grava os títulos pela
+     * ordem da lista). As posições dos pares dependem só do hash do id.
+     * @param stripe A parte (0 .. STRIPES - 1).
+     * @param position A posição de cada rowId.
+     * @return Os pares (hash, posição + 1), com 0 nas posições livres.
+     */
+    int[] exportStripe(int stripe, int[] position) {
+        int[] slots = stripes[stripe].slots.clone();
+        for (int k = 1; k < slots.length; k += 2) {
+            if (slots[k] != 0) slots[k] = position[slots[k] - 1] + 1;
+        }
+        return slots;
+    }
+
+    /**
+     * Substitui uma parte pelos pares gravados com exportStripe (carregamento
+     * de uma fotografia binária, com os títulos já na RowTable e com rowIds
+     * iguais às posições gravadas).
+     * @param stripe A parte (0 .. STRIPES - 1).
+     * @param slots Os pares (hash, rowId + 1); o array passa a pertencer ao índice.
+     */
+    void importStripe(int stripe, int[] slots) {
+        checkWritable();
+        if (Integer.bitCount(slots.length) != 1 || slots.length < 2) throw new IllegalArgumentException("stripe size");
+        int count = 0;
+        for (int k = 1; k < slots.length; k += 2) if (slots[k] != 0) count++;
+        size += count - stripes[stripe].size;
+        stripes[stripe] = new Stripe(slots, count, epoch);
+    }
+
+    // UTILITÁRIOS.
+
+    /**
+     * Forma normalizada do identificador; não cria uma nova string se já o estiver.
+     * Dois ids são iguais para o índice se e só se as suas formas normalizadas o forem.
+     * @param id O identificador.
+     * @return A forma normalizada.
+     */
+    static String key(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (fold(c) != c) {
+                char[] chars = id.toCharArray();
+                for (int j = i; j < chars.length; j++) chars[j] = fold(chars[j]);
+                return new String(chars);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Posição (no array de pares) da entrada com o id, ou -1.
+     */
+    private int find(Stripe s, int h, String id) {
+        int[] slots = s.slots;
+        int mask = (slots.length >> 1) - 1;
+        for (int i = h & mask; slots[2 * i + 1] != 0; i = (i + 1) & mask) {
+            if (slots[2 * i] == h) {
+                NetflixShow show = rows.get(slots[2 * i + 1] - 1);
+                if (show != null && sameId(show.getShowId(), id)) return 2 * i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Devolve a parte pronta a ser alterada, copiando-a se estiver numa fotografia.
+     */
+    private Stripe own(int index) {
+        Stripe s = stripes[index];
+        if (s.epoch != epoch) {
+            s = new Stripe(s.slots.clone(), s.size, epoch);
+            stripes[index] = s;
+        }
+        return s;
+    }
+
+    private static void grow(Stripe s) {
+        int[] old = s.slots;
+        int[] slots = new int[old.length * 2];
+        int mask = (slots.length >> 1) - 1;
+        for (int k = 0; k < old.length; k += 2) {
+            if (old[k + 1] == 0) continue;
+            int i = old[k] & mask;
+            while (slots[2 * i + 1] != 0) i = (i + 1) & mask;
+            slots[2 * i] = old[k];
+            slots[2 * i + 1] = old[k + 1];
+        }
+        s.slots = slots;
+    }
+
+    /** Hash da forma normalizada, misturado para os bits altos escolherem a parte. */
+    private static int hash(String id) {
+        int h = 0;
+        for (int i = 0; i < id.length(); i++) h = 31 * h + fold(id.charAt(i));
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameId(String a, String b) {
+        if (a.length() != b.length()) return false;
+        for (int i = 0; i < a.length(); i++) {
+            char x = a.charAt(i), y = b.charAt(i);
+            if (x != y && fold(x) != fold(y)) return false;
+        }
+        return true;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private void checkWritable() {
+        if (frozen) throw new UnsupportedOperationException("read-only snapshot");
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latências com baldes log-lineares (à maneira do HdrHistogram).
+ * * Cada potência de 2 é dividida em SUB_BUCKETS baldes iguais, pelo que o erro
+ * relativo de um percentil é no máximo 1/SUB_BUCKETS (6,25%), para valores de
+ * 1 ns a 2^63 ns, com um array fixo de contadores. Registar um valor custa um
+ * incremento atómico (sem bloqueios) e pode ser feito por várias threads.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class LatencyHistogram implements Metrics.LatencyMXBean {
+
+    /** Bits de subdivisão de cada potência de 2 (16 baldes). */
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) << SUB_BITS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Regista uma medição.
+     * @param nanos A duração em nanossegundos.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    @Override
+    public long getCount() { return count.sum(); }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return (n == 0) ? 0 : sum.sum() / 1e6 / n;
+    }
+
+    @Override
+    public double getMaxMillis() { return max.get() / 1e6; }
+
+    @Override
+    public double getP50Millis() { return percentile(50) / 1e6; }
+
+    @Override
+    public double getP99Millis() { return percentile(99) / 1e6; }
+
+    /**
+     * Devolve o valor abaixo do qual ficam p% das medições (limite superior do
+     * balde, nunca acima do máximo registado).
+     * @param p O percentil (0 a 100).
+     * @return O valor em nanossegundos, ou 0 se não houver medições.
+     */
+    public long percentile(double p) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) total += counts.get(i);
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * p / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    // UTILITÁRIOS.
+
+    /** Valores abaixo de SUB_BUCKETS têm balde próprio; os restantes, pela potência de 2 e pelos bits seguintes. */
+    private static int bucket(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exp = (index >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = index & (SUB_BUCKETS - 1);
+        long width = 1L << (exp - SUB_BITS);
+        return ((long) (SUB_BUCKETS + sub) << (exp - SUB_BITS)) + width - 1;
+    }
+}
@@ -1,11 +1,12 @@
 /**
  * Interface que define o contrato para o Tipo Abstrato de Dados (ADT) List.
  * Permite adicionar, remover e aceder a elementos de forma abstrata.
+ * A lista é iterável pela ordem dos seus elementos.
  * * @param <T> O tipo de dados a ser armazenado na lista.
  * @author Simão Ferreira / Miguel Eusébio
- * @version 1.1
+ * @version 1.2
  */
-public interface List<T> {
+public interface List<T> extends Iterable<T> {
 
     /**
      * Adiciona um elemento à lista.
@@ -43,4 +44,4 @@ public interface List<T> {
      * Remove todos os elementos da lista, deixando-a vazia.
      */
     void clear();
-}
\ No newline at end of file
+}
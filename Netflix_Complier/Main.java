@@ -1,20 +1,88 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * Classe de arranque da aplicação.
- * Apenas instancia o gestor e inicia a execução.
+ * Instancia o gestor e inicia a execução interativa ou, com --script ou
+ * --no-paging, a execução não interativa dos comandos, com --serve,
+ * o servidor HTTP de consultas, com --shards, o catálogo particionado por
+ * vários processos, ou, com --generate, o gerador de dados.
  * @author Simão Ferreira / Miguel Eusébio
- * @version 1.1
+ * @version 1.2
  */
 public class Main {
 
     /**
      * Ponto de entrada da aplicação.
-     * @param args Argumentos de linha de comandos.
+     * @param args Argumentos de linha de comandos:
+     *             --script &lt;ficheiro&gt; executa os comandos do ficheiro;
+     *             --serve &lt;porta&gt; [ficheiros...] serve consultas HTTP/JSON;
+     *             --generate &lt;linhas&gt; &lt;ficheiro&gt; [semente] gera um CSV sintético;
+     *             --shards &lt;n&gt; [ficheiros...] executa os comandos do stdin sobre n partições;
+     *             --shard-worker é uma partição (iniciada pelo coordenador);
+     *             --no-paging executa os comandos lidos do stdin sem paginação;
+     *             --no-metrics (antes dos restantes) desativa as métricas.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && args[0].equals("--no-metrics")) {
+            // Tem de ser definido antes de a classe Metrics ser carregada.
+            System.setProperty("netflix.metrics", "false");
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         // Cria a instância do gestor NetflixManager.
         NetflixManager manager = new NetflixManager();
-        
-        // Inicia o programa.
-        manager.run();
+
+        if (args.length >= 2 && args[0].equals("--script")) {
+            Path script = Path.of(args[1]);
+            if (!Files.exists(script)) {
+                System.out.println("File not found");
+                return;
+            }
+            runScript(manager, Files.readAllLines(script));
+        } else if (args.length >= 2 && args[0].equals("--serve")) {
+            // Carrega os ficheiros indicados (ou o dataset por omissão) e fica a servir pedidos.
+            if (args.length == 2) manager.loadFile("netflix_movies/netflix_titles.csv", false);
+            for (int i = 2; i < args.length; i++) manager.loadFile(args[i], true);
+            CatalogServer server = new CatalogServer(manager, Integer.parseInt(args[1]));
+            server.start();
+            System.out.println("Listening on http://localhost:" + server.getPort() + "/");
+        } else if (args.length >= 2 && args[0].equals("--shards")) {
+            PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 20), false);
+            try (ShardCoordinator coordinator = new ShardCoordinator(Integer.parseInt(args[1]), out)) {
+                ArrayList<String> lines = new ArrayList<>();
+                for (int i = 2; i < args.length; i++) lines.add("LOADF " + args[i]);
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
+                    for (String line = in.readLine(); line != null; line = in.readLine()) lines.add(line);
+                }
+                coordinator.run(lines);
+            }
+        } else if (args.length >= 1 && args[0].equals("--shard-worker")) {
+            new ShardWorker(manager).serve();
+        } else if (args.length >= 3 && args[0].equals("--generate")) {
+            CatalogGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length >= 1 && args[0].equals("--no-paging")) {
+            ArrayList<String> lines = new ArrayList<>();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
+                for (String line = in.readLine(); line != null; line = in.readLine()) lines.add(line);
+            }
+            runScript(manager, lines);
+        } else {
+            // Inicia o programa.
+            manager.run();
+        }
+    }
+
+    private static void runScript(NetflixManager manager, Iterable<String> lines) throws Exception {
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 20), false);
+        new ScriptRunner(manager, out).run(lines);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,234 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Contadores e histogramas de desempenho da aplicação (comando METRICS e JMX).
+ * * Regista a latência de cada comando (LatencyHistogram), as linhas lidas e
+ * rejeitadas por motivo, os bytes lidos dos CSV, a taxa de acerto dos
+ * índices (show_id, trigramas) e os bitmaps do FILTER reescritos em cada
+ * fotografia. Os valores são somados com LongAdder, sem bloqueios, por
+ * qualquer thread.
+ * * Ficam também disponíveis por JMX (jconsole): netflix:type=Catalog com os
+ * contadores e netflix:type=Command,name=&lt;COMANDO&gt; com as latências.
+ * * Com -Dnetflix.metrics=false (ou Main --no-metrics) ENABLED é false e,
+ * por ser uma constante, o JIT elimina todo o código de registo.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public final class Metrics {
+
+    /** Indica se as métricas estão ativas (fixado no arranque). */
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("netflix.metrics"));
+
+    /** Latências dos comandos expostas por JMX. */
+    public interface LatencyMXBean {
+        long getCount();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    /** Contadores do catálogo expostos por JMX. */
+    public interface CatalogMXBean {
+        int getSize();
+        long getRowsParsed();
+        Map<String, Long> getRowsRejected();
+        long getBytesRead();
+        long getListComparisons();
+        long getListNodeHops();
+        double getIdIndexHitRate();
+        double getTrigramHitRate();
+        long getFilterQueries();
+        double getFilterBitmapsPerSnapshot();
+        void reset();
+    }
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> COMMANDS = new ConcurrentHashMap<>();
+    private static final LongAdder ROWS_PARSED = new LongAdder();
+    private static final LongAdder[] ROWS_REJECTED = new LongAdder[CsvLoader.Reject.values().length];
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder ID_LOOKUPS = new LongAdder();
+    private static final LongAdder ID_HITS = new LongAdder();
+    private static final LongAdder TRIGRAM_CANDIDATES = new LongAdder();
+    private static final LongAdder TRIGRAM_MATCHES = new LongAdder();
+    private static final LongAdder FILTER_QUERIES = new LongAdder();
+    private static final LongAdder FILTER_SNAPSHOTS = new LongAdder();
+    private static final LongAdder FILTER_BITMAPS = new LongAdder();
+
+    static {
+        for (int i = 0; i < ROWS_REJECTED.length; i++) ROWS_REJECTED[i] = new LongAdder();
+    }
+
+    private Metrics() { }
+
+    // REGISTO.
+
+    /**
+     * Regista a duração de um comando.
+     * @param command O nome do comando, em maiúsculas.
+     * @param nanos A duração em nanossegundos.
+     */
+    public static void command(String command, long nanos) {
+        if (!ENABLED) return;
+        LatencyHistogram h = COMMANDS.get(command);
+        if (h == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            h = COMMANDS.putIfAbsent(command, created);
+            if (h == null) {
+                h = created;
+                register("netflix:type=Command,name=" + command, created);
+            }
+        }
+        h.record(nanos);
+    }
+
+    /**
+     * Regista o resultado da leitura de um bloco de um CSV.
+     * @param parsed Linhas convertidas em títulos.
+     * @param rejectedBy Linhas rejeitadas, por motivo (índice CsvLoader.Reject.ordinal()).
+     * @param bytes Bytes lidos.
+     */
+    public static void rows(int parsed, int[] rejectedBy, long bytes) {
+        if (!ENABLED) return;
+        ROWS_PARSED.add(parsed);
+        for (int i = 0; i < rejectedBy.length; i++) {
+            if (rejectedBy[i] > 0) ROWS_REJECTED[i].add(rejectedBy[i]);
+        }
+        BYTES_READ.add(bytes);
+    }
+
+    /** Regista uma pesquisa no índice de show_id. */
+    public static void idLookup(boolean hit) {
+        if (!ENABLED) return;
+        ID_LOOKUPS.increment();
+        if (hit) ID_HITS.increment();
+    }
+
+    /** Regista uma pesquisa por trigramas: candidatos verificados e quantos eram resultados. */
+    public static void trigramSearch(int candidates, int matches) {
+        if (!ENABLED) return;
+        TRIGRAM_CANDIDATES.add(candidates);
+        TRIGRAM_MATCHES.add(matches);
+    }
+
+    /** Regista um FILTER. */
+    public static void filterQuery() {
+        if (!ENABLED) return;
+        FILTER_QUERIES.increment();
+    }
+
+    /**
+     * Regista uma fotografia do FilterIndex.
+     * @param bitmaps Os bitmaps reescritos ao aplicar as alterações pendentes.
+     */
+    public static void filterSnapshot(int bitmaps) {
+        if (!ENABLED) return;
+        FILTER_SNAPSHOTS.increment();
+        FILTER_BITMAPS.add(bitmaps);
+    }
+
+    // CONSULTA.
+
+    /**
+     * Escreve todas as métricas.
+     * @param out O destino.
+     * @param list A lista principal (comparações, nós percorridos e tamanho).
+     */
+    public static void print(PrintStream out, SortedList<?> list) {
+        if (!ENABLED) {
+            out.println("Metrics disabled (-Dnetflix.metrics=false)");
+            return;
+        }
+        out.println("Command     |  Count |  Mean ms |   p50 ms |   p99 ms |   Max ms");
+        out.println("------------|--------|----------|----------|----------|---------");
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(COMMANDS).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            out.printf("%-11s | %6d | %8.3f | %8.3f | %8.3f | %8.3f%n", e.getKey(), h.getCount(),
+                h.getMeanMillis(), h.getP50Millis(), h.getP99Millis(), h.getMaxMillis());
+        }
+        out.println();
+        out.println("Rows parsed: " + ROWS_PARSED.sum() + ", rejected: " + rejectedSummary()
+            + ", bytes read: " + BYTES_READ.sum());
+        out.println("SortedList: " + list.size() + " shows, " + list.getComparisons() + " comparisons, "
+            + list.getNodeHops() + " node hops");
+        out.printf("Indexes: show_id %d lookups (%.1f%% hits), trigram %d candidates (%.1f%% matches), "
+            + "filter %d queries (%.1f bitmaps rewritten per snapshot)%n",
+            ID_LOOKUPS.sum(), percent(ID_HITS.sum(), ID_LOOKUPS.sum()),
+            TRIGRAM_CANDIDATES.sum(), percent(TRIGRAM_MATCHES.sum(), TRIGRAM_CANDIDATES.sum()),
+            FILTER_QUERIES.sum(), ratio(FILTER_BITMAPS.sum(), FILTER_SNAPSHOTS.sum()));
+    }
+
+    /**
+     * Põe a zero todos os contadores e histogramas.
+     */
+    public static void reset() {
+        for (LatencyHistogram h : COMMANDS.values()) h.reset();
+        for (LongAdder a : ROWS_REJECTED) a.reset();
+        for (LongAdder a : new LongAdder[] { ROWS_PARSED, BYTES_READ, ID_LOOKUPS, ID_HITS,
+                TRIGRAM_CANDIDATES, TRIGRAM_MATCHES, FILTER_QUERIES, FILTER_SNAPSHOTS, FILTER_BITMAPS }) a.reset();
+    }
+
+    /**
+     * Publica os contadores do catálogo por JMX (uma vez por processo).
+     * @param list A lista principal do gestor.
+     */
+    public static void register(SortedList<?> list) {
+        if (!ENABLED) return;
+        register("netflix:type=Catalog", new CatalogMXBean() {
+            public int getSize() { return list.size(); }
+            public long getRowsParsed() { return ROWS_PARSED.sum(); }
+            public Map<String, Long> getRowsRejected() {
+                Map<String, Long> m = new TreeMap<>();
+                for (CsvLoader.Reject r : CsvLoader.Reject.values()) m.put(r.name(), ROWS_REJECTED[r.ordinal()].sum());
+                return m;
+            }
+            public long getBytesRead() { return BYTES_READ.sum(); }
+            public long getListComparisons() { return list.getComparisons(); }
+            public long getListNodeHops() { return list.getNodeHops(); }
+            public double getIdIndexHitRate() { return percent(ID_HITS.sum(), ID_LOOKUPS.sum()); }
+            public double getTrigramHitRate() { return percent(TRIGRAM_MATCHES.sum(), TRIGRAM_CANDIDATES.sum()); }
+            public long getFilterQueries() { return FILTER_QUERIES.sum(); }
+            public double getFilterBitmapsPerSnapshot() { return ratio(FILTER_BITMAPS.sum(), FILTER_SNAPSHOTS.sum()); }
+            public void reset() { Metrics.reset(); }
+        });
+    }
+
+    // UTILITÁRIOS.
+
+    private static void register(String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) server.registerMBean(bean, objectName);
+        } catch (JMException e) {
+            // Já registado por outra instância ou JMX indisponível: as métricas continuam no METRICS.
+        }
+    }
+
+    private static String rejectedSummary() {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (CsvLoader.Reject r : CsvLoader.Reject.values()) {
+            long n = ROWS_REJECTED[r.ordinal()].sum();
+            total += n;
+            if (n > 0) sb.append(sb.length() == 0 ? " (" : ", ").append(n).append(' ').append(r.label);
+        }
+        return total + (sb.length() == 0 ? "" : sb + ")");
+    }
+
+    private static double percent(long part, long total) {
+        return ratio(100 * part, total);
+    }
+
+    private static double ratio(long part, long total) {
+        return (total == 0) ? 0 : (double) part / total;
+    }
+}
@@ -1,24 +1,191 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * Classe gestora da aplicação "Netflix Manager".
  * Contém toda a lógica de negócio e manipulação de dados, sem métodos estáticos.
+ * * Pode ser partilhada por várias threads: as alterações são feitas uma de
+ * cada vez (writeLock) e, no fim de cada lote, é publicada uma nova
+ * CatalogSnapshot imutável, com fotografias da lista e de todos os índices
+ * que partilham a estrutura com os originais (publicar não copia a coleção).
+ * Todas as consultas (snapshot, findById e os comandos LIST, GET, STATS,
+ * MTIME, SEARCHT, SEARCHC, FILTER, SUGGEST, RELATED, RATINGS, CATEGORIES e
+ * SEGMENT) leem a última fotografia e nunca bloqueiam.
+ * * Com um catálogo em disco aberto (DISK OPEN), LIST, GET, DEL, MTIME e
+ * SEGMENT passam a usar o ficheiro (DiskCatalog) em vez da coleção em memória.
  * * @author Simão Ferreira / Miguel Eusébio
- * @version 1.1
+ * @version 1.2
  */
 public class NetflixManager {
+    /** Linhas do MERGEF aplicadas em cada lote (um writeLock e uma fotografia por lote). */
+    private static final int MERGE_BATCH = 4096;
+
+    /** Memória máxima por omissão da cache de resultados, em MB (-Dnetflix.cache.mb). */
+    private static final int DEFAULT_CACHE_MB = 16;
+
+    /** Memória máxima por omissão de cada ordenação externa, em MB (-Dnetflix.sort.mb). */
+    private static final int DEFAULT_SORT_MB = 64;
+
+    /** Número de sugestões do SUGGEST quando não é indicado. */
+    private static final int DEFAULT_SUGGESTIONS = 10;
+
+    /** Maior offset + limit de um MTIME em disco respondido com um heap em vez de uma ordenação externa. */
+    private static final int DISK_PAGE_HEAP_MAX = 100_000;
+
+    /** Número de títulos semelhantes do RELATED quando não é indicado. */
+    private static final int DEFAULT_RELATED = 10;
+
+    /** Com MERGEF --tail: espera por omissão sem novas linhas e intervalo entre leituras. */
+    private static final int DEFAULT_TAIL_SECONDS = 10;
+    private static final long TAIL_POLL_MILLIS = 200;
+
     /** Lista principal onde são carregados os dados. */
     private SortedList<NetflixShow> shows;
 
+    /** Índice secundário show_id -> rowId. */
+    private IdIndex idIndex;
+
+    /** Tabela rowId -> título, partilhada pelos índices secundários. */
+    private RowTable rows;
+
+    /** Índice de trigramas sobre os títulos (SEARCHT). */
+    private TrigramIndex titleIndex;
+
+    /** Índice de trigramas sobre os nomes do elenco (SEARCHC). */
+    private TrigramIndex castIndex;
+
+    /** Índice das durações dos filmes (MTIME). */
+    private DurationIndex durationIndex;
+
+    /** Índice MinHash/LSH do elenco, realizadores, categorias e países (RELATED). */
+    private SimilarityIndex similarityIndex;
+
+    /** Bitmaps de tipo, rating, país, categoria, ano e mês de adição (FILTER). */
+    private FilterIndex filterIndex;
+
+    /**
+     * Termos (títulos e nomes) com as datas de adição (SUGGEST). É construído
+     * no primeiro SUGGEST (null até lá), para que os carregamentos de quem
+     * nunca o usa não paguem a recolha dos termos; a partir daí é mantido como
+     * os restantes índices.
+     */
+    private SuggestIndex suggestIndex;
+
+    /** Agregados mantidos a cada alteração (STATS, RATINGS, CATEGORIES). */
+    private CatalogStats stats;
+
+    /** Leitor dos ficheiros CSV (sequencial ou em paralelo). */
+    private CsvLoader loader;
+
+    /** Índices secundários notificados em cada carregamento, remoção e limpeza. */
+    private ArrayList<ShowIndex> indexes;
+
+    /** Resultados de SEARCHT, SEARCHC e MTIME da versão atual da coleção. */
+    private final ResultCache cache = new ResultCache(Long.getLong("netflix.cache.mb", DEFAULT_CACHE_MB) << 20);
+
+    /** Memória máxima (estimada) de cada ordenação do SEGMENT e do catálogo em disco. */
+    private final long sortBytes = Long.getLong("netflix.sort.mb", DEFAULT_SORT_MB) << 20;
+
+    /** Catálogo em disco aberto com DISK OPEN (null: os comandos usam a coleção em memória). */
+    private volatile DiskCatalog disk;
+
+    /** Bloqueio dos escritores; protege a lista principal e os índices acima. */
+    private final Object writeLock = new Object();
+
+    /** Número de lotes de alterações publicados. */
+    private long version;
+
+    /** Última fotografia publicada, lida pelas outras threads sem bloqueios. */
+    private volatile CatalogSnapshot snapshot;
+
+    /** Saída dos comandos de cada thread (System.out por omissão). */
+    private final ThreadLocal<PrintStream> out = ThreadLocal.withInitial(() -> System.out);
+
+    /** Entrada para confirmações e paginação (null no modo não interativo: confirma sempre). */
+    private Scanner input;
+
+    /** Indica se as listagens param a cada página à espera do utilizador. */
+    private boolean paging = true;
+
     /**
-     * Construtor do gestor. Inicializa a lista de dados.
+     * Contadores de um MERGEF.
+     */
+    private static class MergeResult {
+        int records, inserted, updated, deleted, unchanged, rejected;
+        int[] rejectedBy = new int[CsvLoader.Reject.values().length];
+        long bytes, nanos;
+    }
+
+    /**
+     * Um título num grupo do SEGMENT (um título com vários países ou categorias dá várias entradas).
+     */
+    private static class SegmentEntry {
+        final String key;
+        final NetflixShow show;
+
+        SegmentEntry(String key, NetflixShow show) {
+            this.key = key;
+            this.show = show;
+        }
+    }
+
+    private static final ExternalSorter.Codec<SegmentEntry> SEGMENT_CODEC = new ExternalSorter.Codec<SegmentEntry>() {
+        public void write(DataOutput out, SegmentEntry e) throws IOException {
+            out.writeUTF(e.key);
+            DiskCatalog.writeShow(out, e.show);
+        }
+
+        public SegmentEntry read(DataInput in) throws IOException {
+            String key = in.readUTF();
+            return new SegmentEntry(key, DiskCatalog.readShow(in));
+        }
+    };
+
+    /**
+     * Construtor do gestor. Inicializa a lista de dados e os índices.
      */
     public NetflixManager() {
         this.shows = new SortedList<>();
+        this.rows = new RowTable();
+        this.idIndex = new IdIndex(rows);
+        this.titleIndex = new TrigramIndex(rows, NetflixShow::getTitle, false);
+        this.castIndex = new TrigramIndex(rows, NetflixShow::getCast, NetflixShow::castContains, true);
+        this.durationIndex = new DurationIndex(rows);
+        this.similarityIndex = new SimilarityIndex(rows);
+        this.filterIndex = new FilterIndex(rows);
+        this.stats = new CatalogStats();
+        this.loader = new CsvLoader();
+        this.indexes = new ArrayList<>();
+        indexes.add(titleIndex);
+        indexes.add(castIndex);
+        indexes.add(durationIndex);
+        indexes.add(similarityIndex);
+        indexes.add(filterIndex);
+        indexes.add(stats);
+        Metrics.register(shows);
+        publish();
     }
 
     /**
@@ -26,321 +193,1174 @@ public class NetflixManager {
      */
     public void run() {
         Scanner scanner = new Scanner(System.in);
+        input = scanner;
         String command = "";
 
         System.out.println("Netflix Manager - ATAD 2025. Digite um comando.");
 
-        while (!command.equalsIgnoreCase("QUIT")) {
+        while (!command.equalsIgnoreCase("QUIT") && scanner.hasNextLine()) {
             System.out.print("> ");
             String line = scanner.nextLine().trim();
             if (line.isEmpty()) continue;
+            command = execute(line);
+        }
+        scanner.close();
+    }
+
+    /**
+     * Executa um comando, escrevendo o resultado na saída indicada. Pode ser
+     * chamado por várias threads em simultâneo (cada uma com a sua saída) para
+     * comandos que apenas leem a coleção.
+     * @param line A linha do comando.
+     * @param output Onde escrever o resultado.
+     * @return O nome do comando, em maiúsculas.
+     */
+    public String execute(String line, PrintStream output) {
+        PrintStream previous = out.get();
+        out.set(output);
+        try {
+            return execute(line);
+        } finally {
+            out.set(previous);
+        }
+    }
+
+    /**
+     * Ativa ou desativa a paginação das listagens (pausa a cada 30 linhas).
+     * @param paging false para listar tudo de seguida (modo não interativo).
+     */
+    public void setPaging(boolean paging) {
+        this.paging = paging;
+    }
+
+    private String execute(String line) {
+        String[] parts = line.split("\\s+");
+        String command = parts[0].toUpperCase();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        boolean known = true;
+
+        try {
+            switch (command) {
+                case "LOADF":
+                    if (parts.length < 2) out().println("Erro: LOADF <filename> [--parallel]");
+                    else loadFile(parts[1], parts.length > 2 && parts[2].equalsIgnoreCase("--parallel"));
+                    break;
+                case "LOADD": loadFile("netflix_movies/netflix_titles.csv", false); break;
+                case "LOADB":
+                    if (parts.length < 2) out().println("Erro: LOADB <filename>");
+                    else loadBinary(parts[1]);
+                    break;
+                case "MERGEF":
+                    if (parts.length < 2 || (parts.length > 2 && !parts[2].equalsIgnoreCase("--tail")))
+                        out().println("Erro: MERGEF <filename> [--tail [seconds]]");
+                    else mergeFile(parts[1], parts.length < 3 ? -1 : parts.length > 3 ? Integer.parseInt(parts[3]) : DEFAULT_TAIL_SECONDS);
+                    break;
+                case "SAVE":
+                    if (parts.length < 2) out().println("Erro: SAVE <filename>");
+                    else saveFile(parts[1]);
+                    break;
+                case "DEL":
+                    if (parts.length < 2) out().println("Erro: DEL <id>");
+                    else deleteShow(parts[1]);
+                    break;
+                case "CLEAR": out().println(clearShows() + " shows deleted"); break;
+                case "LIST":
+                    DiskCatalog d = disk;
+                    if (d == null) listShows(snapshot);
+                    else listShows(parts.length > 1 ? d.from(line.substring(5).trim()) : d);
+                    break;
+                case "GET":
+                    if (parts.length < 2) out().println("Erro: GET <id>");
+                    else getShow(parts[1]);
+                    break;
+                case "STATS":
+                    if (parts.length < 2) showStats();
+                    else if (parts.length == 3 && parts[1].equalsIgnoreCase("BY")) showStatsBy(parts[2].toUpperCase());
+                    else out().println("Erro: STATS [BY rating|country|year]");
+                    break;
+                case "MTIME":
+                    // As opções vêm aos pares (nome e valor): uma opção sem valor é um erro.
+                    if (parts.length < 3 || parts.length % 2 == 0) out().println("Erro: MTIME <min> <max> [LIMIT <n>] [OFFSET <k>]");
+                    else mtime(parts);
+                    break;
+                case "SEARCHT":
+                    if (parts.length < 2) out().println("Erro: SEARCHT <texto>");
+                    else searchTitle(line.substring(8)); 
+                    break;
+                case "SEARCHC":
+                    if (parts.length < 2) out().println("Erro: SEARCHC <texto>");
+                    else searchCast(line.substring(8));
+                    break;
+                case "FILTER":
+                    if (parts.length < 2) out().println("Erro: FILTER campo=valor[|valor] ... (type, rating, country, category, year=de..até, added=de..até)");
+                    else filterShows(line.substring(7));
+                    break;
+                case "SUGGEST":
+                    if (parts.length < 2) out().println("Erro: SUGGEST <prefixo> [k]");
+                    else suggest(line.substring(8).trim());
+                    break;
+                case "RELATED":
+                    if (parts.length < 2 || (parts[1].equalsIgnoreCase("ALL") && parts.length < 3))
+                        out().println("Erro: RELATED <id> [k] | RELATED ALL <filename> [k]");
+                    else related(parts);
+                    break;
+                case "RATINGS": showUniqueRatings(); break;
+                case "CATEGORIES": showUniqueCategories(); break;
+                case "SEGMENT": segmentData(parts.length < 2 ? "" : parts[1].toUpperCase()); break;
+                case "COMPACT": compactShows(); break;
+                case "METRICS":
+                    if (parts.length > 1 && parts[1].equalsIgnoreCase("RESET")) {
+                        Metrics.reset();
+                        out().println("Metrics reset");
+                    } else {
+                        Metrics.print(out(), shows);
+                        out().println("Result cache: " + cache.summary());
+                    }
+                    break;
+                case "CACHE":
+                    if (parts.length > 1 && parts[1].equalsIgnoreCase("CLEAR")) {
+                        cache.clear();
+                        out().println("Cache cleared");
+                    } else if (parts.length > 2 && parts[1].equalsIgnoreCase("SIZE")) {
+                        cache.setMaxBytes(Long.parseLong(parts[2]) << 20);
+                        out().println("Cache size set to " + parts[2] + " MB");
+                    } else if (parts.length > 1) {
+                        out().println("Erro: CACHE [CLEAR | SIZE <MB>]");
+                    } else {
+                        out().println(cache.summary());
+                    }
+                    break;
+                case "DISK": disk(parts); break;
+                case "QUIT": out().println("A sair..."); break;
+                default:
+                    known = false;
+                    out().println("Comando desconhecido.");
+            }
+        } catch (Exception e) {
+            out().println("Erro na execução do comando: " + e.getMessage());
+        }
+        if (Metrics.ENABLED && known) Metrics.command(command, System.nanoTime() - start);
+        return command;
+    }
+
+    // MÉTODOS DE LÓGICA.
+
+    /**
+     * Carrega os títulos do ficheiro CSV e junta-os aos já existentes.
+     * A leitura e a ordenação dos blocos são feitas fora do writeLock; só a
+     * junção à lista e aos índices é feita em exclusivo, num único lote.
+     * @param parallel true para dividir o ficheiro e lê-lo com todos os núcleos.
+     */
+    public void loadFile(String filename, boolean parallel) {
+        long start = System.nanoTime();
+        try {
+            int threads = parallel ? Runtime.getRuntime().availableProcessors() : 1;
+            CsvLoader.Chunk[] chunks = loader.load(filename, threads);
+
+            NetflixShow[][] runs = new NetflixShow[chunks.length][];
+            int count = 0, rejected = 0;
+            int[] rejectedBy = new int[CsvLoader.Reject.values().length];
+            long comparisons = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                runs[i] = chunks[i].shows;
+                count += chunks[i].shows.length;
+                rejected += chunks[i].rejected;
+                comparisons += chunks[i].comparisons;
+                for (int r = 0; r < rejectedBy.length; r++) rejectedBy[r] += chunks[i].rejectedBy[r];
+            }
+
+            int duplicates = rejectedBy[CsvLoader.Reject.DUPLICATE_ID.ordinal()];
+            comparisons += addRuns(runs, rejectedBy);
+            duplicates = rejectedBy[CsvLoader.Reject.DUPLICATE_ID.ordinal()] - duplicates;
+            count -= duplicates;
+            rejected += duplicates;
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (parallel) {
+                for (int i = 0; i < chunks.length; i++) {
+                    out().println("  chunk " + i + ": " + chunks[i].shows.length + " shows, "
+                        + chunks[i].rejected + " rejected, " + chunks[i].bytes + " bytes");
+                }
+            }
+            out().println(count + " shows imported (" + millis + " ms, " + comparisons + " comparisons, "
+                + rejected + " rejected)");
+            printRejected(rejectedBy);
+        } catch (Exception e) { out().println("File not found"); }
+    }
 
-            String[] parts = line.split("\\s+");
-            command = parts[0].toUpperCase();
+    /**
+     * Junta títulos já lidos (por exemplo, recebidos do coordenador de um
+     * catálogo particionado, ver ShardWorker) à lista e aos índices, num único
+     * lote. Os títulos cujo show_id já existe são ignorados.
+     * @param loaded Os títulos, por qualquer ordem (o array é ordenado).
+     * @return O número de títulos acrescentados.
+     */
+    public int addShows(NetflixShow[] loaded) {
+        SortedList.sortRun(loaded);
+        int[] rejectedBy = new int[CsvLoader.Reject.values().length];
+        addRuns(new NetflixShow[][] { loaded }, rejectedBy);
+        return loaded.length - rejectedBy[CsvLoader.Reject.DUPLICATE_ID.ordinal()];
+    }
+
+    /**
+     * Junta blocos já ordenados à lista e aos índices, num único lote, e
+     * publica uma nova fotografia. Um título cujo show_id já existe na coleção
+     * (ou num bloco anterior do mesmo lote) é rejeitado, como num registo
+     * repetido do CSV: cada show_id tem no máximo um título.
+     * @param runs Os blocos, ordenados com SortedList.sortRun (os repetidos são retirados).
+     * @param rejectedBy Contadores por motivo, onde são somados os títulos repetidos.
+     * @return O número de comparações feitas na junção.
+     */
+    private long addRuns(NetflixShow[][] runs, int[] rejectedBy) {
+        synchronized (writeLock) {
+            HashSet<String> batchIds = (runs.length > 1) ? new HashSet<>() : null;
+            for (int r = 0; r < runs.length; r++) {
+                NetflixShow[] run = runs[r];
+                int kept = 0;
+                for (NetflixShow show : run) {
+                    boolean duplicate = idIndex.get(show.getShowId()) >= 0
+                        || (batchIds != null && !batchIds.add(IdIndex.key(show.getShowId())));
+                    if (duplicate) rejectedBy[CsvLoader.Reject.DUPLICATE_ID.ordinal()]++;
+                    else run[kept++] = show;
+                }
+                // Retirar elementos mantém o bloco ordenado.
+                if (kept < run.length) runs[r] = Arrays.copyOf(run, kept);
+            }
+
+            long comparisonsBefore = shows.getComparisons();
+            long[][] stamps = shows.addSortedRuns(runs);
+            long comparisons = shows.getComparisons() - comparisonsBefore;
+
+            // Os títulos antigos mantêm-se após a junção: só os novos entram nos índices.
+            for (int r = 0; r < runs.length; r++) {
+                for (int i = 0; i < runs[r].length; i++) {
+                    NetflixShow show = runs[r][i];
+                    show.setStamp(stamps[r][i]);
+                    rows.add(show);
+                    idIndex.put(show.getShowId(), show.getRowId());
+                    for (ShowIndex index : indexes) index.add(show);
+                }
+            }
+            publish();
+            return comparisons;
+        }
+    }
+
+    /**
+     * Grava a coleção atual numa fotografia binária (ver SnapshotFile).
+     * Trabalha sobre a última fotografia publicada, sem bloquear as alterações.
+     * @param filename O caminho do ficheiro.
+     */
+    private void saveFile(String filename) {
+        long start = System.nanoTime();
+        CatalogSnapshot current = snapshot;
+        try {
+            long bytes = SnapshotFile.write(filename, current);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            out().println(current.size() + " shows saved (" + millis + " ms, " + bytes + " bytes)");
+        } catch (IOException e) {
+            out().println("Erro ao gravar: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Carrega os títulos de uma fotografia binária e junta-os aos já existentes.
+     * Os títulos vêm já por ordem de título: entram na lista como um único
+     * bloco ordenado, sem nova ordenação. Numa coleção vazia, os índices
+     * gravados no ficheiro (show_id, trigramas e semelhança) são repostos em
+     * vez de recalculados.
+     * @param filename O caminho do ficheiro.
+     */
+    private void loadBinary(String filename) {
+        long start = System.nanoTime();
+        SnapshotFile.Contents loaded;
+        try {
+            loaded = SnapshotFile.read(filename);
+        } catch (NoSuchFileException e) {
+            out().println("File not found");
+            return;
+        } catch (IOException e) {
+            out().println(e.getMessage());
+            return;
+        }
+        int[] rejectedBy = new int[CsvLoader.Reject.values().length];
+        NetflixShow[][] runs = { loaded.shows };
+        long comparisons;
+        try {
+            comparisons = restoreRuns(loaded);
+            if (comparisons < 0) comparisons = addRuns(runs, rejectedBy);
+        } catch (IOException e) {
+            out().println(e.getMessage());
+            return;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        out().println(runs[0].length + " shows imported (" + millis + " ms, " + comparisons + " comparisons)");
+        printRejected(rejectedBy);
+    }
+
+    /**
+     * Junta os títulos de uma fotografia binária a uma coleção vazia, repondo
+     * os índices gravados; os restantes índices são calculados como em addRuns.
+     * Os títulos recebem os rowIds 0 .. n - 1, pela ordem do ficheiro, que são
+     * os usados nos índices gravados.
+     * @param loaded Os títulos lidos e os índices gravados.
+     * @return O número de comparações feitas na junção, ou -1 se a coleção não
+     *         estiver vazia (os títulos têm então de ser juntos com addRuns).
+     * @throws IOException Se os índices gravados estiverem corrompidos (a coleção fica vazia).
+     */
+    private long restoreRuns(SnapshotFile.Contents loaded) throws IOException {
+        synchronized (writeLock) {
+            if (!shows.isEmpty() || rows.capacity() > 0) return -1;
             try {
-                switch (command) {
-                    case "LOADF":
-                        if (parts.length < 2) System.out.println("Erro: LOADF <filename>");
-                        else loadFile(parts[1]);
-                        break;
-                    case "LOADD": loadFile("netflix_movies/netflix_titles.csv"); break;
-                    case "DEL":
-                        if (parts.length < 2) System.out.println("Erro: DEL <id>");
-                        else deleteShow(parts[1], scanner);
-                        break;
-                    case "CLEAR":
-                        int size = shows.size();
-                        shows.clear();
-                        System.out.println(size + " shows deleted");
-                        break;
-                    case "LIST": listShows(shows); break;
-                    case "GET":
-                        if (parts.length < 2) System.out.println("Erro: GET <id>");
-                        else getShow(parts[1]);
-                        break;
-                    case "STATS": showStats(); break;
-                    case "MTIME":
-                        if (parts.length < 3) System.out.println("Erro: MTIME <min> <max>");
-                        else mtime(parts[1], parts[2]);
-                        break;
-                    case "SEARCHT":
-                        if (parts.length < 2) System.out.println("Erro: SEARCHT <texto>");
-                        else searchTitle(line.substring(8)); 
-                        break;
-                    case "SEARCHC":
-                        if (parts.length < 2) System.out.println("Erro: SEARCHC <texto>");
-                        else searchCast(line.substring(8));
-                        break;
-                    case "RATINGS": showUniqueRatings(); break;
-                    case "CATEGORIES": showUniqueCategories(); break;
-                    case "SEGMENT": segmentData(); break;
-                    case "QUIT": System.out.println("A sair..."); break;
-                    default: System.out.println("Comando desconhecido.");
+                loaded.restore(idIndex, titleIndex, castIndex, similarityIndex);
+            } catch (IOException e) {
+                idIndex.clear();
+                titleIndex.clear();
+                castIndex.clear();
+                similarityIndex.clear();
+                throw e;
+            }
+
+            NetflixShow[] run = loaded.shows;
+            long comparisonsBefore = shows.getComparisons();
+            long[][] stamps = shows.addSortedRuns(new NetflixShow[][] { run });
+            long comparisons = shows.getComparisons() - comparisonsBefore;
+            for (int i = 0; i < run.length; i++) {
+                NetflixShow show = run[i];
+                show.setStamp(stamps[0][i]);
+                rows.add(show);
+                for (ShowIndex index : indexes) {
+                    if (index != titleIndex && index != castIndex && index != similarityIndex) index.add(show);
                 }
-            } catch (Exception e) {
-                System.out.println("Erro na execução do comando: " + e.getMessage());
             }
+            publish();
+            return comparisons;
         }
-        scanner.close();
     }
 
-    // MÉTODOS DE LÓGICA.
+    /**
+     * Aplica um ficheiro CSV de alterações sem limpar a coleção: cada linha
+     * substitui o título com o mesmo show_id (se algum valor mudou) ou
+     * acrescenta-o; uma linha só com o show_id (restantes campos vazios)
+     * apaga-o. Só os títulos afetados são retirados e repostos na lista e
+     * nos índices. O ficheiro é lido em lotes de MERGE_BATCH linhas, cada um
+     * aplicado com o writeLock e publicado numa única fotografia.
+     * * Com --tail, ao chegar ao fim continua a ler as linhas acrescentadas
+     * ao ficheiro até passarem tailSeconds segundos sem novas linhas.
+     * @param filename O caminho do ficheiro (com cabeçalho na primeira linha).
+     * @param tailSeconds Segundos de espera sem novas linhas, ou -1 para não seguir o ficheiro.
+     */
+    private void mergeFile(String filename, int tailSeconds) {
+        MergeResult result = new MergeResult();
+        long offset = 0;
+        long idleSince = System.nanoTime();
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                // A seguir o ficheiro, só se leem registos completos (o último pode estar a ser escrito).
+                long end = (tailSeconds < 0) ? -1 : CsvReader.findLastRecordEnd(filename, offset);
+                if (end != offset) {
+                    int before = result.records;
+                    offset += mergeRange(filename, offset, end, result);
+                    result.nanos += System.nanoTime() - start;
+                    if (tailSeconds >= 0 && result.records > before) {
+                        out().println("  " + (result.records - before) + " records applied");
+                    }
+                    idleSince = System.nanoTime();
+                }
+                if (tailSeconds < 0 || System.nanoTime() - idleSince >= tailSeconds * 1_000_000_000L) break;
+                Thread.sleep(TAIL_POLL_MILLIS);
+            }
+        } catch (IOException e) {
+            if (result.records == 0) {
+                out().println("File not found");
+                return;
+            }
+            out().println("Erro de leitura: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-    private void loadFile(String filename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            br.readLine(); 
-            int count = 0;
-            while ((line = br.readLine()) != null) {
-                String[] data = parseCsvLine(line);
-                if (data.length >= 12) {
-                    try {
-                        int year = Integer.parseInt(data[7].trim());
-                        NetflixShow show = new NetflixShow(
-                            data[0], data[1], data[2], data[3], data[4], data[5], 
-                            data[6], year, data[8], data[9], data[10], data[11]
-                        );
-                        shows.add(show);
-                        count++;
-                    } catch (Exception e) { }
+        double seconds = Math.max(result.nanos, 1) / 1e9;
+        out().printf("%d records merged: %d inserted, %d updated, %d deleted, %d unchanged, %d rejected%n",
+            result.records, result.inserted, result.updated, result.deleted, result.unchanged, result.rejected);
+        out().printf("(%d ms, %.0f records/s, %.1f MB/s)%n",
+            result.nanos / 1_000_000, result.records / seconds, result.bytes / seconds / 1e6);
+        printRejected(result.rejectedBy);
+    }
+
+    /**
+     * Mostra os motivos das linhas rejeitadas de um carregamento (nada se não houver).
+     */
+    private void printRejected(int[] rejectedBy) {
+        for (CsvLoader.Reject r : CsvLoader.Reject.values()) {
+            if (rejectedBy[r.ordinal()] > 0) out().println("  rejected: " + rejectedBy[r.ordinal()] + " " + r.label);
+        }
+    }
+
+    /**
+     * Lê e aplica os registos do intervalo [from, to) do ficheiro.
+     * @return O número de bytes lidos.
+     */
+    private long mergeRange(String filename, long from, long to, MergeResult result) throws IOException {
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<NetflixShow> changes = new ArrayList<>();
+        int[] rejectedBy = new int[CsvLoader.Reject.values().length];
+        int parsed = 0;
+        try (CsvReader csv = new CsvReader(filename, from, to)) {
+            if (from == 0) csv.next(); // Cabeçalho.
+            while (csv.next()) {
+                result.records++;
+                String id = csv.field(0);
+                if (isTombstone(csv)) {
+                    ids.add(id);
+                    changes.add(null);
+                } else {
+                    NetflixShow show = CsvLoader.toShow(csv, rejectedBy);
+                    if (show == null) {
+                        result.rejected++;
+                        continue;
+                    }
+                    parsed++;
+                    ids.add(id);
+                    changes.add(show);
+                }
+                if (ids.size() == MERGE_BATCH) {
+                    applyChanges(ids, changes, result);
+                    ids.clear();
+                    changes.clear();
                 }
             }
-            System.out.println(count + " shows imported");
-        } catch (Exception e) { System.out.println("File not found"); }
+            applyChanges(ids, changes, result);
+            result.bytes += csv.bytesRead();
+            for (int r = 0; r < rejectedBy.length; r++) result.rejectedBy[r] += rejectedBy[r];
+            Metrics.rows(parsed, rejectedBy, csv.bytesRead());
+            return csv.bytesRead();
+        }
     }
 
-    private void deleteShow(String id, Scanner scanner) {
-        NetflixShow target = findById(id);
-        if (target == null) {
-            System.out.println("Title not found");
+    /**
+     * Indica se o registo é uma remoção: show_id preenchido e restantes campos vazios.
+     */
+    private static boolean isTombstone(CsvReader csv) {
+        if (csv.field(0).isEmpty()) return false;
+        for (int i = 1; i < csv.fieldCount(); i++) {
+            if (!csv.field(i).isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Aplica um lote de alterações (null apaga o título com esse id), pela ordem dada.
+     */
+    private void applyChanges(ArrayList<String> ids, ArrayList<NetflixShow> changes, MergeResult result) {
+        if (ids.isEmpty()) return;
+        synchronized (writeLock) {
+            boolean changed = false;
+            for (int i = 0; i < ids.size(); i++) {
+                NetflixShow old = rows.get(idIndex.get(ids.get(i)));
+                NetflixShow show = changes.get(i);
+                if (show == null) {
+                    if (old != null) {
+                        removeShow(old);
+                        result.deleted++;
+                        changed = true;
+                    }
+                    continue;
+                }
+                if (old != null) {
+                    if (old.sameContent(show)) {
+                        result.unchanged++;
+                        continue;
+                    }
+                    removeShow(old);
+                    result.updated++;
+                } else {
+                    result.inserted++;
+                }
+                addShow(show);
+                changed = true;
+            }
+            if (changed) publish();
+        }
+    }
+
+    private void deleteShow(String id) {
+        DiskCatalog d = disk;
+        boolean exists;
+        if (d != null) {
+            exists = d.find(id) != null;
+        } else {
+            exists = findById(id) != null;
+        }
+        if (!exists) {
+            out().println("Title not found");
             return;
         }
-        System.out.print("Delete " + id + ", are you sure (y/n)? ");
-        String confirm = scanner.nextLine();
+        String confirm = "y";
+        if (input != null) {
+            out().print("Delete " + id + ", are you sure (y/n)? ");
+            confirm = input.hasNextLine() ? input.nextLine().trim() : "n";
+        }
         if (confirm.equalsIgnoreCase("y")) {
-            shows.remove(target);
-            System.out.println("Show deleted");
+            // O título pode ter sido apagado por outra thread durante a confirmação.
+            boolean deleted = (d != null) ? d.delete(id) : deleteShows(Collections.singletonList(id)) == 1;
+            if (deleted) out().println("Show deleted");
+            else out().println("Title not found");
+        }
+    }
+
+    /**
+     * Apaga um lote de títulos, publicando uma única fotografia no fim.
+     * @param ids Os identificadores a apagar (os inexistentes são ignorados).
+     * @return O número de títulos apagados.
+     */
+    public int deleteShows(Iterable<String> ids) {
+        synchronized (writeLock) {
+            int count = 0;
+            for (String id : ids) {
+                NetflixShow show = rows.get(idIndex.get(id));
+                if (show == null) continue;
+                removeShow(show);
+                count++;
+            }
+            if (count > 0) publish();
+            return count;
         }
     }
 
-    private void listShows(List<NetflixShow> listToList) {
-        if (listToList.isEmpty()) { System.out.println("No data available..."); return; }
+    /**
+     * Procura os títulos cujo título contém o texto (sem distinção de maiúsculas).
+     * Pode ser chamado por qualquer thread e nunca bloqueia.
+     * @param query O texto a procurar.
+     * @return Os títulos, por data de adição (sem data primeiro) e, na mesma data, por título e show_id.
+     */
+    public NetflixShow[] findByTitle(String query) {
+        return cached("SEARCHT " + SuggestIndex.fold(query), snap -> snap.searchTitle(query));
+    }
+
+    /**
+     * Procura os títulos cujo elenco contém o texto (sem distinção de maiúsculas).
+     * Pode ser chamado por qualquer thread e nunca bloqueia.
+     * @param query O texto a procurar.
+     * @return Os títulos, pela mesma ordem de findByTitle.
+     */
+    public NetflixShow[] findByCast(String query) {
+        return cached("SEARCHC " + SuggestIndex.fold(query), snap -> snap.searchCast(query));
+    }
+
+    /**
+     * Devolve uma página dos filmes com duração entre min e max, por ordem
+     * decrescente de duração. Pode ser chamado por qualquer thread e nunca bloqueia.
+     * @param offset Número de filmes a saltar.
+     * @param limit Número máximo de filmes a devolver.
+     * @return Os filmes da página.
+     */
+    public NetflixShow[] findMoviesByDuration(int min, int max, int offset, int limit) {
+        return cached("MTIME " + min + " " + max + " " + offset + " " + limit,
+            snap -> snap.moviesByDuration(min, max, offset, limit));
+    }
+
+    /**
+     * Conta os filmes com duração entre min e max. Pode ser chamado por
+     * qualquer thread e nunca bloqueia.
+     * @return O número de filmes.
+     */
+    public int countMoviesByDuration(int min, int max) {
+        String key = "MTIME COUNT " + min + " " + max;
+        CatalogSnapshot snap = snapshot;
+        int[] cached = cache.get(key, snap.getVersion());
+        if (cached != null) return cached[0];
+        int count = snap.countMovies(min, max);
+        cache.put(key, snap.getVersion(), new int[] { count });
+        return count;
+    }
+
+    /**
+     * Responde a uma consulta sobre a última fotografia, usando a cache de
+     * resultados (guardados como rowIds, com a versão da fotografia).
+     */
+    private NetflixShow[] cached(String key, Function<CatalogSnapshot, NetflixShow[]> query) {
+        CatalogSnapshot snap = snapshot;
+        int[] ids = cache.get(key, snap.getVersion());
+        if (ids != null) return snap.resolve(ids);
+        NetflixShow[] found = query.apply(snap);
+        cache.put(key, snap.getVersion(), rowIds(found));
+        return found;
+    }
+
+    private static int[] rowIds(NetflixShow[] shows) {
+        int[] ids = new int[shows.length];
+        for (int i = 0; i < shows.length; i++) ids[i] = shows[i].getRowId();
+        return ids;
+    }
+
+    /**
+     * Devolve os títulos que cumprem todos os critérios do filtro, a partir da
+     * última fotografia publicada. Pode ser chamado por qualquer thread e nunca bloqueia.
+     * @param filter O filtro.
+     * @return Os títulos, por ordem de título.
+     */
+    public NetflixShow[] filter(ShowFilter filter) {
+        return snapshot.filter(filter);
+    }
+
+    /**
+     * Sugere títulos e nomes (elenco e realizadores) que começam pelo prefixo,
+     * a partir da última fotografia publicada. Pode ser chamado por qualquer thread.
+     * @param prefix O prefixo (sem distinção de maiúsculas).
+     * @param k O número máximo de sugestões (no máximo SuggestIndex.MAX_K).
+     * @return As sugestões, da data de adição mais recente para a mais antiga.
+     */
+    public SuggestIndex.Suggestion[] suggest(String prefix, int k) {
+        CatalogSnapshot snap = snapshot;
+        if (!snap.hasSuggestions()) snap = buildSuggestions();
+        return snap.suggest(prefix, k);
+    }
+
+    /**
+     * Procura os títulos mais semelhantes ao indicado (Jaccard do elenco,
+     * realizadores, categorias e países), entre os candidatos do SimilarityIndex.
+     * Pode ser chamado por qualquer thread e nunca bloqueia.
+     * @param id O show_id do título de referência.
+     * @param k O número máximo de títulos.
+     * @return Os títulos, do mais para o menos semelhante, ou null se o título não existir.
+     */
+    public SimilarityIndex.Match[] findRelated(String id, int k) {
+        return snapshot.related(id, k);
+    }
+
+    /**
+     * Devolve a última fotografia publicada da coleção. Pode ser chamado por
+     * qualquer thread e nunca bloqueia.
+     * @return A fotografia.
+     */
+    public CatalogSnapshot snapshot() {
+        return snapshot;
+    }
+
+    private void listShows(Iterable<NetflixShow> listToList) {
+        if (!listToList.iterator().hasNext()) { out().println("No data available..."); return; }
         
         int pageSize = 30;
         printHeader();
-        Scanner sc = new Scanner(System.in); 
 
-        for (int i = 0; i < listToList.size(); i++) {
-            System.out.println(listToList.get(i));
-            if ((i + 1) % pageSize == 0) {
-                System.out.println("--- ENTER para continuar, 'n' para parar ---");
-                if (sc.nextLine().equalsIgnoreCase("n")) break;
+        int i = 0;
+        for (NetflixShow s : listToList) {
+            out().println(s);
+            if (++i % pageSize == 0 && paging) {
+                out().println("--- ENTER para continuar, 'n' para parar ---");
+                if (stopPaging()) break;
                 printHeader();
             }
         }
     }
 
     private void getShow(String id) {
-        NetflixShow s = findById(id);
+        DiskCatalog d = disk;
+        NetflixShow s = (d != null) ? d.find(id) : findById(id);
         if (s != null) {
             printHeader();
-            System.out.println(s);
+            out().println(s);
         } else {
-            System.out.println("Title not found");
+            out().println("Title not found");
         }
     }
 
-    private void mtime(String minStr, String maxStr) {
-        int min = Integer.parseInt(minStr);
-        int max = Integer.parseInt(maxStr);
-        
-        SortedList<NetflixShow> temp = new SortedList<>(); 
-        for (int i = 0; i < shows.size(); i++) {
-            NetflixShow s = shows.get(i);
-            if (s.getType().equalsIgnoreCase("Movie") && s.getDuration() >= min && s.getDuration() <= max) {
-                temp.add(s);
+    /**
+     * Lista os filmes com duração entre min e max, por ordem decrescente de duração.
+     * Com LIMIT e/ou OFFSET mostra apenas essa página da fatia do índice.
+     * @param parts MTIME, min, max e as opções LIMIT n / OFFSET k.
+     */
+    private void mtime(String[] parts) throws IOException {
+        int min = Integer.parseInt(parts[1]);
+        int max = Integer.parseInt(parts[2]);
+        int limit = Integer.MAX_VALUE, offset = 0;
+        boolean paged = false;
+        for (int i = 3; i < parts.length; i += 2) {
+            switch (parts[i].toUpperCase()) {
+                case "LIMIT": limit = Integer.parseInt(parts[i + 1]); break;
+                case "OFFSET": offset = Integer.parseInt(parts[i + 1]); break;
+                default: throw new IllegalArgumentException("opção desconhecida " + parts[i]);
             }
+            paged = true;
         }
-        NetflixShow[] arr = toArray(temp);
-        // Bubble Sort Decrescente.
-        for (int i = 0; i < arr.length; i++) {
-            for (int j = 0; j < arr.length - 1 - i; j++) {
-                if (arr[j].getDuration() < arr[j+1].getDuration()) { 
-                    NetflixShow aux = arr[j]; arr[j] = arr[j+1]; arr[j+1] = aux;
-                }
-            }
+
+        DiskCatalog d = disk;
+        if (d != null) {
+            mtimeOnDisk(d, min, max, offset, limit, paged);
+            return;
+        }
+        NetflixShow[] page = findMoviesByDuration(min, max, offset, limit);
+        if (paged) {
+            int total = countMoviesByDuration(min, max);
+            out().println("Showing " + page.length + " of " + total + " movies (offset " + offset + ")");
         }
-        listArray(arr);
+        listArray(page);
     }
 
-    private void searchTitle(String query) {
-        SortedList<NetflixShow> temp = new SortedList<>();
-        for (int i = 0; i < shows.size(); i++) {
-            NetflixShow s = shows.get(i);
-            if (s.getTitle().toLowerCase().contains(query.toLowerCase())) temp.add(s);
+    /**
+     * MTIME sobre o catálogo em disco: percorre as folhas e ordena os filmes
+     * do intervalo como o DurationIndex (duração decrescente, título e show_id),
+     * escrevendo só a página pedida. Se a página acabar até à posição
+     * DISK_PAGE_HEAP_MAX, basta guardar os offset + limit primeiros filmes
+     * num heap; caso contrário os filmes são todos ordenados com ExternalSorter.
+     */
+    private void mtimeOnDisk(DiskCatalog d, int min, int max, int offset, int limit, boolean paged) throws IOException {
+        Comparator<NetflixShow> order = (a, b) -> {
+            int c = Integer.compare(b.getDuration(), a.getDuration());
+            return (c != 0) ? c : NetflixShow.TITLE_ORDER.compare(a, b);
+        };
+        long end = (long) Math.max(offset, 0) + Math.max(limit, 0);
+        if (end <= DISK_PAGE_HEAP_MAX) {
+            mtimeOnDiskHeap(d, min, max, offset, (int) end, paged, order);
+            return;
+        }
+        try (ExternalSorter<NetflixShow> sorter = new ExternalSorter<>(order, DiskCatalog.SHOW_CODEC,
+                 DiskCatalog::estimatedBytes, sortBytes)) {
+            for (NetflixShow s : d) {
+                if ("Movie".equalsIgnoreCase(s.getType()) && s.getDuration() >= min && s.getDuration() <= max) sorter.add(s);
+            }
+            long total = sorter.size();
+            long from = Math.min(Math.max(offset, 0), total);
+            long count = Math.min(total - from, Math.max(limit, 0));
+            if (paged) out().println("Showing " + count + " of " + total + " movies (offset " + offset + ")");
+            Iterator<NetflixShow> it = sorter.sorted();
+            for (long i = 0; i < from; i++) it.next();
+            listArray(it, count);
         }
-        sortByDate(temp);
     }
 
-    private void searchCast(String query) {
-        SortedList<NetflixShow> temp = new SortedList<>();
-        for (int i = 0; i < shows.size(); i++) {
-            NetflixShow s = shows.get(i);
-            if (s.getCast() != null && s.getCast().toLowerCase().contains(query.toLowerCase())) temp.add(s);
+    /**
+     * MTIME em disco com uma página pequena: um heap com os end primeiros
+     * filmes (o pior no topo), em O(n log end) e com memória O(end).
+     */
+    private void mtimeOnDiskHeap(DiskCatalog d, int min, int max, int offset, int end, boolean paged,
+                                 Comparator<NetflixShow> order) {
+        PriorityQueue<NetflixShow> best = new PriorityQueue<>(Math.max(end, 1), order.reversed());
+        long total = 0;
+        for (NetflixShow s : d) {
+            if (!"Movie".equalsIgnoreCase(s.getType()) || s.getDuration() < min || s.getDuration() > max) continue;
+            total++;
+            if (best.size() < end) best.add(s);
+            else if (end > 0 && order.compare(s, best.peek()) < 0) {
+                best.poll();
+                best.add(s);
+            }
         }
-        sortByDate(temp);
+        NetflixShow[] first = best.toArray(new NetflixShow[0]);
+        Sorter.sort(first, order);
+        int from = Math.min(Math.max(offset, 0), first.length);
+        if (paged) out().println("Showing " + (first.length - from) + " of " + total + " movies (offset " + offset + ")");
+        listArray(Arrays.copyOfRange(first, from, first.length));
     }
 
-    private void showUniqueRatings() {
-        SortedList<String> ratings = new SortedList<>();
-        for (int i = 0; i < shows.size(); i++) {
-            String r = shows.get(i).getRating();
-            if (r != null && !r.isBlank() && !contains(ratings, r)) {
-                ratings.add(r);
+    private void disk(String[] parts) {
+        String sub = (parts.length > 1) ? parts[1].toUpperCase() : "";
+        try {
+            if (sub.equals("BUILD") && parts.length == 4) {
+                long start = System.nanoTime();
+                int[] rejectedBy = new int[CsvLoader.Reject.values().length];
+                long count = DiskCatalog.build(parts[2], parts[3], sortBytes, rejectedBy);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                long bytes = Files.size(Path.of(parts[3]));
+                out().println(count + " shows written to " + parts[3] + " (" + millis + " ms, " + (bytes >> 20) + " MB)");
+                printRejected(rejectedBy);
+            } else if (sub.equals("OPEN") && parts.length == 3) {
+                DiskCatalog opened = DiskCatalog.open(parts[2],
+                    Integer.getInteger("netflix.disk.pages", DiskCatalog.DEFAULT_POOL_PAGES));
+                DiskCatalog previous = disk;
+                disk = opened;
+                if (previous != null) previous.close();
+                out().println("Disk catalog opened: " + opened.size() + " shows (LIST, GET, DEL, MTIME and SEGMENT use it until DISK CLOSE)");
+            } else if (sub.equals("CLOSE") && parts.length == 2) {
+                DiskCatalog previous = disk;
+                disk = null;
+                if (previous != null) previous.close();
+                out().println("Disk catalog closed");
+            } else if (sub.isEmpty()) {
+                DiskCatalog d = disk;
+                out().println((d == null) ? "No disk catalog open" : d.summary());
+            } else {
+                out().println("Erro: DISK [BUILD <csv> <ficheiro> | OPEN <ficheiro> | CLOSE]");
             }
+        } catch (NoSuchFileException e) {
+            out().println("File not found");
+        } catch (IOException e) {
+            out().println(e.getMessage());
         }
-        for (int i = 0; i < ratings.size(); i++) System.out.println(ratings.get(i));
     }
 
-    private void showUniqueCategories() {
-        SortedList<String> cats = new SortedList<>();
-        for (int i = 0; i < shows.size(); i++) {
-            String listedIn = shows.get(i).getListedIn();
-            if (listedIn != null) {
-                String[] parts = listedIn.split(",");
-                for (String p : parts) {
-                    String cat = p.trim();
-                    if (!cat.isEmpty() && !contains(cats, cat)) cats.add(cat);
+    private void filterShows(String criteria) {
+        NetflixShow[] found = filter(ShowFilter.parse(criteria));
+        out().println(found.length + " shows found");
+        listArray(found);
+    }
+
+    private void suggest(String args) {
+        // O último argumento, se for um número, é o k (o prefixo pode ter espaços).
+        String prefix = args;
+        int k = DEFAULT_SUGGESTIONS;
+        int space = args.lastIndexOf(' ');
+        if (space > 0 && args.substring(space + 1).matches("\\d+")) {
+            prefix = args.substring(0, space).trim();
+            k = Integer.parseInt(args.substring(space + 1));
+        }
+        SuggestIndex.Suggestion[] found = suggest(prefix, k);
+        if (found.length == 0) { out().println("No suggestions"); return; }
+        for (SuggestIndex.Suggestion sg : found) {
+            String kind = (sg.kind == (SuggestIndex.TITLE | SuggestIndex.PERSON)) ? "title/person"
+                : (sg.kind == SuggestIndex.TITLE) ? "title" : "person";
+            String date = (sg.dateKey == Integer.MIN_VALUE) ? "-" : LocalDate.ofEpochDay(sg.dateKey).toString();
+            out().printf("%-60s %-12s %s%n", sg.text, kind, date);
+        }
+    }
+
+    private void related(String[] parts) throws Exception {
+        if (parts[1].equalsIgnoreCase("ALL")) {
+            relatedAll(parts[2], parts.length > 3 ? Integer.parseInt(parts[3]) : DEFAULT_RELATED);
+            return;
+        }
+        SimilarityIndex.Match[] found = findRelated(parts[1], parts.length > 2 ? Integer.parseInt(parts[2]) : DEFAULT_RELATED);
+        if (found == null) { out().println("Title not found"); return; }
+        if (found.length == 0) { out().println("No related titles"); return; }
+        out().println("Sim.  | Show ID  | Type     | Title                          | Date Added   | Rating | Duration");
+        out().println("------|----------|----------|--------------------------------|--------------|--------|----------");
+        for (SimilarityIndex.Match m : found) out().printf("%.3f | %s%n", m.similarity, m.show);
+    }
+
+    /**
+     * Calcula os k títulos mais semelhantes de todos os títulos, com todos os
+     * núcleos, e escreve-os no ficheiro, uma linha por título (por ordem de
+     * título): show_id seguido dos pares show_id:semelhança, separados por tabs.
+     * Trabalha sobre a última fotografia, sem bloquear as alterações.
+     */
+    private void relatedAll(String filename, int k) throws Exception {
+        long start = System.nanoTime();
+        CatalogSnapshot snap = snapshot;
+        NetflixShow[] all = snap.page(0, snap.size());
+        SimilarityIndex.Match[][] found = snap.relatedAll(k, Runtime.getRuntime().availableProcessors());
+        long pairs = 0;
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(filename), 1 << 20))) {
+            for (NetflixShow s : all) {
+                SimilarityIndex.Match[] m = found[s.getRowId()];
+                StringBuilder line = new StringBuilder(s.getShowId());
+                for (int i = 0; m != null && i < m.length; i++) {
+                    line.append('\t').append(m[i].show.getShowId()).append(':').append(String.format("%.3f", m[i].similarity));
                 }
+                pw.println(line);
+                if (m != null) pairs += m.length;
             }
+            if (pw.checkError()) throw new Exception("Error writing " + filename);
         }
-        for (int i = 0; i < cats.size(); i++) System.out.println(cats.get(i));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        out().println(all.length + " shows, " + pairs + " related titles written to " + filename + " (" + millis + " ms)");
+    }
+
+    private void searchTitle(String query) {
+        listArray(findByTitle(query));
+    }
+
+    private void searchCast(String query) {
+        listArray(findByCast(query));
+    }
+
+    private void showUniqueRatings() {
+        for (String r : snapshot.getStats().getRatings()) out().println(r);
+    }
+
+    private void showUniqueCategories() {
+        for (String c : snapshot.getStats().getCategories()) out().println(c);
     }
 
     private void showStats() {
-        if (shows.isEmpty()) { System.out.println("No data available..."); return; }
-        
-        int movCount=0, tvCount=0;
-        int minMov=Integer.MAX_VALUE, maxMov=0, sumMov=0;
-        int minTV=Integer.MAX_VALUE, maxTV=0, sumTV=0;
-
-        for (int i=0; i<shows.size(); i++) {
-            NetflixShow s = shows.get(i);
-            int d = s.getDuration();
-            if (s.getType().equalsIgnoreCase("Movie")) {
-                movCount++; sumMov += d;
-                if (d < minMov) minMov = d;
-                if (d > maxMov) maxMov = d;
-            } else {
-                tvCount++; sumTV += d;
-                if (d < minTV) minTV = d;
-                if (d > maxTV) maxTV = d;
-            }
+        CatalogSnapshot snap = snapshot;
+        if (snap.isEmpty()) { out().println("No data available..."); return; }
+
+        CatalogStats.DurationStats mov = snap.getStats().getMovies(), tv = snap.getStats().getTvShows();
+        out().printf("Movie count: %d | Min: %d | Max: %d | Avg: %.1f\n", mov.getCount(), mov.getMin(), mov.getMax(), mov.getAverage());
+        out().printf("TV Show count: %d | Min: %d | Max: %d | Avg: %.1f\n", tv.getCount(), tv.getMin(), tv.getMax(), tv.getAverage());
+        out().println("Totals:\n" + mov.getSum() + " total minutes of movie time\n" + tv.getSum() + " total seasons of tv shows");
+    }
+
+    /**
+     * Mostra a divisão da coleção por rating, país ou ano de lançamento.
+     * @param field RATING, COUNTRY ou YEAR.
+     */
+    private void showStatsBy(String field) {
+        CatalogStats stats = snapshot.getStats();
+        Map<?, CatalogStats.Bucket> groups;
+        switch (field) {
+            case "RATING": groups = stats.getByRating(); break;
+            case "COUNTRY": groups = stats.getByCountry(); break;
+            case "YEAR": groups = stats.getByYear(); break;
+            default:
+                out().println("Erro: STATS BY rating|country|year");
+                return;
+        }
+        if (groups.isEmpty()) { out().println("No data available..."); return; }
+
+        out().printf("%-30s | %6s | %8s | %8s | %8s%n", field, "Movies", "Avg min", "TV Shows", "Avg seas");
+        for (Map.Entry<?, CatalogStats.Bucket> e : groups.entrySet()) {
+            CatalogStats.Bucket b = e.getValue();
+            out().printf("%-30s | %6d | %8.1f | %8d | %8.1f%n", e.getKey(),
+                b.movies, b.movies == 0 ? 0 : (double) b.minutes / b.movies,
+                b.tvShows, b.tvShows == 0 ? 0 : (double) b.seasons / b.tvShows);
         }
-        System.out.printf("Movie count: %d | Min: %d | Max: %d | Avg: %.1f\n", movCount, minMov==Integer.MAX_VALUE?0:minMov, maxMov, movCount==0?0:(double)sumMov/movCount);
-        System.out.printf("TV Show count: %d | Min: %d | Max: %d | Avg: %.1f\n", tvCount, minTV==Integer.MAX_VALUE?0:minTV, maxTV, tvCount==0?0:(double)sumTV/tvCount);
-        System.out.println("Totals:\n" + sumMov + " total minutes of movie time\n" + sumTV + " total seasons of tv shows");
     }
 
-    private void segmentData() {
+    /**
+     * Exporta os títulos agrupados pelo campo indicado. Sem campo, gera em paralelo
+     * os ficheiros por rating e por realizador.
+     * @param field RATING, DIRECTOR, COUNTRY, CATEGORY ou vazio.
+     */
+    private void segmentData(String field) {
+        // Com um catálogo em disco os grupos são ordenados a partir do ficheiro.
+        // Os dois ficheiros do SEGMENT sem argumentos dividem a memória das ordenações.
+        DiskCatalog d = disk;
+        Iterable<NetflixShow> source = (d != null) ? d : snapshot;
+        boolean onDisk = d != null;
         try {
-            exportSegmentFile("segment_by_rating.txt", true);
-            exportSegmentFile("segment_by_directors.txt", false);
-            System.out.println("Files created: segment_by_rating.txt, segment_by_directors.txt");
-        } catch(Exception e) { System.out.println("Error writing files."); }
+            switch (field) {
+                case "":
+                    ExecutorService pool = Executors.newFixedThreadPool(2);
+                    try {
+                        Future<?> byRating = pool.submit(() -> {
+                            exportSegmentFile(source, onDisk, sortBytes / 2, "segment_by_rating.txt", "RATING", NetflixShow::getRating, false);
+                            return null;
+                        });
+                        Future<?> byDirector = pool.submit(() -> {
+                            exportSegmentFile(source, onDisk, sortBytes / 2, "segment_by_directors.txt", "DIRECTOR", NetflixShow::getDirector, false);
+                            return null;
+                        });
+                        byRating.get();
+                        byDirector.get();
+                    } finally {
+                        pool.shutdown();
+                    }
+                    out().println("Files created: segment_by_rating.txt, segment_by_directors.txt");
+                    break;
+                case "RATING":
+                    exportSegmentFile(source, onDisk, sortBytes, "segment_by_rating.txt", "RATING", NetflixShow::getRating, false);
+                    out().println("File created: segment_by_rating.txt");
+                    break;
+                case "DIRECTOR":
+                    exportSegmentFile(source, onDisk, sortBytes, "segment_by_directors.txt", "DIRECTOR", NetflixShow::getDirector, false);
+                    out().println("File created: segment_by_directors.txt");
+                    break;
+                case "COUNTRY":
+                    exportSegmentFile(source, onDisk, sortBytes, "segment_by_country.txt", "COUNTRY", NetflixShow::getCountry, true);
+                    out().println("File created: segment_by_country.txt");
+                    break;
+                case "CATEGORY":
+                    exportSegmentFile(source, onDisk, sortBytes, "segment_by_category.txt", "CATEGORY", NetflixShow::getListedIn, true);
+                    out().println("File created: segment_by_category.txt");
+                    break;
+                default:
+                    out().println("Erro: SEGMENT [RATING|DIRECTOR|COUNTRY|CATEGORY]");
+            }
+        } catch(Exception e) { out().println("Error writing files."); }
     }
 
-    private void exportSegmentFile(String filename, boolean byRating) throws Exception {
-        PrintWriter pw = new PrintWriter(new FileWriter(filename));
-        SortedList<String> keys = new SortedList<>();
+    /**
+     * Agrupa os títulos numa única passagem, ordenando as entradas (chave, título)
+     * por chave e ano com ExternalSorter, e escreve o ficheiro com um buffer grande.
+     * As chaves saem por ordem alfabética e, dentro do mesmo ano, os títulos
+     * mantêm a ordem por título. Se as entradas não couberem em maxBytes são
+     * ordenadas em ficheiros temporários em vez de ficarem todas em memória.
+     * @param onDisk true se os títulos vierem do catálogo em disco (cada entrada
+     *               ocupa então o título inteiro e não só uma referência).
+     * @param maxBytes Memória máxima (estimada) das entradas em memória.
+     * @param multiValued true se o campo tiver vários valores separados por vírgulas.
+     */
+    private void exportSegmentFile(Iterable<NetflixShow> source, boolean onDisk, long maxBytes, String filename, String label,
+                                   Function<NetflixShow, String> field, boolean multiValued) throws Exception {
+        Comparator<SegmentEntry> order = (a, b) -> {
+            int c = a.key.compareTo(b.key);
+            return (c != 0) ? c : Integer.compare(a.show.getReleaseYear(), b.show.getReleaseYear());
+        };
+        try (ExternalSorter<SegmentEntry> sorter = new ExternalSorter<>(order, SEGMENT_CODEC,
+                 e -> 64 + e.key.length() + (onDisk ? DiskCatalog.estimatedBytes(e.show) : 0), maxBytes)) {
+            for (NetflixShow s : source) {
+                String val = field.apply(s);
+                if (val == null || val.isBlank()) continue;
+                if (multiValued) {
+                    for (String p : val.split(",")) {
+                        String key = p.trim();
+                        if (!key.isEmpty()) sorter.add(new SegmentEntry(key, s));
+                    }
+                } else {
+                    sorter.add(new SegmentEntry(val, s));
+                }
+            }
 
-        for(int i=0; i<shows.size(); i++) {
-            String val = byRating ? shows.get(i).getRating() : shows.get(i).getDirector();
-            if(val == null || val.isBlank()) continue;
-            if(!contains(keys, val)) keys.add(val);
+            try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(filename), 1 << 20))) {
+                String current = null;
+                for (Iterator<SegmentEntry> it = sorter.sorted(); it.hasNext(); ) {
+                    SegmentEntry e = it.next();
+                    if (!e.key.equals(current)) {
+                        pw.println(">>> " + label + ": " + e.key);
+                        current = e.key;
+                    }
+                    pw.println(e.show);
+                }
+                if (pw.checkError()) throw new Exception("Error writing " + filename);
+            }
         }
+    }
+
+    /**
+     * Passa os títulos carregados para o armazenamento por colunas, reduzindo
+     * a memória ocupada. Os objetos (e os índices que os referem) mantêm-se.
+     * O armazenamento é preenchido por completo antes de algum título passar
+     * a apontar para ele, para que as leituras concorrentes vejam sempre dados completos.
+     */
+    private void compactShows() {
+        long before = usedMemory();
 
-        for(int i=0; i<keys.size(); i++) {
-            String key = keys.get(i);
-            pw.println(">>> " + (byRating ? "RATING" : "DIRECTOR") + ": " + key);
-            SortedList<NetflixShow> group = new SortedList<>();
-            for(int k=0; k<shows.size(); k++) {
-                String val = byRating ? shows.get(k).getRating() : shows.get(k).getDirector();
-                if(key.equals(val)) group.add(shows.get(k));
+        int count = 0;
+        synchronized (writeLock) {
+            NetflixShow[] pending = new NetflixShow[shows.size()];
+            for (NetflixShow s : shows) {
+                if (!s.isCompacted()) pending[count++] = s;
             }
-            NetflixShow[] arr = toArray(group);
-            sortByYear(arr);
-            for(NetflixShow s : arr) pw.println(s);
+            ShowColumns columns = new ShowColumns();
+            int[] rowsOf = new int[count];
+            for (int i = 0; i < count; i++) {
+                NetflixShow s = pending[i];
+                rowsOf[i] = columns.append(s.getShowId(), s.getType(), s.getDirector(), s.getCast(),
+                    s.getCountry(), s.getDateKey(), s.getReleaseYear(), s.getRating(), s.getDuration(),
+                    s.getListedIn(), s.getDescription());
+            }
+            columns.trimToSize();
+            for (int i = 0; i < count; i++) pending[i].compactInto(columns, rowsOf[i]);
         }
-        pw.close();
+
+        long after = usedMemory();
+        out().printf("%d shows compacted (heap %.1f MB -> %.1f MB)%n",
+            count, before / 1048576.0, after / 1048576.0);
     }
 
     // UTILITÁRIOS.
 
-    private NetflixShow findById(String id) {
-        for (int i = 0; i < shows.size(); i++) {
-            if (shows.get(i).getShowId().equalsIgnoreCase(id)) return shows.get(i);
+    /**
+     * Constrói o SuggestIndex com os títulos atuais, regista-o nos índices e
+     * publica uma fotografia que o inclui (só da primeira vez).
+     * @return A fotografia publicada, com as sugestões.
+     */
+    private CatalogSnapshot buildSuggestions() {
+        synchronized (writeLock) {
+            if (suggestIndex == null) {
+                SuggestIndex index = new SuggestIndex();
+                for (NetflixShow s : shows) index.add(s);
+                suggestIndex = index;
+                indexes.add(index);
+                publish();
+            }
+            return snapshot;
         }
-        return null;
     }
 
-    private void sortByDate(SortedList<NetflixShow> list) {
-        NetflixShow[] arr = toArray(list);
-        for (int i=0; i<arr.length; i++) {
-            for (int j=0; j<arr.length-1-i; j++) {
-                boolean swap = false;
-                if (arr[j].getDateAdded() == null) swap = false;
-                else if (arr[j+1].getDateAdded() == null) swap = true;
-                else if (arr[j].getDateAdded().isAfter(arr[j+1].getDateAdded())) swap = true;
-                if (swap) { NetflixShow temp=arr[j]; arr[j]=arr[j+1]; arr[j+1]=temp; }
-            }
-        }
-        listArray(arr);
+    /**
+     * Publica uma nova fotografia com o estado atual (chamado com o writeLock).
+     */
+    private void publish() {
+        RowTable rowsView = rows.snapshot();
+        snapshot = new CatalogSnapshot(++version, shows.snapshot(), rowsView, idIndex.snapshot(rowsView),
+            titleIndex.snapshot(rowsView), castIndex.snapshot(rowsView), durationIndex.snapshot(rowsView),
+            similarityIndex.snapshot(rowsView), filterIndex.snapshot(rowsView),
+            (suggestIndex == null) ? null : suggestIndex.snapshot(), stats.copy());
     }
 
-    private void sortByYear(NetflixShow[] arr) {
-        for (int i=0; i<arr.length; i++) {
-            for (int j=0; j<arr.length-1-i; j++) {
-                if (arr[j].getReleaseYear() > arr[j+1].getReleaseYear()) {
-                    NetflixShow temp=arr[j]; arr[j]=arr[j+1]; arr[j+1]=temp;
-                }
-            }
+    /**
+     * Insere um título na lista principal e em todos os índices (chamado com o writeLock).
+     */
+    private void addShow(NetflixShow show) {
+        show.setStamp(shows.insert(show));
+        rows.add(show);
+        idIndex.put(show.getShowId(), show.getRowId());
+        for (ShowIndex index : indexes) index.add(show);
+    }
+
+    /**
+     * Remove um título da lista principal e de todos os índices (chamado com o writeLock).
+     */
+    private void removeShow(NetflixShow show) {
+        idIndex.remove(show.getShowId());
+        for (ShowIndex index : indexes) index.remove(show);
+        shows.remove(show, show.getStamp());
+        rows.remove(show);
+    }
+
+    /**
+     * Esvazia a lista principal e todos os índices.
+     * @return O número de títulos apagados.
+     */
+    public int clearShows() {
+        synchronized (writeLock) {
+            int size = shows.size();
+            shows.clear();
+            idIndex.clear();
+            rows.clear();
+            for (ShowIndex index : indexes) index.clear();
+            publish();
+            return size;
         }
     }
 
-    private NetflixShow[] toArray(List<NetflixShow> list) {
-        NetflixShow[] arr = new NetflixShow[list.size()];
-        for(int i=0; i<list.size(); i++) arr[i] = list.get(i);
-        return arr;
+    /**
+     * Memória ocupada no heap após recolha de lixo (aproximada).
+     */
+    private long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Procura um título pelo id na última fotografia, sem bloquear (pode ser
+     * chamado por qualquer thread).
+     * @param id O show_id (sem distinção de maiúsculas).
+     * @return O título ou null se não existir.
+     */
+    public NetflixShow findById(String id) {
+        NetflixShow show = snapshot.findById(id);
+        Metrics.idLookup(show != null);
+        return show;
     }
 
     private void listArray(NetflixShow[] arr) {
+        listArray(Arrays.asList(arr).iterator(), arr.length);
+    }
+
+    private void listArray(Iterator<NetflixShow> it, long count) {
         int pageSize = 30;
         printHeader();
-        Scanner sc = new Scanner(System.in);
-        for (int i = 0; i < arr.length; i++) {
-            System.out.println(arr[i]);
-            if ((i + 1) % pageSize == 0) {
-                System.out.println("--- ENTER cont, 'n' stop ---");
-                if (sc.nextLine().equalsIgnoreCase("n")) break;
+        for (long i = 0; i < count && it.hasNext(); i++) {
+            out().println(it.next());
+            if ((i + 1) % pageSize == 0 && paging) {
+                out().println("--- ENTER cont, 'n' stop ---");
+                if (stopPaging()) break;
             }
         }
     }
-    
-    private boolean contains(List<String> list, String val) {
-        for(int i=0; i<list.size(); i++) if(list.get(i).equals(val)) return true;
-        return false;
-    }
 
-    private void printHeader() {
-        System.out.println("Show ID  | Type     | Title                          | Date Added   | Rating | Duration");
-        System.out.println("---------|----------|--------------------------------|--------------|--------|----------");
+    /**
+     * Lê a resposta do utilizador a uma pausa da paginação, da mesma entrada
+     * dos comandos (um novo Scanner sobre System.in perderia o que o primeiro já leu).
+     * @return true se a listagem deve parar.
+     */
+    private boolean stopPaging() {
+        if (input == null || !input.hasNextLine()) return true;
+        return input.nextLine().trim().equalsIgnoreCase("n");
     }
 
-    private String[] parseCsvLine(String line) {
-        String[] parts = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-        for(int i=0; i<parts.length; i++) parts[i] = parts[i].replace("\"", "").trim();
-        return parts;
+    private PrintStream out() {
+        return out.get();
+    }
+    
+    private void printHeader() {
+        out().println("Show ID  | Type     | Title                          | Date Added   | Rating | Duration");
+        out().println("---------|----------|--------------------------------|--------------|--------|----------");
     }
 }
\ No newline at end of file
@@ -1,11 +1,13 @@
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
+import java.time.Month;
+import java.time.Year;
+import java.util.Comparator;
+import java.util.Objects;
 
 /**
  * Representa um título da Netflix (Filme ou Série de TV).
  * @author Simão Ferreira / Miguel Eusébio.
- * @version 1.1
+ * @version 1.2
  */
 public class NetflixShow implements Comparable<NetflixShow> {
     private String showId;
@@ -20,6 +22,35 @@ public class NetflixShow implements Comparable<NetflixShow> {
     private int duration; // Em minutos caso seja filme ou número de temporadas caso seja série.
     private String listedIn;
     private String description;
+    private int rowId = -1; // Identificador interno atribuído pela RowTable (-1 se não carregado).
+    private long stamp = -1; // Carimbo de inserção na lista principal (desempata títulos iguais).
+    private volatile ShowColumns store; // Armazenamento por colunas, depois de compactado (null antes disso).
+    private int columnRow;
+
+    /**
+     * Ordem da lista principal: título e, para títulos iguais, o carregado
+     * mais recentemente primeiro (carimbo maior).
+     */
+    static final Comparator<NetflixShow> LIST_ORDER = (a, b) -> {
+        int c = a.compareTo(b);
+        return (c != 0) ? c : Long.compare(b.stamp, a.stamp);
+    };
+
+    /**
+     * Ordem por título e, para títulos iguais, por show_id. Ao contrário da
+     * LIST_ORDER não depende da ordem de carregamento, pelo que é a mesma num
+     * gestor, no catálogo em disco e no catálogo particionado.
+     */
+    static final Comparator<NetflixShow> TITLE_ORDER = (a, b) -> {
+        int c = a.compareTo(b);
+        return (c != 0) ? c : a.getShowId().compareTo(b.getShowId());
+    };
+
+    /** Nomes dos meses em inglês, usados na conversão das datas. */
+    private static final String[] MONTHS = {
+        "January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December"
+    };
 
     /**
      * Constrói uma nova instância de NetflixShow com todos os atributos.
@@ -39,25 +70,99 @@ public class NetflixShow implements Comparable<NetflixShow> {
         this.listedIn = listedIn;
         this.description = description;
 
-        // Conversão da Data.
-        try {
-            if (dateStr != null && !dateStr.isBlank()) {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.ENGLISH);
-                this.dateAdded = LocalDate.parse(dateStr.trim(), formatter);
+        // Conversão da Data e da Duração, sem expressões regulares nem exceções.
+        this.dateAdded = parseDate(dateStr);
+        this.duration = parseDuration(durationStr);
+    }
+
+    /**
+     * Constrói uma instância com a data e a duração já convertidas (usado ao
+     * ler uma fotografia binária, sem voltar a fazer o parsing dos textos).
+     * @param dateKey A data de adição em dias desde 1970-01-01 ou Integer.MIN_VALUE se desconhecida.
+     * @param duration A duração em minutos ou em temporadas.
+     */
+    NetflixShow(String showId, String type, String title, String director, String cast,
+                String country, int dateKey, int releaseYear, String rating,
+                int duration, String listedIn, String description) {
+        this.showId = showId;
+        this.type = type;
+        this.title = title;
+        this.director = director;
+        this.cast = cast;
+        this.country = country;
+        this.releaseYear = releaseYear;
+        this.rating = rating;
+        this.listedIn = listedIn;
+        this.description = description;
+        this.dateAdded = (dateKey != Integer.MIN_VALUE) ? LocalDate.ofEpochDay(dateKey) : null;
+        this.duration = duration;
+    }
+
+    /**
+     * Converte uma data no formato "MMMM d, yyyy" (ex.: "September 25, 2021"),
+     * com o nome do mês em inglês e sem distinção de maiúsculas.
+     * @param s O texto da data.
+     * @return A data ou null se o texto estiver vazio ou for inválido.
+     */
+    static LocalDate parseDate(String s) {
+        if (s == null) return null;
+        int i = 0, end = s.length();
+        while (i < end && Character.isWhitespace(s.charAt(i))) i++;
+        while (end > i && Character.isWhitespace(s.charAt(end - 1))) end--;
+
+        // Nome do mês.
+        int month = 0;
+        for (int m = 0; m < MONTHS.length; m++) {
+            int len = MONTHS[m].length();
+            if (i + len < end && s.regionMatches(true, i, MONTHS[m], 0, len) && s.charAt(i + len) == ' ') {
+                month = m + 1;
+                i += len + 1;
+                break;
             }
-        } catch (Exception e) {
-            this.dateAdded = null;
         }
+        if (month == 0) return null;
+
+        // Dia (1 ou 2 dígitos) seguido de ", ".
+        int day = 0, digits = 0;
+        while (i < end && isDigit(s.charAt(i)) && digits < 2) { day = day * 10 + (s.charAt(i++) - '0'); digits++; }
+        if (digits == 0 || i + 2 > end || s.charAt(i) != ',' || s.charAt(i + 1) != ' ') return null;
+        i += 2;
 
-        // Conversão da Duração para int.
-        try {
-            if (durationStr != null) {
-                String numbers = durationStr.replaceAll("[^0-9]", "");
-                this.duration = Integer.parseInt(numbers);
+        // Ano com 4 dígitos.
+        if (end - i != 4) return null;
+        int year = 0;
+        for (; i < end; i++) {
+            if (!isDigit(s.charAt(i))) return null;
+            year = year * 10 + (s.charAt(i) - '0');
+        }
+
+        // Tal como o DateTimeFormatter (modo SMART), um dia inexistente no mês passa para o último dia.
+        if (day < 1 || day > 31) return null;
+        return LocalDate.of(year, month, Math.min(day, Month.of(month).length(Year.isLeap(year))));
+    }
+
+    /**
+     * Extrai a duração juntando todos os dígitos do texto (ex.: "90 min" -> 90, "2 Seasons" -> 2).
+     * @param s O texto da duração.
+     * @return O valor ou 0 se não houver dígitos ou o número for demasiado grande.
+     */
+    static int parseDuration(String s) {
+        if (s == null) return 0;
+        long value = 0;
+        boolean any = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isDigit(c)) {
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE) return 0;
+                any = true;
             }
-        } catch (Exception e) {
-            this.duration = 0;
         }
+        return any ? (int) value : 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
     @Override
@@ -65,9 +170,71 @@ public class NetflixShow implements Comparable<NetflixShow> {
         return this.title.compareToIgnoreCase(other.title);
     }
 
+    /**
+     * Indica se o título já foi passado para um armazenamento por colunas.
+     */
+    public boolean isCompacted() {
+        return store != null;
+    }
+
+    /**
+     * Passa este objeto a ser apenas uma vista sobre a linha indicada do
+     * armazenamento por colunas, libertando o show_id, os atributos de texto e
+     * a data. Só o título fica no objeto, por ser usado em todas as comparações
+     * da lista.
+     * * O armazenamento já deve estar completo (não é alterado depois), para que
+     * outras threads possam ler o título enquanto ele é compactado.
+     * @param columns O armazenamento com os atributos deste título.
+     * @param row A linha deste título no armazenamento.
+     */
+    synchronized void compactInto(ShowColumns columns, int row) {
+        if (store != null) return;
+        columnRow = row;
+        store = columns;
+        showId = type = director = cast = country = rating = listedIn = description = null;
+        dateAdded = null;
+    }
+
+    /**
+     * Indica se outro título tem exatamente os mesmos valores em todos os
+     * atributos (usado pelo MERGEF para ignorar linhas que não mudaram).
+     * @param other O outro título.
+     * @return true se todos os atributos forem iguais.
+     */
+    public boolean sameContent(NetflixShow other) {
+        return Objects.equals(getShowId(), other.getShowId())
+            && Objects.equals(title, other.title)
+            && Objects.equals(getType(), other.getType())
+            && Objects.equals(getDirector(), other.getDirector())
+            && Objects.equals(getCast(), other.getCast())
+            && Objects.equals(getCountry(), other.getCountry())
+            && getDateKey() == other.getDateKey()
+            && releaseYear == other.releaseYear
+            && Objects.equals(getRating(), other.getRating())
+            && duration == other.duration
+            && Objects.equals(getListedIn(), other.getListedIn())
+            && Objects.equals(getDescription(), other.getDescription());
+    }
+
+    /**
+     * Devolve o armazenamento por colunas ou null se o título não foi compactado.
+     * Só é chamado quando um atributo é null: nesse caso, se a compactação
+     * estiver a decorrer noutra thread, espera que termine.
+     */
+    private ShowColumns columns() {
+        ShowColumns s = store;
+        if (s == null) {
+            synchronized (this) { s = store; }
+        }
+        return s;
+    }
+
     // Getters.
     public String getShowId() {
-        return showId;
+        String v = showId;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.text(columnRow, ShowColumns.SHOW_ID) : null;
     }
 
     public String getTitle() {
@@ -75,7 +242,10 @@ public class NetflixShow implements Comparable<NetflixShow> {
     }
 
     public String getType() {
-        return type;
+        String v = type;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.type(columnRow) : null;
     }
 
     public int getDuration() {
@@ -83,7 +253,10 @@ public class NetflixShow implements Comparable<NetflixShow> {
     }
     
     public String getRating() {
-        return rating;
+        String v = rating;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.rating(columnRow) : null;
     }
     
     public int getReleaseYear() {
@@ -91,29 +264,124 @@ public class NetflixShow implements Comparable<NetflixShow> {
     }
     
     public String getCast() {
-        return cast;
+        String v = cast;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.text(columnRow, ShowColumns.CAST) : null;
     }
     
     public String getDirector() {
-        return director;
+        String v = director;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.text(columnRow, ShowColumns.DIRECTOR) : null;
     }
     
     public String getListedIn() {
-        return listedIn;
+        String v = listedIn;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.listedIn(columnRow) : null;
     }
     
     public LocalDate getDateAdded() {
-        return dateAdded;
+        LocalDate d = dateAdded;
+        if (d != null) return d;
+        ShowColumns s = columns();
+        if (s == null) return null;
+        int key = s.dateKey(columnRow);
+        return (key != Integer.MIN_VALUE) ? LocalDate.ofEpochDay(key) : null;
+    }
+
+    /**
+     * Devolve a data de adição como número de dias desde 1970-01-01, útil como chave de ordenação.
+     * @return O dia da data ou Integer.MIN_VALUE se a data for desconhecida.
+     */
+    public int getDateKey() {
+        LocalDate d = dateAdded;
+        if (d != null) return (int) d.toEpochDay();
+        ShowColumns s = columns();
+        return (s != null) ? s.dateKey(columnRow) : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Indica se o elenco contém o texto, sem distinção de maiúsculas. Depois
+     * de compactado, compara diretamente no armazenamento, sem criar a string.
+     * @param query O texto a procurar.
+     * @return true se o elenco existir e contiver o texto.
+     */
+    public boolean castContains(String query) {
+        String v = cast;
+        if (v != null) return TrigramIndex.containsIgnoreCase(v, query);
+        ShowColumns s = columns();
+        return s != null && s.textContains(columnRow, ShowColumns.CAST, query);
+    }
+
+    /**
+     * Indica se o título pertence à categoria (um dos valores de listed_in),
+     * sem distinção de maiúsculas e sem criar strings.
+     * @param category O nome da categoria.
+     * @return true se a categoria constar do título.
+     */
+    public boolean hasCategory(String category) {
+        String v = listedIn;
+        if (v == null) {
+            ShowColumns s = columns();
+            if (s != null) return s.hasCategory(columnRow, category);
+            return false;
+        }
+        for (int start = 0; start <= v.length(); ) {
+            int end = v.indexOf(',', start);
+            if (end < 0) end = v.length();
+            int from = start, to = end;
+            while (from < to && Character.isWhitespace(v.charAt(from))) from++;
+            while (to > from && Character.isWhitespace(v.charAt(to - 1))) to--;
+            if (to > from && to - from == category.length() && v.regionMatches(true, from, category, 0, to - from)) return true;
+            start = end + 1;
+        }
+        return false;
+    }
+
+    public String getDescription() {
+        String v = description;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.text(columnRow, ShowColumns.DESCRIPTION) : null;
+    }
+
+    public String getCountry() {
+        String v = country;
+        if (v != null) return v;
+        ShowColumns s = columns();
+        return (s != null) ? s.country(columnRow) : null;
+    }
+
+    public int getRowId() {
+        return rowId;
+    }
+
+    public void setRowId(int rowId) {
+        this.rowId = rowId;
+    }
+
+    long getStamp() {
+        return stamp;
+    }
+
+    void setStamp(long stamp) {
+        this.stamp = stamp;
     }
 
     @Override
     public String toString() {
-        String dateStr = (dateAdded != null) ? dateAdded.toString() : "N/A";
+        LocalDate date = getDateAdded();
+        String type = getType();
+        String dateStr = (date != null) ? date.toString() : "N/A";
         String durUnit = type.equalsIgnoreCase("Movie") ? " min" : " Seasons";
         
         String displayTitle = title.length() > 30 ? title.substring(0, 27) + "..." : title;
         
         return String.format("%-8s | %-8s | %-30s | %-12s | %-6s | %s", 
-            showId, type, displayTitle, dateStr, rating, duration + durUnit);
+            getShowId(), type, displayTitle, dateStr, getRating(), duration + durUnit);
     }
 }
\ No newline at end of file
@@ -1,24 +1,50 @@
 /**
- * Representa um nó genérico numa lista ligada.
- * Contém o dado armazenado e uma referência para o próximo nó.
+ * Representa um nó genérico numa árvore binária de pesquisa aumentada.
+ * Além do dado armazenado, guarda as ligações para os filhos, o tamanho da
+ * subárvore (para acesso posicional) e a prioridade usada para manter a
+ * árvore equilibrada.
+ * * Os nós são partilhados entre a lista e as suas fotografias (ver
+ * SortedList.snapshot): um nó só é alterado no lugar pela lista que o criou
+ * e enquanto a sua época for a atual; caso contrário é copiado.
  * @param <T> O tipo de dado armazenado no nó.
  * @author Simão Ferreira / Miguel Eusébio
- * @version 1.1
+ * @version 1.2
  */
 public class Node<T> {
-    
+
     /** O dado armazenado neste nó. */
     public T data;
-    
-    /** Referência para o próximo nó na lista. */
-    public Node<T> next;
+
+    /** Referência para o filho esquerdo (elementos menores). */
+    public Node<T> left;
+
+    /** Referência para o filho direito (elementos maiores). */
+    public Node<T> right;
+
+    /** Número de nós da subárvore com raiz neste nó (incluindo o próprio). */
+    public int size;
+
+    /** Prioridade aleatória da treap: o pai tem sempre prioridade maior ou igual. */
+    public int priority;
+
+    /** Ordem de inserção: entre dados iguais fica primeiro o carimbo maior (o mais recente). */
+    public long stamp;
+
+    /** Época da lista em que o nó foi criado ou copiado. */
+    public int epoch;
 
     /**
      * Constrói um novo nó com o dado especificado.
      * @param data O dado a armazenar no nó.
+     * @param priority A prioridade do nó na treap.
+     * @param stamp O carimbo de inserção.
+     * @param epoch A época atual da lista.
      */
-    public Node(T data) {
+    public Node(T data, int priority, long stamp, int epoch) {
         this.data = data;
-        this.next = null;
+        this.priority = priority;
+        this.stamp = stamp;
+        this.epoch = epoch;
+        this.size = 1;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,407 @@
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Tabela de dispersão de chaves long para listas ordenadas de rowIds, usada
+ * pelo TrigramIndex (trigrama -> títulos) e pelo SimilarityIndex (chave de
+ * banda -> títulos).
+ * * Cada lista é dividida em blocos de no máximo BLOCK rowIds, para que
+ * inserir ou retirar um rowId só desloque (ou copie) um bloco. Um bloco é um
+ * int[] com o número de valores e a época no cabeçalho, seguidos dos valores.
+ * * snapshot devolve uma cópia só de leitura que partilha tudo com a tabela:
+ * só o diretório de páginas é copiado. Antes de alterar uma página, o
+ * diretório de blocos de uma lista ou um bloco que ainda pertençam a uma
+ * época anterior, a tabela copia-os; cada alteração copia assim uma página,
+ * um diretório e um bloco, e nunca a lista inteira.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class PostingTable {
+
+    /** Posições por página (potência de 2). */
+    private static final int PAGE = 256;
+    private static final int SHIFT = Integer.numberOfTrailingZeros(PAGE);
+
+    /** Número máximo de rowIds por bloco. */
+    static final int BLOCK = 256;
+
+    /** Cabeçalho de um bloco: número de valores e época. */
+    private static final int COUNT = 0, EPOCH = 1, HEADER = 2;
+
+    /** Capacidade inicial da tabela (potência de 2, múltiplo de PAGE). */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Uma página de posições; lists[i] == null marca uma posição livre. */
+    private static final class Page {
+        final long[] keys;
+        final int[][][] lists;
+        final int[] counts;
+        final int[] owners;
+        final int epoch;
+
+        Page(int epoch) {
+            this(new long[PAGE], new int[PAGE][][], new int[PAGE], new int[PAGE], epoch);
+        }
+
+        Page(long[] keys, int[][][] lists, int[] counts, int[] owners, int epoch) {
+            this.keys = keys;
+            this.lists = lists;
+            this.counts = counts;
+            this.owners = owners;
+            this.epoch = epoch;
+        }
+    }
+
+    private Page[] pages;
+
+    /** Número de chaves distintas na tabela. */
+    private int size;
+
+    /** Época atual: páginas, diretórios e blocos de épocas anteriores podem estar numa fotografia. */
+    private int epoch;
+
+    /** Indica se a tabela é uma fotografia (só de leitura). */
+    private final boolean frozen;
+
+    /**
+     * Cria uma tabela vazia.
+     */
+    public PostingTable() {
+        this.frozen = false;
+        clear();
+    }
+
+    private PostingTable(Page[] pages, int size) {
+        this.pages = pages;
+        this.size = size;
+        this.frozen = true;
+    }
+
+    /**
+     * Acrescenta o rowId à lista da chave (nada se já lá estiver).
+     * @param key A chave.
+     * @param rowId O rowId.
+     */
+    public void add(long key, int rowId) {
+        checkWritable();
+        int slot = slotFor(key);
+        Page page = ownPage(slot >>> SHIFT);
+        int i = slot & (PAGE - 1);
+        int[][] blocks = page.lists[i];
+        if (blocks.length == 0) {
+            page.lists[i] = new int[][] { newBlock(4) };
+            page.owners[i] = epoch;
+            blocks = page.lists[i];
+        }
+
+        int b = blockFor(blocks, rowId);
+        int[] block = blocks[b];
+        int pos = search(block, rowId);
+        if (pos < block[COUNT] && block[HEADER + pos] == rowId) return; // Chave repetida no mesmo título.
+
+        blocks = ownBlocks(page, i);
+        block = ownBlock(blocks, b);
+        int count = block[COUNT];
+        if (count == BLOCK) {
+            // Bloco cheio: divide-o em dois e insere na metade certa.
+            int half = BLOCK / 2;
+            int[] right = newBlock(BLOCK);
+            System.arraycopy(block, HEADER + half, right, HEADER, count - half);
+            right[COUNT] = count - half;
+            block[COUNT] = half;
+            int[][] grown = new int[blocks.length + 1][];
+            System.arraycopy(blocks, 0, grown, 0, b + 1);
+            grown[b + 1] = right;
+            System.arraycopy(blocks, b + 1, grown, b + 2, blocks.length - b - 1);
+            page.lists[i] = grown;
+            if (pos > half) {
+                block = right;
+                pos -= half;
+            }
+            count = block[COUNT];
+        } else if (HEADER + count == block.length) {
+            block = Arrays.copyOf(block, HEADER + Math.min(count * 2, BLOCK));
+            blocks[b] = block;
+        }
+        System.arraycopy(block, HEADER + pos, block, HEADER + pos + 1, count - pos);
+        block[HEADER + pos] = rowId;
+        block[COUNT] = count + 1;
+        page.counts[i]++;
+    }
+
+    /**
+     * Retira o rowId da lista da chave (nada se não estiver).
+     * @param key A chave.
+     * @param rowId O rowId.
+     */
+    public void remove(long key, int rowId) {
+        checkWritable();
+        int slot = find(key);
+        if (slot < 0) return;
+        int i = slot & (PAGE - 1);
+        int[][] blocks = pages[slot >>> SHIFT].lists[i];
+        if (blocks.length == 0) return;
+        int b = blockFor(blocks, rowId);
+        int pos = search(blocks[b], rowId);
+        if (pos == blocks[b][COUNT] || blocks[b][HEADER + pos] != rowId) return;
+
+        Page page = ownPage(slot >>> SHIFT);
+        page.counts[i]--;
+        if (blocks[b][COUNT] == 1) {
+            // A posição da chave mantém-se (com uma lista vazia) para não partir as sequências de sondagem.
+            int[][] shrunk = new int[blocks.length - 1][];
+            System.arraycopy(blocks, 0, shrunk, 0, b);
+            System.arraycopy(blocks, b + 1, shrunk, b, blocks.length - b - 1);
+            page.lists[i] = shrunk;
+            page.owners[i] = epoch;
+            return;
+        }
+        int[] block = ownBlock(ownBlocks(page, i), b);
+        int count = block[COUNT];
+        System.arraycopy(block, HEADER + pos + 1, block, HEADER + pos, count - pos - 1);
+        block[COUNT] = count - 1;
+    }
+
+    /**
+     * Esvazia a tabela (as fotografias mantêm-se).
+     */
+    public void clear() {
+        checkWritable();
+        pages = new Page[INITIAL_CAPACITY / PAGE];
+        for (int p = 0; p < pages.length; p++) pages[p] = new Page(epoch);
+        size = 0;
+    }
+
+    /**
+     * Devolve uma fotografia da tabela, que não muda com as alterações seguintes.
+     * Custa O(chaves / PAGE).
+     * @return A tabela só de leitura.
+     */
+    public PostingTable snapshot() {
+        checkWritable();
+        PostingTable view = new PostingTable(pages.clone(), size);
+        epoch++;
+        return view;
+    }
+
+    /**
+     * Devolve a lista da chave, como blocos (ver value e count).
+     * @param key A chave.
+     * @return Os blocos, ou um array vazio se a chave não tiver rowIds.
+     */
+    public int[][] blocks(long key) {
+        int slot = find(key);
+        return (slot < 0) ? new int[0][] : pages[slot >>> SHIFT].lists[slot & (PAGE - 1)];
+    }
+
+    /**
+     * Número de rowIds na lista da chave.
+     * @param key A chave.
+     * @return O número de rowIds (0 se a chave não existir).
+     */
+    public int count(long key) {
+        int slot = find(key);
+        return (slot < 0) ? 0 : pages[slot >>> SHIFT].counts[slot & (PAGE - 1)];
+    }
+
+    /** Número de valores de um bloco. */
+    static int count(int[] block) {
+        return block[COUNT];
+    }
+
+    /** Valor na posição i de um bloco. */
+    static int value(int[] block, int i) {
+        return block[HEADER + i];
+    }
+
+    /**
+     * Primeira posição de um bloco, a partir de from, com valor >= target
+     * (pesquisa exponencial seguida de binária).
+     * @return A posição, ou count(block) se não houver.
+     */
+    static int gallop(int[] block, int from, int target) {
+        int len = block[COUNT];
+        int step = 1;
+        int hi = from;
+        while (hi < len && block[HEADER + hi] < target) {
+            from = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        return lowerBound(block, from, Math.min(hi + 1, len), target);
+    }
+
+    /**
+     * Percorre as listas não vazias, pela ordem em que estão na tabela
+     * (usado pelo SnapshotFile para gravar o índice).
+     * @param action Recebe os blocos da lista (ver value e count) e a chave.
+     */
+    void forEach(ObjLongConsumer<int[][]> action) {
+        for (Page page : pages) {
+            for (int i = 0; i < PAGE; i++) {
+                if (page.lists[i] != null && page.lists[i].length > 0) action.accept(page.lists[i], page.keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Acrescenta a lista de uma chave que ainda não existe, com os rowIds já
+     * ordenados, em blocos cheios (carregamento de uma fotografia binária).
+     * @param key A chave (nova).
+     * @param rowIds Os rowIds, por ordem crescente e sem repetidos.
+     * @param count O número de rowIds a usar do início do array.
+     */
+    void putSorted(long key, int[] rowIds, int count) {
+        checkWritable();
+        if (count == 0) return;
+        int slot = slotFor(key);
+        Page page = ownPage(slot >>> SHIFT);
+        int i = slot & (PAGE - 1);
+        if (page.lists[i].length > 0) throw new IllegalStateException("key already present");
+        int[][] blocks = new int[(count + BLOCK - 1) / BLOCK][];
+        for (int b = 0; b < blocks.length; b++) {
+            int from = b * BLOCK, n = Math.min(BLOCK, count - from);
+            blocks[b] = newBlock(n);
+            System.arraycopy(rowIds, from, blocks[b], HEADER, n);
+            blocks[b][COUNT] = n;
+        }
+        page.lists[i] = blocks;
+        page.counts[i] = count;
+        page.owners[i] = epoch;
+    }
+
+    // UTILITÁRIOS.
+
+    /** Índice do primeiro bloco cujo último valor é >= rowId (o último, se nenhum for). */
+    private static int blockFor(int[][] blocks, int rowId) {
+        int lo = 0, hi = blocks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int[] block = blocks[mid];
+            if (block[HEADER + block[COUNT] - 1] < rowId) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int search(int[] block, int rowId) {
+        return lowerBound(block, 0, block[COUNT], rowId);
+    }
+
+    /** Primeira posição em [from, to) com valor >= target. */
+    private static int lowerBound(int[] block, int from, int to, int target) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (block[HEADER + mid] < target) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+    private int[] newBlock(int capacity) {
+        int[] block = new int[HEADER + capacity];
+        block[EPOCH] = epoch;
+        return block;
+    }
+
+    /** Devolve a página pronta a ser alterada, copiando-a se estiver numa fotografia. */
+    private Page ownPage(int p) {
+        Page page = pages[p];
+        if (page.epoch != epoch) {
+            page = new Page(page.keys.clone(), page.lists.clone(), page.counts.clone(), page.owners.clone(), epoch);
+            pages[p] = page;
+        }
+        return page;
+    }
+
+    /** Diretório de blocos da posição i, copiado se estiver numa fotografia (a página já é desta época). */
+    private int[][] ownBlocks(Page page, int i) {
+        if (page.owners[i] != epoch) {
+            page.lists[i] = page.lists[i].clone();
+            page.owners[i] = epoch;
+        }
+        return page.lists[i];
+    }
+
+    /** Bloco b do diretório, copiado se estiver numa fotografia (o diretório já é desta época). */
+    private int[] ownBlock(int[][] blocks, int b) {
+        int[] block = blocks[b];
+        if (block[EPOCH] != epoch) {
+            block = block.clone();
+            block[EPOCH] = epoch;
+            blocks[b] = block;
+        }
+        return block;
+    }
+
+    /**
+     * Devolve a posição da chave, criando-a (com uma lista vazia) se necessário.
+     */
+    private int slotFor(long key) {
+        int slot = find(key);
+        if (slot >= 0) return slot;
+        if ((size + 1) * 2 > pages.length * PAGE) grow();
+        int mask = pages.length * PAGE - 1;
+        int s = mix(key) & mask;
+        while (pages[s >>> SHIFT].lists[s & (PAGE - 1)] != null) s = (s + 1) & mask;
+        Page page = ownPage(s >>> SHIFT);
+        page.keys[s & (PAGE - 1)] = key;
+        page.lists[s & (PAGE - 1)] = new int[0][];
+        page.owners[s & (PAGE - 1)] = epoch;
+        size++;
+        return s;
+    }
+
+    private int find(long key) {
+        int mask = pages.length * PAGE - 1;
+        for (int s = mix(key) & mask; ; s = (s + 1) & mask) {
+            Page page = pages[s >>> SHIFT];
+            int i = s & (PAGE - 1);
+            if (page.lists[i] == null) return -1;
+            if (page.keys[i] == key) return s;
+        }
+    }
+
+    /**
+     * Reconstrói a tabela com o dobro das chaves vivas de folga, deixando de
+     * fora as chaves que ficaram sem rowIds. As listas passam para as novas
+     * páginas sem cópia e mantêm a sua época (podem continuar partilhadas
+     * com uma fotografia).
+     */
+    private void grow() {
+        Page[] old = pages;
+        int live = 0;
+        for (Page page : old) {
+            for (int i = 0; i < PAGE; i++) {
+                if (page.lists[i] != null && page.lists[i].length > 0) live++;
+            }
+        }
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < (live + 1) * 4) capacity *= 2;
+        pages = new Page[capacity / PAGE];
+        for (int p = 0; p < pages.length; p++) pages[p] = new Page(epoch);
+        int mask = capacity - 1;
+        for (Page page : old) {
+            for (int i = 0; i < PAGE; i++) {
+                if (page.lists[i] == null || page.lists[i].length == 0) continue;
+                int s = mix(page.keys[i]) & mask;
+                while (pages[s >>> SHIFT].lists[s & (PAGE - 1)] != null) s = (s + 1) & mask;
+                Page target = pages[s >>> SHIFT];
+                target.keys[s & (PAGE - 1)] = page.keys[i];
+                target.lists[s & (PAGE - 1)] = page.lists[i];
+                target.counts[s & (PAGE - 1)] = page.counts[i];
+                target.owners[s & (PAGE - 1)] = page.owners[i];
+            }
+        }
+        size = live;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void checkWritable() {
+        if (frozen) throw new UnsupportedOperationException("read-only snapshot");
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache dos resultados das consultas repetidas (SEARCHT, SEARCHC, MTIME),
+ * guardados como arrays de rowIds (ver RowTable) em vez de cópias dos títulos.
+ * * Cada resultado pertence à versão da coleção em que foi calculado. Quando
+ * aparece uma versão mais recente (depois de um LOADF, DEL, CLEAR, MERGEF...)
+ * todas as entradas anteriores são descartadas, pelo que nunca é devolvido um
+ * resultado desatualizado.
+ * * A memória ocupada (estimada) é limitada a maxBytes; quando é ultrapassada
+ * saem primeiro as entradas usadas há mais tempo (LRU, com um LinkedHashMap
+ * por ordem de acesso). Todos os métodos podem ser chamados por várias threads.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class ResultCache {
+
+    /** Custo estimado de uma entrada, além da chave e dos rowIds (nó do mapa, cabeçalhos dos objetos). */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /** Entradas por ordem de acesso (a primeira é a usada há mais tempo). */
+    private final LinkedHashMap<String, int[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long maxBytes;
+    private long bytes;
+
+    /** Versão da coleção a que pertencem as entradas. */
+    private long version = -1;
+
+    private long hits, misses, evictions;
+
+    /**
+     * Cria uma cache vazia.
+     * @param maxBytes A memória máxima (estimada) ocupada pelas entradas.
+     */
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Procura um resultado.
+     * @param key A consulta normalizada.
+     * @param version A versão atual da coleção.
+     * @return Os rowIds do resultado ou null se não estiver na cache para essa versão.
+     */
+    public synchronized int[] get(String key, long version) {
+        if (version > this.version) invalidate(version);
+        int[] ids = (version == this.version) ? entries.get(key) : null;
+        if (ids == null) misses++;
+        else hits++;
+        return ids;
+    }
+
+    /**
+     * Guarda um resultado (ignorado se a versão já estiver ultrapassada ou se
+     * o resultado sozinho não couber na cache).
+     * @param key A consulta normalizada.
+     * @param version A versão da coleção em que o resultado foi calculado.
+     * @param ids Os rowIds do resultado (não devem voltar a ser alterados).
+     */
+    public synchronized void put(String key, long version, int[] ids) {
+        if (version < this.version) return;
+        if (version > this.version) invalidate(version);
+        long weight = weight(key, ids);
+        if (weight > maxBytes) return;
+        int[] old = entries.put(key, ids);
+        if (old != null) bytes -= weight(key, old);
+        bytes += weight;
+        evict();
+    }
+
+    /**
+     * Altera a memória máxima, descartando as entradas necessárias.
+     * @param maxBytes A nova memória máxima.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Escreve o estado da cache numa linha.
+     * @return As entradas, a memória ocupada e os acertos e falhas.
+     */
+    public synchronized String summary() {
+        long lookups = hits + misses;
+        return String.format("%d entries, %.1f of %.1f MB, %d hits, %d misses (%.1f%% hits), %d evictions",
+            entries.size(), bytes / 1048576.0, maxBytes / 1048576.0, hits, misses,
+            (lookups == 0) ? 0.0 : 100.0 * hits / lookups, evictions);
+    }
+
+
+    // UTILITÁRIOS.
+
+    private void invalidate(long newVersion) {
+        entries.clear();
+        bytes = 0;
+        version = newVersion;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, int[]>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, int[]> e = it.next();
+            bytes -= weight(e.getKey(), e.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long weight(String key, int[] ids) {
+        return ENTRY_OVERHEAD + 2L * key.length() + 4L * ids.length;
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Tabela de linhas que atribui a cada título carregado um identificador
+ * inteiro (rowId) e permite obter o título a partir dele em O(1).
+ * Os índices guardam rowIds em arrays primitivos em vez de referências.
+ * * As posições de títulos apagados ficam a null e os seus rowIds são
+ * reutilizados pelos títulos carregados a seguir (lista de rowIds livres),
+ * pelo que a tabela e os arrays indexados pelo rowId nos índices nunca
+ * passam do maior número de títulos presentes ao mesmo tempo.
+ * * Os títulos ficam em páginas de PAGE posições. snapshot devolve uma cópia
+ * só de leitura que partilha as páginas (só o diretório é copiado); a tabela
+ * copia uma página partilhada antes de a alterar pela primeira vez. Uma
+ * fotografia nunca vê um rowId reutilizado: a página é copiada antes.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class RowTable {
+
+    /** Posições por página (potência de 2). */
+    static final int PAGE = 1024;
+    private static final int SHIFT = Integer.numberOfTrailingZeros(PAGE);
+
+    /** Páginas de títulos, indexadas pelo rowId / PAGE. */
+    private NetflixShow[][] pages;
+
+    /** Época em que cada página foi criada ou copiada (só na tabela principal). */
+    private int[] owner;
+
+    /** Época atual: as páginas de épocas anteriores podem estar numa fotografia. */
+    private int epoch;
+
+    /** Próximo rowId a atribuir (limite superior dos rowIds em uso). */
+    private int nextId;
+
+    /** Número de títulos presentes (excluindo os apagados). */
+    private int size;
+
+    /** rowIds livres (de títulos apagados), reutilizados primeiro (só na tabela principal). */
+    private int[] free;
+    private int freeCount;
+
+    /** Títulos presentes em cada página, para saltar as páginas vazias. */
+    private int[] used;
+
+    /** Indica se a tabela é uma fotografia (só de leitura). */
+    private final boolean frozen;
+
+    /**
+     * Construtor padrão que inicializa uma tabela vazia.
+     */
+    public RowTable() {
+        this.frozen = false;
+        clear();
+    }
+
+    private RowTable(NetflixShow[][] pages, int[] used, int nextId, int size) {
+        this.pages = pages;
+        this.used = used;
+        this.nextId = nextId;
+        this.size = size;
+        this.frozen = true;
+    }
+
+    /**
+     * Atribui um rowId ao título (um livre, se houver) e guarda-o na tabela.
+     * @param show O título a registar.
+     * @return O rowId atribuído.
+     */
+    public int add(NetflixShow show) {
+        checkWritable();
+        int id = (freeCount > 0) ? free[--freeCount] : nextId++;
+        show.setRowId(id);
+        set(id, show);
+        used[id >>> SHIFT]++;
+        size++;
+        return id;
+    }
+
+    /**
+     * Retira o título da tabela, libertando a sua posição.
+     * @param show O título a retirar.
+     */
+    public void remove(NetflixShow show) {
+        int id = show.getRowId();
+        if (get(id) == show) {
+            set(id, null);
+            used[id >>> SHIFT]--;
+            size--;
+            if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = id;
+        }
+    }
+
+    /**
+     * Obtém o título com o rowId indicado.
+     * @param rowId O identificador da linha.
+     * @return O título ou null se o rowId for inválido ou o título tiver sido apagado.
+     */
+    public NetflixShow get(int rowId) {
+        return (rowId >= 0 && rowId < nextId) ? pages[rowId >>> SHIFT][rowId & (PAGE - 1)] : null;
+    }
+
+    /**
+     * Devolve o limite superior (exclusivo) dos rowIds atribuídos, que nunca
+     * passa do maior número de títulos presentes ao mesmo tempo.
+     * @return O limite dos rowIds.
+     */
+    public int capacity() { return nextId; }
+
+    public int size() { return size; }
+
+    /**
+     * Percorre os títulos presentes por ordem de rowId, saltando as páginas
+     * vazias e parando no último título.
+     * @param action A ação a aplicar a cada título.
+     */
+    public void forEach(Consumer<NetflixShow> action) {
+        int left = size;
+        for (int p = 0; left > 0 && p < pages.length; p++) {
+            if (pages[p] == null || used[p] == 0) continue;
+            for (NetflixShow show : pages[p]) {
+                if (show == null) continue;
+                action.accept(show);
+                left--;
+            }
+        }
+    }
+
+    /**
+     * Remove todos os títulos e recomeça a numeração (as fotografias mantêm-se).
+     */
+    public void clear() {
+        checkWritable();
+        pages = new NetflixShow[1][PAGE];
+        owner = new int[] { epoch };
+        used = new int[1];
+        free = new int[16];
+        freeCount = 0;
+        nextId = 0;
+        size = 0;
+    }
+
+    /**
+     * Devolve uma fotografia da tabela, que não muda com as alterações seguintes.
+     * Custa O(rowIds / PAGE): as páginas são partilhadas até serem alteradas.
+     * @return A tabela só de leitura.
+     */
+    public RowTable snapshot() {
+        checkWritable();
+        RowTable view = new RowTable(pages.clone(), used.clone(), nextId, size);
+        epoch++;
+        return view;
+    }
+
+    // UTILITÁRIOS.
+
+    private void set(int id, NetflixShow show) {
+        checkWritable();
+        int p = id >>> SHIFT;
+        if (p == pages.length) {
+            pages = Arrays.copyOf(pages, p * 2);
+            owner = Arrays.copyOf(owner, p * 2);
+            used = Arrays.copyOf(used, p * 2);
+        }
+        if (pages[p] == null) {
+            pages[p] = new NetflixShow[PAGE];
+            owner[p] = epoch;
+        } else if (owner[p] != epoch) {
+            pages[p] = pages[p].clone();
+            owner[p] = epoch;
+        }
+        pages[p][id & (PAGE - 1)] = show;
+    }
+
+    private void checkWritable() {
+        if (frozen) throw new UnsupportedOperationException("read-only snapshot");
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Execução não interativa de uma lista de comandos (modo batch).
+ * * Os comandos são todos lidos e analisados antes de começar. Os comandos
+ * consecutivos que apenas leem a coleção são executados em simultâneo (cada
+ * um escreve para o seu próprio buffer) e os que a alteram executam sozinhos,
+ * pela ordem do script. Os resultados são escritos pela ordem original num
+ * único fluxo de saída com um buffer grande, seguidos de um resumo com o tempo
+ * de cada comando.
+ * * Não há paginação e o DEL não pede confirmação; uma linha "y" ou "n" logo a
+ * seguir a um DEL é usada como resposta, e as restantes linhas "y"/"n"
+ * (respostas a pausas de paginação) são ignoradas.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class ScriptRunner {
+
+    /** Comandos que só leem a coleção e podem ser executados em simultâneo. */
+    private static final Set<String> READ_ONLY = Set.of(
+        "LIST", "GET", "STATS", "MTIME", "SEARCHT", "SEARCHC", "FILTER", "SUGGEST", "RELATED", "RATINGS", "CATEGORIES"
+    );
+
+    private final NetflixManager manager;
+    private final PrintStream out;
+    private final int threads;
+
+    /**
+     * Um comando do script e o resultado da sua execução.
+     */
+    private static class Command {
+        final String line;
+        final String name;
+        boolean cancelled;
+        byte[] output;
+        long nanos;
+
+        Command(String line) {
+            this.line = line;
+            this.name = line.split("\\s+")[0].toUpperCase();
+        }
+    }
+
+    /**
+     * Cria um executor de scripts.
+     * @param manager O gestor sobre o qual os comandos são executados.
+     * @param out A saída (deve ter um buffer; é despejada no fim).
+     */
+    public ScriptRunner(NetflixManager manager, PrintStream out) {
+        this(manager, out, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Cria um executor de scripts com um número fixo de threads para as leituras.
+     * @param manager O gestor sobre o qual os comandos são executados.
+     * @param out A saída (deve ter um buffer; é despejada no fim).
+     * @param threads O número de leituras executadas em simultâneo.
+     */
+    ScriptRunner(NetflixManager manager, PrintStream out, int threads) {
+        this.manager = manager;
+        this.out = out;
+        this.threads = threads;
+    }
+
+    /**
+     * Executa os comandos até ao fim da lista ou até um QUIT.
+     * @param lines As linhas do script.
+     * @throws Exception Se a execução de um comando for interrompida.
+     */
+    public void run(Iterable<String> lines) throws Exception {
+        ArrayList<Command> commands = parse(lines);
+        manager.setPaging(false);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int i = 0;
+            while (i < commands.size()) {
+                Command c = commands.get(i);
+                if (!READ_ONLY.contains(c.name)) {
+                    execute(c);
+                    print(c);
+                    i++;
+                    continue;
+                }
+                // Grupo de leituras consecutivas: executar em paralelo, escrever por ordem.
+                int end = i;
+                while (end < commands.size() && READ_ONLY.contains(commands.get(end).name)) end++;
+                ArrayList<Future<Command>> group = new ArrayList<>();
+                for (int k = i; k < end; k++) {
+                    Command r = commands.get(k);
+                    group.add(pool.submit(() -> execute(r)));
+                }
+                for (Future<Command> f : group) print(f.get());
+                i = end;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        printSummary(commands, System.nanoTime() - start);
+        out.flush();
+    }
+
+    // UTILITÁRIOS.
+
+    /**
+     * Lê todas as linhas, associando a cada DEL a sua resposta e parando no QUIT.
+     */
+    private ArrayList<Command> parse(Iterable<String> lines) {
+        ArrayList<Command> commands = new ArrayList<>();
+        Command lastDelete = null;
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty()) continue;
+            if (line.equalsIgnoreCase("y") || line.equalsIgnoreCase("n")) {
+                if (lastDelete != null) lastDelete.cancelled = line.equalsIgnoreCase("n");
+                lastDelete = null;
+                continue;
+            }
+            Command c = new Command(line);
+            commands.add(c);
+            lastDelete = c.name.equals("DEL") ? c : null;
+            if (c.name.equals("QUIT")) break;
+        }
+        return commands;
+    }
+
+    private Command execute(Command c) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(buffer, false);
+        long t0 = System.nanoTime();
+        if (c.cancelled) ps.println("Delete cancelled");
+        else manager.execute(c.line, ps);
+        c.nanos = System.nanoTime() - t0;
+        ps.flush();
+        c.output = buffer.toByteArray();
+        return c;
+    }
+
+    private void print(Command c) {
+        out.println("> " + c.line);
+        out.write(c.output, 0, c.output.length);
+    }
+
+    private void printSummary(ArrayList<Command> commands, long totalNanos) {
+        out.println();
+        out.printf("--- %d commands, %.1f ms total ---%n", commands.size(), totalNanos / 1e6);
+        for (int i = 0; i < commands.size(); i++) {
+            Command c = commands.get(i);
+            out.printf("%4d %10.2f ms  %s%n", i + 1, c.nanos / 1e6, c.line);
+        }
+    }
+}
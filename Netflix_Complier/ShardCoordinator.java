@@ -0,0 +1,691 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Coordenador do catálogo particionado (Main --shards &lt;n&gt;): os títulos
+ * são repartidos por n processos ShardWorker, pelo hash do show_id, e as
+ * consultas são enviadas às partições (scatter) e os resultados parciais
+ * juntos no coordenador (gather).
+ * * GET vai só à partição do show_id. SEARCHT e SEARCHC juntam os resultados
+ * de todas as partições, já ordenados por cada uma, numa intercalação de k
+ * vias pela mesma ordem da versão local (data de adição, título e show_id);
+ * MTIME pede a cada partição as primeiras offset + limit linhas e intercala-as
+ * por duração decrescente. STATS soma contagens e totais e combina mínimos e
+ * máximos; CATEGORIES é a união dos valores de cada partição.
+ * * Os pedidos são enviados a todas as partições antes de alguma resposta
+ * ser lida, pelo que as partições trabalham em simultâneo; o BENCH envia
+ * janelas de vários pedidos seguidos (pipelining) pela mesma ligação.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class ShardCoordinator implements AutoCloseable {
+
+    /** Títulos por pedido LOAD enviado a uma partição. */
+    private static final int LOAD_BATCH = 32768;
+
+    /** Pedidos enviados de seguida pelo BENCH quando a janela não é indicada. */
+    private static final int DEFAULT_WINDOW = 32;
+
+    /** Títulos guardados (amostragem uniforme) para gerar as consultas do BENCH. */
+    private static final int SAMPLE_SIZE = 1024;
+
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Ordem do SEARCHT e SEARCHC (a de CatalogSnapshot.sortByDate): data de
+     * adição, título e show_id, para que os títulos com a mesma data e o mesmo
+     * título não dependam da partição de onde vêm.
+     */
+    private static final Comparator<NetflixShow> BY_DATE = (a, b) -> {
+        int c = Integer.compare(a.getDateKey(), b.getDateKey());
+        return (c != 0) ? c : NetflixShow.TITLE_ORDER.compare(a, b);
+    };
+
+    /** Ordem do MTIME (a do DurationIndex): duração decrescente, título e show_id. */
+    private static final Comparator<NetflixShow> BY_DURATION = (a, b) -> {
+        int c = Integer.compare(b.getDuration(), a.getDuration());
+        return (c != 0) ? c : NetflixShow.TITLE_ORDER.compare(a, b);
+    };
+
+    /**
+     * Um processo ShardWorker e a ligação até ele.
+     */
+    private static class Shard {
+        Process process;
+        Socket socket;
+        DataInputStream in;
+        DataOutputStream out;
+        long shows;
+    }
+
+    /**
+     * Um pedido enviado a uma ou mais partições. As respostas de cada
+     * partição chegam pela ordem dos pedidos, pelo que vários pedidos podem
+     * ser enviados antes de as respostas serem lidas.
+     */
+    private abstract static class Request {
+        /** Partições a que o pedido é enviado. */
+        int[] targets;
+        /** Mensagem de erro da primeira partição que falhou (null se nenhuma). */
+        String error;
+
+        /** Escreve a operação e os argumentos. */
+        abstract void write(DataOutputStream out) throws IOException;
+
+        /** Lê o resultado da partição (a seguir a um estado OK). */
+        abstract void read(int shard, DataInputStream in) throws IOException;
+    }
+
+    private final Shard[] shards;
+    private final PrintStream out;
+
+    /** Amostra dos títulos carregados e número de títulos vistos pela amostragem. */
+    private final ArrayList<NetflixShow> sample = new ArrayList<>();
+    private long seen;
+    private final Random random = new Random(42);
+
+    /**
+     * Inicia os processos das partições, com a mesma JVM, o mesmo classpath e
+     * as mesmas propriedades netflix.* (a memória máxima de cada um pode ser
+     * indicada com -Dnetflix.shard.xmx), e liga-se a cada um.
+     * @param count O número de partições.
+     * @param out A saída dos comandos.
+     * @throws IOException Se algum processo não arrancar.
+     */
+    public ShardCoordinator(int count, PrintStream out) throws IOException {
+        this.out = out;
+        this.shards = new Shard[count];
+        ArrayList<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        String heap = System.getProperty("netflix.shard.xmx");
+        if (heap != null) command.add("-Xmx" + heap);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("netflix.")) command.add("-D" + name + "=" + System.getProperty(name));
+        }
+        command.add("Main");
+        command.add("--shard-worker");
+
+        // Os processos arrancam todos antes de esperar pelo primeiro.
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard();
+            shards[i].process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        }
+        for (Shard s : shards) {
+            BufferedReader announce = new BufferedReader(new InputStreamReader(s.process.getInputStream()));
+            String line = announce.readLine();
+            if (line == null || !line.startsWith("PORT ")) {
+                close();
+                throw new IOException("Shard worker did not start");
+            }
+            s.socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(line.substring(5).trim()));
+            s.socket.setTcpNoDelay(true);
+            s.in = new DataInputStream(new BufferedInputStream(s.socket.getInputStream(), BUFFER));
+            s.out = new DataOutputStream(new BufferedOutputStream(s.socket.getOutputStream(), BUFFER));
+        }
+    }
+
+    /**
+     * Executa os comandos pela ordem dada, até ao fim ou a um QUIT.
+     * @param lines Os comandos.
+     */
+    public void run(Iterable<String> lines) {
+        for (String line : lines) {
+            if (line.isBlank()) continue;
+            out.println("> " + line);
+            if (execute(line.trim()).equals("QUIT")) break;
+        }
+        out.flush();
+    }
+
+    /**
+     * Termina as partições (fechar a ligação termina o processo).
+     */
+    @Override
+    public void close() {
+        for (Shard s : shards) {
+            if (s == null) continue;
+            try {
+                if (s.socket != null) s.socket.close();
+            } catch (IOException e) {
+                // A ligação já estava fechada.
+            }
+            if (s.process != null) {
+                // Sem ligação, o processo ainda está à espera dela.
+                if (s.socket == null) s.process.destroy();
+                try {
+                    s.process.waitFor();
+                } catch (InterruptedException e) {
+                    s.process.destroy();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private String execute(String line) {
+        String[] parts = line.split("\\s+");
+        String command = parts[0].toUpperCase();
+        try {
+            switch (command) {
+                case "LOADF":
+                    if (parts.length < 2) out.println("Erro: LOADF <filename>");
+                    else loadFile(parts[1]);
+                    break;
+                case "GET":
+                    if (parts.length < 2) out.println("Erro: GET <id>");
+                    else getShow(parts[1]);
+                    break;
+                case "SEARCHT":
+                case "SEARCHC":
+                    if (parts.length < 2) out.println("Erro: " + command + " <texto>");
+                    else listArray(search(command.equals("SEARCHT"), line.substring(8)).result);
+                    break;
+                case "MTIME":
+                    // As opções vêm aos pares (nome e valor): uma opção sem valor é um erro.
+                    if (parts.length < 3 || parts.length % 2 == 0) out.println("Erro: MTIME <min> <max> [LIMIT <n>] [OFFSET <k>]");
+                    else mtime(parts);
+                    break;
+                case "STATS":
+                    if (parts.length < 2) showStats();
+                    else if (parts.length == 3 && parts[1].equalsIgnoreCase("BY")) showStatsBy(parts[2].toUpperCase());
+                    else out.println("Erro: STATS [BY rating|country|year]");
+                    break;
+                case "CATEGORIES":
+                    for (String c : categories().result) out.println(c);
+                    break;
+                case "CLEAR": out.println(clearShows() + " shows deleted"); break;
+                case "SHARDS": showShards(); break;
+                case "BENCH":
+                    if (parts.length < 2) out.println("Erro: BENCH <pedidos> [janela]");
+                    else bench(Integer.parseInt(parts[1]), parts.length > 2 ? Integer.parseInt(parts[2]) : DEFAULT_WINDOW);
+                    break;
+                case "QUIT": out.println("A sair..."); break;
+                default: out.println("Comando desconhecido.");
+            }
+        } catch (Exception e) {
+            out.println("Erro na execução do comando: " + e.getMessage());
+        }
+        return command;
+    }
+
+    // MÉTODOS DE LÓGICA.
+
+    /**
+     * Lê o CSV no coordenador e envia cada título à partição do seu show_id,
+     * em lotes de LOAD_BATCH títulos; o coordenador só guarda os lotes por
+     * enviar. Cada vez que há tantos lotes prontos como partições, são todos
+     * enviados antes de as confirmações serem lidas, e as partições ordenam e
+     * indexam os seus lotes em simultâneo.
+     */
+    private void loadFile(String filename) throws IOException {
+        long start = System.nanoTime();
+        long before = 0;
+        for (Shard shard : shards) before += shard.shows;
+        ArrayList<Request> batch = new ArrayList<>();
+        ArrayList<ArrayList<NetflixShow>> pending = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) pending.add(new ArrayList<>());
+        int count = 0, rejected = 0;
+        int[] rejectedBy = new int[CsvLoader.Reject.values().length];
+        try (CsvReader csv = new CsvReader(filename)) {
+            csv.next(); // Cabeçalho.
+            while (csv.next()) {
+                NetflixShow s = CsvLoader.toShow(csv, rejectedBy);
+                if (s == null) { rejected++; continue; }
+                int shard = shardOf(s.getShowId());
+                ArrayList<NetflixShow> queue = pending.get(shard);
+                queue.add(s);
+                if (queue.size() == LOAD_BATCH) {
+                    batch.add(load(shard, queue));
+                    if (batch.size() == shards.length) {
+                        send(batch);
+                        batch.clear();
+                    }
+                }
+                sample(s);
+                count++;
+            }
+        } catch (NoSuchFileException e) {
+            out.println("File not found");
+            return;
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!pending.get(i).isEmpty()) batch.add(load(i, pending.get(i)));
+        }
+        send(batch);
+
+        // As partições ignoram os show_id repetidos e confirmam só os títulos acrescentados.
+        long added = 0;
+        for (Shard shard : shards) added += shard.shows;
+        long duplicates = count - (added - before);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        out.println((count - duplicates) + " shows imported into " + shards.length + " shards (" + millis + " ms, "
+            + (rejected + duplicates) + " rejected)");
+    }
+
+    /** Pedido LOAD com os títulos pendentes da partição (a lista é esvaziada). */
+    private Request load(int shard, ArrayList<NetflixShow> pending) {
+        NetflixShow[] shows = pending.toArray(new NetflixShow[0]);
+        pending.clear();
+        return new Request() {
+            { targets = new int[] { shard }; }
+
+            void write(DataOutputStream o) throws IOException {
+                o.writeByte(ShardWorker.LOAD);
+                ShardWorker.writeShows(o, shows);
+            }
+
+            void read(int s, DataInputStream in) throws IOException {
+                shards[s].shows += in.readInt();
+            }
+        };
+    }
+
+    private void getShow(String id) throws IOException {
+        NetflixShow[] found = new NetflixShow[1];
+        Request r = new Request() {
+            { targets = new int[] { shardOf(id) }; }
+
+            void write(DataOutputStream o) throws IOException {
+                o.writeByte(ShardWorker.GET);
+                o.writeUTF(id);
+            }
+
+            void read(int s, DataInputStream in) throws IOException {
+                if (in.readBoolean()) found[0] = DiskCatalog.readShow(in);
+            }
+        };
+        send(r);
+        if (found[0] == null) {
+            out.println("Title not found");
+        } else {
+            printHeader();
+            out.println(found[0]);
+        }
+    }
+
+    /** Pedido SEARCHT/SEARCHC a todas as partições; o resultado fica em result depois de send. */
+    private static class Search extends Request {
+        final boolean title;
+        final String query;
+        final NetflixShow[][] parts;
+        NetflixShow[] result;
+
+        Search(boolean title, String query, int shards) {
+            this.title = title;
+            this.query = query;
+            this.parts = new NetflixShow[shards][];
+        }
+
+        void write(DataOutputStream o) throws IOException {
+            o.writeByte(title ? ShardWorker.SEARCH_TITLE : ShardWorker.SEARCH_CAST);
+            o.writeUTF(query);
+        }
+
+        void read(int s, DataInputStream in) throws IOException {
+            parts[s] = ShardWorker.readShows(in);
+        }
+    }
+
+    private Search search(boolean title, String query) throws IOException {
+        Search r = new Search(title, query, shards.length);
+        r.targets = all();
+        send(r);
+        r.result = merge(r.parts, BY_DATE, Integer.MAX_VALUE);
+        return r;
+    }
+
+    /** Pedido MTIME a todas as partições, com as primeiras limit linhas de cada uma. */
+    private static class Mtime extends Request {
+        final int min, max, limit;
+        final NetflixShow[][] parts;
+        long total;
+
+        Mtime(int min, int max, int limit, int shards) {
+            this.min = min;
+            this.max = max;
+            this.limit = limit;
+            this.parts = new NetflixShow[shards][];
+        }
+
+        void write(DataOutputStream o) throws IOException {
+            o.writeByte(ShardWorker.MTIME);
+            o.writeInt(min);
+            o.writeInt(max);
+            o.writeInt(limit);
+        }
+
+        void read(int s, DataInputStream in) throws IOException {
+            total += in.readInt();
+            parts[s] = ShardWorker.readShows(in);
+        }
+    }
+
+    private void mtime(String[] parts) throws IOException {
+        int min = Integer.parseInt(parts[1]);
+        int max = Integer.parseInt(parts[2]);
+        int limit = Integer.MAX_VALUE, offset = 0;
+        boolean paged = false;
+        for (int i = 3; i < parts.length; i += 2) {
+            switch (parts[i].toUpperCase()) {
+                case "LIMIT": limit = Integer.parseInt(parts[i + 1]); break;
+                case "OFFSET": offset = Integer.parseInt(parts[i + 1]); break;
+                default: throw new IllegalArgumentException("opção desconhecida " + parts[i]);
+            }
+            paged = true;
+        }
+        offset = Math.max(offset, 0);
+        limit = Math.max(limit, 0);
+
+        // Cada partição devolve as suas primeiras offset + limit linhas; a página vem da intercalação.
+        Mtime r = new Mtime(min, max, (int) Math.min(Integer.MAX_VALUE, (long) offset + limit), shards.length);
+        r.targets = all();
+        send(r);
+        NetflixShow[] merged = merge(r.parts, BY_DURATION, r.limit);
+        int from = Math.min(offset, merged.length);
+        int to = (int) Math.min(merged.length, (long) from + limit);
+        if (paged) out.println("Showing " + (to - from) + " of " + r.total + " movies (offset " + offset + ")");
+        NetflixShow[] page = new NetflixShow[to - from];
+        System.arraycopy(merged, from, page, 0, page.length);
+        listArray(page);
+    }
+
+    /**
+     * Pedido STATS a todas as partições: as contagens e totais são somados e
+     * os mínimos e máximos combinados (ignorando as partições sem títulos do tipo).
+     */
+    private static class Stats extends Request {
+        final long[] count = new long[2], sum = new long[2];
+        final int[] min = { Integer.MAX_VALUE, Integer.MAX_VALUE }, max = { Integer.MIN_VALUE, Integer.MIN_VALUE };
+        final TreeMap<String, CatalogStats.Bucket> byRating = new TreeMap<>(), byCountry = new TreeMap<>();
+        final TreeMap<Integer, CatalogStats.Bucket> byYear = new TreeMap<>();
+
+        void write(DataOutputStream o) throws IOException {
+            o.writeByte(ShardWorker.STATS);
+        }
+
+        void read(int s, DataInputStream in) throws IOException {
+            for (int t = 0; t < 2; t++) {
+                int c = in.readInt();
+                long total = in.readLong();
+                int lo = in.readInt(), hi = in.readInt();
+                if (c == 0) continue;
+                count[t] += c;
+                sum[t] += total;
+                min[t] = Math.min(min[t], lo);
+                max[t] = Math.max(max[t], hi);
+            }
+            readBuckets(in, byRating, false);
+            readBuckets(in, byCountry, false);
+            readBuckets(in, byYear, true);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K> void readBuckets(DataInputStream in, TreeMap<K, CatalogStats.Bucket> groups, boolean year) throws IOException {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String key = in.readUTF();
+                CatalogStats.Bucket b = groups.computeIfAbsent(year ? (K) Integer.valueOf(key) : (K) key, k -> new CatalogStats.Bucket());
+                b.movies += in.readInt();
+                b.tvShows += in.readInt();
+                b.minutes += in.readLong();
+                b.seasons += in.readLong();
+            }
+        }
+    }
+
+    private Stats stats() throws IOException {
+        Stats r = new Stats();
+        r.targets = all();
+        send(r);
+        return r;
+    }
+
+    private void showStats() throws IOException {
+        Stats r = stats();
+        if (r.count[0] + r.count[1] == 0) { out.println("No data available..."); return; }
+        String[] labels = { "Movie", "TV Show" };
+        for (int t = 0; t < 2; t++) {
+            boolean empty = r.count[t] == 0;
+            out.printf("%s count: %d | Min: %d | Max: %d | Avg: %.1f\n", labels[t], r.count[t],
+                empty ? 0 : r.min[t], empty ? 0 : r.max[t], empty ? 0.0 : (double) r.sum[t] / r.count[t]);
+        }
+        out.println("Totals:\n" + r.sum[0] + " total minutes of movie time\n" + r.sum[1] + " total seasons of tv shows");
+    }
+
+    private void showStatsBy(String field) throws IOException {
+        Stats r = stats();
+        Map<?, CatalogStats.Bucket> groups;
+        switch (field) {
+            case "RATING": groups = r.byRating; break;
+            case "COUNTRY": groups = r.byCountry; break;
+            case "YEAR": groups = r.byYear; break;
+            default:
+                out.println("Erro: STATS BY rating|country|year");
+                return;
+        }
+        if (groups.isEmpty()) { out.println("No data available..."); return; }
+
+        out.printf("%-30s | %6s | %8s | %8s | %8s%n", field, "Movies", "Avg min", "TV Shows", "Avg seas");
+        for (Map.Entry<?, CatalogStats.Bucket> e : groups.entrySet()) {
+            CatalogStats.Bucket b = e.getValue();
+            out.printf("%-30s | %6d | %8.1f | %8d | %8.1f%n", e.getKey(),
+                b.movies, b.movies == 0 ? 0 : (double) b.minutes / b.movies,
+                b.tvShows, b.tvShows == 0 ? 0 : (double) b.seasons / b.tvShows);
+        }
+    }
+
+    /** Pedido CATEGORIES a todas as partições (união dos valores). */
+    private static class Categories extends Request {
+        final TreeSet<String> result = new TreeSet<>();
+
+        void write(DataOutputStream o) throws IOException {
+            o.writeByte(ShardWorker.CATEGORIES);
+        }
+
+        void read(int s, DataInputStream in) throws IOException {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) result.add(in.readUTF());
+        }
+    }
+
+    private Categories categories() throws IOException {
+        Categories r = new Categories();
+        r.targets = all();
+        send(r);
+        return r;
+    }
+
+    private long clearShows() throws IOException {
+        long[] count = new long[1];
+        Request r = new Request() {
+            { targets = all(); }
+
+            void write(DataOutputStream o) throws IOException {
+                o.writeByte(ShardWorker.CLEAR);
+            }
+
+            void read(int s, DataInputStream in) throws IOException {
+                count[0] += in.readInt();
+                shards[s].shows = 0;
+            }
+        };
+        send(r);
+        sample.clear();
+        seen = 0;
+        return count[0];
+    }
+
+    private void showShards() {
+        for (int i = 0; i < shards.length; i++) {
+            out.println("shard " + i + ": pid " + shards[i].process.pid() + ", " + shards[i].shows + " shows");
+        }
+    }
+
+    /**
+     * Mede o débito do catálogo particionado com pedidos gerados a partir da
+     * amostra dos títulos carregados (GET, SEARCHT, SEARCHC, MTIME, STATS e
+     * CATEGORIES, por esta ordem), enviados em janelas de window pedidos.
+     */
+    private void bench(int count, int window) throws IOException {
+        if (sample.isEmpty()) { out.println("No data available..."); return; }
+        Random r = new Random(7);
+        long start = System.nanoTime();
+        long results = 0;
+        ArrayList<Request> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            NetflixShow s = sample.get(r.nextInt(sample.size()));
+            Request q;
+            switch (i % 6) {
+                case 0: {
+                    String id = s.getShowId();
+                    q = new Request() {
+                        { targets = new int[] { shardOf(id) }; }
+
+                        void write(DataOutputStream o) throws IOException {
+                            o.writeByte(ShardWorker.GET);
+                            o.writeUTF(id);
+                        }
+
+                        void read(int shard, DataInputStream in) throws IOException {
+                            if (in.readBoolean()) DiskCatalog.readShow(in);
+                        }
+                    };
+                    break;
+                }
+                case 1: q = new Search(true, name(s.getTitle(), r), shards.length); break;
+                case 2: q = new Search(false, name(s.getCast(), r), shards.length); break;
+                case 3: q = new Mtime(s.getDuration(), s.getDuration() + 5, 10, shards.length); break;
+                case 4: q = new Stats(); break;
+                default: q = new Categories();
+            }
+            if (q.targets == null) q.targets = all();
+            batch.add(q);
+            if (batch.size() == window || i == count - 1) {
+                send(batch);
+                for (Request done : batch) {
+                    if (done instanceof Search) results += merge(((Search) done).parts, BY_DATE, Integer.MAX_VALUE).length;
+                    else if (done instanceof Mtime) results += merge(((Mtime) done).parts, BY_DURATION, ((Mtime) done).limit).length;
+                }
+                batch.clear();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("%d requests in %.2f s (%.0f requests/s, window %d, %d shards, %d titles returned by searches)%n",
+            count, seconds, count / seconds, window, shards.length, results);
+    }
+
+    // UTILITÁRIOS.
+
+    /** Partição de um show_id. */
+    private int shardOf(String showId) {
+        return Math.floorMod(showId.hashCode(), shards.length);
+    }
+
+    private int[] all() {
+        int[] targets = new int[shards.length];
+        for (int i = 0; i < targets.length; i++) targets[i] = i;
+        return targets;
+    }
+
+    private void send(Request r) throws IOException {
+        ArrayList<Request> one = new ArrayList<>();
+        one.add(r);
+        send(one);
+    }
+
+    /**
+     * Envia os pedidos a todas as partições envolvidas e só depois lê as
+     * respostas, pela mesma ordem. Se alguma partição responder com erro, a
+     * primeira mensagem é lançada depois de lidas todas as respostas.
+     */
+    private void send(java.util.List<Request> batch) throws IOException {
+        for (Request r : batch) {
+            for (int s : r.targets) r.write(shards[s].out);
+        }
+        for (Shard s : shards) s.out.flush();
+        String error = null;
+        for (Request r : batch) {
+            for (int s : r.targets) {
+                DataInputStream in = shards[s].in;
+                if (in.readByte() == ShardWorker.OK) {
+                    r.read(s, in);
+                } else {
+                    String message = in.readUTF();
+                    if (r.error == null) r.error = "shard " + s + ": " + message;
+                }
+            }
+            if (error == null) error = r.error;
+        }
+        if (error != null) throw new IOException(error);
+    }
+
+    /**
+     * Intercalação de k vias de resultados parciais já ordenados, com uma
+     * fila de prioridade das cabeças de cada parte.
+     * @param limit O número máximo de títulos a devolver.
+     */
+    private static NetflixShow[] merge(NetflixShow[][] parts, Comparator<NetflixShow> order, int limit) {
+        long total = 0;
+        for (NetflixShow[] p : parts) total += (p == null) ? 0 : p.length;
+        NetflixShow[] merged = new NetflixShow[(int) Math.min(total, limit)];
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, parts.length),
+            (a, b) -> order.compare(parts[a[0]][a[1]], parts[b[0]][b[1]]));
+        for (int p = 0; p < parts.length; p++) {
+            if (parts[p] != null && parts[p].length > 0) heads.add(new int[] { p, 0 });
+        }
+        for (int i = 0; i < merged.length; i++) {
+            int[] h = heads.poll();
+            merged[i] = parts[h[0]][h[1]];
+            if (++h[1] < parts[h[0]].length) heads.add(h);
+        }
+        return merged;
+    }
+
+    /** Acrescenta o título à amostra do BENCH (amostragem por reservatório). */
+    private void sample(NetflixShow s) {
+        seen++;
+        if (sample.size() < SAMPLE_SIZE) {
+            sample.add(s);
+        } else {
+            long j = (long) (random.nextDouble() * seen);
+            if (j < SAMPLE_SIZE) sample.set((int) j, s);
+        }
+    }
+
+    /** Um dos nomes de uma lista separada por vírgulas (ou o texto todo), para as pesquisas do BENCH. */
+    private static String name(String text, Random r) {
+        if (text == null || text.isBlank()) return "the";
+        String[] names = text.split(",");
+        String n = names[r.nextInt(names.length)].trim();
+        return n.isEmpty() ? "the" : n;
+    }
+
+    private void listArray(NetflixShow[] arr) {
+        printHeader();
+        for (NetflixShow s : arr) out.println(s);
+    }
+
+    private void printHeader() {
+        out.println("Show ID  | Type     | Title                          | Date Added   | Rating | Duration");
+        out.println("---------|----------|--------------------------------|--------------|--------|----------");
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Processo de uma partição (shard) do catálogo particionado (ver
+ * ShardCoordinator), iniciado com Main --shard-worker.
+ * * Abre uma porta de loopback, escreve "PORT &lt;porta&gt;" no stdout e aceita
+ * uma única ligação, a do coordenador. Os pedidos são lidos e respondidos
+ * por ordem, num protocolo binário: um byte com a operação e os argumentos;
+ * na resposta, um byte de estado (OK ou ERROR, seguido da mensagem) e o
+ * resultado. Os títulos seguem o formato de DiskCatalog.writeShow.
+ * * O coordenador pode enviar vários pedidos antes de ler as respostas; as
+ * respostas só são enviadas (flush) quando não há mais pedidos à espera.
+ * Quando a ligação é fechada o processo termina.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class ShardWorker {
+
+    /** Operações do protocolo. */
+    static final byte LOAD = 1;
+    static final byte GET = 2;
+    static final byte SEARCH_TITLE = 3;
+    static final byte SEARCH_CAST = 4;
+    static final byte MTIME = 5;
+    static final byte STATS = 6;
+    static final byte CATEGORIES = 7;
+    static final byte CLEAR = 8;
+
+    /** Estados das respostas. */
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private static final int BUFFER = 1 << 16;
+
+    private final NetflixManager manager;
+
+    /**
+     * Cria a partição sobre um gestor (vazio) próprio.
+     * @param manager O gestor dos títulos desta partição.
+     */
+    public ShardWorker(NetflixManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Abre a porta, anuncia-a no stdout e responde aos pedidos da ligação até ela ser fechada.
+     * @throws IOException Em caso de erro na ligação.
+     */
+    public void serve() throws IOException {
+        Socket socket;
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println("PORT " + server.getLocalPort());
+            System.out.flush();
+            socket = server.accept();
+        }
+        socket.setTcpNoDelay(true);
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                handle(op, in, out);
+                if (in.available() == 0) out.flush();
+            }
+        }
+    }
+
+    // UTILITÁRIOS.
+
+    private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        // Os argumentos são lidos por inteiro antes de executar, para que um
+        // erro na execução não deixe o resto do pedido por ler.
+        switch (op) {
+            case LOAD: {
+                NetflixShow[] shows = readShows(in);
+                int added;
+                try {
+                    added = manager.addShows(shows);
+                } catch (RuntimeException e) { error(out, e); return; }
+                out.writeByte(OK);
+                out.writeInt(added);
+                break;
+            }
+            case GET: {
+                String id = in.readUTF();
+                NetflixShow found;
+                try {
+                    found = manager.findById(id);
+                } catch (RuntimeException e) { error(out, e); return; }
+                out.writeByte(OK);
+                out.writeBoolean(found != null);
+                if (found != null) DiskCatalog.writeShow(out, found);
+                break;
+            }
+            case SEARCH_TITLE:
+            case SEARCH_CAST: {
+                String query = in.readUTF();
+                NetflixShow[] found;
+                try {
+                    found = (op == SEARCH_TITLE) ? manager.findByTitle(query) : manager.findByCast(query);
+                } catch (RuntimeException e) { error(out, e); return; }
+                out.writeByte(OK);
+                writeShows(out, found);
+                break;
+            }
+            case MTIME: {
+                int min = in.readInt(), max = in.readInt(), limit = in.readInt();
+                int total;
+                NetflixShow[] found;
+                try {
+                    total = manager.countMoviesByDuration(min, max);
+                    found = manager.findMoviesByDuration(min, max, 0, limit);
+                } catch (RuntimeException e) { error(out, e); return; }
+                out.writeByte(OK);
+                out.writeInt(total);
+                writeShows(out, found);
+                break;
+            }
+            case STATS:
+                out.writeByte(OK);
+                writeStats(out, manager.snapshot().getStats());
+                break;
+            case CATEGORIES: {
+                ArrayList<String> categories = new ArrayList<>();
+                for (String c : manager.snapshot().getStats().getCategories()) categories.add(c);
+                out.writeByte(OK);
+                out.writeInt(categories.size());
+                for (String c : categories) out.writeUTF(c);
+                break;
+            }
+            case CLEAR: {
+                int count;
+                try {
+                    count = manager.clearShows();
+                } catch (RuntimeException e) { error(out, e); return; }
+                out.writeByte(OK);
+                out.writeInt(count);
+                break;
+            }
+            default:
+                // Sem saber o tamanho dos argumentos não é possível continuar a ler a ligação.
+                throw new IOException("Unknown shard operation " + op);
+        }
+    }
+
+    private static void error(DataOutput out, Exception e) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(String.valueOf(e.getMessage()));
+    }
+
+    static void writeShows(DataOutput out, NetflixShow[] shows) throws IOException {
+        out.writeInt(shows.length);
+        for (NetflixShow s : shows) DiskCatalog.writeShow(out, s);
+    }
+
+    static NetflixShow[] readShows(DataInput in) throws IOException {
+        NetflixShow[] shows = new NetflixShow[in.readInt()];
+        for (int i = 0; i < shows.length; i++) shows[i] = DiskCatalog.readShow(in);
+        return shows;
+    }
+
+    /**
+     * Escreve os agregados da partição: contagem, soma, mínimo e máximo das
+     * durações de filmes e séries, e os contadores das divisões por rating,
+     * país e ano.
+     */
+    private static void writeStats(DataOutput out, CatalogStats stats) throws IOException {
+        for (CatalogStats.DurationStats d : new CatalogStats.DurationStats[] { stats.getMovies(), stats.getTvShows() }) {
+            out.writeInt(d.getCount());
+            out.writeLong(d.getSum());
+            out.writeInt(d.getMin());
+            out.writeInt(d.getMax());
+        }
+        writeBuckets(out, stats.getByRating());
+        writeBuckets(out, stats.getByCountry());
+        writeBuckets(out, stats.getByYear());
+    }
+
+    private static void writeBuckets(DataOutput out, Map<?, CatalogStats.Bucket> groups) throws IOException {
+        out.writeInt(groups.size());
+        for (Map.Entry<?, CatalogStats.Bucket> e : groups.entrySet()) {
+            out.writeUTF(String.valueOf(e.getKey()));
+            CatalogStats.Bucket b = e.getValue();
+            out.writeInt(b.movies);
+            out.writeInt(b.tvShows);
+            out.writeLong(b.minutes);
+            out.writeLong(b.seasons);
+        }
+    }
+}
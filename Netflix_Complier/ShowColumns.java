@@ -0,0 +1,300 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Armazenamento compacto, por colunas, dos atributos dos títulos.
+ * * Os inteiros (ano, duração, data como dia desde 1970) ficam em arrays
+ * primitivos; os campos com poucos valores distintos (tipo, rating, país,
+ * categorias) são codificados por dicionário; as categorias de cada linha
+ * ficam também num conjunto de bits; e os textos longos (realizador, elenco,
+ * descrição) e o show_id ficam num único buffer UTF-8 partilhado,
+ * referenciados por offsets. Os textos de uma linha são escritos seguidos,
+ * pelo que o tamanho de cada um é a distância até ao início do seguinte.
+ * * Por título ficam assim 7 ints, os bits das categorias e TEXT_FIELDS
+ * offsets, além dos próprios bytes dos textos.
+ * * Um NetflixShow compactado (ver NetflixShow.compactInto) passa a ser apenas
+ * uma vista sobre uma linha desta estrutura. Cada armazenamento é preenchido
+ * de uma só vez, antes de os títulos passarem a apontar para ele, e a partir
+ * daí só é lido, podendo ser partilhado entre threads.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class ShowColumns {
+
+    /** Número de campos de texto guardados por linha. */
+    private static final int TEXT_FIELDS = 4;
+    static final int DIRECTOR = 0, CAST = 1, DESCRIPTION = 2, SHOW_ID = 3;
+
+    /** Colunas de inteiros. */
+    private int[] releaseYear;
+    private int[] duration;
+    private int[] dateKey;
+
+    /** Colunas codificadas por dicionário (-1 representa null). */
+    private int[] typeCode;
+    private int[] ratingCode;
+    private int[] countryCode;
+    private int[] listedInCode;
+
+    /** Conjunto de bits das categorias de cada linha (categoryWords longs por linha). */
+    private long[] categoryBits;
+    private int categoryWords;
+
+    /** Dicionários dos valores distintos. */
+    private final Dictionary types = new Dictionary();
+    private final Dictionary ratings = new Dictionary();
+    private final Dictionary countries = new Dictionary();
+    private final Dictionary listings = new Dictionary();
+    private final Dictionary categories = new Dictionary();
+
+    /**
+     * Buffer UTF-8 com os textos e o início de cada um (~início para null);
+     * textStart tem mais uma posição, com o fim do último texto escrito.
+     */
+    private byte[] text;
+    private int textSize;
+    private int[] textStart;
+
+    /** Número de linhas guardadas. */
+    private int size;
+
+    /**
+     * Construtor padrão que inicializa um armazenamento vazio.
+     */
+    public ShowColumns() {
+        int capacity = 1024;
+        releaseYear = new int[capacity];
+        duration = new int[capacity];
+        dateKey = new int[capacity];
+        typeCode = new int[capacity];
+        ratingCode = new int[capacity];
+        countryCode = new int[capacity];
+        listedInCode = new int[capacity];
+        categoryWords = 1;
+        categoryBits = new long[capacity];
+        text = new byte[capacity * 64];
+        textStart = new int[capacity * TEXT_FIELDS + 1];
+    }
+
+    /**
+     * Acrescenta uma linha com os atributos do título.
+     * @return O índice da linha criada.
+     */
+    int append(String showId, String type, String director, String cast, String country, int dateKey,
+               int releaseYear, String rating, int duration, String listedIn, String description) {
+        if (size == this.releaseYear.length) grow();
+        int row = size++;
+        this.releaseYear[row] = releaseYear;
+        this.duration[row] = duration;
+        this.dateKey[row] = dateKey;
+        typeCode[row] = types.code(type);
+        ratingCode[row] = ratings.code(rating);
+        countryCode[row] = countries.code(country);
+        listedInCode[row] = listings.code(listedIn);
+
+        if (listedIn != null) {
+            for (String p : listedIn.split(",")) {
+                String cat = p.trim();
+                if (!cat.isEmpty()) setCategory(row, categories.code(cat));
+            }
+        }
+
+        putText(row, DIRECTOR, director);
+        putText(row, CAST, cast);
+        putText(row, DESCRIPTION, description);
+        putText(row, SHOW_ID, showId);
+        return row;
+    }
+
+    // LEITURA DE COLUNAS.
+
+    public int releaseYear(int row) { return releaseYear[row]; }
+    public int duration(int row) { return duration[row]; }
+    public int dateKey(int row) { return dateKey[row]; }
+    public String type(int row) { return types.value(typeCode[row]); }
+    public String rating(int row) { return ratings.value(ratingCode[row]); }
+    public String country(int row) { return countries.value(countryCode[row]); }
+    public String listedIn(int row) { return listings.value(listedInCode[row]); }
+
+    /**
+     * Lê um texto da linha, descodificando-o do buffer partilhado.
+     * @param field DIRECTOR, CAST, DESCRIPTION ou SHOW_ID.
+     */
+    public String text(int row, int field) {
+        int k = row * TEXT_FIELDS + field;
+        int start = textStart[k];
+        if (start < 0) return null;
+        int length = end(k) - start;
+        if (length == 0) return "";
+        return new String(text, start, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Verifica se um texto longo da linha contém a consulta, sem distinção de
+     * maiúsculas (como String.regionMatches), descodificando o UTF-8 no próprio
+     * buffer em vez de criar a string.
+     * @param row A linha.
+     * @param field DIRECTOR, CAST ou DESCRIPTION.
+     * @param query O texto a procurar.
+     * @return true se o texto existir e contiver a consulta.
+     */
+    public boolean textContains(int row, int field, String query) {
+        int k = row * TEXT_FIELDS + field;
+        if (textStart[k] < 0) return false;
+        int end = end(k);
+        for (int from = textStart[k]; ; from = next(from)) {
+            int p = from, q = 0;
+            while (q < query.length() && p < end) {
+                int c = codePoint(p);
+                p = next(p);
+                if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    if (!sameChar((char) c, query.charAt(q))) break;
+                    q++;
+                } else if (q + 1 < query.length() && Character.highSurrogate(c) == query.charAt(q)
+                           && Character.lowSurrogate(c) == query.charAt(q + 1)) {
+                    q += 2;
+                } else {
+                    break;
+                }
+            }
+            if (q == query.length()) return true;
+            if (p >= end) return false;
+        }
+    }
+
+    /**
+     * Verifica se a linha pertence à categoria indicada (sem distinção de
+     * maiúsculas), percorrendo só os bits da linha e sem criar strings.
+     * @param row A linha.
+     * @param category O nome da categoria.
+     * @return true se a categoria constar do campo listed_in da linha.
+     */
+    public boolean hasCategory(int row, String category) {
+        for (int w = 0; w < categoryWords; w++) {
+            for (long bits = categoryBits[row * categoryWords + w]; bits != 0; bits &= bits - 1) {
+                int code = w * 64 + Long.numberOfTrailingZeros(bits);
+                if (categories.value(code).equalsIgnoreCase(category)) return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() { return size; }
+
+    /**
+     * Reduz os arrays ao tamanho ocupado, libertando a folga deixada pelo crescimento.
+     */
+    public void trimToSize() {
+        int capacity = Math.max(size, 1);
+        releaseYear = Arrays.copyOf(releaseYear, capacity);
+        duration = Arrays.copyOf(duration, capacity);
+        dateKey = Arrays.copyOf(dateKey, capacity);
+        typeCode = Arrays.copyOf(typeCode, capacity);
+        ratingCode = Arrays.copyOf(ratingCode, capacity);
+        countryCode = Arrays.copyOf(countryCode, capacity);
+        listedInCode = Arrays.copyOf(listedInCode, capacity);
+        categoryBits = Arrays.copyOf(categoryBits, capacity * categoryWords);
+        textStart = Arrays.copyOf(textStart, capacity * TEXT_FIELDS + 1);
+        text = Arrays.copyOf(text, textSize);
+    }
+
+    // UTILITÁRIOS.
+
+    private void setCategory(int row, int code) {
+        if (code >= categoryWords * 64) {
+            // Mais categorias do que bits por linha: aumentar a largura de cada linha.
+            int words = code / 64 + 1;
+            long[] wider = new long[releaseYear.length * words];
+            for (int r = 0; r < size; r++) {
+                System.arraycopy(categoryBits, r * categoryWords, wider, r * words, categoryWords);
+            }
+            categoryBits = wider;
+            categoryWords = words;
+        }
+        categoryBits[row * categoryWords + code / 64] |= 1L << (code % 64);
+    }
+
+    /** Código (Unicode) do carácter UTF-8 que começa em i. */
+    private int codePoint(int i) {
+        int b = text[i];
+        if (b >= 0) return b;
+        if ((b & 0xE0) == 0xC0) return (b & 0x1F) << 6 | (text[i + 1] & 0x3F);
+        if ((b & 0xF0) == 0xE0) return (b & 0x0F) << 12 | (text[i + 1] & 0x3F) << 6 | (text[i + 2] & 0x3F);
+        return (b & 0x07) << 18 | (text[i + 1] & 0x3F) << 12 | (text[i + 2] & 0x3F) << 6 | (text[i + 3] & 0x3F);
+    }
+
+    /** Início do carácter UTF-8 seguinte ao que começa em i. */
+    private int next(int i) {
+        int b = text[i];
+        if (b >= 0) return i + 1;
+        if ((b & 0xE0) == 0xC0) return i + 2;
+        return ((b & 0xF0) == 0xE0) ? i + 3 : i + 4;
+    }
+
+    /** Igualdade sem distinção de maiúsculas, com as mesmas regras de String.regionMatches. */
+    private static boolean sameChar(char a, char b) {
+        if (a == b) return true;
+        char ua = Character.toUpperCase(a), ub = Character.toUpperCase(b);
+        return ua == ub || Character.toLowerCase(ua) == Character.toLowerCase(ub);
+    }
+
+    /** Fim (exclusivo) do texto k: o início do texto seguinte, esteja ele a null ou não. */
+    private int end(int k) {
+        int next = textStart[k + 1];
+        return (next < 0) ? ~next : next;
+    }
+
+    private void putText(int row, int field, String value) {
+        int k = row * TEXT_FIELDS + field;
+        if (value == null) {
+            textStart[k] = ~textSize;
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (textSize + bytes.length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textSize + bytes.length));
+            }
+            System.arraycopy(bytes, 0, text, textSize, bytes.length);
+            textStart[k] = textSize;
+            textSize += bytes.length;
+        }
+        textStart[k + 1] = textSize;
+    }
+
+    private void grow() {
+        int capacity = releaseYear.length * 2;
+        releaseYear = Arrays.copyOf(releaseYear, capacity);
+        duration = Arrays.copyOf(duration, capacity);
+        dateKey = Arrays.copyOf(dateKey, capacity);
+        typeCode = Arrays.copyOf(typeCode, capacity);
+        ratingCode = Arrays.copyOf(ratingCode, capacity);
+        countryCode = Arrays.copyOf(countryCode, capacity);
+        listedInCode = Arrays.copyOf(listedInCode, capacity);
+        categoryBits = Arrays.copyOf(categoryBits, capacity * categoryWords);
+        textStart = Arrays.copyOf(textStart, capacity * TEXT_FIELDS + 1);
+    }
+
+    /**
+     * Dicionário de strings: cada valor distinto recebe um código inteiro.
+     */
+    private static class Dictionary {
+        private final HashMap<String, Integer> codes = new HashMap<>();
+        private final ArrayList<String> values = new ArrayList<>();
+
+        int code(String value) {
+            if (value == null) return -1;
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        String value(int code) {
+            return (code < 0) ? null : values.get(code);
+        }
+    }
+}
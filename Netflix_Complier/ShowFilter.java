@@ -0,0 +1,192 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+/**
+ * Filtro com vários critérios sobre os títulos (comando FILTER).
+ * * Cada critério é um campo com uma lista de valores alternativos (OR) ou um
+ * intervalo; um título passa no filtro se cumprir todos os critérios (AND).
+ * Os textos comparam-se sem distinção de maiúsculas; no país e nas categorias
+ * basta que um dos valores separados por vírgulas seja igual.
+ * * Exemplo: new ShowFilter().type("Movie").rating("TV-MA").country("India")
+ * .category("Dramas").dateAdded(LocalDate.of(2020, 1, 1), null)
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class ShowFilter {
+
+    /** Campos que podem ser filtrados. */
+    public enum Field { TYPE, RATING, COUNTRY, CATEGORY, YEAR, ADDED }
+
+    /**
+     * Um critério: valores alternativos (campos de texto) ou intervalo
+     * [from, to] (ano de lançamento, ou data de adição em dias desde 1970-01-01).
+     */
+    public static class Term {
+        public final Field field;
+        public final String[] values;
+        public final int from;
+        public final int to;
+
+        Term(Field field, String[] values, int from, int to) {
+            this.field = field;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final ArrayList<Term> terms = new ArrayList<>();
+
+    public ShowFilter type(String... values) { return values(Field.TYPE, values); }
+    public ShowFilter rating(String... values) { return values(Field.RATING, values); }
+    public ShowFilter country(String... values) { return values(Field.COUNTRY, values); }
+    public ShowFilter category(String... values) { return values(Field.CATEGORY, values); }
+
+    /**
+     * Ano de lançamento entre from e to (inclusive).
+     * @param from O primeiro ano ou null para não limitar.
+     * @param to O último ano ou null para não limitar.
+     * @return Este filtro.
+     */
+    public ShowFilter releaseYear(Integer from, Integer to) {
+        terms.add(new Term(Field.YEAR, null,
+            (from != null) ? from : Integer.MIN_VALUE, (to != null) ? to : Integer.MAX_VALUE));
+        return this;
+    }
+
+    /**
+     * Data de adição entre from e to (inclusive); os títulos sem data nunca passam.
+     * @param from A primeira data ou null para não limitar.
+     * @param to A última data ou null para não limitar.
+     * @return Este filtro.
+     */
+    public ShowFilter dateAdded(LocalDate from, LocalDate to) {
+        terms.add(new Term(Field.ADDED, null,
+            (from != null) ? (int) from.toEpochDay() : Integer.MIN_VALUE + 1,
+            (to != null) ? (int) to.toEpochDay() : Integer.MAX_VALUE));
+        return this;
+    }
+
+    /**
+     * Devolve os critérios, pela ordem em que foram indicados.
+     * @return Os critérios.
+     */
+    public java.util.List<Term> getTerms() {
+        return java.util.Collections.unmodifiableList(terms);
+    }
+
+    /**
+     * Indica se um título cumpre todos os critérios (avaliação direta, sem índices).
+     * @param show O título.
+     * @return true se passar no filtro.
+     */
+    public boolean matches(NetflixShow show) {
+        for (Term t : terms) {
+            switch (t.field) {
+                case TYPE: if (!anyEquals(t.values, show.getType())) return false; break;
+                case RATING: if (!anyEquals(t.values, show.getRating())) return false; break;
+                case COUNTRY: if (!anyListed(t.values, show.getCountry())) return false; break;
+                case CATEGORY: if (!anyCategory(t.values, show)) return false; break;
+                case YEAR:
+                    if (show.getReleaseYear() < t.from || show.getReleaseYear() > t.to) return false;
+                    break;
+                case ADDED:
+                    int key = show.getDateKey();
+                    if (key == Integer.MIN_VALUE || key < t.from || key > t.to) return false;
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lê um filtro escrito como critérios campo=valor separados por espaços.
+     * Os valores alternativos separam-se com '|' e podem ter espaços; os
+     * intervalos escrevem-se de..até, com qualquer dos extremos opcional.
+     * Ex.: type=Movie rating=TV-MA|R country=United States year=2000..2010 added=2020-01-01..
+     * Em added, um ano sozinho representa o ano inteiro (added=2019..2020).
+     * @param text Os critérios.
+     * @return O filtro.
+     * @throws IllegalArgumentException Se um critério for inválido.
+     */
+    public static ShowFilter parse(String text) {
+        ShowFilter filter = new ShowFilter();
+        // Cada critério começa numa palavra seguida de '=' (os valores podem ter espaços).
+        for (String part : text.trim().split("\\s+(?=[A-Za-z]+=)")) {
+            if (part.isEmpty()) continue;
+            int eq = part.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("critério inválido " + part);
+            String name = part.substring(0, eq).toLowerCase();
+            String value = part.substring(eq + 1).trim();
+            switch (name) {
+                case "type": filter.type(split(value)); break;
+                case "rating": filter.rating(split(value)); break;
+                case "country": filter.country(split(value)); break;
+                case "category": case "listedin": filter.category(split(value)); break;
+                case "year": {
+                    String[] r = range(value);
+                    filter.releaseYear(r[0].isEmpty() ? null : Integer.valueOf(r[0]),
+                                       r[1].isEmpty() ? null : Integer.valueOf(r[1]));
+                    break;
+                }
+                case "added": {
+                    String[] r = range(value);
+                    filter.dateAdded(r[0].isEmpty() ? null : date(r[0], false),
+                                     r[1].isEmpty() ? null : date(r[1], true));
+                    break;
+                }
+                default: throw new IllegalArgumentException("campo desconhecido " + name);
+            }
+        }
+        return filter;
+    }
+
+    // UTILITÁRIOS.
+
+    private ShowFilter values(Field field, String[] values) {
+        terms.add(new Term(field, values.clone(), 0, 0));
+        return this;
+    }
+
+    private static boolean anyEquals(String[] values, String field) {
+        if (field == null) return false;
+        for (String v : values) {
+            if (v.equalsIgnoreCase(field)) return true;
+        }
+        return false;
+    }
+
+    private static boolean anyListed(String[] values, String field) {
+        if (field == null) return false;
+        for (String p : field.split(",")) {
+            if (anyEquals(values, p.trim())) return true;
+        }
+        return false;
+    }
+
+    private static boolean anyCategory(String[] values, NetflixShow show) {
+        for (String v : values) {
+            if (show.hasCategory(v)) return true;
+        }
+        return false;
+    }
+
+    private static String[] split(String value) {
+        String[] values = value.split("\\|");
+        for (int i = 0; i < values.length; i++) values[i] = values[i].trim();
+        return values;
+    }
+
+    /** Divide "de..até" nos dois extremos; um valor sem ".." é um intervalo de um só valor. */
+    private static String[] range(String value) {
+        int dots = value.indexOf("..");
+        if (dots < 0) return new String[] { value, value };
+        return new String[] { value.substring(0, dots).trim(), value.substring(dots + 2).trim() };
+    }
+
+    /** Data no formato aaaa-mm-dd ou apenas o ano (início ou fim do ano, conforme end). */
+    private static LocalDate date(String s, boolean end) {
+        if (s.length() == 4) return end ? LocalDate.of(Integer.parseInt(s), 12, 31) : LocalDate.of(Integer.parseInt(s), 1, 1);
+        return LocalDate.parse(s);
+    }
+}
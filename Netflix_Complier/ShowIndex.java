@@ -0,0 +1,26 @@
+/**
+ * Interface comum aos índices secundários sobre os títulos carregados.
+ * O NetflixManager notifica cada índice sempre que um título é carregado,
+ * apagado ou quando a coleção é limpa, mantendo-os sincronizados.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public interface ShowIndex {
+
+    /**
+     * Indexa um título acabado de carregar (já com rowId atribuído).
+     * @param show O título a indexar.
+     */
+    void add(NetflixShow show);
+
+    /**
+     * Retira um título do índice.
+     * @param show O título a retirar (ainda com o seu rowId).
+     */
+    void remove(NetflixShow show);
+
+    /**
+     * Esvazia o índice.
+     */
+    void clear();
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+
+/**
+ * Escrita de títulos e valores em JSON diretamente para um Writer, campo a
+ * campo, sem String.format nem strings intermédias por linha.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public final class ShowJson {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ShowJson() { }
+
+    /**
+     * Escreve um título como objeto JSON.
+     * @param w O destino.
+     * @param s O título.
+     * @throws IOException Em caso de erro de escrita.
+     */
+    public static void writeShow(Writer w, NetflixShow s) throws IOException {
+        w.write("{\"id\":");
+        writeString(w, s.getShowId());
+        w.write(",\"type\":");
+        writeString(w, s.getType());
+        w.write(",\"title\":");
+        writeString(w, s.getTitle());
+        w.write(",\"director\":");
+        writeString(w, s.getDirector());
+        w.write(",\"cast\":");
+        writeString(w, s.getCast());
+        w.write(",\"country\":");
+        writeString(w, s.getCountry());
+        w.write(",\"dateAdded\":");
+        LocalDate date = s.getDateAdded();
+        if (date == null) w.write("null");
+        else writeString(w, date.toString());
+        w.write(",\"releaseYear\":");
+        w.write(Integer.toString(s.getReleaseYear()));
+        w.write(",\"rating\":");
+        writeString(w, s.getRating());
+        w.write(",\"duration\":");
+        w.write(Integer.toString(s.getDuration()));
+        w.write(",\"listedIn\":");
+        writeString(w, s.getListedIn());
+        w.write(",\"description\":");
+        writeString(w, s.getDescription());
+        w.write('}');
+    }
+
+    /**
+     * Escreve uma página de títulos: {"total":..,"offset":..,"items":[..]}.
+     * @param w O destino.
+     * @param total O número total de resultados (antes da paginação).
+     * @param offset A posição do primeiro título da página.
+     * @param shows Os títulos da página.
+     * @throws IOException Em caso de erro de escrita.
+     */
+    public static void writePage(Writer w, int total, int offset, NetflixShow[] shows) throws IOException {
+        w.write("{\"total\":");
+        w.write(Integer.toString(total));
+        w.write(",\"offset\":");
+        w.write(Integer.toString(offset));
+        w.write(",\"count\":");
+        w.write(Integer.toString(shows.length));
+        w.write(",\"items\":[");
+        for (int i = 0; i < shows.length; i++) {
+            if (i > 0) w.write(',');
+            writeShow(w, shows[i]);
+        }
+        w.write("]}");
+    }
+
+    /**
+     * Escreve uma string JSON (ou null), escapando aspas, barras e caracteres de controlo.
+     * @param w O destino.
+     * @param s O texto.
+     * @throws IOException Em caso de erro de escrita.
+     */
+    public static void writeString(Writer w, String s) throws IOException {
+        if (s == null) {
+            w.write("null");
+            return;
+        }
+        w.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+            w.write(s, start, i - start);
+            switch (c) {
+                case '"': w.write("\\\""); break;
+                case '\\': w.write("\\\\"); break;
+                case '\n': w.write("\\n"); break;
+                case '\r': w.write("\\r"); break;
+                case '\t': w.write("\\t"); break;
+                default:
+                    w.write("\\u00");
+                    w.write(HEX[c >> 4]);
+                    w.write(HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        w.write(s, start, s.length() - start);
+        w.write('"');
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Índice de semelhança entre títulos (comando RELATED), por MinHash com LSH.
+ * * Cada título é reduzido a um conjunto de características (cada nome do
+ * elenco e dos realizadores, cada categoria e cada país), guardadas como um
+ * array ordenado de inteiros. A semelhança entre dois títulos é o índice de
+ * Jaccard desses conjuntos.
+ * * No carregamento calcula-se a assinatura MinHash (HASHES valores) e,
+ * dela, uma chave por banda de ROWS_PER_BAND valores. Dois títulos com a
+ * mesma chave numa banda são candidatos; com 16 bandas de 2 valores, pares
+ * com Jaccard 0,25 são encontrados com probabilidade ~65% e pares com 0,5
+ * com ~99%. Uma consulta só calcula o Jaccard exato dos candidatos, em vez
+ * de comparar com todos os títulos.
+ * * Cada balde contribui no máximo com MAX_BUCKET candidatos, para que o
+ * custo de uma consulta fique limitado mesmo nos baldes das combinações mais
+ * frequentes.
+ * * Os baldes ficam numa PostingTable (chave da banda -> rowIds). As
+ * características e as BANDS chaves de banda de cada título ficam em páginas
+ * indexadas pelo rowId (ver RowTable), as chaves num long[] primitivo: a
+ * assinatura só é calculada quando o título é acrescentado, e retirá-lo ou
+ * consultá-lo lê as chaves guardadas. As páginas são copiadas antes de serem
+ * alteradas se estiverem numa fotografia: snapshot partilha tudo com o índice
+ * e as consultas sobre ela não precisam de bloqueios.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class SimilarityIndex implements ShowIndex {
+
+    /** Valores MinHash de cada assinatura. */
+    private static final int HASHES = 32;
+
+    /** Valores por banda (HASHES / ROWS_PER_BAND bandas). */
+    private static final int ROWS_PER_BAND = 2;
+    private static final int BANDS = HASHES / ROWS_PER_BAND;
+
+    /**
+     * Candidatos lidos, no máximo, de cada balde (-Dnetflix.related.bucket). Os
+     * baldes muito grandes vêm de títulos com poucas características e todas
+     * frequentes (só um país e uma categoria, por exemplo), em que os membros
+     * são indistinguíveis entre si.
+     * * O corte é silencioso: de um balde maior só são lidos os MAX_BUCKET
+     * rowIds mais altos (os carregados por último), e um título semelhante que
+     * só partilhe esse balde com o de referência pode não aparecer no RELATED.
+     * Em 1M de títulos gerados, sem corte, o p50 do RELATED passa de ~0,3 ms
+     * para ~6,6 ms.
+     */
+    private static final int MAX_BUCKET = Integer.getInteger("netflix.related.bucket", 128);
+
+    /** Características por página (potência de 2). */
+    private static final int PAGE = 1024;
+    private static final int SHIFT = Integer.numberOfTrailingZeros(PAGE);
+
+    /** Sementes das funções de hash (fixas, para as assinaturas serem reprodutíveis). */
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDL);
+        for (int i = 0; i < HASHES; i++) SEEDS[i] = random.nextLong();
+    }
+
+    /** Tabela de linhas usada para obter os títulos a partir dos rowIds. */
+    private final RowTable rows;
+
+    /** Características de cada rowId, por páginas (null se o título não existir). */
+    private int[][][] features;
+
+    /** Chaves de banda de cada rowId, por páginas (BANDS chaves seguidas por rowId). */
+    private long[][] bandKeys;
+
+    /** Época em que cada página foi criada ou copiada (só no índice principal). */
+    private int[] owner;
+
+    private int epoch;
+
+    /** Indica se o índice é uma fotografia (só de leitura). */
+    private final boolean frozen;
+
+    /** Títulos de cada balde: chave da banda -> rowIds. */
+    private final PostingTable buckets;
+
+    /** Marcas dos candidatos já vistos, de cada thread. */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Um título semelhante e o seu índice de Jaccard.
+     */
+    public static class Match {
+        public final NetflixShow show;
+        public final double similarity;
+
+        Match(NetflixShow show, double similarity) {
+            this.show = show;
+            this.similarity = similarity;
+        }
+    }
+
+    /** Ordem dos resultados: semelhança decrescente, depois título e show_id. */
+    private static final Comparator<Match> BY_SIMILARITY = (a, b) -> {
+        if (a.similarity != b.similarity) return Double.compare(b.similarity, a.similarity);
+        int c = a.show.compareTo(b.show);
+        return (c != 0) ? c : a.show.getShowId().compareTo(b.show.getShowId());
+    };
+
+    /** Marcas de candidatos de uma thread (uma geração por consulta). */
+    private static final class Scratch {
+        int[] seen = new int[0];
+        int generation;
+        int[] candidates = new int[64];
+    }
+
+    /**
+     * Cria um índice vazio.
+     * @param rows A tabela de linhas partilhada.
+     */
+    public SimilarityIndex(RowTable rows) {
+        this.rows = rows;
+        this.buckets = new PostingTable();
+        this.frozen = false;
+        clear();
+    }
+
+    private SimilarityIndex(RowTable rows, int[][][] features, long[][] bandKeys, PostingTable buckets) {
+        this.rows = rows;
+        this.features = features;
+        this.bandKeys = bandKeys;
+        this.buckets = buckets;
+        this.frozen = true;
+    }
+
+    @Override
+    public void add(NetflixShow show) {
+        int id = show.getRowId();
+        int[] f = features(show);
+        long[] keys = bandKeys(f);
+        setFeatures(id, f, keys);
+        if (keys == null) return;
+        for (long key : keys) buckets.add(key, id);
+    }
+
+    @Override
+    public void remove(NetflixShow show) {
+        int id = show.getRowId();
+        int[] f = features(id);
+        if (f == null) return;
+        if (f.length > 0) {
+            long[] page = bandKeys[id >>> SHIFT];
+            int at = (id & (PAGE - 1)) * BANDS;
+            for (int b = 0; b < BANDS; b++) buckets.remove(page[at + b], id);
+        }
+        setFeatures(id, null, null);
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        features = new int[1][][];
+        bandKeys = new long[1][];
+        owner = new int[1];
+        buckets.clear();
+    }
+
+    /**
+     * Devolve uma fotografia do índice (só de leitura), que não muda com as
+     * alterações seguintes.
+     * @param rowsView A fotografia da RowTable tirada no mesmo momento.
+     * @return O índice só de leitura.
+     */
+    public SimilarityIndex snapshot(RowTable rowsView) {
+        checkWritable();
+        SimilarityIndex view = new SimilarityIndex(rowsView, features.clone(), bandKeys.clone(), buckets.snapshot());
+        epoch++;
+        return view;
+    }
+
+    /**
+     * Devolve os k títulos mais semelhantes ao indicado (excluindo-o), do mais
+     * para o menos semelhante e, em caso de empate, por ordem de título.
+     * Sobre uma fotografia, pode ser chamado por qualquer thread.
+     * @param show O título de referência (já carregado).
+     * @param k O número máximo de títulos.
+     * @return Os títulos semelhantes (só os que têm alguma característica em comum).
+     */
+    public Match[] related(NetflixShow show, int k) {
+        return related(show.getRowId(), k, SCRATCH.get());
+    }
+
+    /**
+     * Calcula os k vizinhos de todos os títulos, repartindo os rowIds por
+     * várias threads (cada uma com as suas marcas). Sobre uma fotografia, pode
+     * ser chamado por qualquer thread.
+     * @param k O número de vizinhos de cada título.
+     * @param threads O número de threads.
+     * @return Os vizinhos de cada rowId (null nas posições livres).
+     * @throws Exception Se alguma thread falhar.
+     */
+    public Match[][] relatedAll(int k, int threads) throws Exception {
+        int capacity = rows.capacity();
+        Match[][] result = new Match[capacity][];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] parts = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                parts[t] = pool.submit(() -> {
+                    Scratch own = new Scratch();
+                    for (int id = first; id < capacity; id += threads) {
+                        if (features(id) != null) result[id] = related(id, k, own);
+                    }
+                });
+            }
+            for (Future<?> f : parts) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /**
+     * Baldes das bandas (gravados e repostos pelo SnapshotFile).
+     */
+    PostingTable buckets() {
+        return buckets;
+    }
+
+    /**
+     * Repõe as características de um título e recalcula as suas chaves de
+     * banda; os baldes são repostos à parte (carregamento de uma fotografia
+     * binária).
+     * @param id O rowId do título.
+     * @param f As características, ordenadas.
+     */
+    void restoreFeatures(int id, int[] f) {
+        setFeatures(id, f, bandKeys(f));
+    }
+
+    // UTILITÁRIOS.
+
+    private Match[] related(int id, int k, Scratch s) {
+        int[] f = features(id);
+        if (f == null || f.length == 0 || k <= 0) return new Match[0];
+        if (s.seen.length < rows.capacity()) s.seen = new int[rows.capacity()];
+        int generation = ++s.generation;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(s.seen, 0);
+            s.generation = generation = 1;
+        }
+
+        // Candidatos: títulos com a mesma chave em pelo menos uma banda, dos
+        // rowIds maiores para os menores.
+        s.seen[id] = generation;
+        int count = 0;
+        long[] keys = bandKeys[id >>> SHIFT];
+        int at = (id & (PAGE - 1)) * BANDS;
+        for (int b = 0; b < BANDS; b++) {
+            int[][] blocks = buckets.blocks(keys[at + b]);
+            int read = 0;
+            for (int x = blocks.length - 1; x >= 0 && read < MAX_BUCKET; x--) {
+                for (int y = PostingTable.count(blocks[x]) - 1; y >= 0 && read < MAX_BUCKET; y--) {
+                    int c = PostingTable.value(blocks[x], y);
+                    read++;
+                    if (s.seen[c] == generation) continue;
+                    s.seen[c] = generation;
+                    if (count == s.candidates.length) s.candidates = Arrays.copyOf(s.candidates, count * 2);
+                    s.candidates[count++] = c;
+                }
+            }
+        }
+
+        // Jaccard exato dos candidatos, mantendo só os k melhores (por inserção).
+        Match[] best = new Match[Math.min(k, count)];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int c = s.candidates[i];
+            double similarity = jaccard(f, features(c));
+            if (similarity == 0 || (n == best.length && similarity < best[n - 1].similarity)) continue;
+            NetflixShow other = rows.get(c);
+            if (other == null) continue;
+            Match m = new Match(other, similarity);
+            if (n == best.length && BY_SIMILARITY.compare(m, best[n - 1]) >= 0) continue;
+            int j = (n < best.length) ? n++ : n - 1;
+            while (j > 0 && BY_SIMILARITY.compare(m, best[j - 1]) < 0) {
+                best[j] = best[j - 1];
+                j--;
+            }
+            best[j] = m;
+        }
+        return (n < best.length) ? Arrays.copyOf(best, n) : best;
+    }
+
+    /** Características do título: cada valor (sem distinção de maiúsculas) com o prefixo do campo. */
+    private static int[] features(NetflixShow show) {
+        int[] f = new int[16];
+        int n = 0;
+        String[] fields = { show.getCast(), show.getDirector(), show.getListedIn(), show.getCountry() };
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null) continue;
+            for (String v : fields[i].split(",")) {
+                v = v.trim();
+                if (v.isEmpty()) continue;
+                if (n == f.length) f = Arrays.copyOf(f, n * 2);
+                f[n++] = hash(i, v);
+            }
+        }
+        Arrays.sort(f, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || f[unique - 1] != f[i]) f[unique++] = f[i];
+        }
+        return Arrays.copyOf(f, unique);
+    }
+
+    /** FNV-1a de 64 bits do campo e do texto normalizado, reduzido a 32 bits. */
+    private static int hash(int field, String value) {
+        long h = 0xcbf29ce484222325L ^ field;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+            h *= 0x100000001b3L;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Chaves de banda da assinatura MinHash das características (null se não houver nenhuma). */
+    private static long[] bandKeys(int[] f) {
+        if (f.length == 0) return null;
+        long[] signature = signature(f);
+        long[] keys = new long[BANDS];
+        for (int b = 0; b < BANDS; b++) keys[b] = bandKey(signature, b);
+        return keys;
+    }
+
+    private static long[] signature(int[] f) {
+        long[] signature = new long[HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int x : f) {
+            for (int i = 0; i < HASHES; i++) {
+                long h = mix(x ^ SEEDS[i]);
+                if (h < signature[i]) signature[i] = h;
+            }
+        }
+        return signature;
+    }
+
+    private static long bandKey(long[] signature, int band) {
+        long key = band;
+        for (int r = 0; r < ROWS_PER_BAND; r++) key = mix(key * 31 + signature[band * ROWS_PER_BAND + r]);
+        return key;
+    }
+
+    /** Finalizador do MurmurHash3 (64 bits). */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /** Características do rowId, ou null se não houver título com esse rowId. */
+    int[] features(int id) {
+        if (id < 0 || (id >>> SHIFT) >= features.length) return null;
+        int[][] page = features[id >>> SHIFT];
+        return (page == null) ? null : page[id & (PAGE - 1)];
+    }
+
+    /**
+     * Guarda as características e as chaves de banda do rowId, copiando as
+     * páginas se estiverem numa fotografia.
+     */
+    private void setFeatures(int id, int[] f, long[] keys) {
+        checkWritable();
+        int p = id >>> SHIFT;
+        if (p >= features.length) {
+            int length = features.length;
+            while (length <= p) length *= 2;
+            features = Arrays.copyOf(features, length);
+            bandKeys = Arrays.copyOf(bandKeys, length);
+            owner = Arrays.copyOf(owner, length);
+        }
+        if (features[p] == null) {
+            features[p] = new int[PAGE][];
+            bandKeys[p] = new long[PAGE * BANDS];
+            owner[p] = epoch;
+        } else if (owner[p] != epoch) {
+            features[p] = features[p].clone();
+            bandKeys[p] = bandKeys[p].clone();
+            owner[p] = epoch;
+        }
+        features[p][id & (PAGE - 1)] = f;
+        if (keys != null) System.arraycopy(keys, 0, bandKeys[p], (id & (PAGE - 1)) * BANDS, BANDS);
+    }
+
+    private static double jaccard(int[] a, int[] b) {
+        if (b == null || b.length == 0) return 0;
+        int i = 0, j = 0, common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { common++; i++; j++; }
+        }
+        return (double) common / (a.length + b.length - common);
+    }
+
+    private void checkWritable() {
+        if (frozen) throw new UnsupportedOperationException("read-only snapshot");
+    }
+}
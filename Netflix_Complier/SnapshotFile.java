@@ -0,0 +1,351 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Fotografia binária da coleção e dos seus índices (comandos SAVE e LOADB).
+ * * Formato (inteiros em big-endian):
+ * cabeçalho com MAGIC, FORMAT_VERSION e o número de títulos; um dicionário
+ * com os valores distintos de tipo, país, rating e categorias; os títulos por
+ * ordem de título; os índices; e, no fim, o CRC32 de todos os bytes anteriores.
+ * Cada título guarda o id, o título, o realizador, o elenco e a descrição como
+ * strings (comprimento seguido dos bytes UTF-8, -1 se null), as posições no
+ * dicionário dos restantes textos, a data de adição em dias desde 1970-01-01
+ * e o ano de lançamento e a duração.
+ * * Nos índices, cada título é identificado pela sua posição no ficheiro,
+ * que é o rowId que recebe ao ser carregado numa coleção vazia. Seguem-se as
+ * partes do IdIndex (pares hash, posição + 1), as listas dos trigramas dos
+ * títulos e do elenco e dos baldes do SimilarityIndex (chave, número de
+ * posições e posições em varint, cada uma como diferença para a anterior) e
+ * as características de cada título para o SimilarityIndex.
+ * * A leitura mapeia o ficheiro em memória (FileChannel.map), confirma o
+ * CRC32 e devolve os títulos já pela ordem da lista, prontos a juntar sem
+ * voltar a ordenar; numa coleção vazia, os índices gravados são repostos
+ * diretamente (ver Contents.restore), sem voltar a ser calculados.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public final class SnapshotFile {
+
+    /** Identifica o ficheiro ("NFXB"). */
+    private static final int MAGIC = 0x4E465842;
+
+    /** Versão do formato; ficheiros de outras versões são recusados. */
+    private static final int FORMAT_VERSION = 2;
+
+    /** Bytes do cabeçalho (magic, versão, número de títulos) e do CRC32 final. */
+    private static final int HEADER_BYTES = 12;
+    private static final int CRC_BYTES = 4;
+
+    private SnapshotFile() { }
+
+    /**
+     * Títulos lidos de um ficheiro, com os índices gravados ainda por repor.
+     */
+    public static final class Contents {
+        /** Os títulos, pela ordem da lista. */
+        public final NetflixShow[] shows;
+
+        private final ByteBuffer buf;
+        private final int indexStart;
+        private final int end;
+
+        private Contents(NetflixShow[] shows, ByteBuffer buf, int indexStart, int end) {
+            this.shows = shows;
+            this.buf = buf;
+            this.indexStart = indexStart;
+            this.end = end;
+        }
+
+        /**
+         * Repõe os índices gravados em índices vazios. Os títulos têm de
+         * receber depois os rowIds 0 .. n - 1, pela ordem de shows (o que
+         * acontece ao acrescentá-los a uma RowTable vazia).
+         * @throws IOException Se a secção dos índices estiver corrompida.
+         */
+        void restore(IdIndex ids, TrigramIndex titles, TrigramIndex casts, SimilarityIndex similarity)
+                throws IOException {
+            ByteBuffer in = buf.duplicate();
+            in.position(indexStart);
+            try {
+                for (int stripe = 0; stripe < IdIndex.STRIPES; stripe++) {
+                    int[] slots = new int[in.getInt()];
+                    readInts(in, slots);
+                    for (int k = 1; k < slots.length; k += 2) {
+                        if (slots[k] < 0 || slots[k] > shows.length) throw new IOException("Invalid snapshot: corrupted data");
+                    }
+                    ids.importStripe(stripe, slots);
+                }
+                readPostings(in, titles.postings(), shows.length);
+                readPostings(in, casts.postings(), shows.length);
+                readPostings(in, similarity.buckets(), shows.length);
+                for (int i = 0; i < shows.length; i++) {
+                    int[] f = new int[readVarInt(in)];
+                    readInts(in, f);
+                    similarity.restoreFeatures(i, f);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid snapshot: corrupted data");
+            }
+            if (in.position() != end) throw new IOException("Invalid snapshot: unexpected trailing data");
+        }
+    }
+
+    /**
+     * Escreve os títulos e os índices num ficheiro. Escreve primeiro para um
+     * ficheiro temporário e só no fim o move para o destino, pelo que um SAVE
+     * interrompido nunca deixa uma fotografia incompleta; se a escrita falhar,
+     * o ficheiro temporário é apagado.
+     * @param filename O caminho do ficheiro.
+     * @param shows A fotografia da coleção (títulos por ordem de título).
+     * @return O tamanho do ficheiro em bytes.
+     * @throws IOException Em caso de erro de escrita.
+     */
+    public static long write(String filename, CatalogSnapshot shows) throws IOException {
+        // Dicionário dos textos com poucos valores distintos.
+        HashMap<String, Integer> codes = new HashMap<>();
+        ArrayList<String> dictionary = new ArrayList<>();
+        for (NetflixShow s : shows) {
+            intern(codes, dictionary, s.getType());
+            intern(codes, dictionary, s.getCountry());
+            intern(codes, dictionary, s.getRating());
+            intern(codes, dictionary, s.getListedIn());
+        }
+
+        Path target = Path.of(filename);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try {
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), crc))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(shows.size());
+
+                out.writeInt(dictionary.size());
+                for (String v : dictionary) writeString(out, v);
+
+                // Posição de cada rowId no ficheiro (o rowId que terá ao ser carregado).
+                int[] position = new int[shows.rows().capacity()];
+                int next = 0;
+                for (NetflixShow s : shows) {
+                    position[s.getRowId()] = next++;
+                    writeString(out, s.getShowId());
+                    writeString(out, s.getTitle());
+                    writeString(out, s.getDirector());
+                    writeString(out, s.getCast());
+                    writeString(out, s.getDescription());
+                    out.writeInt(code(codes, s.getType()));
+                    out.writeInt(code(codes, s.getCountry()));
+                    out.writeInt(code(codes, s.getRating()));
+                    out.writeInt(code(codes, s.getListedIn()));
+                    out.writeInt(s.getDateKey());
+                    out.writeInt(s.getReleaseYear());
+                    out.writeInt(s.getDuration());
+                }
+
+                for (int stripe = 0; stripe < IdIndex.STRIPES; stripe++) {
+                    int[] slots = shows.ids().exportStripe(stripe, position);
+                    out.writeInt(slots.length);
+                    for (int v : slots) out.writeInt(v);
+                }
+                writePostings(out, shows.titles().postings(), position);
+                writePostings(out, shows.casts().postings(), position);
+                writePostings(out, shows.similarity().buckets(), position);
+                for (NetflixShow s : shows) {
+                    int[] f = shows.similarity().features(s.getRowId());
+                    writeVarInt(out, f.length);
+                    for (int v : f) out.writeInt(v);
+                }
+                out.flush();
+                // O CRC32 cobre tudo o que foi escrito até aqui.
+                out.writeInt((int) crc.getValue());
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // Uma escrita ou mudança de nome falhada não deixa o ficheiro temporário para trás.
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return Files.size(target);
+    }
+
+    /**
+     * Lê os títulos de um ficheiro escrito com write.
+     * @param filename O caminho do ficheiro.
+     * @return Os títulos, pela ordem da lista, e os índices gravados.
+     * @throws IOException Se o ficheiro não existir, não for uma fotografia
+     *                     desta versão ou estiver corrompido.
+     */
+    public static Contents read(String filename) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + CRC_BYTES) throw new IOException("Invalid snapshot: file too short");
+            if (size > Integer.MAX_VALUE) throw new IOException("Invalid snapshot: file too large");
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        int end = buf.limit() - CRC_BYTES;
+        if (buf.getInt(0) != MAGIC) throw new IOException("Invalid snapshot: not a snapshot file");
+        if (buf.getInt(4) != FORMAT_VERSION) throw new IOException("Invalid snapshot: unsupported version " + buf.getInt(4));
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().limit(end));
+        if ((int) crc.getValue() != buf.getInt(end)) throw new IOException("Invalid snapshot: checksum mismatch");
+
+        try {
+            buf.position(8);
+            int count = buf.getInt();
+            String[] dictionary = new String[buf.getInt()];
+            for (int i = 0; i < dictionary.length; i++) dictionary[i] = readString(buf);
+
+            NetflixShow[] shows = new NetflixShow[count];
+            for (int i = 0; i < count; i++) {
+                String showId = readString(buf);
+                String title = readString(buf);
+                String director = readString(buf);
+                String cast = readString(buf);
+                String description = readString(buf);
+                String type = lookup(dictionary, buf.getInt());
+                String country = lookup(dictionary, buf.getInt());
+                String rating = lookup(dictionary, buf.getInt());
+                String listedIn = lookup(dictionary, buf.getInt());
+                int dateKey = buf.getInt();
+                int releaseYear = buf.getInt();
+                int duration = buf.getInt();
+                shows[i] = new NetflixShow(showId, type, title, director, cast, country,
+                    dateKey, releaseYear, rating, duration, listedIn, description);
+            }
+            return new Contents(shows, buf, buf.position(), end);
+        } catch (RuntimeException e) {
+            // Só acontece se o ficheiro tiver sido escrito com o CRC32 certo mas com dados inválidos.
+            throw new IOException("Invalid snapshot: corrupted data");
+        }
+    }
+
+    // UTILITÁRIOS.
+
+    private static void intern(HashMap<String, Integer> codes, ArrayList<String> dictionary, String value) {
+        if (value != null && !codes.containsKey(value)) {
+            codes.put(value, dictionary.size());
+            dictionary.add(value);
+        }
+    }
+
+    private static int code(HashMap<String, Integer> codes, String value) {
+        return (value == null) ? -1 : codes.get(value);
+    }
+
+    private static String lookup(String[] dictionary, int code) {
+        return (code < 0) ? null : dictionary[code];
+    }
+
+    /**
+     * Grava as listas não vazias da tabela, precedidas do seu número: chave,
+     * número de posições e posições (varint, como diferença para a anterior).
+     */
+    private static void writePostings(DataOutputStream out, PostingTable table, int[] position) throws IOException {
+        ArrayList<int[][]> lists = new ArrayList<>();
+        long[][] keys = { new long[1024] };
+        table.forEach((blocks, key) -> {
+            if (lists.size() == keys[0].length) keys[0] = Arrays.copyOf(keys[0], lists.size() * 2);
+            keys[0][lists.size()] = key;
+            lists.add(blocks);
+        });
+        out.writeInt(lists.size());
+        int[] ids = new int[16];
+        for (int l = 0; l < lists.size(); l++) {
+            int n = 0;
+            for (int[] block : lists.get(l)) {
+                for (int i = 0; i < PostingTable.count(block); i++) {
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = position[PostingTable.value(block, i)];
+                }
+            }
+            Arrays.sort(ids, 0, n);
+            out.writeLong(keys[0][l]);
+            writeVarInt(out, n);
+            for (int i = 0; i < n; i++) writeVarInt(out, (i == 0) ? ids[0] : ids[i] - ids[i - 1]);
+        }
+    }
+
+    /** Lê as listas gravadas com writePostings para uma tabela vazia. */
+    private static void readPostings(ByteBuffer in, PostingTable table, int count) throws IOException {
+        int lists = in.getInt();
+        int[] ids = new int[16];
+        for (int l = 0; l < lists; l++) {
+            long key = in.getLong();
+            int n = readVarInt(in);
+            if (n <= 0 || n > count) throw new IOException("Invalid snapshot: corrupted data");
+            if (n > ids.length) ids = new int[Math.max(n, ids.length * 2)];
+            int id = -1;
+            for (int i = 0; i < n; i++) {
+                int gap = readVarInt(in);
+                id = (i == 0) ? gap : id + gap;
+                if ((i > 0 && gap <= 0) || id < 0 || id >= count) throw new IOException("Invalid snapshot: corrupted data");
+                ids[i] = id;
+            }
+            table.putSorted(key, ids, n);
+        }
+    }
+
+    private static void readInts(ByteBuffer in, int[] values) {
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+    }
+
+    /** Inteiro não negativo em 7 bits por byte, o bit mais alto indica que há mais bytes. */
+    private static void writeVarInt(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
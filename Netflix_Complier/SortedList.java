@@ -1,101 +1,321 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
 /**
  * Implementação do ADT List que mantém os elementos ordenados automaticamente
  * aquando da inserção.
- * * Esta implementação utiliza uma lista simplesmente ligada.
+ * * Esta implementação utiliza uma treap (árvore binária de pesquisa com
+ * prioridades aleatórias) aumentada com o tamanho de cada subárvore, o que
+ * permite inserir, remover e aceder por posição em O(log n) esperado.
+ * * Elementos iguais ficam pela ordem inversa de inserção (o mais recente primeiro),
+ * tal como na versão anterior baseada numa lista ligada. Para isso cada nó tem
+ * um carimbo de inserção crescente, que desempata os iguais e permite remover
+ * um elemento concreto em O(log n) com remove(elemento, carimbo).
+ * * A árvore é persistente: snapshot devolve em O(1) uma fotografia só de
+ * leitura, que partilha os nós com a lista. As alterações seguintes copiam
+ * apenas os nós do caminho que alteram (O(log n) por operação), pelo que as
+ * fotografias nunca mudam e podem ser lidas por várias threads sem bloqueios.
  * * @param <T> O tipo de dados (deve implementar Comparable).
  * @author Simão Ferreira / Miguel Eusébio
- * @version 1.1
+ * @version 1.2
  */
 public class SortedList<T extends Comparable<T>> implements List<T> {
-    
-    /** Referência para o primeiro nó da lista. */
-    private Node<T> head;
-    
+
+    /** Referência para a raiz da árvore. */
+    private Node<T> root;
+
     /** Contador do número de elementos na lista. */
     private int size;
 
+    /** Estado do gerador xorshift usado para as prioridades dos nós. */
+    private int seed;
+
+    /** Número total de comparações (compareTo) efetuadas pela lista (só com Metrics.ENABLED). */
+    private long comparisons;
+
+    /** Nós percorridos nas descidas pela árvore (só com Metrics.ENABLED). */
+    private long hops;
+
+    /** Próximo carimbo de inserção a atribuir. */
+    private long nextStamp;
+
+    /** Época atual: os nós desta época ainda não estão em nenhuma fotografia. */
+    private int epoch;
+
+    /** Indica se a lista é uma fotografia (só de leitura). */
+    private final boolean frozen;
+
+    /** Resultados de split: a parte menor e a parte maior ou igual à chave. */
+    private Node<T> splitLeft, splitRight;
+
     /**
      * Construtor padrão que inicializa uma lista vazia.
      */
     public SortedList() {
-        this.head = null;
+        this.root = null;
         this.size = 0;
+        this.seed = 0x2545F491;
+        this.frozen = false;
+    }
+
+    /**
+     * Cria uma fotografia sobre a raiz indicada.
+     */
+    private SortedList(Node<T> root, int size) {
+        this.root = root;
+        this.size = size;
+        this.frozen = true;
     }
 
     /**
      * Insere um elemento na lista mantendo a ordem crescente.
-     * Percorre a lista até encontrar a posição correta de inserção.
      * * @param element O elemento a adicionar.
      */
     @Override
     public void add(T element) {
-        Node<T> newNode = new Node<>(element);
-        
-        // Caso 1: Inserir no início.
-        if (head == null || element.compareTo(head.data) < 0) {
-            newNode.next = head;
-            head = newNode;
-        } else {
-            // Caso 2: Procurar a posição correta no meio/fim.
-            Node<T> current = head;
-            while (current.next != null && element.compareTo(current.next.data) > 0) {
-                current = current.next;
-            }
-            // Inserir após o nó current.
-            newNode.next = current.next;
-            current.next = newNode;
-        }
+        insert(element);
+    }
+
+    /**
+     * Insere um elemento e devolve o carimbo que lhe foi atribuído, para que
+     * possa ser removido mais tarde com remove(element, stamp) sem percorrer
+     * os elementos iguais. Desce a árvore até à posição da prioridade do novo
+     * nó, divide aí a subárvore pela chave e copia os nós do caminho que ainda
+     * estejam em alguma fotografia.
+     * @param element O elemento a adicionar.
+     * @return O carimbo do elemento (maior do que todos os anteriores).
+     */
+    public long insert(T element) {
+        checkWritable();
+        long stamp = nextStamp++;
+        root = insert(root, element, stamp, nextPriority());
         size++;
+        return stamp;
     }
 
     /**
      * Remove a primeira ocorrência do elemento especificado.
+     * Localiza o primeiro nó igual pela ordem e percorre os seguintes
+     * enquanto a comparação for zero.
      * @return true se encontrou e removeu o elemento, false caso contrário.
      */
     @Override
     public boolean remove(T element) {
-        if (head == null) return false;
+        checkWritable();
+        // Posição do primeiro nó com dado >= element.
+        int rank = 0;
+        Node<T> current = root;
+        while (current != null) {
+            if (Metrics.ENABLED) hops++;
+            if (compare(element, current.data) <= 0) {
+                current = current.left;
+            } else {
+                rank += sizeOf(current.left) + 1;
+                current = current.right;
+            }
+        }
 
-        // Remover da cabeça
-        if (head.data.equals(element)) {
-            head = head.next;
-            size--;
-            return true;
+        Cursor<T> it = new Cursor<>(root, rank);
+        while (it.hasNext()) {
+            Node<T> n = it.nextNode();
+            if (compare(element, n.data) != 0) break;
+            if (n.data.equals(element)) return remove(n.data, n.stamp);
         }
+        return false;
+    }
+
+    /**
+     * Remove o elemento com o carimbo indicado, em O(log n) esperado: desce
+     * até ao nó pela ordem (elemento, carimbo), junta as suas subárvores no
+     * lugar dele e copia os nós do caminho que estejam em alguma fotografia.
+     * @param element O elemento a remover.
+     * @param stamp O carimbo devolvido por insert ou addSortedRuns.
+     * @return true se o elemento existia.
+     */
+    public boolean remove(T element, long stamp) {
+        checkWritable();
+        int before = size;
+        root = remove(root, element, stamp);
+        return size < before;
+    }
 
-        Node<T> current = head;
-        while (current.next != null && !current.next.data.equals(element)) {
-            current = current.next;
+    /**
+     * Insere de uma só vez todos os elementos da coleção.
+     * Os novos elementos são ordenados uma única vez com um algoritmo estável
+     * O(n log n) e juntos à lista com addSortedRuns.
+     * O resultado é igual ao de chamar add para cada elemento, pela mesma ordem.
+     * @param elements Os elementos a adicionar.
+     */
+    public void addAll(Collection<? extends T> elements) {
+        if (elements.isEmpty()) return;
+
+        T[] batch = elements.toArray(newArray(elements.size()));
+        comparisons += sortRun(batch);
+
+        T[][] runs = newRuns(1);
+        runs[0] = batch;
+        addSortedRuns(runs);
+    }
+
+    /**
+     * Prepara um bloco de elementos para addSortedRuns: ordena-o de forma estável,
+     * ficando primeiro, entre iguais, o elemento que aparecia mais tarde no array.
+     * Pode ser usado em paralelo por várias threads sobre arrays diferentes.
+     * @param run Os elementos, pela ordem em que foram lidos.
+     * @return O número de comparações efetuadas (0 sem Metrics.ENABLED).
+     */
+    public static <T extends Comparable<T>> long sortRun(T[] run) {
+        reverse(run);
+        if (!Metrics.ENABLED) {
+            Arrays.sort(run);
+            return 0;
         }
+        long[] count = new long[1];
+        Arrays.sort(run, (a, b) -> {
+            count[0]++;
+            return a.compareTo(b);
+        });
+        return count[0];
+    }
 
-        if (current.next != null) {
-            current.next = current.next.next;
-            size--;
-            return true;
+    /**
+     * Insere vários blocos já ordenados com sortRun, com o resultado de cada
+     * elemento ter sido adicionado com add pela ordem dos blocos (e, em cada
+     * bloco, pela ordem em que foi lido).
+     * * Um lote pequeno (m log n &lt; n) é inserido elemento a elemento, em
+     * O(m log n), para que um lote pequeno sobre uma lista grande não custe
+     * O(n). Um lote grande é intercalado com os elementos existentes (k vias,
+     * com um heap) e a árvore é reconstruída numa única passagem, em O(n + m log k).
+     * @param runs Os blocos ordenados, pela ordem em que foram lidos.
+     * @return Os carimbos atribuídos, com a mesma forma de runs (o de runs[r][i] em [r][i]).
+     */
+    public long[][] addSortedRuns(T[][] runs) {
+        checkWritable();
+        int k = runs.length;
+        long added = 0;
+        for (T[] run : runs) added += run.length;
+
+        // Carimbos pela ordem de leitura: blocos seguintes e, dentro de cada
+        // bloco (invertido por sortRun entre iguais), do fim para o início.
+        long[][] stamps = new long[k][];
+        for (int r = 0; r < k; r++) {
+            stamps[r] = new long[runs[r].length];
+            for (int i = runs[r].length - 1; i >= 0; i--) stamps[r][i] = nextStamp++;
         }
-        return false;
+        if (added == 0) return stamps;
+
+        if (added * (64 - Long.numberOfLeadingZeros(size + 1L)) < size) {
+            for (int r = 0; r < k; r++) {
+                for (int i = 0; i < runs[r].length; i++) {
+                    root = insert(root, runs[r][i], stamps[r][i], nextPriority());
+                    size++;
+                }
+            }
+            return stamps;
+        }
+
+        // Fontes da intercalação: 0 são os elementos existentes, r + 1 o bloco r.
+        T[][] data = newRuns(k + 1);
+        long[][] keys = new long[k + 1][];
+        data[0] = newArray(size);
+        keys[0] = new long[size];
+        Cursor<T> it = new Cursor<>(root, 0);
+        for (int i = 0; it.hasNext(); i++) {
+            Node<T> n = it.nextNode();
+            data[0][i] = n.data;
+            keys[0][i] = n.stamp;
+        }
+        for (int r = 0; r < k; r++) {
+            data[r + 1] = runs[r];
+            keys[r + 1] = stamps[r];
+        }
+
+        // Heap mínimo de índices de fontes, ordenado pelo elemento atual de cada uma.
+        int[] cursor = new int[k + 1];
+        int[] heap = new int[k + 1];
+        int heapSize = 0;
+        for (int src = 0; src <= k; src++) {
+            if (data[src].length > 0) {
+                heap[heapSize] = src;
+                siftUp(heap, heapSize++, data, keys, cursor);
+            }
+        }
+
+        int total = (int) (size + added);
+        Node<T>[] merged = newNodes(total);
+        int m = 0;
+        while (heapSize > 0) {
+            int src = heap[0];
+            int c = cursor[src]++;
+            merged[m++] = new Node<>(data[src][c], 0, keys[src][c], epoch);
+            if (cursor[src] == data[src].length) heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, data, keys, cursor);
+        }
+        build(merged);
+        return stamps;
     }
 
     /**
-     * Obtém o elemento numa posição específica percorrendo a lista.
+     * Devolve uma fotografia da lista, em O(1): uma lista só de leitura com o
+     * conteúdo atual, que não muda com as alterações seguintes a esta lista.
+     * A fotografia pode ser lida por várias threads sem sincronização (depois
+     * de publicada, por exemplo, através de um campo volátil).
+     * @return A fotografia.
+     */
+    public SortedList<T> snapshot() {
+        checkWritable();
+        SortedList<T> view = new SortedList<>(root, size);
+        // Os nós atuais passam a pertencer também à fotografia.
+        epoch++;
+        return view;
+    }
+
+    /**
+     * Devolve o número total de comparações efetuadas pela lista desde a sua criação.
+     * @return O número de comparações.
+     */
+    public long getComparisons() { return comparisons; }
+
+    /**
+     * Devolve o número de nós percorridos em inserções, remoções e acessos por
+     * posição desde a criação da lista (0 se as métricas estiverem desativadas).
+     * @return O número de nós percorridos.
+     */
+    public long getNodeHops() { return hops; }
+
+    /**
+     * Obtém o elemento numa posição específica descendo pela árvore
+     * com base no tamanho das subárvores esquerdas.
      * @return O elemento na posição ou null se índice inválido.
      */
     @Override
     public T get(int index) {
         if (index < 0 || index >= size) return null;
-        Node<T> current = head;
-        for (int i = 0; i < index; i++) {
-            current = current.next;
+        Node<T> current = root;
+        while (true) {
+            if (Metrics.ENABLED && !frozen) hops++;
+            int leftSize = sizeOf(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            } else if (index == leftSize) {
+                return current.data;
+            } else {
+                index -= leftSize + 1;
+                current = current.right;
+            }
         }
-        return current.data;
     }
 
     /**
-     * Limpa a lista removendo todos os elementos.
+     * Limpa a lista removendo todos os elementos (as fotografias mantêm-se).
      */
     @Override
     public void clear() {
-        head = null;
+        checkWritable();
+        root = null;
         size = 0;
     }
 
@@ -104,4 +324,292 @@ public class SortedList<T extends Comparable<T>> implements List<T> {
 
     @Override
     public boolean isEmpty() { return size == 0; }
-}
\ No newline at end of file
+
+    /**
+     * Devolve um iterador que percorre os elementos por ordem crescente.
+     * O avanço usa uma pilha com o caminho até ao nó atual (os nós não
+     * guardam o pai, por serem partilhados entre fotografias).
+     * @return O iterador da lista.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Devolve um iterador que começa na posição indicada, em O(log n).
+     * @param index A posição do primeiro elemento (0 para o início).
+     * @return O iterador.
+     */
+    public Iterator<T> iterator(int index) {
+        Cursor<T> cursor = new Cursor<>(root, index);
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() { return cursor.hasNext(); }
+
+            @Override
+            public T next() { return cursor.nextNode().data; }
+        };
+    }
+
+    /**
+     * Aplica a ação a cada elemento por ordem crescente.
+     * @param action A ação a aplicar.
+     */
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        Cursor<T> cursor = new Cursor<>(root, 0);
+        while (cursor.hasNext()) action.accept(cursor.nextNode().data);
+    }
+
+    // UTILITÁRIOS DA ÁRVORE.
+
+    /**
+     * Percurso em ordem com uma pilha explícita, a partir de uma posição.
+     */
+    private static final class Cursor<T> {
+        private Node<T>[] stack = newNodes(64);
+        private int top;
+
+        /** Desce até à posição index, guardando os nós onde o percurso ainda tem de passar. */
+        Cursor(Node<T> root, int index) {
+            Node<T> current = root;
+            while (current != null) {
+                int leftSize = (current.left == null) ? 0 : current.left.size;
+                if (index < leftSize) {
+                    push(current);
+                    current = current.left;
+                } else if (index == leftSize) {
+                    push(current);
+                    return;
+                } else {
+                    index -= leftSize + 1;
+                    current = current.right;
+                }
+            }
+        }
+
+        boolean hasNext() {
+            return top > 0;
+        }
+
+        Node<T> nextNode() {
+            if (top == 0) throw new NoSuchElementException();
+            Node<T> node = stack[--top];
+            for (Node<T> n = node.right; n != null; n = n.left) push(n);
+            return node;
+        }
+
+        private void push(Node<T> node) {
+            if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+            stack[top++] = node;
+        }
+    }
+
+    private Node<T> insert(Node<T> t, T element, long stamp, int priority) {
+        if (t == null) return new Node<>(element, priority, stamp, epoch);
+        if (Metrics.ENABLED) hops++;
+        if (priority > t.priority) {
+            // O novo nó fica no lugar de t, com t dividido pela chave.
+            Node<T> node = new Node<>(element, priority, stamp, epoch);
+            split(t, element, stamp);
+            node.left = splitLeft;
+            node.right = splitRight;
+            node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+            splitLeft = splitRight = null;
+            return node;
+        }
+        t = own(t);
+        t.size++;
+        if (order(element, stamp, t) < 0) t.left = insert(t.left, element, stamp, priority);
+        else t.right = insert(t.right, element, stamp, priority);
+        return t;
+    }
+
+    /**
+     * Divide a subárvore t nos nós anteriores à chave (splitLeft) e nos restantes (splitRight).
+     */
+    private void split(Node<T> t, T element, long stamp) {
+        if (t == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        if (Metrics.ENABLED) hops++;
+        t = own(t);
+        if (order(element, stamp, t) > 0) {
+            split(t.right, element, stamp);
+            t.right = splitLeft;
+            t.size = 1 + sizeOf(t.left) + sizeOf(t.right);
+            splitLeft = t;
+        } else {
+            split(t.left, element, stamp);
+            t.left = splitRight;
+            t.size = 1 + sizeOf(t.left) + sizeOf(t.right);
+            splitRight = t;
+        }
+    }
+
+    private Node<T> remove(Node<T> t, T element, long stamp) {
+        if (t == null) return null;
+        if (Metrics.ENABLED) hops++;
+        int c = order(element, stamp, t);
+        if (c == 0) {
+            size--;
+            return merge(t.left, t.right);
+        }
+        int before = size;
+        Node<T> replaced = remove((c < 0) ? t.left : t.right, element, stamp);
+        if (size == before) return t; // Não encontrado: nada foi alterado.
+        t = own(t);
+        if (c < 0) t.left = replaced;
+        else t.right = replaced;
+        t.size--;
+        return t;
+    }
+
+    /**
+     * Junta duas subárvores, com todos os elementos de a antes dos de b.
+     */
+    private Node<T> merge(Node<T> a, Node<T> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (Metrics.ENABLED) hops++;
+        if (a.priority > b.priority) {
+            a = own(a);
+            a.right = merge(a.right, b);
+            a.size = 1 + sizeOf(a.left) + sizeOf(a.right);
+            return a;
+        }
+        b = own(b);
+        b.left = merge(a, b.left);
+        b.size = 1 + sizeOf(b.left) + sizeOf(b.right);
+        return b;
+    }
+
+    /**
+     * Devolve o nó pronto a ser alterado: o próprio, se for desta época, ou
+     * uma cópia (o original continua nas fotografias que o referem).
+     */
+    private Node<T> own(Node<T> node) {
+        if (node.epoch == epoch) return node;
+        Node<T> copy = new Node<>(node.data, node.priority, node.stamp, epoch);
+        copy.left = node.left;
+        copy.right = node.right;
+        copy.size = node.size;
+        return copy;
+    }
+
+    /**
+     * Religa a árvore a partir de um array de nós já ordenado, atribuindo novas
+     * prioridades e usando uma pilha (construção de árvore cartesiana).
+     * O tamanho de cada subárvore fica definitivo quando o nó sai da pilha.
+     * @param sorted Os nós (novos, desta época) por ordem crescente.
+     */
+    private void build(Node<T>[] sorted) {
+        Node<T>[] stack = newNodes(64);
+        int top = 0;
+
+        for (Node<T> node : sorted) {
+            node.priority = nextPriority();
+            Node<T> last = null;
+            while (top > 0 && stack[top - 1].priority < node.priority) {
+                last = stack[--top];
+                last.size = 1 + sizeOf(last.left) + sizeOf(last.right);
+            }
+            node.left = last;
+            if (top > 0) stack[top - 1].right = node;
+            if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+            stack[top++] = node;
+        }
+        while (top > 0) {
+            Node<T> last = stack[--top];
+            last.size = 1 + sizeOf(last.left) + sizeOf(last.right);
+        }
+
+        root = (sorted.length > 0) ? stack[0] : null;
+        size = sorted.length;
+    }
+
+    /**
+     * Ordem da árvore: o elemento e, entre iguais, o carimbo maior primeiro.
+     * @return Negativo se (element, stamp) vem antes do nó, 0 se for o próprio nó.
+     */
+    private int order(T element, long stamp, Node<T> node) {
+        int c = compare(element, node.data);
+        return (c != 0) ? c : Long.compare(node.stamp, stamp);
+    }
+
+    /**
+     * Verdadeiro se a fonte a deve sair antes da fonte b na intercalação.
+     */
+    private boolean before(int a, int b, T[][] data, long[][] keys, int[] cursor) {
+        int c = compare(data[a][cursor[a]], data[b][cursor[b]]);
+        return c < 0 || (c == 0 && keys[a][cursor[a]] > keys[b][cursor[b]]);
+    }
+
+    private void siftUp(int[] heap, int i, T[][] data, long[][] keys, int[] cursor) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!before(heap[i], heap[parent], data, keys, cursor)) break;
+            int t = heap[i]; heap[i] = heap[parent]; heap[parent] = t;
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int heapSize, T[][] data, long[][] keys, int[] cursor) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1, right = left + 1, best = i;
+            if (left < heapSize && before(heap[left], heap[best], data, keys, cursor)) best = left;
+            if (right < heapSize && before(heap[right], heap[best], data, keys, cursor)) best = right;
+            if (best == i) return;
+            int t = heap[i]; heap[i] = heap[best]; heap[best] = t;
+            i = best;
+        }
+    }
+
+    private void checkWritable() {
+        if (frozen) throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+    // Arrays genéricos: T apaga para Comparable e Node<T> para Node, pelo que
+    // estes arrays têm em runtime o tipo exato que o cast afirma. Ficam
+    // confinados à lista e nunca são expostos como T[] a quem a usa.
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T extends Comparable<T>> T[] newArray(int length) {
+        return (T[]) new Comparable[length];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T extends Comparable<T>> T[][] newRuns(int length) {
+        return (T[][]) new Comparable[length][];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Node<T>[] newNodes(int length) {
+        return (Node<T>[]) new Node[length];
+    }
+
+    private static <T> void reverse(T[] arr) {
+        for (int i = 0, j = arr.length - 1; i < j; i++, j--) {
+            T aux = arr[i]; arr[i] = arr[j]; arr[j] = aux;
+        }
+    }
+
+    private int compare(T a, T b) {
+        if (Metrics.ENABLED) comparisons++;
+        return a.compareTo(b);
+    }
+
+    private int sizeOf(Node<T> node) {
+        return (node == null) ? 0 : node.size;
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Algoritmos de ordenação reutilizáveis sobre arrays, todos estáveis
+ * (elementos iguais mantêm a ordem relativa que tinham).
+ * * sort: merge sort O(n log n) guiado por um Comparator; acima de um limiar
+ * de tamanho divide o trabalho pelos núcleos com fork/join.
+ * * sortByKey: para chaves inteiras limitadas (duração, ano, dia da data),
+ * counting sort O(n + k) quando o intervalo de valores é pequeno, ou radix
+ * sort LSD em duas passagens de 16 bits caso contrário.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public final class Sorter {
+
+    /** Abaixo deste tamanho usa-se ordenação por inserção. */
+    private static final int INSERTION_THRESHOLD = 24;
+
+    /** A partir deste tamanho a ordenação é feita em paralelo. */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private Sorter() { }
+
+    /**
+     * Ordena o array de forma estável segundo o comparador.
+     * @param arr O array a ordenar.
+     * @param comparator A ordem pretendida.
+     */
+    public static <T> void sort(T[] arr, Comparator<? super T> comparator) {
+        if (arr.length < 2) return;
+        T[] aux = arr.clone();
+        if (arr.length >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new MergeTask<>(arr, aux, 0, arr.length, comparator));
+        } else {
+            mergeSort(arr, aux, 0, arr.length, comparator);
+        }
+    }
+
+    /**
+     * Ordena o array de forma estável por ordem crescente de uma chave inteira.
+     * Para ordem decrescente basta devolver a chave simétrica.
+     * @param arr O array a ordenar.
+     * @param key A função que extrai a chave de cada elemento.
+     */
+    public static <T> void sortByKey(T[] arr, ToIntFunction<? super T> key) {
+        int n = arr.length;
+        if (n < 2) return;
+
+        int[] keys = new int[n];
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            keys[i] = key.applyAsInt(arr[i]);
+            if (keys[i] < min) min = keys[i];
+            if (keys[i] > max) max = keys[i];
+        }
+
+        long range = (long) max - min + 1;
+        if (range <= Math.max(n, 1 << 16)) countingSort(arr, keys, min, (int) range);
+        else radixSort(arr, keys, min);
+    }
+
+    // ALGORITMOS.
+
+    private static <T> void mergeSort(T[] arr, T[] aux, int lo, int hi, Comparator<? super T> c) {
+        if (hi - lo <= INSERTION_THRESHOLD) {
+            insertionSort(arr, lo, hi, c);
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(arr, aux, lo, mid, c);
+        mergeSort(arr, aux, mid, hi, c);
+        merge(arr, aux, lo, mid, hi, c);
+    }
+
+    /**
+     * Intercala arr[lo, mid) e arr[mid, hi), já ordenados, usando aux como apoio.
+     * Em caso de empate fica primeiro o elemento da metade esquerda (estabilidade).
+     */
+    private static <T> void merge(T[] arr, T[] aux, int lo, int mid, int hi, Comparator<? super T> c) {
+        if (c.compare(arr[mid - 1], arr[mid]) <= 0) return; // Já estão por ordem.
+        System.arraycopy(arr, lo, aux, lo, hi - lo);
+        int i = lo, j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (i == mid) arr[k] = aux[j++];
+            else if (j == hi) arr[k] = aux[i++];
+            else if (c.compare(aux[j], aux[i]) < 0) arr[k] = aux[j++];
+            else arr[k] = aux[i++];
+        }
+    }
+
+    private static <T> void insertionSort(T[] arr, int lo, int hi, Comparator<? super T> c) {
+        for (int i = lo + 1; i < hi; i++) {
+            T x = arr[i];
+            int j = i - 1;
+            while (j >= lo && c.compare(arr[j], x) > 0) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = x;
+        }
+    }
+
+    private static <T> void countingSort(T[] arr, int[] keys, int min, int range) {
+        int[] start = new int[range + 1];
+        for (int k : keys) start[k - min + 1]++;
+        for (int b = 1; b <= range; b++) start[b] += start[b - 1];
+
+        T[] out = arr.clone();
+        for (int i = 0; i < arr.length; i++) out[start[keys[i] - min]++] = arr[i];
+        System.arraycopy(out, 0, arr, 0, arr.length);
+    }
+
+    /**
+     * Radix sort LSD sobre (chave - min), visto como inteiro sem sinal de 32 bits,
+     * em duas passagens de 16 bits.
+     */
+    private static <T> void radixSort(T[] arr, int[] keys, int min) {
+        int n = arr.length;
+        T[] src = arr, dst = arr.clone();
+        int[] srcKeys = keys, dstKeys = new int[n];
+        for (int i = 0; i < n; i++) keys[i] -= min;
+
+        for (int shift = 0; shift < 32; shift += 16) {
+            int[] start = new int[(1 << 16) + 1];
+            for (int i = 0; i < n; i++) start[((srcKeys[i] >>> shift) & 0xFFFF) + 1]++;
+            for (int b = 1; b <= 1 << 16; b++) start[b] += start[b - 1];
+            for (int i = 0; i < n; i++) {
+                int pos = start[(srcKeys[i] >>> shift) & 0xFFFF]++;
+                dst[pos] = src[i];
+                dstKeys[pos] = srcKeys[i];
+            }
+            T[] t = src; src = dst; dst = t;
+            int[] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+        }
+        // Após um número par de passagens o resultado está de novo em arr.
+    }
+
+    /**
+     * Merge sort em paralelo: as metades são ordenadas em tarefas fork/join
+     * enquanto forem maiores do que o limiar, e depois intercaladas.
+     */
+    private static final class MergeTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final T[] arr, aux;
+        private final int lo, hi;
+        private final Comparator<? super T> c;
+
+        MergeTask(T[] arr, T[] aux, int lo, int hi, Comparator<? super T> c) {
+            this.arr = arr;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+            this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < PARALLEL_THRESHOLD) {
+                mergeSort(arr, aux, lo, hi, c);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new MergeTask<>(arr, aux, lo, mid, c), new MergeTask<>(arr, aux, mid, hi, c));
+            merge(arr, aux, lo, mid, hi, c);
+        }
+    }
+}
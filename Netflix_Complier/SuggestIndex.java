@@ -0,0 +1,488 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Índice de sugestões por prefixo (comando SUGGEST). O NetflixManager só o
+ * constrói no primeiro SUGGEST e, a partir daí, mantém-no a cada
+ * carregamento e remoção.
+ * * Os termos são os títulos e cada nome das listas de elenco e de realizadores,
+ * sem distinção de maiúsculas. Ficam numa treap persistente ordenada pelo
+ * termo, pelo que os termos com um dado prefixo ocupam um intervalo seguido;
+ * cada nó guarda as datas de adição dos títulos onde o termo aparece e o
+ * melhor termo da sua subárvore (data mais recente e, em empate, o primeiro
+ * por ordem alfabética). Uma sugestão percorre a árvore por essa ordem (fila
+ * de prioridade), abrindo só as subárvores cujo melhor termo é o seguinte a
+ * sair, em O(k log n).
+ * * As alterações ficam pendentes, por termo, e são aplicadas na fotografia
+ * seguinte: poucas alterações atualizam só os caminhos até aos termos
+ * alterados (copiando os nós das fotografias anteriores, como a SortedList);
+ * um lote grande volta a construir a árvore de uma vez a partir dos termos
+ * ordenados.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class SuggestIndex implements ShowIndex {
+
+    /** Número máximo de sugestões por pedido. */
+    public static final int MAX_K = 20;
+
+    /** Tipos de termo (podem acumular-se: um nome que é também título). */
+    public static final int TITLE = 1;
+    public static final int PERSON = 2;
+
+    /**
+     * Uma sugestão: o texto do termo, o seu tipo e a data de adição mais recente.
+     */
+    public static class Suggestion {
+        public final String text;
+        public final int kind;
+        public final int dateKey;
+
+        private Suggestion(String text, int kind, int dateKey) {
+            this.text = text;
+            this.kind = kind;
+            this.dateKey = dateKey;
+        }
+    }
+
+    /** Raiz da árvore de termos. */
+    private Term root;
+
+    /** Número de termos distintos. */
+    private int size;
+
+    /** Época atual: os nós de épocas anteriores pertencem a fotografias e são copiados antes de alterados. */
+    private int epoch;
+
+    /** Estado do gerador de prioridades (xorshift). */
+    private int seed = 0x2545F491;
+
+    /** Alterações pendentes de cada termo (null nas fotografias). */
+    private final HashMap<String, Delta> pending;
+
+    /** Indica se o índice é uma fotografia (só de leitura). */
+    private final boolean frozen;
+
+    /**
+     * Cria um índice vazio.
+     */
+    public SuggestIndex() {
+        this.pending = new HashMap<>();
+        this.frozen = false;
+    }
+
+    private SuggestIndex(Term root, int size) {
+        this.root = root;
+        this.size = size;
+        this.pending = null;
+        this.frozen = true;
+    }
+
+    @Override
+    public void add(NetflixShow show) {
+        update(show, true);
+    }
+
+    @Override
+    public void remove(NetflixShow show) {
+        update(show, false);
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        root = null;
+        size = 0;
+        pending.clear();
+    }
+
+    /**
+     * Devolve uma fotografia do índice (só de leitura), com as alterações
+     * pendentes já aplicadas. Custa O(termos alterados * log n), ou O(n) num
+     * lote com muitos termos alterados.
+     * @return O índice só de leitura.
+     */
+    public SuggestIndex snapshot() {
+        checkWritable();
+        flush();
+        epoch++;
+        return new SuggestIndex(root, size);
+    }
+
+    /** Número de termos distintos (títulos e nomes). */
+    public int size() {
+        if (!frozen) flush();
+        return size;
+    }
+
+    /**
+     * Devolve os termos que começam pelo prefixo (sem distinção de maiúsculas),
+     * do mais recente para o mais antigo e, em caso de empate, por ordem alfabética.
+     * @param prefix O prefixo (vazio devolve os termos mais recentes).
+     * @param k O número máximo de sugestões (no máximo MAX_K).
+     * @return As sugestões.
+     */
+    public Suggestion[] suggest(String prefix, int k) {
+        if (!frozen) flush();
+        String p = fold(prefix);
+        int limit = Math.min(Math.max(k, 0), MAX_K);
+        ArrayList<Suggestion> found = new ArrayList<>(limit);
+
+        // Entradas: um termo ou uma subárvore ainda por abrir, pelo seu melhor termo.
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        if (root != null && limit > 0) queue.add(new Entry(root, false));
+        while (!queue.isEmpty() && found.size() < limit) {
+            Entry e = queue.poll();
+            Term t = e.term;
+            if (e.single) {
+                found.add(new Suggestion(t.text, t.kind(), t.date()));
+            } else if (t.key.startsWith(p)) {
+                queue.add(new Entry(t, true));
+                if (t.left != null) queue.add(new Entry(t.left, false));
+                if (t.right != null) queue.add(new Entry(t.right, false));
+            } else {
+                // Fora do intervalo: os termos com o prefixo estão só de um dos lados.
+                Term side = (t.key.compareTo(p) < 0) ? t.right : t.left;
+                if (side != null) queue.add(new Entry(side, false));
+            }
+        }
+        return found.toArray(new Suggestion[0]);
+    }
+
+    /**
+     * Normaliza um texto da mesma forma que a comparação sem distinção de maiúsculas.
+     * @param s O texto.
+     * @return O texto normalizado.
+     */
+    public static String fold(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        return new String(chars);
+    }
+
+    // UTILITÁRIOS.
+
+    /**
+     * Regista os termos do título (título, elenco e realizadores) como
+     * alterações pendentes.
+     */
+    private void update(NetflixShow s, boolean added) {
+        checkWritable();
+        String[] names = { s.getTitle(), s.getCast(), s.getDirector() };
+        for (int f = 0; f < names.length; f++) {
+            if (names[f] == null) continue;
+            for (String name : (f == 0) ? new String[] { names[f] } : names[f].split(",")) {
+                name = name.trim();
+                if (name.isEmpty()) continue;
+                Delta d = pending.computeIfAbsent(fold(name), key -> new Delta());
+                if (added && d.text == null) d.text = name;
+                d.add((f == 0) ? TITLE : PERSON, s.getDateKey(), added);
+            }
+        }
+    }
+
+    /** Aplica as alterações pendentes à árvore. */
+    private void flush() {
+        if (pending.isEmpty()) return;
+        String[] keys = pending.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        if ((long) keys.length * (32 - Integer.numberOfLeadingZeros(size)) >= size) {
+            rebuild(keys);
+        } else {
+            for (String key : keys) root = update(root, key, pending.get(key));
+        }
+        pending.clear();
+    }
+
+    /**
+     * Atualiza o termo na subárvore t (acrescentando-o ou retirando-o se for
+     * caso disso), copiando os nós do caminho que sejam de fotografias anteriores.
+     */
+    private Term update(Term t, String key, Delta d) {
+        if (t == null) {
+            Term created = d.applyTo(null, key, epoch);
+            if (created == null) return null;
+            created.priority = nextPriority();
+            size++;
+            return created;
+        }
+        int c = key.compareTo(t.key);
+        if (c == 0) {
+            Term changed = d.applyTo(t, key, epoch);
+            if (changed == null) {
+                size--;
+                return merge(t.left, t.right);
+            }
+            return changed.refresh();
+        }
+        Term child = update((c < 0) ? t.left : t.right, key, d);
+        t = own(t);
+        if (c < 0) t.left = child;
+        else t.right = child;
+        // Um termo novo com prioridade maior sobe por rotação.
+        if (child != null && child.priority > t.priority) {
+            if (c < 0) {
+                t.left = child.right;
+                child.right = t.refresh();
+            } else {
+                t.right = child.left;
+                child.left = t.refresh();
+            }
+            return child.refresh();
+        }
+        return t.refresh();
+    }
+
+    /** Junta duas subárvores, com todos os termos de a antes dos de b. */
+    private Term merge(Term a, Term b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a = own(a);
+            a.right = merge(a.right, b);
+            return a.refresh();
+        }
+        b = own(b);
+        b.left = merge(a, b.left);
+        return b.refresh();
+    }
+
+    /**
+     * Reconstrói a árvore juntando os termos atuais (em ordem) com os alterados
+     * (já ordenados), como árvore cartesiana construída com uma pilha.
+     */
+    private void rebuild(String[] keys) {
+        Term[] sorted = new Term[size + keys.length];
+        int n = 0, k = 0;
+        for (Term t : inOrder()) {
+            while (k < keys.length && keys[k].compareTo(t.key) < 0) n = applyNew(keys[k++], null, sorted, n);
+            if (k < keys.length && keys[k].equals(t.key)) n = applyNew(keys[k++], t, sorted, n);
+            else sorted[n++] = t.copy(epoch);
+        }
+        while (k < keys.length) n = applyNew(keys[k++], null, sorted, n);
+
+        Term[] stack = new Term[64];
+        int top = 0;
+        for (int i = 0; i < n; i++) {
+            Term node = sorted[i];
+            node.priority = nextPriority();
+            Term last = null;
+            while (top > 0 && stack[top - 1].priority < node.priority) last = stack[--top].refresh();
+            node.left = last;
+            if (top > 0) stack[top - 1].right = node;
+            if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+            stack[top++] = node;
+        }
+        while (top > 1) stack[--top].refresh();
+        root = (top > 0) ? stack[0].refresh() : null;
+        size = n;
+    }
+
+    private int applyNew(String key, Term old, Term[] sorted, int n) {
+        Term t = pending.get(key).applyTo(old, key, epoch);
+        if (t != null) {
+            t.left = t.right = null;
+            sorted[n++] = t;
+        }
+        return n;
+    }
+
+    /** Termos da árvore por ordem alfabética. */
+    private java.util.List<Term> inOrder() {
+        ArrayList<Term> out = new ArrayList<>(size);
+        Term[] stack = new Term[64];
+        int top = 0;
+        Term t = root;
+        while (t != null || top > 0) {
+            for (; t != null; t = t.left) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = t;
+            }
+            t = stack[--top];
+            out.add(t);
+            t = t.right;
+        }
+        return out;
+    }
+
+    /**
+     * Devolve o nó pronto a ser alterado: o próprio, se for desta época, ou
+     * uma cópia (o original continua nas fotografias que o referem).
+     */
+    private Term own(Term t) {
+        return (t.epoch == epoch) ? t : t.copy(epoch);
+    }
+
+    private void checkWritable() {
+        if (frozen) throw new UnsupportedOperationException("read-only snapshot");
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    /**
+     * Nó da árvore: um termo, os títulos onde aparece e a data mais recente da subárvore.
+     */
+    private static final class Term {
+        final String key;
+        String text;
+
+        /** Ocorrências como título e como nome. */
+        int titles, persons;
+
+        /** Datas de adição das ocorrências, da mais recente para a mais antiga. */
+        int[] dates;
+
+        int priority;
+        Term left, right;
+
+        /** Melhor termo da subárvore: a sua data e a sua chave. */
+        int best;
+        String bestKey;
+
+        final int epoch;
+
+        Term(String key, int epoch) {
+            this.key = key;
+            this.epoch = epoch;
+        }
+
+        int kind() {
+            return ((titles > 0) ? TITLE : 0) | ((persons > 0) ? PERSON : 0);
+        }
+
+        int date() {
+            return dates[0];
+        }
+
+        Term copy(int epoch) {
+            Term t = new Term(key, epoch);
+            t.text = text;
+            t.titles = titles;
+            t.persons = persons;
+            t.dates = dates;
+            t.priority = priority;
+            t.left = left;
+            t.right = right;
+            t.best = best;
+            t.bestKey = bestKey;
+            return t;
+        }
+
+        /** Recalcula o melhor termo da subárvore a partir dos filhos. */
+        Term refresh() {
+            best = dates[0];
+            bestKey = key;
+            if (left != null && before(left.best, left.bestKey, best, bestKey)) {
+                best = left.best;
+                bestKey = left.bestKey;
+            }
+            if (right != null && before(right.best, right.bestKey, best, bestKey)) {
+                best = right.best;
+                bestKey = right.bestKey;
+            }
+            return this;
+        }
+    }
+
+    /** Ordem das sugestões: data mais recente e, em empate, ordem alfabética. */
+    private static boolean before(int date, String key, int otherDate, String otherKey) {
+        return (date != otherDate) ? date > otherDate : key.compareTo(otherKey) < 0;
+    }
+
+    /**
+     * Alterações pendentes de um termo: ocorrências acrescentadas e retiradas,
+     * com as respetivas datas.
+     */
+    private static final class Delta {
+        private static final int[] NONE = new int[0];
+
+        String text;
+        int titles, persons;
+        private int[] added = new int[2];
+        private int[] removed = NONE;
+        private int addedSize, removedSize;
+
+        void add(int kind, int date, boolean isAdded) {
+            int sign = isAdded ? 1 : -1;
+            if (kind == TITLE) titles += sign;
+            else persons += sign;
+            if (isAdded) {
+                if (addedSize == added.length) added = Arrays.copyOf(added, addedSize * 2);
+                added[addedSize++] = date;
+            } else {
+                if (removedSize == removed.length) removed = Arrays.copyOf(removed, Math.max(2, removedSize * 2));
+                removed[removedSize++] = date;
+            }
+        }
+
+        /**
+         * Devolve o termo com as alterações aplicadas (um nó novo desta época)
+         * ou null se deixar de aparecer em qualquer título.
+         */
+        Term applyTo(Term old, String key, int epoch) {
+            int titleCount = titles + ((old == null) ? 0 : old.titles);
+            int personCount = persons + ((old == null) ? 0 : old.persons);
+            if (titleCount + personCount <= 0) return null;
+
+            // Datas: as antigas e as novas, menos uma ocorrência de cada data retirada.
+            int oldSize = (old == null) ? 0 : old.dates.length;
+            int[] all = new int[oldSize + addedSize];
+            if (old != null) System.arraycopy(old.dates, 0, all, 0, oldSize);
+            System.arraycopy(added, 0, all, oldSize, addedSize);
+            int n = all.length;
+            for (int r = 0; r < removedSize; r++) {
+                for (int i = 0; i < n; i++) {
+                    if (all[i] == removed[r]) {
+                        all[i] = all[--n];
+                        break;
+                    }
+                }
+            }
+            int[] dates = Arrays.copyOf(all, n);
+            Arrays.sort(dates);
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                int aux = dates[i]; dates[i] = dates[j]; dates[j] = aux;
+            }
+
+            Term t = (old == null) ? new Term(key, epoch) : old.copy(epoch);
+            if (t.text == null) t.text = text;
+            t.titles = titleCount;
+            t.persons = personCount;
+            t.dates = dates;
+            return t.refresh();
+        }
+    }
+
+    /**
+     * Entrada da fila do suggest: um termo já dentro do intervalo (single) ou
+     * uma subárvore, ordenados pelo seu melhor termo. Uma subárvore só em parte
+     * dentro do intervalo fica com um limite superior, o que basta: sai antes
+     * de qualquer termo pior e, ao abrir, só acrescenta o que está no intervalo.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final Term term;
+        final boolean single;
+
+        Entry(Term term, boolean single) {
+            this.term = term;
+            this.single = single;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int date = single ? term.date() : term.best, otherDate = o.single ? o.term.date() : o.term.best;
+            String key = single ? term.key : term.bestKey, otherKey = o.single ? o.term.key : o.term.bestKey;
+            if (date != otherDate) return (date > otherDate) ? -1 : 1;
+            int c = key.compareTo(otherKey);
+            // O mesmo melhor termo: a subárvore (que o contém) abre-se antes.
+            return (c != 0) ? c : Boolean.compare(single, o.single);
+        }
+    }
+}
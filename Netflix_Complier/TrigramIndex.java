@@ -0,0 +1,217 @@
+import java.util.Arrays;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Índice invertido de trigramas sobre um campo de texto dos títulos, usado
+ * para responder a pesquisas por substring sem percorrer toda a coleção.
+ * * Cada trigrama (três caracteres consecutivos, sem distinção de maiúsculas)
+ * é codificado num long e associado a uma lista ordenada de rowIds (numa
+ * PostingTable, para que snapshot possa partilhar as listas com o índice).
+ * Uma pesquisa intersecta as listas dos trigramas da consulta, começando pela
+ * mais curta, e confirma cada candidato comparando o texto no próprio lugar.
+ * * Em campos com vários valores separados por vírgulas (ex.: cast) os
+ * trigramas são extraídos de cada valor, sem atravessar as vírgulas; consultas
+ * com vírgulas ou com menos de três caracteres são respondidas por varrimento.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class TrigramIndex implements ShowIndex {
+
+    /** Tabela de linhas usada para obter os títulos a partir dos rowIds. */
+    private final RowTable rows;
+
+    /** Função que extrai o campo indexado de um título. */
+    private final Function<NetflixShow, String> field;
+
+    /** Verificação de um candidato: o campo contém a consulta (sem distinção de maiúsculas). */
+    private final BiPredicate<NetflixShow, String> contains;
+
+    /** Indica se o campo contém vários valores separados por vírgulas. */
+    private final boolean commaSeparated;
+
+    /** Listas de rowIds de cada trigrama. */
+    private final PostingTable postings;
+
+    /**
+     * Cria um índice sobre o campo indicado.
+     * @param rows A tabela de linhas partilhada.
+     * @param field A função que devolve o texto a indexar (pode devolver null).
+     * @param commaSeparated true se o campo for uma lista separada por vírgulas.
+     */
+    public TrigramIndex(RowTable rows, Function<NetflixShow, String> field, boolean commaSeparated) {
+        this(rows, field, (show, query) -> containsIgnoreCase(field.apply(show), query), commaSeparated);
+    }
+
+    /**
+     * Cria um índice sobre o campo indicado, com uma verificação própria dos
+     * candidatos (por exemplo, sem criar a string de um título compactado).
+     * @param rows A tabela de linhas partilhada.
+     * @param field A função que devolve o texto a indexar (pode devolver null).
+     * @param contains Indica se o campo de um título contém a consulta.
+     * @param commaSeparated true se o campo for uma lista separada por vírgulas.
+     */
+    public TrigramIndex(RowTable rows, Function<NetflixShow, String> field,
+                        BiPredicate<NetflixShow, String> contains, boolean commaSeparated) {
+        this(rows, field, contains, commaSeparated, new PostingTable());
+    }
+
+    private TrigramIndex(RowTable rows, Function<NetflixShow, String> field, BiPredicate<NetflixShow, String> contains,
+                         boolean commaSeparated, PostingTable postings) {
+        this.rows = rows;
+        this.field = field;
+        this.contains = contains;
+        this.commaSeparated = commaSeparated;
+        this.postings = postings;
+    }
+
+    @Override
+    public void add(NetflixShow show) {
+        String text = field.apply(show);
+        if (text == null) return;
+        int id = show.getRowId();
+        for (int i = 0; i + 2 < text.length(); i++) {
+            if (fitsInSegment(text, i)) postings.add(trigram(text, i), id);
+        }
+    }
+
+    @Override
+    public void remove(NetflixShow show) {
+        String text = field.apply(show);
+        if (text == null) return;
+        int id = show.getRowId();
+        for (int i = 0; i + 2 < text.length(); i++) {
+            if (fitsInSegment(text, i)) postings.remove(trigram(text, i), id);
+        }
+    }
+
+    @Override
+    public void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Devolve uma fotografia do índice (só de leitura), que não muda com as
+     * alterações seguintes e partilha as listas com o índice.
+     * @param rowsView A fotografia da RowTable tirada no mesmo momento.
+     * @return O índice só de leitura.
+     */
+    public TrigramIndex snapshot(RowTable rowsView) {
+        return new TrigramIndex(rowsView, field, contains, commaSeparated, postings.snapshot());
+    }
+
+    /**
+     * Procura os títulos cujo campo contém a consulta (sem distinção de maiúsculas).
+     * @param query O texto a procurar.
+     * @return Os títulos encontrados, por ordem crescente de rowId.
+     */
+    public NetflixShow[] search(String query) {
+        int n = query.length();
+        if (n < 3 || (commaSeparated && query.indexOf(',') >= 0)) return scan(query);
+
+        // Listas dos trigramas da consulta; a mais curta gera os candidatos.
+        int grams = n - 2;
+        int[][][] lists = new int[grams][][];
+        int smallest = 0, smallestCount = Integer.MAX_VALUE;
+        for (int g = 0; g < grams; g++) {
+            long key = trigram(query, g);
+            int count = postings.count(key);
+            if (count == 0) return new NetflixShow[0];
+            lists[g] = postings.blocks(key);
+            if (count < smallestCount) {
+                smallest = g;
+                smallestCount = count;
+            }
+        }
+
+        // Cursores (bloco e posição) das outras listas, que só avançam.
+        int[] blockAt = new int[grams];
+        int[] posAt = new int[grams];
+        NetflixShow[] found = new NetflixShow[Math.min(smallestCount, 16)];
+        int count = 0;
+        int verified = 0;
+
+        done:
+        for (int[] base : lists[smallest]) {
+            candidates:
+            for (int c = 0; c < PostingTable.count(base); c++) {
+                int id = PostingTable.value(base, c);
+                for (int g = 0; g < grams; g++) {
+                    if (g == smallest) continue;
+                    int[][] blocks = lists[g];
+                    while (blockAt[g] < blocks.length && last(blocks[blockAt[g]]) < id) {
+                        blockAt[g]++;
+                        posAt[g] = 0;
+                    }
+                    if (blockAt[g] == blocks.length) break done;
+                    int[] block = blocks[blockAt[g]];
+                    posAt[g] = PostingTable.gallop(block, posAt[g], id);
+                    if (PostingTable.value(block, posAt[g]) != id) continue candidates;
+                }
+                NetflixShow show = rows.get(id);
+                verified++;
+                if (show != null && contains.test(show, query)) {
+                    if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                    found[count++] = show;
+                }
+            }
+        }
+        Metrics.trigramSearch(verified, count);
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Listas de rowIds de cada trigrama (gravadas e repostas pelo SnapshotFile).
+     */
+    PostingTable postings() {
+        return postings;
+    }
+
+    // UTILITÁRIOS.
+
+    /**
+     * Varrimento dos títulos presentes, para consultas que o índice não consegue filtrar.
+     */
+    private NetflixShow[] scan(String query) {
+        NetflixShow[][] found = { new NetflixShow[16] };
+        int[] count = new int[1];
+        rows.forEach(show -> {
+            if (!contains.test(show, query)) return;
+            if (count[0] == found[0].length) found[0] = Arrays.copyOf(found[0], count[0] * 2);
+            found[0][count[0]++] = show;
+        });
+        return Arrays.copyOf(found[0], count[0]);
+    }
+
+    /**
+     * Verifica se o trigrama que começa em i não atravessa uma vírgula.
+     */
+    private boolean fitsInSegment(String text, int i) {
+        if (!commaSeparated) return true;
+        return text.charAt(i) != ',' && text.charAt(i + 1) != ',' && text.charAt(i + 2) != ',';
+    }
+
+    /**
+     * Verifica se o texto contém a consulta, sem distinção de maiúsculas e sem criar strings.
+     */
+    static boolean containsIgnoreCase(String text, String query) {
+        if (text == null) return false;
+        int last = text.length() - query.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, query, 0, query.length())) return true;
+        }
+        return false;
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) fold(s.charAt(i)) << 32) | ((long) fold(s.charAt(i + 1)) << 16) | fold(s.charAt(i + 2));
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static int last(int[] block) {
+        return PostingTable.value(block, PostingTable.count(block) - 1);
+    }
+}
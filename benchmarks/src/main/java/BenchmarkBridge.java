@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * Implementação de benchmarks.Bridge sobre as classes do projeto (ver a
+ * documentação da interface).
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public class BenchmarkBridge implements benchmarks.Bridge {
+
+    @Override
+    public Sorted newSortedList() {
+        SortedList<String> list = new SortedList<>();
+        return new Sorted() {
+            @Override public void add(String element) { list.add(element); }
+            @Override public String get(int index) { return list.get(index); }
+            @Override public boolean remove(String element) { return list.remove(element); }
+            @Override public int size() { return list.size(); }
+        };
+    }
+
+    @Override
+    public Histogram newHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        return new Histogram() {
+            @Override public void record(long nanos) { h.record(nanos); }
+            @Override public long percentile(double p) { return h.percentile(p); }
+        };
+    }
+
+    @Override
+    public long parseCsv(String filename) throws IOException {
+        long fields = 0;
+        try (CsvReader reader = new CsvReader(filename)) {
+            while (reader.next()) {
+                for (int i = 0; i < reader.fieldCount(); i++) {
+                    if (reader.field(i) != null) fields++;
+                }
+            }
+        }
+        return fields;
+    }
+
+    @Override
+    public String[][] readRows(String filename, int limit) throws IOException {
+        ArrayList<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(filename)) {
+            reader.next(); // Cabeçalho.
+            while (rows.size() < limit && reader.next()) {
+                if (reader.fieldCount() < 12) continue;
+                try {
+                    reader.intField(7);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                String[] row = new String[12];
+                for (int i = 0; i < row.length; i++) row[i] = reader.field(i);
+                rows.add(row);
+            }
+        }
+        return rows.toArray(new String[0][]);
+    }
+
+    @Override
+    public Object newShow(String[] f) {
+        return new NetflixShow(f[0], f[1], f[2], f[3], f[4], f[5], f[6], Integer.parseInt(f[7]),
+                               f[8], f[9], f[10], f[11]);
+    }
+
+    @Override
+    public Object[] newShows(String[][] rows) {
+        NetflixShow[] shows = new NetflixShow[rows.length];
+        for (int i = 0; i < rows.length; i++) shows[i] = (NetflixShow) newShow(rows[i]);
+        return shows;
+    }
+
+    @Override
+    public Sorting sorting(String key) {
+        switch (key) {
+            case "duration":
+                return new Sorting() {
+                    @Override public void sorter(Object[] shows) {
+                        Sorter.sortByKey((NetflixShow[]) shows, s -> -s.getDuration());
+                    }
+
+                    // O bubble sort do MTIME antes do Sorter.
+                    @Override public void bubble(Object[] shows) {
+                        NetflixShow[] arr = (NetflixShow[]) shows;
+                        for (int i = 0; i < arr.length; i++) {
+                            for (int j = 0; j < arr.length - 1 - i; j++) {
+                                if (arr[j].getDuration() < arr[j + 1].getDuration()) {
+                                    NetflixShow aux = arr[j]; arr[j] = arr[j + 1]; arr[j + 1] = aux;
+                                }
+                            }
+                        }
+                    }
+                };
+            case "date":
+                return new Sorting() {
+                    @Override public void sorter(Object[] shows) {
+                        Sorter.sortByKey((NetflixShow[]) shows, NetflixShow::getDateKey);
+                    }
+
+                    // O bubble sort das pesquisas antes do Sorter (sem data primeiro).
+                    @Override public void bubble(Object[] shows) {
+                        NetflixShow[] arr = (NetflixShow[]) shows;
+                        for (int i = 0; i < arr.length; i++) {
+                            for (int j = 0; j < arr.length - 1 - i; j++) {
+                                boolean swap = false;
+                                if (arr[j].getDateAdded() == null) swap = false;
+                                else if (arr[j + 1].getDateAdded() == null) swap = true;
+                                else if (arr[j].getDateAdded().isAfter(arr[j + 1].getDateAdded())) swap = true;
+                                if (swap) { NetflixShow temp = arr[j]; arr[j] = arr[j + 1]; arr[j + 1] = temp; }
+                            }
+                        }
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("unknown sort key " + key);
+        }
+    }
+
+    @Override
+    public Commands newManager() {
+        NetflixManager manager = new NetflixManager();
+        manager.setPaging(false);
+        manager.execute("CACHE SIZE 0", new PrintStream(OutputStream.nullOutputStream()));
+        return manager::execute;
+    }
+
+    @Override
+    public Filtering loadFiltering(String filename) {
+        NetflixManager manager = new NetflixManager();
+        manager.setPaging(false);
+        manager.execute("LOADF " + filename, new PrintStream(OutputStream.nullOutputStream()));
+        return new Filtering() {
+            @Override public Object parse(String text) { return ShowFilter.parse(text); }
+            @Override public Object[] filter(Object filter) { return manager.filter((ShowFilter) filter); }
+            @Override public Object[] scan(Object filter) {
+                ShowFilter f = (ShowFilter) filter;
+                ArrayList<NetflixShow> found = new ArrayList<>();
+                for (NetflixShow s : manager.snapshot()) if (f.matches(s)) found.add(s);
+                return found.toArray(new NetflixShow[0]);
+            }
+        };
+    }
+
+    @Override
+    public Server startServer(String filename) throws IOException {
+        NetflixManager manager = new NetflixManager();
+        manager.setPaging(false);
+        manager.execute("LOADF " + filename, new PrintStream(OutputStream.nullOutputStream()));
+        CatalogServer server = new CatalogServer(manager, 0);
+        server.start();
+        return new Server() {
+            @Override public int port() { return server.getPort(); }
+            @Override public void stop() { server.stop(); }
+        };
+    }
+
+    @Override
+    public void generate(int rows, long seed, String filename) throws IOException {
+        new CatalogGenerator(rows, seed).write(Path.of(filename));
+    }
+}
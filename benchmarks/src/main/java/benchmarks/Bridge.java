@@ -0,0 +1,131 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Operações medidas pelos benchmarks. O JMH não aceita benchmarks no pacote
+ * por omissão e um pacote com nome não consegue usar as classes do projeto,
+ * que estão no pacote por omissão; esta interface é implementada por
+ * BenchmarkBridge (no pacote por omissão) e obtida com load.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+public interface Bridge {
+
+    /** Uma SortedList de strings. */
+    interface Sorted {
+        void add(String element);
+        String get(int index);
+        boolean remove(String element);
+        int size();
+    }
+
+    /** Um NetflixManager sem paginação. */
+    interface Commands {
+        /** Executa um comando, escrevendo o resultado em out. */
+        void execute(String line, PrintStream out);
+    }
+
+    /** Um catálogo carregado, para comparar o FILTER com um varrimento da lista. */
+    interface Filtering {
+        /** Converte o texto de um FILTER (ver ShowFilter.parse). */
+        Object parse(String text);
+
+        /** Títulos do filtro obtidos pelos bitmaps do FilterIndex, pela ordem da lista. */
+        Object[] filter(Object filter);
+
+        /** Títulos do filtro obtidos percorrendo toda a lista e testando cada um. */
+        Object[] scan(Object filter);
+    }
+
+    /** Uma ordenação de títulos, com o Sorter e com o bubble sort que ele substituiu. */
+    interface Sorting {
+        /** Ordena os títulos (criados por newShows) com o Sorter. */
+        void sorter(Object[] shows);
+
+        /** Ordena os títulos pela mesma ordem com o bubble sort antigo. */
+        void bubble(Object[] shows);
+    }
+
+    /** Um histograma de latências (LatencyHistogram). */
+    interface Histogram {
+        void record(long nanos);
+        long percentile(double p);
+    }
+
+    /** Um CatalogServer a correr sobre um catálogo carregado. */
+    interface Server {
+        /** A porta TCP onde o servidor escuta. */
+        int port();
+
+        /** Para o servidor. */
+        void stop();
+    }
+
+    /** Cria uma SortedList vazia. */
+    Sorted newSortedList();
+
+    /**
+     * Lê todos os registos de um CSV com o CsvReader, criando a string de cada campo.
+     * @return O número de campos lidos.
+     */
+    long parseCsv(String filename) throws IOException;
+
+    /**
+     * Lê as primeiras linhas de dados de um CSV do catálogo (sem o cabeçalho nem
+     * as linhas incompletas ou com o ano inválido).
+     * @param limit O número máximo de linhas lidas.
+     * @return Os 12 campos de cada linha.
+     */
+    String[][] readRows(String filename, int limit) throws IOException;
+
+    /**
+     * Constrói um NetflixShow a partir dos 12 campos de uma linha do CSV.
+     * @return O título criado.
+     */
+    Object newShow(String[] fields);
+
+    /**
+     * Constrói os NetflixShow de várias linhas do CSV, num array que pode ser
+     * passado a Sorting.
+     */
+    Object[] newShows(String[][] rows);
+
+    /**
+     * Ordenação por uma das chaves ordenadas pelos comandos.
+     * @param key "duration" (decrescente, a do MTIME) ou "date" (crescente e
+     *        sem data primeiro, a das pesquisas).
+     */
+    Sorting sorting(String key);
+
+    /** Cria um histograma de latências vazio. */
+    Histogram newHistogram();
+
+    /** Cria um gestor vazio, sem paginação e sem cache de resultados. */
+    Commands newManager();
+
+    /** Cria um gestor e carrega nele o CSV, para o FILTER. */
+    Filtering loadFiltering(String filename);
+
+    /**
+     * Carrega o CSV num gestor e arranca um CatalogServer numa porta livre.
+     * @return O servidor, já a aceitar pedidos.
+     */
+    Server startServer(String filename) throws IOException;
+
+    /** Escreve um catálogo sintético com o CatalogGenerator. */
+    void generate(int rows, long seed, String filename) throws IOException;
+
+    /**
+     * Obtém a implementação do projeto.
+     * @return A ponte para as classes do pacote por omissão.
+     */
+    static Bridge load() {
+        try {
+            return (Bridge) Class.forName("BenchmarkBridge").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkBridge not found", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Ficheiros de catálogo usados pelos benchmarks.
+ * * Os catálogos sintéticos vão de 10k a 10M de linhas. Com 1M de linhas o
+ * gestor ocupa perto de 2,5 GB; os 10M (cerca de 3 GB de CSV) precisam de
+ * um heap maior do que o -Xmx4g dos @Fork, por exemplo:
+ *   java -jar benchmarks/target/benchmarks.jar Load -p rows=10000000
+ *        -jvmArgsAppend "-Dnetflix.metrics=false -Xmx32g"
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+final class Catalogs {
+
+    /** O catálogo real (8807 títulos), relativo à raiz do projeto. */
+    static final String NETFLIX = "netflix_movies/netflix_titles.csv";
+
+    private Catalogs() { }
+
+    /**
+     * Devolve o CSV com o número de linhas pedido.
+     * @param bridge A ponte para o projeto.
+     * @param rows 0 para o catálogo real; senão o número de linhas de um catálogo sintético.
+     * @return O caminho do CSV (os sintéticos ficam num ficheiro temporário apagado no fim da JVM).
+     */
+    static String csv(Bridge bridge, int rows) throws IOException {
+        if (rows == 0) {
+            if (!Files.exists(Path.of(NETFLIX))) {
+                throw new IOException(NETFLIX + " not found: run the benchmarks from the project root");
+            }
+            return NETFLIX;
+        }
+        Path file = Files.createTempFile("netflix-bench-", ".csv");
+        file.toFile().deleteOnExit();
+        bridge.generate(rows, 42, file.toString());
+        return file.toString();
+    }
+
+    /**
+     * Escreve um ficheiro de alterações para o MERGEF: as primeiras linhas do
+     * catálogo com a descrição trocada pela marca, para que cada MERGEF
+     * alternado atualize todos os títulos do ficheiro.
+     * @param rows As linhas do catálogo (ver Bridge.readRows).
+     * @param count O número de linhas do ficheiro.
+     * @param tag O texto da descrição.
+     * @return O caminho do ficheiro (temporário, apagado no fim da JVM).
+     */
+    static String delta(String[][] rows, int count, String tag) throws IOException {
+        Path file = Files.createTempFile("netflix-delta-", ".csv");
+        file.toFile().deleteOnExit();
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file))) {
+            pw.println("show_id,type,title,director,cast,country,date_added,release_year,rating,duration,listed_in,description");
+            for (int r = 0; r < Math.min(count, rows.length); r++) {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < rows[r].length; i++) {
+                    String field = (i == rows[r].length - 1) ? tag : rows[r][i];
+                    if (i > 0) line.append(',');
+                    line.append('"').append(field.replace("\"", "\"\"")).append('"');
+                }
+                pw.println(line);
+            }
+        }
+        return file.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Arranque a frio: o primeiro carregamento numa JVM acabada de iniciar, do
+ * CSV (LOADF: leitura, ordenação e construção de todos os índices) ou da
+ * fotografia binária gravada com SAVE (LOADB: índices repostos do ficheiro).
+ * * Cada medição é a única operação de um fork, sem aquecimento. O CSV e a
+ * fotografia são criados por processos à parte (Main --generate e um script
+ * LOADF/SAVE), para que nenhum código do carregamento corra no fork antes da
+ * medição, e ficam na pasta temporária para os forks seguintes. Os ficheiros
+ * estão na cache de páginas: mede-se a JVM fria, não o disco frio.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class ColdStartBenchmark {
+
+    /** 0 para o catálogo real; senão o número de linhas do catálogo sintético. */
+    @Param({ "0", "100000", "1000000" })
+    public int rows;
+
+    private String csv;
+    private String snapshot;
+    private Bridge.Commands manager;
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"));
+        if (rows == 0) {
+            csv = Catalogs.NETFLIX;
+        } else {
+            Path file = dir.resolve("netflix-cold-" + rows + ".csv");
+            if (!Files.exists(file)) run(null, "--generate", Integer.toString(rows), file.toString());
+            csv = file.toString();
+        }
+        Path bin = dir.resolve("netflix-cold-" + rows + ".bin");
+        if (!Files.exists(bin)) run("LOADF " + csv + "\nSAVE " + bin + "\n", "--no-paging");
+        snapshot = bin.toString();
+        manager = Bridge.load().newManager();
+    }
+
+    @Benchmark
+    public Bridge.Commands loadf() {
+        manager.execute("LOADF " + csv, out);
+        return manager;
+    }
+
+    @Benchmark
+    public Bridge.Commands loadb() {
+        manager.execute("LOADB " + snapshot, out);
+        return manager;
+    }
+
+    /**
+     * Executa o Main do projeto noutra JVM, com o mesmo classpath.
+     * @param input O texto escrito na entrada do processo (null se nenhum).
+     */
+    private static void run(String input, String... args) throws IOException, InterruptedException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xmx4g");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Main");
+        for (String a : args) command.add(a);
+        Process p = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (OutputStream stdin = p.getOutputStream()) {
+            if (input != null) stdin.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+        if (p.waitFor() != 0) throw new IOException("Main " + String.join(" ", args) + " failed");
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Comandos de consulta sobre um catálogo carregado, repetidos sem alterações
+ * entre eles, com a saída descartada (mede-se também a formatação do
+ * resultado). Com cache=0 a cache de resultados está desligada e cada comando
+ * é calculado; com cache=64 o SEARCHT, o SEARCHC e o MTIME repetidos vêm da
+ * cache e só a formatação é medida (o GET, o STATS e o SEGMENT não passam
+ * pela cache e servem de controlo).
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class CommandBenchmark {
+
+    /**
+     * 0 para o catálogo real; senão o número de linhas do catálogo sintético
+     * (gerado pelo CatalogGenerator com a semente 42). Os 10M de linhas não
+     * cabem em -Xmx4g (ver Catalogs).
+     */
+    @Param({ "0", "10000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    @Param({ "GET s2", "SEARCHT love", "SEARCHC tom hanks", "MTIME 90 100 LIMIT 100", "STATS", "SEGMENT RATING" })
+    public String command;
+
+    /** Tamanho da cache de resultados em MB (0 desliga-a). */
+    @Param({ "0", "64" })
+    public int cache;
+
+    private Bridge.Commands manager;
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Bridge bridge = Bridge.load();
+        manager = bridge.newManager();
+        manager.execute("CACHE SIZE " + cache, out);
+        manager.execute("LOADF " + Catalogs.csv(bridge, rows), out);
+    }
+
+    @Benchmark
+    public void execute() {
+        manager.execute(command, out);
+    }
+}
@@ -0,0 +1,119 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Débito das consultas com várias threads, só a ler (read, com -t 1 a 64) e
+ * com leituras e MERGEF misturados (mixed). No mixed, writes é a percentagem
+ * de operações de cada thread que são MERGEF; as restantes são consultas. As
+ * leituras e as escritas são contadas à parte (reads e writes por segundo no
+ * resultado), e as consultas leem a última fotografia e não devem esperar
+ * pelos MERGEF.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class ConcurrentBenchmark {
+
+    /** Consultas feitas, à vez, por cada thread leitora. */
+    private static final String[] QUERIES = {
+        "SEARCHT love", "SEARCHC tom hanks", "MTIME 90 100 LIMIT 100", "GET s2", "RELATED s2 10"
+    };
+
+    /** Linhas de cada MERGEF. */
+    private static final int DELTA_ROWS = 100;
+
+    /**
+     * 0 para o catálogo real; senão o número de linhas do catálogo sintético
+     * (gerado pelo CatalogGenerator com a semente 42). Os 10M de linhas não
+     * cabem em -Xmx4g (ver Catalogs).
+     */
+    @Param({ "0", "10000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    private Bridge.Commands manager;
+    private final String[] deltas = new String[2];
+    private final AtomicInteger merges = new AtomicInteger();
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    /** Posição de cada thread leitora na lista de consultas. */
+    @State(Scope.Thread)
+    public static class Reader {
+        int next;
+    }
+
+    /** Proporção de escritas do mixed. */
+    @State(Scope.Benchmark)
+    public static class Mix {
+        /** Percentagem das operações de cada thread que são MERGEF. */
+        @Param({ "1", "10", "25", "50" })
+        public int writes;
+    }
+
+    /** Operações de cada thread do mixed, contadas à parte por tipo. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Ops {
+        public long reads;
+        public long writes;
+        long next;
+    }
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Bridge bridge = Bridge.load();
+        String csv = Catalogs.csv(bridge, rows);
+        manager = bridge.newManager();
+        manager.execute("LOADF " + csv, out);
+        String[][] lines = bridge.readRows(csv, DELTA_ROWS);
+        deltas[0] = Catalogs.delta(lines, DELTA_ROWS, "A");
+        deltas[1] = Catalogs.delta(lines, DELTA_ROWS, "B");
+    }
+
+    @Benchmark
+    public void read(Reader r) {
+        manager.execute(QUERIES[r.next++ % QUERIES.length], out);
+    }
+
+    /**
+     * Uma operação de uma thread: writes de cada 100 operações são MERGEF,
+     * espalhados de forma regular, e as restantes são consultas (pela ordem
+     * de QUERIES).
+     */
+    @Benchmark
+    @Threads(4)
+    public void mixed(Mix mix, Ops ops) {
+        long n = ops.next++;
+        if ((n + 1) * mix.writes / 100 > n * mix.writes / 100) {
+            manager.execute("MERGEF " + deltas[merges.getAndIncrement() & 1], out);
+            ops.writes++;
+        } else {
+            manager.execute(QUERIES[(int) (ops.reads % QUERIES.length)], out);
+            ops.reads++;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FILTER pelos bitmaps do FilterIndex contra um varrimento linear da lista com
+ * ShowFilter.matches, com filtros de seletividade diferente. Os dois devolvem
+ * os mesmos títulos pela mesma ordem.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class FilterBenchmark {
+
+    /** Número de linhas do catálogo sintético. */
+    @Param({ "10000", "1000000" })
+    public int rows;
+
+    @Param({ "type=Movie", "type=Movie rating=TV-MA|R", "country=United States year=2000..2010",
+             "category=Dramas added=2019..2020", "country=Portugal category=Dramas" })
+    public String filter;
+
+    private Bridge.Filtering catalog;
+    private Object parsed;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Bridge bridge = Bridge.load();
+        catalog = bridge.loadFiltering(Catalogs.csv(bridge, rows));
+        parsed = catalog.parse(filter);
+        if (catalog.filter(parsed).length != catalog.scan(parsed).length) {
+            throw new IllegalStateException("FILTER and scan disagree on " + filter);
+        }
+    }
+
+    @Benchmark
+    public Object[] bitmaps() {
+        return catalog.filter(parsed);
+    }
+
+    @Benchmark
+    public Object[] scan() {
+        return catalog.scan(parsed);
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LOADF de um CSV para um gestor vazio (leitura, ordenação e construção de
+ * todos os índices), sequencial e com --parallel.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class LoadBenchmark {
+
+    /**
+     * 0 para o catálogo real; senão o número de linhas do catálogo sintético
+     * (gerado pelo CatalogGenerator com a semente 42). Os 10M de linhas não
+     * cabem em -Xmx4g (ver Catalogs).
+     */
+    @Param({ "0", "10000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    @Param({ "", " --parallel" })
+    public String mode;
+
+    private Bridge bridge;
+    private String csv;
+    private Bridge.Commands manager;
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        bridge = Bridge.load();
+        csv = Catalogs.csv(bridge, rows);
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyManager() {
+        manager = bridge.newManager();
+        System.gc();
+    }
+
+    @Benchmark
+    public Bridge.Commands loadf() {
+        manager.execute("LOADF " + csv + mode, out);
+        return manager;
+    }
+}
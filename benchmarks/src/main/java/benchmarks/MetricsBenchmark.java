@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Custo de registar uma latência no LatencyHistogram: por uma thread, por
+ * quatro threads no mesmo histograma (grupo shared) e, como referência, o
+ * System.nanoTime que cada comando chama duas vezes para ser medido.
+ * * O custo das métricas desligadas mede-se com os outros benchmarks, que
+ * correm com -Dnetflix.metrics=false, repetindo-os com as métricas ligadas:
+ *   java -jar benchmarks/target/benchmarks.jar SortedList -jvmArgsAppend -Dnetflix.metrics=true
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    /** Latências registadas, de 1 us a ~1 s (distribuição log-uniforme). */
+    private final long[] samples = new long[1 << 12];
+
+    private Bridge.Histogram histogram;
+
+    /** Posição de cada thread nas latências. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        histogram = Bridge.load().newHistogram();
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) samples[i] = (long) Math.pow(10, 3 + 6 * random.nextDouble());
+    }
+
+    @Benchmark
+    public void record(Cursor c) {
+        histogram.record(samples[c.next++ & (samples.length - 1)]);
+    }
+
+    @Benchmark
+    @Group("shared")
+    @GroupThreads(4)
+    public void recordShared(Cursor c) {
+        histogram.record(samples[c.next++ & (samples.length - 1)]);
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /** Percentil lido pelo METRICS (percorre todos os baldes). */
+    @Benchmark
+    public long p99() {
+        return histogram.percentile(99);
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Débito do CsvReader em MB/s: cada operação lê um catálogo sintético inteiro
+ * (todos os registos e a string de cada campo) e conta os seus bytes. O
+ * contador megabytes aparece no resultado como MB lidos por segundo.
+ * * O ficheiro de 1000 MB (cerca de 3,2M de linhas) é lido da cache de páginas
+ * do sistema depois da primeira iteração, pelo que o resultado mede o parsing
+ * e não o disco; o heap pequeno deixa memória livre para essa cache.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx1g" })
+public class ParseThroughputBenchmark {
+
+    /** Bytes por linha do CatalogGenerator, em média (315 MB para 1M de linhas). */
+    private static final int BYTES_PER_ROW = 315;
+
+    /** Tamanho aproximado do CSV gerado, em MB. */
+    @Param({ "100", "1000" })
+    public int size;
+
+    private Bridge bridge;
+    private String csv;
+    private double megabytes;
+
+    /** MB lidos, somados por cada operação. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Read {
+        public double megabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        bridge = Bridge.load();
+        csv = Catalogs.csv(bridge, (int) (size * 1_000_000L / BYTES_PER_ROW));
+        megabytes = Files.size(Path.of(csv)) / 1e6;
+    }
+
+    @Benchmark
+    public long parseCsv(Read read) throws IOException {
+        long fields = bridge.parseCsv(csv);
+        read.megabytes += megabytes;
+        return fields;
+    }
+}
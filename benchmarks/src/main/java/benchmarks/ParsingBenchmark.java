@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Leitura do CSV com o CsvReader (que substituiu o antigo parseCsvLine) e
+ * construção dos NetflixShow, incluindo o parsing da data e da duração.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class ParsingBenchmark {
+
+    /**
+     * 0 para o catálogo real; senão o número de linhas do catálogo sintético
+     * (gerado pelo CatalogGenerator com a semente 42). Os 10M de linhas não
+     * cabem em -Xmx4g (ver Catalogs).
+     */
+    @Param({ "0", "10000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    /** Linhas guardadas para o newShow, que as percorre em ciclo. */
+    private static final int SHOW_ROWS = 100_000;
+
+    private Bridge bridge;
+    private String csv;
+    private String[][] lines;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        bridge = Bridge.load();
+        csv = Catalogs.csv(bridge, rows);
+        lines = bridge.readRows(csv, SHOW_ROWS);
+    }
+
+    /** O ficheiro inteiro: todos os registos e a string de cada campo. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long parseCsv() throws IOException {
+        return bridge.parseCsv(csv);
+    }
+
+    /** Um NetflixShow a partir dos campos de uma linha. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object newShow() {
+        String[] line = lines[next];
+        if (++next == lines.length) next = 0;
+        return bridge.newShow(line);
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gerador de carga para o CatalogServer: cada thread é um cliente HTTP que
+ * repete o mesmo pedido sem pausas. O modo SampleTime do JMH regista a
+ * latência de cada pedido e mostra os percentis (p0.50, p0.99, ...) por
+ * endpoint; o número de clientes muda-se com -t.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class ServerBenchmark {
+
+    /** 0 para o catálogo real; senão o número de linhas do catálogo sintético. */
+    @Param({ "0", "1000000" })
+    public int rows;
+
+    @Param({ "/shows/s2", "/shows?offset=1000&limit=50", "/search/title?q=love", "/mtime?min=90&max=100&limit=100",
+             "/suggest?q=the&k=10", "/related/s2?k=10", "/stats?by=country" })
+    public String path;
+
+    private Bridge.Server server;
+    private URI uri;
+
+    /** O cliente HTTP de cada thread (uma ligação própria, mantida entre pedidos). */
+    @State(Scope.Thread)
+    public static class Client {
+        final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        Bridge bridge = Bridge.load();
+        server = bridge.startServer(Catalogs.csv(bridge, rows));
+        uri = URI.create("http://localhost:" + server.port() + path);
+        // O primeiro /suggest constrói o índice; não deve contar para a latência.
+        request(new Client());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        server.stop();
+    }
+
+    @Benchmark
+    public int request(Client client) throws IOException, InterruptedException {
+        HttpResponse<byte[]> r = client.http.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (r.statusCode() != 200) throw new IllegalStateException(path + " returned " + r.statusCode());
+        return r.body().length;
+    }
+}
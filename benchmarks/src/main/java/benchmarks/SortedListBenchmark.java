@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Inserção, acesso por posição e remoção na SortedList com size elementos.
+ * * add e remove medem lotes de BATCH operações; o lote é desfeito (ou
+ * preparado) fora da medição, para que a lista tenha sempre o mesmo tamanho.
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dnetflix.metrics=false")
+public class SortedListBenchmark {
+
+    private static final int BATCH = 1000;
+
+    /** Lista com size títulos aleatórios e um lote de títulos que não estão nela. */
+    @State(Scope.Thread)
+    public static class Filled {
+        @Param({ "10000", "1000000" })
+        public int size;
+
+        Bridge.Sorted list;
+        String[] batch;
+        int[] positions;
+        int next;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            Random random = new Random(1);
+            list = Bridge.load().newSortedList();
+            for (int i = 0; i < size; i++) list.add(key(random));
+            batch = new String[BATCH];
+            for (int i = 0; i < BATCH; i++) batch[i] = key(random);
+            positions = new int[1 << 16];
+            for (int i = 0; i < positions.length; i++) positions[i] = random.nextInt(size);
+        }
+
+        private static String key(Random random) {
+            return "title " + random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    /** Retira o lote inserido por add. */
+    @State(Scope.Thread)
+    public static class UndoAdd {
+        @TearDown(Level.Invocation)
+        public void undo(Filled f) {
+            for (String s : f.batch) f.list.remove(s);
+        }
+    }
+
+    /** Insere o lote que remove vai retirar. */
+    @State(Scope.Thread)
+    public static class PrepareRemove {
+        @Setup(Level.Invocation)
+        public void prepare(Filled f) {
+            for (String s : f.batch) f.list.add(s);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void add(Filled f, UndoAdd undo) {
+        for (String s : f.batch) f.list.add(s);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void remove(Filled f, PrepareRemove prepare, Blackhole bh) {
+        for (String s : f.batch) bh.consume(f.list.remove(s));
+    }
+
+    @Benchmark
+    public String get(Filled f) {
+        return f.list.get(f.positions[f.next++ & (f.positions.length - 1)]);
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorter.sortByKey contra o bubble sort que substituiu, sobre os títulos de um
+ * catálogo sintético pela ordem do CSV, com as duas chaves ordenadas pelos
+ * comandos (duração do MTIME e data das pesquisas). Cada operação copia os
+ * títulos desordenados antes de os ordenar.
+ * * O bubble sort é O(n²): com 100k títulos cada ordenação já demora perto de
+ * um minuto e com 1M mais de uma hora, pelo que esse caso se corre à parte,
+ * com uma única iteração:
+ *   java -jar benchmarks/target/benchmarks.jar SorterBenchmark.bubble
+ *        -p size=1000000 -wi 0 -i 1
+ * @author Simão Ferreira / Miguel Eusébio
+ * @version 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Dnetflix.metrics=false", "-Xmx4g" })
+public class SorterBenchmark {
+
+    /** Títulos em que as duas ordenações são comparadas antes da medição. */
+    private static final int CHECKED = 10000;
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int size;
+
+    @Param({ "duration", "date" })
+    public String key;
+
+    private Bridge.Sorting sorting;
+    private Object[] shows;
+    private Object[] work;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Bridge bridge = Bridge.load();
+        shows = bridge.newShows(bridge.readRows(Catalogs.csv(bridge, size), size));
+        work = shows.clone();
+        sorting = bridge.sorting(key);
+
+        // As duas ordenações são estáveis: têm de dar a mesma ordem (verificado
+        // nos primeiros títulos, para não pagar o bubble sort completo aqui).
+        Object[] a = Arrays.copyOf(shows, Math.min(size, CHECKED));
+        Object[] b = a.clone();
+        sorting.sorter(a);
+        sorting.bubble(b);
+        if (!Arrays.equals(a, b)) throw new IllegalStateException("Sorter and bubble sort disagree on " + key);
+    }
+
+    @Benchmark
+    public Object[] sorter() {
+        System.arraycopy(shows, 0, work, 0, shows.length);
+        sorting.sorter(work);
+        return work;
+    }
+
+    @Benchmark
+    public Object[] bubble() {
+        System.arraycopy(shows, 0, work, 0, shows.length);
+        sorting.bubble(work);
+        return work;
+    }
+}